@@ -0,0 +1,125 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.BinaryDecoder;
+import jointyjson.model.BinaryEncodingVisitor;
+import jointyjson.model.EncodingVisitor;
+import jointyjson.model.JsonElement;
+import jointyjson.stream.JsonFormat;
+import jointyjson.stream.JsonGenerator;
+import jointyjson.stream.MalformedJsonException;
+
+/**
+ * Compares the binary encoding of the documents of each {@link Corpus} with the compact JSON text,
+ * encoding and decoding both. The sizes of the two encodings are printed when each trial starts,
+ * after checking that the binary encoding decodes to the same structure.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryBenchmark {
+
+	@Param({"TEST", "DEEP", "WIDE", "STRINGS", "NUMBERS"})
+	public Corpus corpus;
+
+	@Param({"1024", "131072", "4194304"})
+	public int length;
+
+	@Param({"true", "false"})
+	public boolean keyReferences;
+
+	private JsonElement document;
+	private byte[] text;
+	private byte[] binary;
+	private JsonCompiler compiler;
+	private BinaryDecoder decoder;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnexpectedSymbolException, IOException {
+		compiler = new JsonCompiler();
+		decoder = new BinaryDecoder();
+		document = compiler.compile(corpus.generate(length));
+		text = encodeText().getBytes(StandardCharsets.UTF_8);
+		binary = encodeBinary();
+		if(!text(decoder.decode(binary)).equals(text(document)))
+			throw new IllegalStateException("the binary encoding of " + corpus + " does not decode to the same structure");
+		System.out.printf("%n%s %d: text %d bytes, binary %d bytes (%.1f%%)%n", corpus, length, text.length, binary.length,
+				100.0 * binary.length / text.length);
+	}
+
+	private static String text(JsonElement element) {
+		StringBuilder sb = new StringBuilder();
+		JsonGenerator generator = new JsonGenerator(sb, JsonFormat.COMPACT);
+		element.accept(new EncodingVisitor(generator));
+		try {
+			generator.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	@Benchmark
+	public String encodeText() {
+		return text(document);
+	}
+
+	@Benchmark
+	public byte[] encodeBinary() {
+		BinaryEncodingVisitor encoder = new BinaryEncodingVisitor(keyReferences);
+		document.accept(encoder);
+		return encoder.toByteArray();
+	}
+
+	@Benchmark
+	public JsonElement decodeText() throws UnexpectedSymbolException {
+		return compiler.compile(text);
+	}
+
+	@Benchmark
+	public JsonElement decodeBinary() throws MalformedJsonException {
+		return decoder.decode(binary);
+	}
+}
@@ -0,0 +1,242 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.binding.JsonBinder;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.EncodingVisitor;
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.stream.JsonFormat;
+import jointyjson.stream.JsonGenerator;
+
+/**
+ * Compares the binding of an array of orders to Java objects with walking the JSON structure by hand,
+ * in both directions: the binder reads the events of the parser and writes the events to the generator
+ * directly, while the hand-written code builds the JSON structure in between.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+	public static class Item {
+		private String sku;
+		private int quantity;
+		private double price;
+
+		public String getSku() {
+			return sku;
+		}
+
+		public void setSku(String sku) {
+			this.sku = sku;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+
+		public void setQuantity(int quantity) {
+			this.quantity = quantity;
+		}
+
+		public double getPrice() {
+			return price;
+		}
+
+		public void setPrice(double price) {
+			this.price = price;
+		}
+	}
+
+	public static class Order {
+		private long id;
+		private String customer;
+		private boolean paid;
+		private List<Item> items;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getCustomer() {
+			return customer;
+		}
+
+		public void setCustomer(String customer) {
+			this.customer = customer;
+		}
+
+		public boolean isPaid() {
+			return paid;
+		}
+
+		public void setPaid(boolean paid) {
+			this.paid = paid;
+		}
+
+		public List<Item> getItems() {
+			return items;
+		}
+
+		public void setItems(List<Item> items) {
+			this.items = items;
+		}
+	}
+
+	private static final long SEED = 20170716;
+
+	@Param({"1024", "131072", "4194304"})
+	public int length;
+
+	private String text;
+	private List<Order> orders;
+	private JsonCompiler compiler;
+	private JsonBinder binder;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnexpectedSymbolException {
+		compiler = new JsonCompiler();
+		binder = new JsonBinder(compiler);
+		text = generate(length);
+		orders = readTree();
+		if(!binder.toJsonString(bind()).equals(binder.toJsonString(orders)))
+			throw new IllegalStateException("the bound orders differ from the ones read by hand");
+	}
+
+	private static String generate(int length) {
+		Random random = new Random(SEED);
+		StringBuilder sb = new StringBuilder("[");
+		long id = 0;
+		do {
+			if(sb.length() > 1)
+				sb.append(',');
+			sb.append("{\"id\":").append(id++).append(",\"customer\":\"customer").append(random.nextInt(1000))
+					.append("\",\"paid\":").append(random.nextBoolean()).append(",\"items\":[");
+			int items = 1 + random.nextInt(4);
+			for(int i = 0; i < items; i++) {
+				if(i > 0)
+					sb.append(',');
+				sb.append("{\"sku\":\"sku").append(random.nextInt(100000)).append("\",\"quantity\":").append(1 + random.nextInt(9))
+						.append(",\"price\":").append(random.nextInt(100000) / 100.0).append('}');
+			}
+			sb.append("]}");
+		} while(sb.length() < length);
+		return sb.append(']').toString();
+	}
+
+	@Benchmark
+	public List<Order> bind() throws UnexpectedSymbolException {
+		return binder.fromJson(text, JsonBinder.listOf(Order.class));
+	}
+
+	@Benchmark
+	public List<Order> readTree() throws UnexpectedSymbolException {
+		JsonArray array = (JsonArray) compiler.compile(text);
+		List<Order> result = new ArrayList<>(array.size());
+		for(JsonElement element : array) {
+			JsonObject object = (JsonObject) element;
+			Order order = new Order();
+			order.setId((long) object.getJsonNumber("id").get());
+			order.setCustomer(object.getJsonString("customer").toString());
+			order.setPaid(object.getJsonBoolean("paid").getValue());
+			JsonArray items = object.getJsonArray("items");
+			List<Item> list = new ArrayList<>(items.size());
+			for(JsonElement itemElement : items) {
+				JsonObject itemObject = (JsonObject) itemElement;
+				Item item = new Item();
+				item.setSku(itemObject.getJsonString("sku").toString());
+				item.setQuantity((int) itemObject.getJsonNumber("quantity").get());
+				item.setPrice(itemObject.getJsonNumber("price").get());
+				list.add(item);
+			}
+			order.setItems(list);
+			result.add(order);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public String write() {
+		return binder.toJsonString(orders);
+	}
+
+	@Benchmark
+	public String writeTree() {
+		JsonArray array = new JsonArray();
+		for(Order order : orders) {
+			JsonObject object = new JsonObject();
+			object.put("id", new JsonNumber(order.getId()));
+			object.putJsonString("customer", order.getCustomer());
+			object.putJsonBoolean("paid", order.isPaid());
+			JsonArray items = new JsonArray();
+			for(Item item : order.getItems()) {
+				JsonObject itemObject = new JsonObject();
+				itemObject.putJsonString("sku", item.getSku());
+				itemObject.put("quantity", new JsonNumber((long) item.getQuantity()));
+				itemObject.putJsonNumber("price", item.getPrice());
+				items.add(itemObject);
+			}
+			object.putJsonArray("items", items);
+			array.add(object);
+		}
+		StringBuilder sb = new StringBuilder();
+		JsonGenerator generator = new JsonGenerator(sb, JsonFormat.COMPACT);
+		array.accept(new EncodingVisitor(generator));
+		try {
+			generator.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+}
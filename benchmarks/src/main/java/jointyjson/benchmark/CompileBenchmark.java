@@ -0,0 +1,97 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.compiler.StringScope;
+import jointyjson.model.JsonElement;
+
+/**
+ * Measures the compilation of the documents of each {@link Corpus}, from a string and from a file,
+ * interning the string values or compiling them as views.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+
+	@Param({"TEST", "DEEP", "WIDE", "STRINGS", "NUMBERS"})
+	public Corpus corpus;
+
+	// small, medium and large documents
+	@Param({"1024", "131072", "4194304"})
+	public int length;
+
+	@Param({"GLOBAL", "VIEW"})
+	public StringScope scope;
+
+	private String source;
+	private File file;
+	private JsonCompiler compiler;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		source = corpus.generate(length);
+		file = File.createTempFile("jointyjson-" + corpus, ".json");
+		Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+		compiler = new JsonCompiler();
+		compiler.setStringScope(scope);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public JsonElement compileString() throws UnexpectedSymbolException {
+		return compiler.compile(source);
+	}
+
+	@Benchmark
+	public JsonElement compileFile() throws UnexpectedSymbolException, IOException {
+		return compiler.compile(file);
+	}
+}
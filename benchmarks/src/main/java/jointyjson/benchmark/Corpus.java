@@ -0,0 +1,199 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Defines the documents compiled and encoded by the benchmarks. Each document is generated up to a given length,
+ * from a fixed seed, so that all the runs measure the same text.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum Corpus {
+	/**
+	 * An array of copies of the test.json document of the repository
+	 */
+	TEST {
+		@Override
+		void generate(StringBuilder sb, Random random, int length) {
+			String document = testDocument();
+			sb.append('[');
+			do {
+				if(sb.length() > 1)
+					sb.append(',');
+				sb.append(document);
+			} while(sb.length() < length);
+			sb.append(']');
+		}
+	},
+
+	/**
+	 * An array of records nested {@value #DEPTH} levels deep, alternating objects and arrays
+	 */
+	DEEP {
+		@Override
+		void generate(StringBuilder sb, Random random, int length) {
+			sb.append('[');
+			do {
+				if(sb.length() > 1)
+					sb.append(',');
+				for(int i = 0; i < DEPTH; i++)
+					sb.append(i % 2 == 0 ? "{\"level\":" : "[" + i + ",");
+				sb.append("{\"value\":").append(random.nextInt(1000)).append(",\"leaf\":true}");
+				for(int i = DEPTH - 1; i >= 0; i--)
+					sb.append(i % 2 == 0 ? '}' : ']');
+			} while(sb.length() < length);
+			sb.append(']');
+		}
+	},
+
+	/**
+	 * One object with many fields of mixed types
+	 */
+	WIDE {
+		@Override
+		void generate(StringBuilder sb, Random random, int length) {
+			sb.append('{');
+			int field = 0;
+			do {
+				if(field > 0)
+					sb.append(',');
+				sb.append("\"field").append(field).append("\":");
+				switch(field++ % 4) {
+				case 0: sb.append(random.nextInt()); break;
+				case 1: sb.append('"').append(word(random)).append('"'); break;
+				case 2: sb.append(random.nextBoolean()); break;
+				default: sb.append("null");
+				}
+			} while(sb.length() < length);
+			sb.append('}');
+		}
+	},
+
+	/**
+	 * An array of strings, some of them with control sequences and non ASCII characters
+	 */
+	STRINGS {
+		@Override
+		void generate(StringBuilder sb, Random random, int length) {
+			sb.append('[');
+			do {
+				if(sb.length() > 1)
+					sb.append(',');
+				sb.append('"');
+				int words = 1 + random.nextInt(12);
+				for(int i = 0; i < words; i++) {
+					if(i > 0)
+						sb.append(' ');
+					sb.append(word(random));
+				}
+				switch(random.nextInt(4)) {
+				case 0: sb.append("\\n\\t\\\"quoted\\\""); break;
+				case 1: sb.append(" caff \\u00e0"); break;
+				default:
+				}
+				sb.append('"');
+			} while(sb.length() < length);
+			sb.append(']');
+		}
+	},
+
+	/**
+	 * An array of numeric rows, half of them integers and half of them decimals
+	 */
+	NUMBERS {
+		@Override
+		void generate(StringBuilder sb, Random random, int length) {
+			sb.append('[');
+			int row = 0;
+			do {
+				if(row > 0)
+					sb.append(',');
+				sb.append('[');
+				for(int i = 0; i < 16; i++) {
+					if(i > 0)
+						sb.append(',');
+					if(row % 2 == 0)
+						sb.append(random.nextInt(1000000) - 500000);
+					else
+						sb.append(random.nextInt(100000000) / 1000.0).append(i % 4 == 0 ? "e-3" : "");
+				}
+				sb.append(']');
+				row++;
+			} while(sb.length() < length);
+			sb.append(']');
+		}
+	};
+
+	/**
+	 * The nesting depth of the records of {@link #DEEP}
+	 */
+	public static final int DEPTH = 32;
+
+	private static final long SEED = 20170716;
+	private static final String[] WORDS = {
+			"json", "object", "array", "string", "number", "value", "name", "field",
+			"lorem", "ipsum", "dolor", "sit", "amet", "parser", "grammar", "token"
+	};
+
+	private static String testDocument;
+
+	/**
+	 * Generates a document of this corpus
+	 * @param length the minimum length of the document, in characters
+	 * @return the document
+	 */
+	public String generate(int length) {
+		StringBuilder sb = new StringBuilder(length + 1024);
+		generate(sb, new Random(SEED), length);
+		return sb.toString();
+	}
+
+	abstract void generate(StringBuilder sb, Random random, int length);
+
+	private static String word(Random random) {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	/**
+	 * Reads the test.json document packaged with the benchmarks
+	 */
+	private static synchronized String testDocument() {
+		if(testDocument == null) {
+			try(InputStream in = Corpus.class.getResourceAsStream("/test.json")) {
+				if(in == null)
+					throw new IllegalStateException("test.json is not in the classpath");
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				for(int read; (read = in.read(buffer)) >= 0; )
+					out.write(buffer, 0, read);
+				testDocument = new String(out.toByteArray(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return testDocument;
+	}
+}
@@ -0,0 +1,89 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.compiler.JsonDocument;
+import jointyjson.model.JsonElement;
+
+/**
+ * Compares editing one digit in the middle of a {@link JsonDocument}, that re-parses only the edited value,
+ * with compiling the whole edited text again.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EditBenchmark {
+
+	@Param({"TEST", "DEEP"})
+	public Corpus corpus;
+
+	@Param({"1024", "131072", "4194304"})
+	public int length;
+
+	private JsonCompiler compiler;
+	private JsonDocument document;
+	// the position of the edited digit
+	private int offset;
+	private boolean toggle;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnexpectedSymbolException {
+		compiler = new JsonCompiler();
+		String source = corpus.generate(length);
+		document = new JsonDocument(source, compiler);
+		offset = source.length() / 2;
+		while(!Character.isDigit(source.charAt(offset)))
+			offset++;
+	}
+
+	@Benchmark
+	public JsonElement edit() throws UnexpectedSymbolException {
+		toggle = !toggle;
+		return document.edit(offset, 1, toggle ? "7" : "8");
+	}
+
+	@Benchmark
+	public JsonElement compile() throws UnexpectedSymbolException {
+		toggle = !toggle;
+		String text = document.getText();
+		return compiler.compile(text.substring(0, offset) + (toggle ? "7" : "8") + text.substring(offset + 1));
+	}
+}
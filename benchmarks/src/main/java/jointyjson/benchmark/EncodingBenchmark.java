@@ -0,0 +1,73 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.EncodingVisitor;
+import jointyjson.model.JsonElement;
+
+/**
+ * Measures the encoding of the compiled documents of each {@link Corpus} by an {@link EncodingVisitor}.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+	@Param({"TEST", "DEEP", "WIDE", "STRINGS", "NUMBERS"})
+	public Corpus corpus;
+
+	@Param({"1024", "131072", "4194304"})
+	public int length;
+
+	private JsonElement document;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnexpectedSymbolException {
+		document = new JsonCompiler().compile(corpus.generate(length));
+	}
+
+	@Benchmark
+	public String encode() {
+		EncodingVisitor encoder = new EncodingVisitor();
+		document.accept(encoder);
+		return encoder.getJsonString();
+	}
+}
@@ -0,0 +1,106 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.model.ObjectStorage;
+
+/**
+ * Measures the lookup and the insertion of the fields of a {@link JsonObject}, for each {@link ObjectStorage}.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonObjectBenchmark {
+
+	@Param({"SORTED", "HASH", "COMPACT"})
+	public ObjectStorage storage;
+
+	// a power of two, so that the names are cycled by a mask
+	@Param({"4", "16", "256"})
+	public int fields;
+
+	private String[] names;
+	private JsonString[] keys;
+	private JsonNumber value;
+	private JsonObject object;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		names = new String[fields];
+		keys = new JsonString[fields];
+		value = new JsonNumber(1);
+		object = new JsonObject(storage);
+		for(int i = 0; i < fields; i++) {
+			names[i] = "field" + i;
+			keys[i] = JsonString.get(names[i]);
+			object.put(keys[i], value);
+		}
+	}
+
+	@Benchmark
+	public JsonElement get() {
+		return object.get(names[next++ & (fields - 1)]);
+	}
+
+	@Benchmark
+	public JsonElement putString() {
+		return object.put(names[next++ & (fields - 1)], value);
+	}
+
+	@Benchmark
+	public JsonElement putJsonString() {
+		return object.put(keys[next++ & (fields - 1)], value);
+	}
+
+	/**
+	 * Builds a whole object, as the parsers do
+	 */
+	@Benchmark
+	public JsonObject build() {
+		JsonObject built = new JsonObject(storage);
+		for(int i = 0; i < fields; i++)
+			built.put(keys[i], value);
+		return built;
+	}
+}
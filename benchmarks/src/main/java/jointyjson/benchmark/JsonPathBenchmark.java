@@ -0,0 +1,122 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.query.JsonPath;
+
+/**
+ * Compares the evaluation of the compiled {@link JsonPath} queries with the equivalent hand-written navigation.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonPathBenchmark {
+
+	@Param({"16", "1024"})
+	public int books;
+
+	private static final JsonPath AUTHORS = JsonPath.compile("$.store.book[*].author");
+	private static final JsonPath PRICES = JsonPath.compile("$..price");
+
+	private JsonElement document;
+
+	@Setup(Level.Trial)
+	public void setup() throws UnexpectedSymbolException {
+		StringBuilder sb = new StringBuilder("{\"store\":{\"book\":[");
+		for(int i = 0; i < books; i++) {
+			if(i > 0)
+				sb.append(',');
+			sb.append("{\"category\":\"fiction\",\"author\":\"author ").append(i)
+					.append("\",\"title\":\"title ").append(i)
+					.append("\",\"price\":").append(5 + i % 20).append(".99}");
+		}
+		sb.append("],\"bicycle\":{\"color\":\"red\",\"price\":19.95}}}");
+		document = new JsonCompiler().compile(sb.toString());
+	}
+
+	@Benchmark
+	public List<JsonElement> authorsPath() {
+		return AUTHORS.select(document);
+	}
+
+	@Benchmark
+	public List<JsonElement> authorsChain() {
+		List<JsonElement> result = new ArrayList<>();
+		for(JsonElement book : ((JsonObject) document).getJsonObject("store").getJsonArray("book")) {
+			JsonElement author = ((JsonObject) book).get("author");
+			if(author != null)
+				result.add(author);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public List<JsonElement> pricesPath() {
+		return PRICES.select(document);
+	}
+
+	@Benchmark
+	public List<JsonElement> pricesChain() {
+		List<JsonElement> result = new ArrayList<>();
+		collectPrices(document, result);
+		return result;
+	}
+
+	private static void collectPrices(JsonElement element, List<JsonElement> result) {
+		if(element instanceof JsonObject) {
+			JsonObject object = (JsonObject) element;
+			JsonElement price = object.get("price");
+			if(price != null)
+				result.add(price);
+			for(Entry<JsonString, JsonElement> entry : object.getEntries())
+				collectPrices(entry.getValue(), result);
+		} else if(element instanceof JsonArray)
+			for(JsonElement child : (JsonArray) element)
+				collectPrices(child, result);
+	}
+}
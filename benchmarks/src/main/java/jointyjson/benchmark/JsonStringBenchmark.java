@@ -0,0 +1,102 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jointyjson.model.JsonString;
+import jointyjson.model.JsonStringPool;
+
+/**
+ * Measures the contention on the flyweight pool of {@link JsonString#get(String)}.
+ * The strings are drawn from a set smaller or larger than the capacity of the global pool,
+ * so that the pool is measured both while it hits and while it evicts.
+ * @author Salvatore Giampa'
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonStringBenchmark {
+
+	// a power of two, so that the strings are cycled by a mask
+	@Param({"1024", "16384"})
+	public int strings;
+
+	private String[] values;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		JsonStringPool.global().clear();
+		values = new String[strings];
+		for(int i = 0; i < strings; i++)
+			values[i] = "string" + i;
+	}
+
+	/**
+	 * The position of each thread in the strings, with a different start for each thread
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		private static int threads;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setup() {
+			synchronized(Cursor.class) {
+				next = 7919 * threads++;
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public JsonString get1Thread(Cursor cursor) {
+		return JsonString.get(values[cursor.next++ & (strings - 1)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public JsonString get4Threads(Cursor cursor) {
+		return JsonString.get(values[cursor.next++ & (strings - 1)]);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public JsonString getMaxThreads(Cursor cursor) {
+		return JsonString.get(values[cursor.next++ & (strings - 1)]);
+	}
+}
@@ -0,0 +1,253 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Generates the accessors of the bound classes, once per member.
+ * The public members of the public classes are linked by {@link LambdaMetafactory} into lambdas that call them
+ * directly, so the JIT can inline them as any other call. The other members, and the classes not visible
+ * from the class loader of the binder, are called through method handles obtained after making them accessible.
+ * No reflective call is made while a value is bound.
+ * @author Salvatore Giampa'
+ *
+ */
+final class Accessors {
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private Accessors() {}
+
+	@SuppressWarnings("unchecked")
+	static Function<Object, Object> getter(Method method) {
+		if(linkable(method, method.getReturnType())) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply",
+						MethodType.methodType(Function.class),
+						MethodType.methodType(Object.class, Object.class),
+						LOOKUP.unreflect(method),
+						MethodType.methodType(box(method.getReturnType()), method.getDeclaringClass()));
+				return (Function<Object, Object>) site.getTarget().invoke();
+			} catch (Throwable e) {
+				// linked through a method handle below
+			}
+		}
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflect(accessible(method));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(method, e);
+		}
+		return getter(handle);
+	}
+
+	static Function<Object, Object> getter(Field field) {
+		try {
+			return getter(LOOKUP.unreflectGetter(accessible(field)));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(field, e);
+		}
+	}
+
+	private static Function<Object, Object> getter(MethodHandle handle) {
+		MethodHandle getter = handle.asType(MethodType.methodType(Object.class, Object.class));
+		return target -> {
+			try {
+				return (Object) getter.invokeExact(target);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	static BiConsumer<Object, Object> setter(Method method) {
+		Class<?> type = method.getParameterTypes()[0];
+		if(linkable(method, type)) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+						MethodType.methodType(BiConsumer.class),
+						MethodType.methodType(void.class, Object.class, Object.class),
+						LOOKUP.unreflect(method),
+						MethodType.methodType(void.class, method.getDeclaringClass(), box(type)));
+				return (BiConsumer<Object, Object>) site.getTarget().invoke();
+			} catch (Throwable e) {
+				// linked through a method handle below
+			}
+		}
+		try {
+			return setter(LOOKUP.unreflect(accessible(method)));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(method, e);
+		}
+	}
+
+	static BiConsumer<Object, Object> setter(Field field) {
+		try {
+			return setter(LOOKUP.unreflectSetter(accessible(field)));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(field, e);
+		}
+	}
+
+	private static BiConsumer<Object, Object> setter(MethodHandle handle) {
+		MethodHandle setter = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+		return (target, value) -> {
+			try {
+				setter.invokeExact(target, value);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		};
+	}
+
+	/**
+	 * Gets the no-argument constructor of a class
+	 * @return the constructor, or null if the class has no such constructor or it cannot be instantiated
+	 */
+	@SuppressWarnings("unchecked")
+	static Supplier<Object> constructor(Class<?> type) {
+		if(type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isEnum()
+				|| (type.getEnclosingClass() != null && !Modifier.isStatic(type.getModifiers())))
+			return null;
+		Constructor<?> constructor;
+		try {
+			constructor = type.getDeclaredConstructor();
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		if(linkable(constructor)) {
+			try {
+				CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+						MethodType.methodType(Supplier.class),
+						MethodType.methodType(Object.class),
+						LOOKUP.unreflectConstructor(constructor),
+						MethodType.methodType(type));
+				return (Supplier<Object>) site.getTarget().invoke();
+			} catch (Throwable e) {
+				// linked through a method handle below
+			}
+		}
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflectConstructor(accessible(constructor)).asType(MethodType.methodType(Object.class));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(constructor, e);
+		}
+		return () -> {
+			try {
+				return (Object) handle.invokeExact();
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		};
+	}
+
+	/**
+	 * Gets a function that calls a constructor with the arguments in an array, as the canonical constructor of a record
+	 */
+	static Function<Object[], Object> creator(Constructor<?> constructor) {
+		MethodHandle handle;
+		try {
+			handle = LOOKUP.unreflectConstructor(accessible(constructor))
+					.asSpreader(Object[].class, constructor.getParameterCount())
+					.asType(MethodType.methodType(Object.class, Object[].class));
+		} catch (IllegalAccessException e) {
+			throw inaccessible(constructor, e);
+		}
+		return arguments -> {
+			try {
+				return (Object) handle.invokeExact(arguments);
+			} catch (Throwable e) {
+				throw failure(e);
+			}
+		};
+	}
+
+	/**
+	 * Tells whether a member can be linked by a lambda, that is whether it is public,
+	 * it is declared by a public class and all the involved classes are visible from the binder
+	 */
+	private static boolean linkable(Member member, Class<?>... types) {
+		if(!Modifier.isPublic(member.getModifiers()))
+			return false;
+		for(Class<?> c = member.getDeclaringClass(); c != null; c = c.getEnclosingClass())
+			if(!Modifier.isPublic(c.getModifiers()))
+				return false;
+		if(!visible(member.getDeclaringClass()))
+			return false;
+		for(Class<?> type : types)
+			if(!visible(type))
+				return false;
+		return true;
+	}
+
+	private static boolean visible(Class<?> type) {
+		while(type.isArray())
+			type = type.getComponentType();
+		if(type.isPrimitive())
+			return true;
+		try {
+			return Class.forName(type.getName(), false, Accessors.class.getClassLoader()) == type;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	private static <T extends AccessibleObject> T accessible(T member) {
+		try {
+			member.setAccessible(true);
+		} catch (RuntimeException e) {
+			throw inaccessible((Member) member, e);
+		}
+		return member;
+	}
+
+	private static Class<?> box(Class<?> type) {
+		return MethodType.methodType(type).wrap().returnType();
+	}
+
+	private static JsonBindingException inaccessible(Member member, Exception cause) {
+		return new JsonBindingException("Cannot access " + member, cause);
+	}
+
+	/**
+	 * Rethrows the unchecked exceptions thrown by a bound member, and wraps the checked ones
+	 */
+	private static RuntimeException failure(Throwable e) {
+		if(e instanceof Error)
+			throw (Error) e;
+		if(e instanceof RuntimeException)
+			return (RuntimeException) e;
+		return new JsonBindingException(e.toString(), e);
+	}
+}
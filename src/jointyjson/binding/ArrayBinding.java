@@ -0,0 +1,111 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the Java arrays. The elements are collected in a list and copied into an array of the exact length
+ * when the JSON array ends. The arrays of doubles, longs and ints are written without boxing their elements.
+ * @author Salvatore Giampa'
+ *
+ */
+final class ArrayBinding extends Binding {
+	private final Class<?> component;
+	private final Binding elements;
+
+	ArrayBinding(Class<?> raw, Type componentType) {
+		super(raw);
+		component = raw.getComponentType();
+		elements = of(componentType);
+	}
+
+	@Override
+	Object startArray() {
+		return new ArrayList<Object>();
+	}
+
+	@Override
+	Binding elementBinding() {
+		return elements;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void add(Object state, Object value) {
+		((ArrayList<Object>) state).add(value);
+	}
+
+	@Override
+	Object endArray(Object state) {
+		ArrayList<?> list = (ArrayList<?>) state;
+		int size = list.size();
+		if(!component.isPrimitive())
+			return list.toArray((Object[]) Array.newInstance(component, size));
+		if(component == double.class) {
+			double[] array = new double[size];
+			for(int i = 0; i < size; i++)
+				array[i] = (Double) list.get(i);
+			return array;
+		}
+		if(component == long.class) {
+			long[] array = new long[size];
+			for(int i = 0; i < size; i++)
+				array[i] = (Long) list.get(i);
+			return array;
+		}
+		if(component == int.class) {
+			int[] array = new int[size];
+			for(int i = 0; i < size; i++)
+				array[i] = (Integer) list.get(i);
+			return array;
+		}
+		Object array = Array.newInstance(component, size);
+		for(int i = 0; i < size; i++)
+			Array.set(array, i, list.get(i));
+		return array;
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		out.startArray();
+		if(value instanceof Object[]) {
+			for(Object element : (Object[]) value)
+				write(elements, element, out);
+		} else if(value instanceof double[]) {
+			for(double element : (double[]) value)
+				out.numberValue(element);
+		} else if(value instanceof long[]) {
+			for(long element : (long[]) value)
+				number(element, out);
+		} else if(value instanceof int[]) {
+			for(int element : (int[]) value)
+				number(element, out);
+		} else {
+			int length = Array.getLength(value);
+			for(int i = 0; i < length; i++)
+				elements.write(Array.get(value, i), out);
+		}
+		out.endArray();
+	}
+}
@@ -0,0 +1,364 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the Java beans and the records to objects, one field per property.
+ * <ul>
+ * <li>The properties of a bean are its public getters and setters, and its public fields that are not transient.
+ * A bean is built by its no-argument constructor and then its setters are called.</li>
+ * <li>The properties of a record are its components. A record is built by its canonical constructor
+ * when the object ends, and the missing components are null, zero or false.</li>
+ * </ul>
+ * The properties are written in the order of declaration of the fields, the others follow sorted by name.
+ * The unknown fields of the bound objects are skipped. A value whose runtime class differs from the declared one
+ * is written by the binding of its runtime class.<br>
+ * Records are detected by reflection, so they are supported on the runtimes having them while the binder
+ * still runs on Java 8.
+ * @author Salvatore Giampa'
+ *
+ */
+final class BeanBinding extends Binding {
+	// the reflective API of the records, null on the runtimes without records
+	private static final Method IS_RECORD;
+	private static final Method GET_RECORD_COMPONENTS;
+	private static final Method COMPONENT_NAME;
+	private static final Method COMPONENT_TYPE;
+	private static final Method COMPONENT_GENERIC_TYPE;
+	private static final Method COMPONENT_ACCESSOR;
+
+	static {
+		Method isRecord = null, getRecordComponents = null, name = null, type = null, genericType = null, accessor = null;
+		try {
+			Class<?> component = Class.forName("java.lang.reflect.RecordComponent");
+			isRecord = Class.class.getMethod("isRecord");
+			getRecordComponents = Class.class.getMethod("getRecordComponents");
+			name = component.getMethod("getName");
+			type = component.getMethod("getType");
+			genericType = component.getMethod("getGenericType");
+			accessor = component.getMethod("getAccessor");
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			isRecord = null;
+		}
+		IS_RECORD = isRecord;
+		GET_RECORD_COMPONENTS = getRecordComponents;
+		COMPONENT_NAME = name;
+		COMPONENT_TYPE = type;
+		COMPONENT_GENERIC_TYPE = genericType;
+		COMPONENT_ACCESSOR = accessor;
+	}
+
+	private final Class<?> raw;
+	private final Property[] properties;
+	// the hash codes of the property names, scanned before comparing the names
+	private final int[] hashes;
+	// the no-argument constructor of a bean, null if it is missing
+	private final Supplier<Object> constructor;
+	// the canonical constructor of a record and the default values of its components, null for a bean
+	private final Function<Object[], Object> creator;
+	private final Object[] defaults;
+
+	BeanBinding(Type type, Class<?> raw) {
+		super(type);
+		this.raw = raw;
+		if(raw.isPrimitive() || raw.isAnonymousClass())
+			throw new JsonBindingException("Cannot bind " + raw.getName());
+		if(isRecord(raw)) {
+			Object[] components = recordComponents(raw);
+			Class<?>[] parameters = new Class<?>[components.length];
+			properties = recordProperties(type, raw, components, parameters);
+			defaults = new Object[properties.length];
+			for(int i = 0; i < properties.length; i++)
+				defaults[i] = defaultValue(parameters[i]);
+			try {
+				creator = Accessors.creator(raw.getDeclaredConstructor(parameters));
+			} catch (NoSuchMethodException e) {
+				throw new JsonBindingException("Cannot find the canonical constructor of " + raw.getName(), e);
+			}
+			constructor = null;
+		} else {
+			properties = beanProperties(type, raw);
+			constructor = Accessors.constructor(raw);
+			creator = null;
+			defaults = null;
+		}
+		hashes = new int[properties.length];
+		for(int i = 0; i < properties.length; i++)
+			hashes[i] = properties[i].name.hashCode();
+	}
+
+	@Override
+	Object startObject() {
+		if(creator != null)
+			return defaults.clone();
+		if(constructor == null)
+			throw new JsonBindingException("Cannot instantiate " + type.getTypeName() + ", it has no accessible no-argument constructor");
+		return constructor.get();
+	}
+
+	/**
+	 * Finds the property named as the field, without converting the name to a string
+	 */
+	@Override
+	Object field(Object state, CharSequence name) {
+		int hash = 0;
+		for(int i = 0, length = name.length(); i < length; i++)
+			hash = 31 * hash + name.charAt(i);
+		for(int i = 0; i < hashes.length; i++) {
+			if(hashes[i] == hash && properties[i].name.contentEquals(name)) {
+				Property property = properties[i];
+				return creator != null || property.setter != null ? property : null;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	Binding valueBinding(Object key) {
+		return ((Property) key).binding();
+	}
+
+	@Override
+	void put(Object state, Object key, Object value) {
+		Property property = (Property) key;
+		if(creator != null) {
+			if(value != null)
+				((Object[]) state)[property.index] = value;
+		} else
+			property.setter.accept(state, value);
+	}
+
+	@Override
+	Object endObject(Object state) {
+		if(creator != null)
+			return creator.apply((Object[]) state);
+		return state;
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		if(value.getClass() != raw) {
+			of(value.getClass()).write(value, out);
+			return;
+		}
+		out.startObject();
+		for(Property property : properties) {
+			if(property.getter == null)
+				continue;
+			field(property.jsonName, out);
+			write(property.binding(), property.getter.apply(value), out);
+		}
+		out.endObject();
+	}
+
+	private static boolean isRecord(Class<?> raw) {
+		if(IS_RECORD == null)
+			return false;
+		try {
+			return (Boolean) IS_RECORD.invoke(raw);
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static Object[] recordComponents(Class<?> raw) {
+		try {
+			return (Object[]) GET_RECORD_COMPONENTS.invoke(raw);
+		} catch (ReflectiveOperationException e) {
+			throw new JsonBindingException("Cannot read the components of " + raw.getName(), e);
+		}
+	}
+
+	/**
+	 * Gets the properties of the components of a record, and the erased types of its canonical constructor
+	 */
+	private static Property[] recordProperties(Type type, Class<?> raw, Object[] components, Class<?>[] parameters) {
+		try {
+			Property[] properties = new Property[components.length];
+			for(int i = 0; i < components.length; i++) {
+				Object component = components[i];
+				String name = (String) COMPONENT_NAME.invoke(component);
+				parameters[i] = (Class<?>) COMPONENT_TYPE.invoke(component);
+				Type componentType = Types.resolve(type, raw, (Type) COMPONENT_GENERIC_TYPE.invoke(component));
+				Function<Object, Object> getter = Accessors.getter((Method) COMPONENT_ACCESSOR.invoke(component));
+				properties[i] = new Property(name, componentType, getter, null, i);
+			}
+			return properties;
+		} catch (ReflectiveOperationException e) {
+			throw new JsonBindingException("Cannot read the components of " + raw.getName(), e);
+		}
+	}
+
+	private static Property[] beanProperties(Type type, Class<?> raw) {
+		Map<String, Method> getters = new HashMap<>();
+		Map<String, Method> setters = new HashMap<>();
+		for(Method method : raw.getMethods()) {
+			int modifiers = method.getModifiers();
+			if(Modifier.isStatic(modifiers) || method.isBridge() || method.isSynthetic() || method.getDeclaringClass() == Object.class)
+				continue;
+			String name = method.getName();
+			int parameters = method.getParameterCount();
+			if(parameters == 0 && name.length() > 3 && name.startsWith("get") && method.getReturnType() != void.class)
+				getters.put(decapitalize(name.substring(3)), method);
+			else if(parameters == 0 && name.length() > 2 && name.startsWith("is") && method.getReturnType() == boolean.class)
+				getters.putIfAbsent(decapitalize(name.substring(2)), method);
+			else if(parameters == 1 && name.length() > 3 && name.startsWith("set"))
+				setters.put(decapitalize(name.substring(3)), method);
+		}
+		Set<String> candidates = new TreeSet<>();
+		candidates.addAll(getters.keySet());
+		candidates.addAll(setters.keySet());
+		for(Field field : raw.getFields()) {
+			int modifiers = field.getModifiers();
+			if(!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers))
+				candidates.add(field.getName());
+		}
+		// the declared fields, from the topmost superclass, give the order of the properties
+		Set<String> names = new LinkedHashSet<>();
+		List<Class<?>> hierarchy = new ArrayList<>();
+		for(Class<?> c = raw; c != null && c != Object.class; c = c.getSuperclass())
+			hierarchy.add(0, c);
+		for(Class<?> c : hierarchy)
+			for(Field field : c.getDeclaredFields())
+				if(candidates.contains(field.getName()))
+					names.add(field.getName());
+		names.addAll(candidates);
+		List<Property> result = new ArrayList<>();
+		for(String name : names) {
+			Property property = beanProperty(type, raw, name, getters.get(name), setters.get(name));
+			if(property != null)
+				result.add(property);
+		}
+		return result.toArray(new Property[result.size()]);
+	}
+
+	private static Property beanProperty(Type type, Class<?> raw, String name, Method getter, Method setter) {
+		Field field = null;
+		if(getter == null || setter == null) {
+			try {
+				field = raw.getField(name);
+				int modifiers = field.getModifiers();
+				if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers))
+					field = null;
+			} catch (NoSuchFieldException e) {
+				field = null;
+			}
+		}
+		Type propertyType;
+		if(getter != null)
+			propertyType = Types.resolve(type, getter.getDeclaringClass(), getter.getGenericReturnType());
+		else if(field != null)
+			propertyType = Types.resolve(type, field.getDeclaringClass(), field.getGenericType());
+		else
+			propertyType = Types.resolve(type, setter.getDeclaringClass(), setter.getGenericParameterTypes()[0]);
+		Class<?> propertyClass = Types.raw(propertyType);
+		Function<Object, Object> read = null;
+		if(getter != null)
+			read = Accessors.getter(getter);
+		else if(field != null)
+			read = Accessors.getter(field);
+		BiConsumer<Object, Object> write = null;
+		if(setter != null && setter.getParameterTypes()[0].isAssignableFrom(propertyClass))
+			write = Accessors.setter(setter);
+		else if(field != null && !Modifier.isFinal(field.getModifiers()) && field.getType().isAssignableFrom(propertyClass))
+			write = Accessors.setter(field);
+		if(read == null && write == null)
+			return null;
+		return new Property(name, propertyType, read, write, -1);
+	}
+
+	/**
+	 * Gets the name of a property from the name of its accessor, as the Java beans do: "URL" stays "URL"
+	 */
+	private static String decapitalize(String name) {
+		if(name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0)))
+			return name;
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if(!type.isPrimitive())
+			return null;
+		if(type == boolean.class)
+			return false;
+		if(type == char.class)
+			return '\0';
+		if(type == long.class)
+			return 0L;
+		if(type == double.class)
+			return 0.0;
+		if(type == float.class)
+			return 0.0f;
+		if(type == short.class)
+			return (short) 0;
+		if(type == byte.class)
+			return (byte) 0;
+		return 0;
+	}
+
+	/**
+	 * A property of a bean or a component of a record
+	 */
+	static final class Property {
+		final String name;
+		final JsonString jsonName;
+		final Type type;
+		final Function<Object, Object> getter;
+		// null for the read-only properties and for the record components
+		final BiConsumer<Object, Object> setter;
+		// the position of a record component
+		final int index;
+		// resolved on the first use, since a bean can contain itself
+		private Binding binding;
+
+		Property(String name, Type type, Function<Object, Object> getter, BiConsumer<Object, Object> setter, int index) {
+			this.name = name;
+			this.jsonName = JsonString.get(name);
+			this.type = type;
+			this.getter = getter;
+			this.setter = setter;
+			this.index = index;
+		}
+
+		Binding binding() {
+			Binding binding = this.binding;
+			if(binding == null)
+				this.binding = binding = of(type);
+			return binding;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonGenerator;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Defines how the values of a Java type are built from the events of a push parser and written as events to a handler.
+ * A binding is created once per type and cached, so all the introspection and the generation of the accessors
+ * are paid on the first use of a type only. The bindings are immutable and shared by all the threads.<br>
+ * The methods building the values are called by the {@link BindingHandler}: by default they reject the value,
+ * and each binding overrides the ones matching the JSON values it accepts.
+ * @author Salvatore Giampa'
+ *
+ */
+abstract class Binding {
+	private static final ClassValue<Binding> CLASSES = new ClassValue<Binding>() {
+		@Override
+		protected Binding computeValue(Class<?> type) {
+			return create(type);
+		}
+	};
+	private static final ConcurrentHashMap<Type, Binding> GENERICS = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the binding of a type, creating it on the first request
+	 * @param type a class or a generic type
+	 * @return the binding of the type
+	 * @throws JsonBindingException if the type cannot be bound
+	 */
+	static Binding of(Type type) {
+		if(type instanceof Class)
+			return CLASSES.get((Class<?>) type);
+		Binding binding = GENERICS.get(type);
+		if(binding == null) {
+			binding = create(type);
+			Binding previous = GENERICS.putIfAbsent(type, binding);
+			if(previous != null)
+				binding = previous;
+		}
+		return binding;
+	}
+
+	private static Binding create(Type type) {
+		if(type instanceof TypeVariable || type instanceof WildcardType)
+			return of(Types.raw(type));
+		Class<?> raw = Types.raw(type);
+		if(raw == Object.class)
+			return DynamicBinding.INSTANCE;
+		Binding value = ValueBinding.create(raw);
+		if(value != null)
+			return value;
+		if(JsonElement.class.isAssignableFrom(raw))
+			return new TreeBinding(raw);
+		if(raw.isArray())
+			return new ArrayBinding(raw, type instanceof GenericArrayType
+					? ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType());
+		if(Collection.class.isAssignableFrom(raw) || raw == Iterable.class)
+			return new CollectionBinding(type, raw);
+		if(Map.class.isAssignableFrom(raw))
+			return new MapBinding(type, raw);
+		return new BeanBinding(type, raw);
+	}
+
+	/**
+	 * Writes a value, that can be null, by the specified binding
+	 */
+	static void write(Binding binding, Object value, JsonHandler out) {
+		if(value == null)
+			out.nullValue();
+		else
+			binding.write(value, out);
+	}
+
+	/**
+	 * Writes a field name, using its cached escaped form when writing to a generator
+	 */
+	static void field(JsonString name, JsonHandler out) {
+		if(out instanceof JsonGenerator)
+			((JsonGenerator) out).field(name);
+		else
+			out.field(name.toString());
+	}
+
+	/**
+	 * Writes an integral number, without converting it to a double
+	 */
+	static void number(long value, JsonHandler out) {
+		if(out instanceof JsonGenerator)
+			((JsonGenerator) out).numberValue(value);
+		else
+			out.numberValue(Long.toString(value));
+	}
+
+	protected final Type type;
+
+	Binding(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * Writes a value of the bound type
+	 * @param value the value, not null
+	 * @param out the handler notified of the value
+	 */
+	abstract void write(Object value, JsonHandler out);
+
+	Object fromString(CharSequence value) {
+		throw mismatch("a string");
+	}
+
+	Object fromNumber(CharSequence text) {
+		throw mismatch("a number");
+	}
+
+	Object fromNumber(double value) {
+		throw mismatch("a number");
+	}
+
+	Object fromBoolean(boolean value) {
+		throw mismatch("a boolean");
+	}
+
+	Object fromNull() {
+		return null;
+	}
+
+	/**
+	 * Starts building a value from an object
+	 * @return the state of the value under construction
+	 */
+	Object startObject() {
+		throw mismatch("an object");
+	}
+
+	/**
+	 * Selects the destination of the value of a field
+	 * @return the key passed to {@link #valueBinding(Object)} and {@link #put(Object, Object, Object)},
+	 * or null if the value of the field must be skipped
+	 */
+	Object field(Object state, CharSequence name) {
+		return null;
+	}
+
+	Binding valueBinding(Object key) {
+		throw new IllegalStateException();
+	}
+
+	void put(Object state, Object key, Object value) {
+		throw new IllegalStateException();
+	}
+
+	Object endObject(Object state) {
+		return state;
+	}
+
+	/**
+	 * Starts building a value from an array
+	 * @return the state of the value under construction
+	 */
+	Object startArray() {
+		throw mismatch("an array");
+	}
+
+	Binding elementBinding() {
+		throw new IllegalStateException();
+	}
+
+	void add(Object state, Object value) {
+		throw new IllegalStateException();
+	}
+
+	Object endArray(Object state) {
+		return state;
+	}
+
+	JsonBindingException mismatch(String value) {
+		return new JsonBindingException("Cannot bind " + value + " to " + type.getTypeName());
+	}
+}
@@ -0,0 +1,324 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Defines a handler that binds the notified events directly to a Java object, without building the JSON composite structure.
+ * It can be passed to the push parsers of the {@link jointyjson.compiler.JsonCompiler} and of the
+ * {@link jointyjson.stream.JsonReader}, as a {@link JsonTreeBuilder} is.<br>
+ * The values of the fields unknown to the bound classes are skipped, and only the values bound to JSON elements
+ * are built by a tree builder. A handler is not thread-safe, but it can be reused after {@link #reset()}.
+ * @param <T> the bound type
+ * @author Salvatore Giampa'
+ *
+ */
+public class BindingHandler<T> implements JsonHandler {
+	// the binding of the values that are skipped, that accepts anything and builds nothing
+	private static final Binding SKIP = new Binding(Object.class) {
+		@Override
+		Object fromString(CharSequence value) {
+			return null;
+		}
+
+		@Override
+		Object fromNumber(CharSequence text) {
+			return null;
+		}
+
+		@Override
+		Object fromNumber(double value) {
+			return null;
+		}
+
+		@Override
+		Object fromBoolean(boolean value) {
+			return null;
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			throw new IllegalStateException();
+		}
+	};
+
+	private final Binding root;
+
+	// the open containers: their bindings, the states of the values under construction and the keys of their pending fields
+	private Binding[] bindings = new Binding[32];
+	private Object[] states = new Object[32];
+	private Object[] keys = new Object[32];
+	private boolean[] objects = new boolean[32];
+	private int depth;
+
+	// the subtree that is skipped, or built by the tree builder when it is bound to a JSON element
+	private int subtreeDepth;
+	private Binding subtree;
+	private JsonTreeBuilder tree;
+
+	private Object result;
+	private boolean complete;
+
+	/**
+	 * Creates a handler binding the documents to the specified class
+	 * @param type the bound class
+	 * @throws JsonBindingException if the class cannot be bound
+	 */
+	public BindingHandler(Class<T> type) {
+		this((Type) type);
+	}
+
+	/**
+	 * Creates a handler binding the documents to the specified type, that can be generic, e.g. {@code List<Item>}
+	 * @param type the bound type
+	 * @throws JsonBindingException if the type cannot be bound
+	 * @see JsonBinder#listOf(Type)
+	 */
+	public BindingHandler(Type type) {
+		if(type == null)
+			throw new NullPointerException("type cannot be null");
+		root = Binding.of(type);
+	}
+
+	/**
+	 * Gets the bound object
+	 * @return the object bound to the notified document, or null if no complete document has been notified yet
+	 */
+	@SuppressWarnings("unchecked")
+	public T getResult() {
+		return (T) result;
+	}
+
+	/**
+	 * Tells whether a complete document has been bound
+	 * @return true if the bound object is available
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Clears the bound object and any partially bound value, so that this handler can be reused for another document
+	 */
+	public void reset() {
+		while(depth > 0) {
+			bindings[depth] = null;
+			states[depth] = null;
+			keys[depth--] = null;
+		}
+		subtreeDepth = 0;
+		subtree = null;
+		tree = null;
+		result = null;
+		complete = false;
+	}
+
+	@Override
+	public void startObject() {
+		if(subtreeDepth > 0) {
+			subtreeDepth++;
+			if(tree != null)
+				tree.startObject();
+			return;
+		}
+		Binding binding = expected();
+		if(binding == SKIP || binding instanceof TreeBinding) {
+			startSubtree(binding);
+			if(tree != null)
+				tree.startObject();
+		} else
+			push(binding, binding.startObject(), true);
+	}
+
+	@Override
+	public void field(CharSequence name) {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.field(name);
+			return;
+		}
+		keys[depth] = bindings[depth].field(states[depth], name);
+	}
+
+	@Override
+	public void endObject() {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.endObject();
+			endSubtree();
+			return;
+		}
+		Object value = bindings[depth].endObject(states[depth]);
+		pop();
+		value(value);
+	}
+
+	@Override
+	public void startArray() {
+		if(subtreeDepth > 0) {
+			subtreeDepth++;
+			if(tree != null)
+				tree.startArray();
+			return;
+		}
+		Binding binding = expected();
+		if(binding == SKIP || binding instanceof TreeBinding) {
+			startSubtree(binding);
+			if(tree != null)
+				tree.startArray();
+		} else
+			push(binding, binding.startArray(), false);
+	}
+
+	@Override
+	public void endArray() {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.endArray();
+			endSubtree();
+			return;
+		}
+		Object value = bindings[depth].endArray(states[depth]);
+		pop();
+		value(value);
+	}
+
+	@Override
+	public void stringValue(CharSequence value) {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.stringValue(value);
+			return;
+		}
+		value(expected().fromString(value));
+	}
+
+	@Override
+	public void numberValue(double value) {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.numberValue(value);
+			return;
+		}
+		value(expected().fromNumber(value));
+	}
+
+	@Override
+	public void numberValue(CharSequence text) {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.numberValue(text);
+			return;
+		}
+		value(expected().fromNumber(text));
+	}
+
+	@Override
+	public void booleanValue(boolean value) {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.booleanValue(value);
+			return;
+		}
+		value(expected().fromBoolean(value));
+	}
+
+	@Override
+	public void nullValue() {
+		if(subtreeDepth > 0) {
+			if(tree != null)
+				tree.nullValue();
+			return;
+		}
+		value(expected().fromNull());
+	}
+
+	/**
+	 * Gets the binding of the next value
+	 */
+	private Binding expected() {
+		if(depth == 0)
+			return root;
+		if(!objects[depth])
+			return bindings[depth].elementBinding();
+		Object key = keys[depth];
+		return key == null ? SKIP : bindings[depth].valueBinding(key);
+	}
+
+	/**
+	 * Starts a subtree that is skipped or bound to a JSON element
+	 */
+	private void startSubtree(Binding binding) {
+		subtree = binding;
+		subtreeDepth = 1;
+		if(binding instanceof TreeBinding)
+			tree = new JsonTreeBuilder();
+	}
+
+	private void endSubtree() {
+		if(--subtreeDepth > 0)
+			return;
+		Object value = tree != null ? ((TreeBinding) subtree).check(tree.getRoot()) : null;
+		subtree = null;
+		tree = null;
+		value(value);
+	}
+
+	/**
+	 * Passes a complete value to the open container
+	 */
+	private void value(Object value) {
+		if(depth == 0) {
+			result = value;
+			complete = true;
+			return;
+		}
+		if(!objects[depth])
+			bindings[depth].add(states[depth], value);
+		else if(keys[depth] != null) {
+			bindings[depth].put(states[depth], keys[depth], value);
+			keys[depth] = null;
+		}
+	}
+
+	private void push(Binding binding, Object state, boolean object) {
+		if(++depth == bindings.length) {
+			int length = depth * 2;
+			bindings = Arrays.copyOf(bindings, length);
+			states = Arrays.copyOf(states, length);
+			keys = Arrays.copyOf(keys, length);
+			objects = Arrays.copyOf(objects, length);
+		}
+		bindings[depth] = binding;
+		states[depth] = state;
+		keys[depth] = null;
+		objects[depth] = object;
+	}
+
+	private void pop() {
+		bindings[depth] = null;
+		states[depth] = null;
+		keys[depth--] = null;
+	}
+}
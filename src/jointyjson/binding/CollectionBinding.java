@@ -0,0 +1,90 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the collections, whose element type is resolved from their generic type.
+ * The interfaces are instantiated as ArrayList, LinkedHashSet, TreeSet or ArrayDeque,
+ * the concrete classes by their no-argument constructor.
+ * @author Salvatore Giampa'
+ *
+ */
+final class CollectionBinding extends Binding {
+	private final Supplier<Object> factory;
+	private final Binding elements;
+
+	CollectionBinding(Type type, Class<?> raw) {
+		super(type);
+		if(raw.isAssignableFrom(ArrayList.class))
+			factory = ArrayList::new;
+		else if(raw.isAssignableFrom(LinkedHashSet.class))
+			factory = LinkedHashSet::new;
+		else if(raw.isAssignableFrom(TreeSet.class))
+			factory = TreeSet::new;
+		else if(raw.isAssignableFrom(ArrayDeque.class))
+			factory = ArrayDeque::new;
+		else
+			factory = Accessors.constructor(raw);
+		elements = of(Types.arguments(type, Iterable.class)[0]);
+	}
+
+	@Override
+	Object startArray() {
+		if(factory == null)
+			throw new JsonBindingException("Cannot instantiate " + type.getTypeName());
+		return factory.get();
+	}
+
+	@Override
+	Binding elementBinding() {
+		return elements;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void add(Object state, Object value) {
+		((Collection<Object>) state).add(value);
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		out.startArray();
+		if(value instanceof List && value instanceof RandomAccess) {
+			List<?> list = (List<?>) value;
+			for(int i = 0, size = list.size(); i < size; i++)
+				write(elements, list.get(i), out);
+		} else {
+			for(Object element : (Iterable<?>) value)
+				write(elements, element, out);
+		}
+		out.endArray();
+	}
+}
@@ -0,0 +1,113 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jointyjson.model.JsonNumber;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the values declared as Object to the natural Java types: objects to LinkedHashMaps, arrays to ArrayLists,
+ * the integers of at most 18 digits to Longs, the other numbers to Doubles, strings and booleans to themselves.
+ * The values are written by the binding of their runtime class.
+ * @author Salvatore Giampa'
+ *
+ */
+final class DynamicBinding extends Binding {
+	static final DynamicBinding INSTANCE = new DynamicBinding();
+
+	private DynamicBinding() {
+		super(Object.class);
+	}
+
+	@Override
+	Object fromString(CharSequence value) {
+		return value.toString();
+	}
+
+	@Override
+	Object fromNumber(CharSequence text) {
+		if(ValueBinding.isSmallInteger(text))
+			return ValueBinding.parseSmallInteger(text);
+		return JsonNumber.parse(text, 0, text.length());
+	}
+
+	@Override
+	Object fromNumber(double value) {
+		return value;
+	}
+
+	@Override
+	Object fromBoolean(boolean value) {
+		return value;
+	}
+
+	@Override
+	Object startObject() {
+		return new LinkedHashMap<String, Object>();
+	}
+
+	@Override
+	Object field(Object state, CharSequence name) {
+		return name.toString();
+	}
+
+	@Override
+	Binding valueBinding(Object key) {
+		return this;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void put(Object state, Object key, Object value) {
+		((Map<Object, Object>) state).put(key, value);
+	}
+
+	@Override
+	Object startArray() {
+		return new ArrayList<Object>();
+	}
+
+	@Override
+	Binding elementBinding() {
+		return this;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void add(Object state, Object value) {
+		((List<Object>) state).add(value);
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		Class<?> type = value.getClass();
+		if(type == Object.class) {
+			out.startObject();
+			out.endObject();
+		} else if(value instanceof Enum)
+			of(((Enum<?>) value).getDeclaringClass()).write(value, out);
+		else
+			of(type).write(value, out);
+	}
+}
@@ -0,0 +1,242 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.JsonElement;
+import jointyjson.stream.JsonFormat;
+import jointyjson.stream.JsonGenerator;
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonReader;
+import jointyjson.stream.JsonToken;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Binds Java objects to JSON and back: Java beans, records, collections, maps, arrays, enumerations,
+ * strings, numbers and booleans, see {@link BindingHandler}.<br>
+ * The documents are bound directly from the events of the push parsers, and the objects are written directly
+ * as events to a {@link JsonGenerator}, so no JSON element is built in between. The JSON elements are built
+ * only when they are requested, as by {@link #toJson(Object)}.<br>
+ * The classes are introspected once, on their first use, and their accessors are generated
+ * by {@link java.lang.invoke.LambdaMetafactory}, so binding a value makes no reflective call.
+ * The accessors are shared by all the binders, and a binder is thread-safe if its compiler is.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonBinder {
+
+	/**
+	 * Gets the type of a list of the specified element type, e.g. to bind a document to a {@code List<Item>}
+	 * @param elementType the element type
+	 * @return the parameterized list type
+	 */
+	public static Type listOf(Type elementType) {
+		return new Types.Parameterized(null, List.class, elementType);
+	}
+
+	/**
+	 * Gets the type of a map from strings to the specified value type, e.g. to bind a document to a {@code Map<String, Item>}
+	 * @param valueType the value type
+	 * @return the parameterized map type
+	 */
+	public static Type mapOf(Type valueType) {
+		return new Types.Parameterized(null, Map.class, String.class, valueType);
+	}
+
+	private final JsonCompiler compiler;
+
+	/**
+	 * Creates a binder parsing the documents by the {@link JsonCompiler#shared() shared compiler}
+	 */
+	public JsonBinder() {
+		this(JsonCompiler.shared());
+	}
+
+	/**
+	 * Creates a binder parsing the documents by the specified compiler
+	 * @param compiler the compiler used to parse the documents
+	 */
+	public JsonBinder(JsonCompiler compiler) {
+		if(compiler == null)
+			throw new NullPointerException("compiler cannot be null");
+		this.compiler = compiler;
+	}
+
+	public JsonCompiler getCompiler() {
+		return compiler;
+	}
+
+	/**
+	 * Binds a document to an object of the specified class
+	 * @param source the JSON text
+	 * @param type the bound class
+	 * @return the bound object
+	 * @throws UnexpectedSymbolException if the document is not valid
+	 * @throws JsonBindingException if the document cannot be bound to the class
+	 */
+	public <T> T fromJson(String source, Class<T> type) throws UnexpectedSymbolException {
+		return fromJson(source, (Type) type);
+	}
+
+	/**
+	 * Binds a document to an object of the specified type, that can be generic
+	 * @param source the JSON text
+	 * @param type the bound type
+	 * @return the bound object
+	 * @throws UnexpectedSymbolException if the document is not valid
+	 * @throws JsonBindingException if the document cannot be bound to the type
+	 * @see #listOf(Type)
+	 */
+	public <T> T fromJson(String source, Type type) throws UnexpectedSymbolException {
+		BindingHandler<T> handler = new BindingHandler<>(type);
+		compiler.compile(source, handler);
+		return handler.getResult();
+	}
+
+	/**
+	 * Binds an UTF-8 encoded document to an object of the specified class
+	 * @param source the UTF-8 encoded JSON text
+	 * @param type the bound class
+	 * @return the bound object
+	 * @throws UnexpectedSymbolException if the document is not valid
+	 * @throws JsonBindingException if the document cannot be bound to the class
+	 */
+	public <T> T fromJson(byte[] source, Class<T> type) throws UnexpectedSymbolException {
+		return fromJson(source, (Type) type);
+	}
+
+	/**
+	 * Binds an UTF-8 encoded document to an object of the specified type, that can be generic
+	 * @param source the UTF-8 encoded JSON text
+	 * @param type the bound type
+	 * @return the bound object
+	 * @throws UnexpectedSymbolException if the document is not valid
+	 * @throws JsonBindingException if the document cannot be bound to the type
+	 */
+	public <T> T fromJson(byte[] source, Type type) throws UnexpectedSymbolException {
+		BindingHandler<T> handler = new BindingHandler<>(type);
+		compiler.compile(source, handler);
+		return handler.getResult();
+	}
+
+	/**
+	 * Binds the next value of a pull parser to an object of the specified class.
+	 * If the reading is not started, the first token is read; otherwise the value started by the current token is bound,
+	 * as by {@link JsonReader#push(JsonHandler)}.
+	 * @param reader the reader positioned on the value
+	 * @param type the bound class
+	 * @return the bound object
+	 * @throws IOException if an I/O error occurs or the value is malformed
+	 * @throws JsonBindingException if the value cannot be bound to the class
+	 */
+	public <T> T fromJson(JsonReader reader, Class<T> type) throws IOException {
+		return fromJson(reader, (Type) type);
+	}
+
+	/**
+	 * Binds the next value of a pull parser to an object of the specified type, that can be generic
+	 * @param reader the reader positioned on the value
+	 * @param type the bound type
+	 * @return the bound object
+	 * @throws IOException if an I/O error occurs or the value is malformed
+	 * @throws JsonBindingException if the value cannot be bound to the type
+	 * @see #fromJson(JsonReader, Class)
+	 */
+	public <T> T fromJson(JsonReader reader, Type type) throws IOException {
+		BindingHandler<T> handler = new BindingHandler<>(type);
+		if(reader.getToken() == null)
+			reader.next();
+		if(reader.getToken() == JsonToken.FIELD_NAME)
+			reader.next();
+		reader.push(handler);
+		return handler.getResult();
+	}
+
+	/**
+	 * Binds a JSON structure to an object of the specified class
+	 * @param element the root of the structure
+	 * @param type the bound class
+	 * @return the bound object
+	 * @throws JsonBindingException if the structure cannot be bound to the class
+	 */
+	public <T> T fromJson(JsonElement element, Class<T> type) {
+		return fromJson(element, (Type) type);
+	}
+
+	/**
+	 * Binds a JSON structure to an object of the specified type, that can be generic
+	 * @param element the root of the structure
+	 * @param type the bound type
+	 * @return the bound object
+	 * @throws JsonBindingException if the structure cannot be bound to the type
+	 */
+	public <T> T fromJson(JsonElement element, Type type) {
+		BindingHandler<T> handler = new BindingHandler<>(type);
+		TreeBinding.replay(element, handler);
+		return handler.getResult();
+	}
+
+	/**
+	 * Builds the JSON structure of an object
+	 * @param value the object, that can be null
+	 * @return the root of the built structure
+	 * @throws JsonBindingException if the class of the object cannot be bound
+	 */
+	public JsonElement toJson(Object value) {
+		JsonTreeBuilder builder = new JsonTreeBuilder();
+		write(value, builder);
+		return builder.getRoot();
+	}
+
+	/**
+	 * Encodes an object as compact JSON text
+	 * @param value the object, that can be null
+	 * @return the JSON text
+	 * @throws JsonBindingException if the class of the object cannot be bound
+	 */
+	public String toJsonString(Object value) {
+		StringBuilder sb = new StringBuilder();
+		JsonGenerator generator = new JsonGenerator(sb, JsonFormat.COMPACT);
+		write(value, generator);
+		try {
+			generator.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Notifies an object to a handler, as a push parser would notify its JSON text.
+	 * Passing a {@link JsonGenerator} streams the object directly to its output.
+	 * @param value the object, that can be null
+	 * @param handler the handler to notify
+	 * @throws JsonBindingException if the class of the object cannot be bound
+	 */
+	public void write(Object value, JsonHandler handler) {
+		Binding.write(DynamicBinding.INSTANCE, value, handler);
+	}
+}
@@ -0,0 +1,36 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+/**
+ * Signals that a JSON value cannot be bound to a Java type, or that a Java type cannot be bound at all.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonBindingException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public JsonBindingException(String message) {
+		super(message);
+	}
+
+	public JsonBindingException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,98 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the maps to objects, whose field names are the keys. The keys can be strings or enumeration constants.
+ * The interfaces are instantiated as LinkedHashMap, TreeMap or ConcurrentHashMap,
+ * the concrete classes by their no-argument constructor.
+ * @author Salvatore Giampa'
+ *
+ */
+final class MapBinding extends Binding {
+	private final Supplier<Object> factory;
+	// the binding of enumeration keys, null for string keys
+	private final Binding keys;
+	private final Binding values;
+
+	MapBinding(Type type, Class<?> raw) {
+		super(type);
+		if(raw.isAssignableFrom(LinkedHashMap.class))
+			factory = LinkedHashMap::new;
+		else if(raw.isAssignableFrom(TreeMap.class))
+			factory = TreeMap::new;
+		else if(raw.isAssignableFrom(ConcurrentHashMap.class))
+			factory = ConcurrentHashMap::new;
+		else
+			factory = Accessors.constructor(raw);
+		Type[] arguments = Types.arguments(type, Map.class);
+		Class<?> key = Types.raw(arguments[0]);
+		if(key.isEnum())
+			keys = of(key);
+		else if(key == String.class || key == Object.class || key == CharSequence.class)
+			keys = null;
+		else
+			throw new JsonBindingException("Cannot bind the keys of " + type.getTypeName() + ", they must be strings or enumeration constants");
+		values = of(arguments[1]);
+	}
+
+	@Override
+	Object startObject() {
+		if(factory == null)
+			throw new JsonBindingException("Cannot instantiate " + type.getTypeName());
+		return factory.get();
+	}
+
+	@Override
+	Object field(Object state, CharSequence name) {
+		return keys != null ? keys.fromString(name) : name.toString();
+	}
+
+	@Override
+	Binding valueBinding(Object key) {
+		return values;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void put(Object state, Object key, Object value) {
+		((Map<Object, Object>) state).put(key, value);
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		out.startObject();
+		for(Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+			Object key = entry.getKey();
+			out.field(key instanceof Enum ? ((Enum<?>) key).name() : String.valueOf(key));
+			write(values, entry.getValue(), out);
+		}
+		out.endObject();
+	}
+}
@@ -0,0 +1,125 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.util.Map.Entry;
+
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonBoolean;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNull;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonGenerator;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Binds the values declared as JSON elements, that are kept as they are in the bound objects.
+ * The objects and the arrays are built by a {@link jointyjson.stream.JsonTreeBuilder} fed by the {@link BindingHandler}.
+ * @author Salvatore Giampa'
+ *
+ */
+final class TreeBinding extends Binding {
+
+	/**
+	 * Notifies a JSON structure to a handler, as a push parser would notify its text
+	 * @param element the root of the structure
+	 * @param out the handler to notify
+	 */
+	static void replay(JsonElement element, JsonHandler out) {
+		if(element instanceof JsonObject) {
+			out.startObject();
+			for(Entry<JsonString, JsonElement> entry : ((JsonObject) element).getEntries()) {
+				out.field(entry.getKey().toString());
+				replay(entry.getValue(), out);
+			}
+			out.endObject();
+		} else if(element instanceof JsonArray) {
+			out.startArray();
+			for(JsonElement child : (JsonArray) element)
+				replay(child, out);
+			out.endArray();
+		} else if(element instanceof JsonString)
+			out.stringValue(element.toString());
+		else if(element instanceof JsonNumber)
+			out.numberValue(element.toString());
+		else if(element instanceof JsonBoolean)
+			out.booleanValue(((JsonBoolean) element).getValue());
+		else
+			out.nullValue();
+	}
+
+	private final Class<?> raw;
+
+	TreeBinding(Class<?> raw) {
+		super(raw);
+		this.raw = raw;
+	}
+
+	/**
+	 * Checks that a built element has the bound type
+	 */
+	Object check(JsonElement element) {
+		if(raw.isInstance(element))
+			return element;
+		if(element instanceof JsonObject)
+			throw mismatch("an object");
+		if(element instanceof JsonArray)
+			throw mismatch("an array");
+		if(element instanceof JsonString)
+			throw mismatch("a string");
+		if(element instanceof JsonNumber)
+			throw mismatch("a number");
+		throw mismatch("a boolean");
+	}
+
+	@Override
+	Object fromString(CharSequence value) {
+		return check(JsonString.get(value.toString()));
+	}
+
+	@Override
+	Object fromNumber(CharSequence text) {
+		return check(new JsonNumber(JsonNumber.parse(text, 0, text.length())));
+	}
+
+	@Override
+	Object fromNumber(double value) {
+		return check(new JsonNumber(value));
+	}
+
+	@Override
+	Object fromBoolean(boolean value) {
+		return check(JsonBoolean.getInstance(value));
+	}
+
+	@Override
+	Object fromNull() {
+		return raw.isInstance(JsonNull.getInstance()) ? JsonNull.getInstance() : null;
+	}
+
+	@Override
+	void write(Object value, JsonHandler out) {
+		if(out instanceof JsonGenerator)
+			((JsonGenerator) out).write((JsonElement) value);
+		else
+			replay((JsonElement) value, out);
+	}
+}
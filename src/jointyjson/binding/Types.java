@@ -0,0 +1,183 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Resolves the generic types of the bound classes, such as the element type of a collection
+ * or the type of a property declared by a generic superclass.
+ * @author Salvatore Giampa'
+ *
+ */
+final class Types {
+
+	private Types() {}
+
+	/**
+	 * Gets the class erasing the specified type
+	 */
+	static Class<?> raw(Type type) {
+		if(type instanceof Class)
+			return (Class<?>) type;
+		if(type instanceof ParameterizedType)
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		if(type instanceof GenericArrayType)
+			return Array.newInstance(raw(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+		if(type instanceof TypeVariable)
+			return raw(((TypeVariable<?>) type).getBounds()[0]);
+		if(type instanceof WildcardType)
+			return raw(((WildcardType) type).getUpperBounds()[0]);
+		return Object.class;
+	}
+
+	/**
+	 * Gets the type arguments of a generic class, as they are seen from a subtype of it.
+	 * The arguments that cannot be resolved are Object.
+	 * @param type a subtype of the generic class, e.g. {@code ArrayList<String>}
+	 * @param generic the generic class, e.g. {@code Collection}
+	 * @return the type arguments of the generic class, e.g. {@code [String]}
+	 */
+	static Type[] arguments(Type type, Class<?> generic) {
+		Class<?> raw = raw(type);
+		if(raw == generic) {
+			if(type instanceof ParameterizedType)
+				return ((ParameterizedType) type).getActualTypeArguments();
+			Type[] objects = new Type[generic.getTypeParameters().length];
+			Arrays.fill(objects, Object.class);
+			return objects;
+		}
+		Type[] actual = type instanceof ParameterizedType ? ((ParameterizedType) type).getActualTypeArguments() : null;
+		Type superclass = raw.getGenericSuperclass();
+		if(superclass != null && generic.isAssignableFrom(raw(superclass)))
+			return substitute(arguments(superclass, generic), raw, actual);
+		for(Type superinterface : raw.getGenericInterfaces())
+			if(generic.isAssignableFrom(raw(superinterface)))
+				return substitute(arguments(superinterface, generic), raw, actual);
+		return arguments(generic, generic);
+	}
+
+	/**
+	 * Resolves the type of a member declared by a class, as it is seen from a subtype of that class
+	 * @param owner the type through which the member is accessed
+	 * @param declaring the class declaring the member
+	 * @param type the generic type of the member
+	 */
+	static Type resolve(Type owner, Class<?> declaring, Type type) {
+		if(type instanceof Class || declaring.getTypeParameters().length == 0)
+			return type;
+		return substitute(type, declaring.getTypeParameters(), arguments(owner, declaring));
+	}
+
+	private static Type[] substitute(Type[] types, Class<?> declaring, Type[] actual) {
+		TypeVariable<?>[] variables = declaring.getTypeParameters();
+		if(actual == null) {
+			actual = new Type[variables.length];
+			Arrays.fill(actual, Object.class);
+		}
+		Type[] result = new Type[types.length];
+		for(int i = 0; i < types.length; i++)
+			result[i] = substitute(types[i], variables, actual);
+		return result;
+	}
+
+	private static Type substitute(Type type, TypeVariable<?>[] variables, Type[] actual) {
+		if(type instanceof TypeVariable) {
+			for(int i = 0; i < variables.length; i++)
+				if(variables[i].equals(type))
+					return actual[i];
+			return type;
+		}
+		if(type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Type[] arguments = parameterized.getActualTypeArguments().clone();
+			for(int i = 0; i < arguments.length; i++)
+				arguments[i] = substitute(arguments[i], variables, actual);
+			return new Parameterized(parameterized.getOwnerType(), raw(parameterized), arguments);
+		}
+		if(type instanceof GenericArrayType) {
+			Type component = substitute(((GenericArrayType) type).getGenericComponentType(), variables, actual);
+			if(component instanceof Class)
+				return Array.newInstance((Class<?>) component, 0).getClass();
+		}
+		return type;
+	}
+
+	/**
+	 * A parameterized type built by the binder, equal to the ones obtained by reflection
+	 */
+	static final class Parameterized implements ParameterizedType {
+		private final Type owner;
+		private final Class<?> raw;
+		private final Type[] arguments;
+
+		Parameterized(Type owner, Class<?> raw, Type... arguments) {
+			this.owner = owner;
+			this.raw = raw;
+			this.arguments = arguments;
+		}
+
+		@Override
+		public Type[] getActualTypeArguments() {
+			return arguments.clone();
+		}
+
+		@Override
+		public Type getRawType() {
+			return raw;
+		}
+
+		@Override
+		public Type getOwnerType() {
+			return owner;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof ParameterizedType))
+				return false;
+			ParameterizedType other = (ParameterizedType) obj;
+			return raw.equals(other.getRawType()) && Objects.equals(owner, other.getOwnerType())
+					&& Arrays.equals(arguments, other.getActualTypeArguments());
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(arguments) ^ Objects.hashCode(owner) ^ raw.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder(raw.getName()).append('<');
+			for(int i = 0; i < arguments.length; i++) {
+				if(i > 0)
+					sb.append(", ");
+				sb.append(arguments[i].getTypeName());
+			}
+			return sb.append('>').toString();
+		}
+	}
+}
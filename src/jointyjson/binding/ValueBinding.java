@@ -0,0 +1,314 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.binding;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonGenerator;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Defines the bindings of the scalar types: strings, numbers, booleans, characters and enumerations.
+ * The numbers are converted from their text without building any JSON element, and the integral
+ * types reject the numbers having a fractional part or out of their range.
+ * The primitive types reject null.
+ * @author Salvatore Giampa'
+ *
+ */
+abstract class ValueBinding extends Binding {
+	// the longest integers that always fit in a long
+	private static final int MAX_LONG_DIGITS = 18;
+
+	/**
+	 * Creates the binding of a scalar type
+	 * @return the binding, or null if the type is not a scalar
+	 */
+	static ValueBinding create(Class<?> type) {
+		if(type == String.class)
+			return new StringBinding();
+		if(type == boolean.class || type == Boolean.class)
+			return new BooleanBinding(type);
+		if(type == char.class || type == Character.class)
+			return new CharBinding(type);
+		if(type == long.class || type == Long.class)
+			return new IntegerBinding(type, Long.MIN_VALUE, Long.MAX_VALUE);
+		if(type == int.class || type == Integer.class)
+			return new IntegerBinding(type, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		if(type == short.class || type == Short.class)
+			return new IntegerBinding(type, Short.MIN_VALUE, Short.MAX_VALUE);
+		if(type == byte.class || type == Byte.class)
+			return new IntegerBinding(type, Byte.MIN_VALUE, Byte.MAX_VALUE);
+		if(type == double.class || type == Double.class || type == float.class || type == Float.class)
+			return new FloatingBinding(type);
+		if(type == BigDecimal.class)
+			return new DecimalBinding();
+		if(type == BigInteger.class)
+			return new BigIntegerBinding();
+		if(type.isEnum())
+			return new EnumBinding(type);
+		return null;
+	}
+
+	/**
+	 * Tells whether a number is an integer of at most {@value #MAX_LONG_DIGITS} digits, that always fits in a long
+	 */
+	static boolean isSmallInteger(CharSequence text) {
+		int length = text.length();
+		int start = text.charAt(0) == '-' ? 1 : 0;
+		if(length - start > MAX_LONG_DIGITS)
+			return false;
+		for(int i = start; i < length; i++) {
+			char c = text.charAt(i);
+			if(c < '0' || c > '9')
+				return false;
+		}
+		return true;
+	}
+
+	static long parseSmallInteger(CharSequence text) {
+		boolean negative = text.charAt(0) == '-';
+		long value = 0;
+		for(int i = negative ? 1 : 0; i < text.length(); i++)
+			value = value * 10 + (text.charAt(i) - '0');
+		return negative ? -value : value;
+	}
+
+	ValueBinding(Class<?> type) {
+		super(type);
+	}
+
+	@Override
+	Object fromNull() {
+		if(((Class<?>) type).isPrimitive())
+			throw mismatch("null");
+		return null;
+	}
+
+	static final class StringBinding extends ValueBinding {
+		StringBinding() {
+			super(String.class);
+		}
+
+		@Override
+		Object fromString(CharSequence value) {
+			return value.toString();
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			out.stringValue((String) value);
+		}
+	}
+
+	static final class BooleanBinding extends ValueBinding {
+		BooleanBinding(Class<?> type) {
+			super(type);
+		}
+
+		@Override
+		Object fromBoolean(boolean value) {
+			return value;
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			out.booleanValue((Boolean) value);
+		}
+	}
+
+	static final class CharBinding extends ValueBinding {
+		CharBinding(Class<?> type) {
+			super(type);
+		}
+
+		@Override
+		Object fromString(CharSequence value) {
+			if(value.length() != 1)
+				throw mismatch("a string of " + value.length() + " characters");
+			return value.charAt(0);
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			out.stringValue(String.valueOf((char) (Character) value));
+		}
+	}
+
+	static final class IntegerBinding extends ValueBinding {
+		private final long min;
+		private final long max;
+
+		IntegerBinding(Class<?> type, long min, long max) {
+			super(type);
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		Object fromNumber(CharSequence text) {
+			if(isSmallInteger(text))
+				return box(parseSmallInteger(text), text);
+			try {
+				return box(new BigDecimal(text.toString()).longValueExact(), text);
+			} catch (ArithmeticException | NumberFormatException e) {
+				throw mismatch("the number " + text);
+			}
+		}
+
+		@Override
+		Object fromNumber(double value) {
+			if(value != Math.rint(value) || value < min || value > max)
+				throw mismatch("the number " + value);
+			return box((long) value, null);
+		}
+
+		private Object box(long value, CharSequence text) {
+			if(value < min || value > max)
+				throw mismatch("the number " + (text != null ? text : Long.toString(value)));
+			if(max == Long.MAX_VALUE)
+				return value;
+			if(max == Integer.MAX_VALUE)
+				return (int) value;
+			if(max == Short.MAX_VALUE)
+				return (short) value;
+			return (byte) value;
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			number(((Number) value).longValue(), out);
+		}
+	}
+
+	static final class FloatingBinding extends ValueBinding {
+		private final boolean single;
+
+		FloatingBinding(Class<?> type) {
+			super(type);
+			single = type == float.class || type == Float.class;
+		}
+
+		@Override
+		Object fromNumber(CharSequence text) {
+			return fromNumber(JsonNumber.parse(text, 0, text.length()));
+		}
+
+		@Override
+		Object fromNumber(double value) {
+			if(single)
+				return (float) value;
+			return value;
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			if(single)
+				// the shortest text of the float, rather than the one of the widened double
+				out.numberValue(Float.toString((Float) value));
+			else
+				out.numberValue((Double) value);
+		}
+	}
+
+	static final class DecimalBinding extends ValueBinding {
+		DecimalBinding() {
+			super(BigDecimal.class);
+		}
+
+		@Override
+		Object fromNumber(CharSequence text) {
+			return new BigDecimal(text.toString());
+		}
+
+		@Override
+		Object fromNumber(double value) {
+			return BigDecimal.valueOf(value);
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			out.numberValue(value.toString());
+		}
+	}
+
+	static final class BigIntegerBinding extends ValueBinding {
+		BigIntegerBinding() {
+			super(BigInteger.class);
+		}
+
+		@Override
+		Object fromNumber(CharSequence text) {
+			try {
+				return new BigDecimal(text.toString()).toBigIntegerExact();
+			} catch (ArithmeticException e) {
+				throw mismatch("the number " + text);
+			}
+		}
+
+		@Override
+		Object fromNumber(double value) {
+			try {
+				return BigDecimal.valueOf(value).toBigIntegerExact();
+			} catch (ArithmeticException e) {
+				throw mismatch("the number " + value);
+			}
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			out.numberValue(value.toString());
+		}
+	}
+
+	/**
+	 * Binds the constants of an enumeration to their names
+	 */
+	static final class EnumBinding extends ValueBinding {
+		private final Object[] constants;
+		private final JsonString[] names;
+
+		EnumBinding(Class<?> type) {
+			super(type);
+			constants = type.getEnumConstants();
+			names = new JsonString[constants.length];
+			for(int i = 0; i < constants.length; i++)
+				names[i] = JsonString.get(((Enum<?>) constants[i]).name());
+		}
+
+		@Override
+		Object fromString(CharSequence value) {
+			for(int i = 0; i < names.length; i++)
+				if(names[i].toString().contentEquals(value))
+					return constants[i];
+			throw mismatch("the string \"" + value + "\"");
+		}
+
+		@Override
+		void write(Object value, JsonHandler out) {
+			JsonString name = names[((Enum<?>) value).ordinal()];
+			if(out instanceof JsonGenerator)
+				((JsonGenerator) out).stringValue(name);
+			else
+				out.stringValue(name.toString());
+		}
+	}
+}
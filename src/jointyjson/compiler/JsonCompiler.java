@@ -20,39 +20,404 @@ package jointyjson.compiler;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
-import jointyc.analysis.StandardCompiler;
+import jointyc.analysis.parser.StandardParser;
+import jointyc.analysis.parser.SyntaxTree;
 import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyc.analysis.semantic.SemanticAnalyzer;
 import jointyc.analysis.semantic.exception.SemanticException;
-import jointyc.jdlc.JdlCompiler;
+import jointyjson.metrics.CompileMetrics;
+import jointyjson.metrics.JsonMetricsListener;
 import jointyjson.model.EncodingVisitor;
+import jointyjson.model.EvictionPolicy;
 import jointyjson.model.JsonElement;
 import jointyjson.model.JsonObject;
 import jointyjson.model.JsonString;
+import jointyjson.model.JsonStringPool;
+import jointyjson.model.NumberMode;
+import jointyjson.model.ObjectStorage;
+import jointyjson.model.StructuralIndex;
+import jointyjson.model.StructuralIndexer;
+import jointyjson.stream.JsonFeedParser;
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonLimitException;
+import jointyjson.stream.JsonLimits;
+import jointyjson.stream.JsonTreeBuilder;
 
 /**
- * Defines the JSON compiler
+ * Defines the JSON compiler.<br>
+ * A compiler can be used by many threads at the same time: each compilation of the {@link JsonEngine#DIRECT} engine
+ * has its own parsing state, while the compilations of the {@link JsonEngine#GRAMMAR} engine are serialized, since
+ * the grammar parsers share a process-wide cache.
+ * The settings are visible to all the threads, but they must not be changed while some compilation is running.
+ * The compiler returned by {@link #shared()} can be used by the whole process, since its settings cannot be changed.
  * @author Salvatore Giampa'
  *
  */
 public class JsonCompiler {
-	private StandardCompiler compiler;
+	// files at least this large are memory-mapped
+	private static final long MAPPING_THRESHOLD = 1 << 20;
 	
-	public JsonCompiler() {
-		JdlCompiler jdlc = new JdlCompiler();
+	/**
+	 * The default number of characters (or bytes) of the chunks of the arrays compiled in parallel
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+	
+	private static final JsonCompiler SHARED = new JsonCompiler(JsonEngine.DIRECT, false);
+	
+	// the handler of the documents checked against the limits before the grammar engine compiles them
+	private static final JsonHandler DISCARD = new JsonHandler() {
+		@Override
+		public void startObject() {}
 		
-		try {
-			compiler = jdlc.compileResource("Json.jdl", new JsonInterpreter());
+		@Override
+		public void field(CharSequence name) {}
+		
+		@Override
+		public void endObject() {}
+		
+		@Override
+		public void startArray() {}
+		
+		@Override
+		public void endArray() {}
+		
+		@Override
+		public void stringValue(CharSequence value) {}
+		
+		@Override
+		public void numberValue(double value) {}
+		
+		@Override
+		public void numberValue(CharSequence text) {}
+		
+		@Override
+		public void booleanValue(boolean value) {}
+		
+		@Override
+		public void nullValue() {}
+	};
+	
+	private final JsonEngine engine;
+	private final boolean configurable;
+	// the parsing state of the grammar engine, null for the other engines
+	private final GrammarState grammarState;
+	
+	private volatile StringScope stringScope = StringScope.GLOBAL;
+	private volatile JsonStringPool stringPool;
+	private volatile ObjectStorage objectStorage = ObjectStorage.SORTED;
+	private volatile NumberMode numberMode = NumberMode.DOUBLE;
+	
+	private volatile int parallelism = 1;
+	private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+	private ForkJoinPool forkJoinPool;
+	
+	private volatile JsonMetricsListener metricsListener;
+	private volatile JsonLimits limits = JsonLimits.DEFAULT;
+	
+	/**
+	 * Creates a JSON compiler that uses the {@link JsonEngine#DIRECT} engine
+	 */
+	public JsonCompiler() {
+		this(JsonEngine.DIRECT);
+	}
+	
+	/**
+	 * Creates a JSON compiler that uses the specified engine
+	 * @param engine the engine used to compile the JSON sources
+	 * @throws IllegalStateException if the grammar of the {@link JsonEngine#GRAMMAR} engine cannot be loaded
+	 */
+	public JsonCompiler(JsonEngine engine) {
+		this(engine, true);
+	}
+	
+	private JsonCompiler(JsonEngine engine, boolean configurable) {
+		if(engine == null)
+			throw new NullPointerException("engine cannot be null");
+		this.engine = engine;
+		this.configurable = configurable;
+		this.grammarState = engine == JsonEngine.GRAMMAR ? new GrammarState() : null;
+	}
+	
+	/**
+	 * Gets the process-wide compiler, that uses the {@link JsonEngine#DIRECT} engine with the default settings.
+	 * Its settings cannot be changed, so it can be shared by all the threads and the components of a process.
+	 * @return the shared compiler
+	 */
+	public static JsonCompiler shared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Tells whether the settings of this compiler can be changed
+	 * @return false for the {@link #shared()} compiler
+	 */
+	public boolean isConfigurable() {
+		return configurable;
+	}
+	
+	private void checkConfigurable() {
+		if(!configurable)
+			throw new UnsupportedOperationException("the shared compiler cannot be configured");
+	}
+	
+	/**
+	 * Gets the engine used by this compiler
+	 * @return the engine used by this compiler
+	 */
+	public JsonEngine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * Sets the scope in which names and string values are interned.
+	 * The {@link StringScope#COMPILER} scope uses the pool set by {@link #setStringPool(JsonStringPool)},
+	 * or a new LRU pool of {@link JsonStringPool#DEFAULT_CAPACITY} strings.
+	 * @param scope the string scope
+	 */
+	public void setStringScope(StringScope scope) {
+		checkConfigurable();
+		if(scope == null)
+			throw new NullPointerException("scope cannot be null");
+		if(scope == StringScope.COMPILER && stringPool == null)
+			stringPool = new JsonStringPool(JsonStringPool.DEFAULT_CAPACITY, EvictionPolicy.LRU);
+		stringScope = scope;
+	}
+	
+	/**
+	 * Gets the scope in which names and string values are interned
+	 * @return the string scope
+	 */
+	public StringScope getStringScope() {
+		return stringScope;
+	}
+	
+	/**
+	 * Sets the pool owned by this compiler, switching to the {@link StringScope#COMPILER} scope
+	 * @param pool the pool used to intern names and string values
+	 */
+	public void setStringPool(JsonStringPool pool) {
+		checkConfigurable();
+		if(pool == null)
+			throw new NullPointerException("pool cannot be null");
+		stringPool = pool;
+		stringScope = StringScope.COMPILER;
+	}
+	
+	/**
+	 * Gets the pool owned by this compiler
+	 * @return the pool of the {@link StringScope#COMPILER} scope, or null if it has never been used
+	 */
+	public JsonStringPool getStringPool() {
+		return stringPool;
+	}
+	
+	/**
+	 * Sets the data structure in which the compiled objects store their fields
+	 * @param storage the storage of the compiled objects
+	 */
+	public void setObjectStorage(ObjectStorage storage) {
+		checkConfigurable();
+		if(storage == null)
+			throw new NullPointerException("storage cannot be null");
+		objectStorage = storage;
+	}
+	
+	/**
+	 * Gets the data structure in which the compiled objects store their fields
+	 * @return the storage of the compiled objects
+	 */
+	public ObjectStorage getObjectStorage() {
+		return objectStorage;
+	}
+	
+	/**
+	 * Sets how the numbers of the compiled documents are held
+	 * @param mode the number mode
+	 */
+	public void setNumberMode(NumberMode mode) {
+		checkConfigurable();
+		if(mode == null)
+			throw new NullPointerException("mode cannot be null");
+		numberMode = mode;
+	}
+	
+	/**
+	 * Gets how the numbers of the compiled documents are held
+	 * @return the number mode
+	 */
+	public NumberMode getNumberMode() {
+		return numberMode;
+	}
+	
+	/**
+	 * Sets the number of threads used to compile the documents whose root is a large array.
+	 * With more than one thread, the {@link JsonEngine#DIRECT} engine splits the elements of a root array
+	 * at least two chunks long into chunks, that are parsed concurrently on a {@link ForkJoinPool}
+	 * owned by this compiler, and assembles the compiled array in order.
+	 * The other documents, and all the documents with one thread, are compiled sequentially.
+	 * @param threads the number of threads, 1 by default
+	 * @see #setChunkSize(int)
+	 */
+	public synchronized void setParallelism(int threads) {
+		checkConfigurable();
+		if(threads < 1)
+			throw new IllegalArgumentException("the number of threads must be positive");
+		if(threads == parallelism)
 			return;
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (UnexpectedSymbolException e) {
-			e.printStackTrace();
-		} catch (SemanticException e) {
-			e.printStackTrace();
+		if(forkJoinPool != null) {
+			forkJoinPool.shutdown();
+			forkJoinPool = null;
+		}
+		parallelism = threads;
+	}
+	
+	/**
+	 * Gets the number of threads used to compile the documents whose root is a large array
+	 * @return the number of threads
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+	
+	/**
+	 * Sets the minimum size of the chunks into which the root arrays are split when they are compiled in parallel.
+	 * The arrays shorter than two chunks are compiled sequentially.
+	 * @param size the minimum number of characters of a chunk, or of bytes for the UTF-8 encoded sources;
+	 * {@link #DEFAULT_CHUNK_SIZE} by default
+	 * @see #setParallelism(int)
+	 */
+	public void setChunkSize(int size) {
+		checkConfigurable();
+		if(size < 1)
+			throw new IllegalArgumentException("the chunk size must be positive");
+		chunkSize = size;
+	}
+	
+	/**
+	 * Gets the minimum size of the chunks into which the root arrays are split when they are compiled in parallel
+	 * @return the minimum number of characters (or bytes) of a chunk
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+	
+	/**
+	 * Sets the listener notified with the statistics of each compiled document, see {@link CompileMetrics}.
+	 * The documents are measured only while a listener is set, so the compilations cost nothing more without it.
+	 * The listener is notified by the compiling threads, so it must be thread-safe when the compiler is shared by many threads.
+	 * @param listener the metrics listener, or null to stop measuring the compiled documents
+	 * @see jointyjson.metrics.JsonMetrics
+	 * @see jointyjson.metrics.FlightRecorderListener
+	 */
+	public void setMetricsListener(JsonMetricsListener listener) {
+		checkConfigurable();
+		metricsListener = listener;
+	}
+	
+	/**
+	 * Gets the listener notified with the statistics of each compiled document
+	 * @return the metrics listener, or null if the compiled documents are not measured
+	 */
+	public JsonMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+	
+	/**
+	 * Sets the limits enforced while the documents are parsed, so that the compilation of a document exceeding them
+	 * stops as soon as a limit is exceeded, with a {@link JsonLimitException}. The input length is checked before parsing.
+	 * The {@link JsonEngine#GRAMMAR} engine checks the documents by the direct scanner before compiling them,
+	 * and while some limit other than the input length and the depth is set the root arrays are not compiled in parallel.
+	 * The parsers recurse on the nested objects and arrays, so {@link JsonLimits#UNLIMITED} lets a deeply nested document
+	 * overflow the stack of the compiling thread.
+	 * @param limits the limits, {@link JsonLimits#DEFAULT} by default, that limits the depth to {@value JsonLimits#DEFAULT_MAX_DEPTH}
+	 */
+	public void setLimits(JsonLimits limits) {
+		checkConfigurable();
+		if(limits == null)
+			throw new NullPointerException("limits cannot be null");
+		this.limits = limits;
+	}
+	
+	/**
+	 * Gets the limits enforced while the documents are parsed
+	 * @return the limits
+	 */
+	public JsonLimits getLimits() {
+		return limits;
+	}
+	
+	/**
+	 * Gets the parallel parser, or null if the documents are compiled sequentially
+	 */
+	private ParallelArrayParser parallelParser(JsonLimits limits) {
+		if(parallelism == 1 || engine != JsonEngine.DIRECT || handled(limits).isValueLimited())
+			return null;
+		return new ParallelArrayParser(forkJoinPool(), chunkSize, views(), limits.getMaxDepth());
+	}
+	
+	/**
+	 * Gets the limits checked by a handler wrapping the one notified by the direct scanner,
+	 * that checks the nesting depth by itself
+	 */
+	private static JsonLimits handled(JsonLimits limits) {
+		return limits.getMaxDepth() == Integer.MAX_VALUE ? limits : limits.withMaxDepth(Integer.MAX_VALUE);
+	}
+	
+	private synchronized ForkJoinPool forkJoinPool() {
+		if(forkJoinPool == null)
+			forkJoinPool = new ForkJoinPool(parallelism);
+		return forkJoinPool;
+	}
+	
+	/**
+	 * Gets the pool for the next compiled document
+	 */
+	private JsonStringPool pool() {
+		switch(stringScope) {
+		case COMPILER:
+			return stringPool;
+		case DOCUMENT:
+		case VIEW:
+			return new JsonStringPool();
+		default:
+			return JsonStringPool.global();
 		}
-		System.exit(-1);
+	}
+	
+	/**
+	 * Tells whether the string values of the next compiled document are views over its source
+	 */
+	boolean views() {
+		return stringScope == StringScope.VIEW;
+	}
+	
+	/**
+	 * Creates the builder of the next compiled document
+	 */
+	JsonTreeBuilder builder() {
+		return new JsonTreeBuilder(pool(), objectStorage, numberMode);
+	}
+	
+	/**
+	 * Creates the supplier of the builders of the chunks of the next document compiled in parallel
+	 */
+	private Supplier<JsonTreeBuilder> builders() {
+		JsonStringPool pool = pool();
+		ObjectStorage storage = objectStorage;
+		NumberMode mode = numberMode;
+		return () -> new JsonTreeBuilder(pool, storage, mode);
 	}
 	
 	/**
@@ -62,29 +427,394 @@ public class JsonCompiler {
 	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
 	 */
 	public JsonElement compile(String source) throws UnexpectedSymbolException {
+		JsonMetricsListener listener = metricsListener;
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(source.length());
+		if(engine == JsonEngine.GRAMMAR) {
+			if(limits.isValueLimited())
+				new JsonParser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(DISCARD));
+			return compileGrammar(source, listener);
+		}
+		ParallelArrayParser parallel = parallelParser(limits);
+		if(listener == null) {
+			if(parallel != null) {
+				JsonElement root = parallel.build(source, builders());
+				if(root != null)
+					return root;
+			}
+			JsonTreeBuilder builder = builder();
+			new JsonParser(source, views()).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(builder));
+			return builder.getRoot();
+		}
+		
+		long start = System.nanoTime();
+		if(parallel != null) {
+			Queue<MeasuringHandler> chunks = new ConcurrentLinkedQueue<>();
+			JsonElement root = parallel.build(source, builders(), chunks);
+			if(root != null) {
+				report(listener, MeasuringHandler.join(chunks), source.length(), false, start, false);
+				return root;
+			}
+		}
+		JsonTreeBuilder builder = builder();
+		MeasuringHandler measure = new MeasuringHandler(builder, builder.getPool());
 		try {
-			return (JsonElement) compiler.compile(source);
-		} catch (SemanticException e) {
-			e.printStackTrace();
+			new JsonParser(source, views()).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(measure));
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, source.length(), false, start, true);
+			throw e;
+		}
+		report(listener, measure, source.length(), false, start, false);
+		return builder.getRoot();
+	}
+	
+	/**
+	 * Compiles a source with the grammar engine
+	 */
+	private JsonElement compileGrammar(String source, JsonMetricsListener listener) throws UnexpectedSymbolException {
+		synchronized(GrammarState.LOCK) {
+			try {
+				grammarState.interpreter.pool = pool();
+				grammarState.interpreter.storage = objectStorage;
+				grammarState.interpreter.numberMode = numberMode;
+				return grammarState.compile(source, listener);
+			} catch (SemanticException e) {
+				e.printStackTrace();
+			}
 		}
 		return null;
 	}
 	
 	/**
-	 * Compile a JSON file and builds the JSON composite structure
+	 * Notifies the statistics of a document compiled by the direct scanner, that lexes and parses it in one pass,
+	 * so the whole time is reported as parsing time
+	 * @param measure the measures of the document
+	 * @param start the time the compilation started at
+	 */
+	private void report(JsonMetricsListener listener, MeasuringHandler measure, long length, boolean utf8, long start, boolean failed) {
+		long total = System.nanoTime() - start;
+		listener.compiled(new CompileMetrics(engine, length, utf8, measure.tokens, measure.nodes, measure.maxDepth,
+				measure.stringHits, measure.stringMisses, 0, total, 0, total, failed));
+	}
+	
+	/**
+	 * Compile an encoded JSON string into a JSON composite structure whose objects and arrays are decoded on demand.
+	 * The source is validated and indexed in one pass, then each object or array decodes its direct contents
+	 * only when it is accessed for the first time, so the subtrees never accessed cost only their index entries.
+	 * The direct scanner is used whatever the engine of this compiler.
+	 * @param source an encoded JSON string
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
+	 * @see StructuralIndex
+	 */
+	public JsonElement compileLazy(String source) throws UnexpectedSymbolException {
+		JsonMetricsListener listener = metricsListener;
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(source.length());
+		StructuralIndexer indexer = new StructuralIndexer(source, pool(), objectStorage, numberMode, views());
+		if(listener == null) {
+			new JsonParser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(indexer));
+			return indexer.getRoot();
+		}
+		long start = System.nanoTime();
+		// the strings are not interned while indexing, so the pool is not measured
+		MeasuringHandler measure = new MeasuringHandler(indexer, null);
+		try {
+			new JsonParser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(measure));
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, source.length(), false, start, true);
+			throw e;
+		}
+		report(listener, measure, source.length(), false, start, false);
+		return indexer.getRoot();
+	}
+	
+	/**
+	 * Compile an UTF-8 encoded JSON source and builds the JSON composite structure.
+	 * With the {@link JsonEngine#DIRECT} engine the bytes are parsed in place, without decoding the whole source.
+	 * @param source the UTF-8 encoded JSON source
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	public JsonElement compile(byte[] source) throws UnexpectedSymbolException {
+		return compile(ByteBuffer.wrap(source));
+	}
+	
+	/**
+	 * Compile the UTF-8 encoded JSON source between the position and the limit of a buffer
+	 * and builds the JSON composite structure. The buffer position is not changed.
+	 * With the {@link JsonEngine#DIRECT} engine the bytes are parsed in place, without decoding the whole source.
+	 * @param source the buffer containing the UTF-8 encoded JSON source
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	public JsonElement compile(ByteBuffer source) throws UnexpectedSymbolException {
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(source.remaining());
+		if(engine == JsonEngine.GRAMMAR)
+			return compile(StandardCharsets.UTF_8.decode(source.duplicate()).toString());
+		JsonMetricsListener listener = metricsListener;
+		ParallelArrayParser parallel = parallelParser(limits);
+		if(listener == null) {
+			if(parallel != null) {
+				JsonElement root = parallel.build(source, builders());
+				if(root != null)
+					return root;
+			}
+			JsonTreeBuilder builder = builder();
+			new Utf8Parser(source, views()).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(builder));
+			return builder.getRoot();
+		}
+		
+		long start = System.nanoTime();
+		if(parallel != null) {
+			Queue<MeasuringHandler> chunks = new ConcurrentLinkedQueue<>();
+			JsonElement root = parallel.build(source, builders(), chunks);
+			if(root != null) {
+				report(listener, MeasuringHandler.join(chunks), source.remaining(), true, start, false);
+				return root;
+			}
+		}
+		JsonTreeBuilder builder = builder();
+		MeasuringHandler measure = new MeasuringHandler(builder, builder.getPool());
+		try {
+			new Utf8Parser(source, views()).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(measure));
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, source.remaining(), true, start, true);
+			throw e;
+		}
+		report(listener, measure, source.remaining(), true, start, false);
+		return builder.getRoot();
+	}
+	
+	/**
+	 * Compiles a line of newline-delimited JSON, see {@link NdjsonReader}
+	 * @param source the buffer containing the UTF-8 encoded lines
+	 * @param start the start of the line
+	 * @param end the end of the line, excluding the line terminator
+	 * @return the compiled value, or null if the line contains only blanks and comments
+	 * @throws UnexpectedSymbolException if the line contains some syntactic error.
+	 */
+	JsonElement compileLine(ByteBuffer source, int start, int end) throws UnexpectedSymbolException {
+		JsonMetricsListener listener = metricsListener;
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(end - start);
+		JsonTreeBuilder builder = builder();
+		if(listener == null) {
+			if(!handled(limits).isValueLimited())
+				return new Utf8Parser(source, start, end, views()).limitDepth(limits.getMaxDepth()).buildValue(builder);
+			return new Utf8Parser(source, start, end, views()).limitDepth(limits.getMaxDepth()).parseLine(handled(limits).wrap(builder)) ? builder.getRoot() : null;
+		}
+		long time = System.nanoTime();
+		MeasuringHandler measure = new MeasuringHandler(builder, builder.getPool());
+		try {
+			if(!new Utf8Parser(source, start, end, views()).limitDepth(limits.getMaxDepth()).parseLine(handled(limits).wrap(measure)))
+				return null;
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, end - start, true, time, true);
+			throw e;
+		}
+		report(listener, measure, end - start, true, time, false);
+		return builder.getRoot();
+	}
+	
+	/**
+	 * Compile an UTF-8 encoded JSON file and builds the JSON composite structure.
+	 * Large files are memory-mapped instead of being copied into the heap.
+	 * @param path the path of the file containing the encoded JSON source
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 * @throws IOException if an I/O error occurs reading form the file
+	 */
+	public JsonElement compile(Path path) throws UnexpectedSymbolException, IOException {
+		return compile(read(path));
+	}
+	
+	/**
+	 * Compile an UTF-8 encoded JSON file and builds the JSON composite structure
 	 * @param file the file containing the encoded JSON string
 	 * @return the root JSON element of the structure
 	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
 	 * @throws IOException if an I/O error occurs reading form the file
+	 * @see #compile(Path)
 	 */
 	public JsonElement compile(File file) throws UnexpectedSymbolException, IOException {
-		String source = new String(Files.readAllBytes(file.toPath()));
+		return compile(file.toPath());
+	}
+	
+	
+	/**
+	 * Parses an encoded JSON string notifying the parsed values to the specified handler,
+	 * without building the JSON composite structure. The direct scanner is used whatever the engine of this compiler.
+	 * @param source an encoded JSON string
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
+	 */
+	public void compile(String source, JsonHandler handler) throws UnexpectedSymbolException {
+		JsonMetricsListener listener = metricsListener;
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(source.length());
+		if(listener == null) {
+			new JsonParser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(handler));
+			return;
+		}
+		long start = System.nanoTime();
+		MeasuringHandler measure = new MeasuringHandler(handler, null);
 		try {
-			return (JsonElement) compiler.compile(source);
-		} catch (SemanticException e) {
-			e.printStackTrace();
+			new JsonParser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(measure));
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, source.length(), false, start, true);
+			throw e;
+		}
+		report(listener, measure, source.length(), false, start, false);
+	}
+	
+	/**
+	 * Parses an UTF-8 encoded JSON source notifying the parsed values to the specified handler,
+	 * without building the JSON composite structure. The direct scanner is used whatever the engine of this compiler.
+	 * @param source the UTF-8 encoded JSON source
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	public void compile(byte[] source, JsonHandler handler) throws UnexpectedSymbolException {
+		compile(ByteBuffer.wrap(source), handler);
+	}
+	
+	/**
+	 * Parses the UTF-8 encoded JSON source between the position and the limit of a buffer
+	 * notifying the parsed values to the specified handler, without building the JSON composite structure.
+	 * The direct scanner is used whatever the engine of this compiler.
+	 * @param source the buffer containing the UTF-8 encoded JSON source
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	public void compile(ByteBuffer source, JsonHandler handler) throws UnexpectedSymbolException {
+		JsonMetricsListener listener = metricsListener;
+		JsonLimits limits = this.limits;
+		limits.checkInputLength(source.remaining());
+		if(listener == null) {
+			new Utf8Parser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(handler));
+			return;
+		}
+		long start = System.nanoTime();
+		MeasuringHandler measure = new MeasuringHandler(handler, null);
+		try {
+			new Utf8Parser(source).limitDepth(limits.getMaxDepth()).parse(handled(limits).wrap(measure));
+		} catch (UnexpectedSymbolException e) {
+			report(listener, measure, source.remaining(), true, start, true);
+			throw e;
+		}
+		report(listener, measure, source.remaining(), true, start, false);
+	}
+	
+	/**
+	 * Parses an UTF-8 encoded JSON file notifying the parsed values to the specified handler,
+	 * without building the JSON composite structure. Large files are memory-mapped,
+	 * so the heap used does not depend on the file size.
+	 * @param path the path of the file containing the encoded JSON source
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 * @throws IOException if an I/O error occurs reading form the file
+	 */
+	public void compile(Path path, JsonHandler handler) throws UnexpectedSymbolException, IOException {
+		compile(read(path), handler);
+	}
+	
+	/**
+	 * Parses an UTF-8 encoded JSON file notifying the parsed values to the specified handler,
+	 * without building the JSON composite structure.
+	 * @param file the file containing the encoded JSON string
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 * @throws IOException if an I/O error occurs reading form the file
+	 * @see #compile(Path, JsonHandler)
+	 */
+	public void compile(File file, JsonHandler handler) throws UnexpectedSymbolException, IOException {
+		compile(file.toPath(), handler);
+	}
+	
+	/**
+	 * Creates a non-blocking parser for an UTF-8 encoded JSON document received in chunks, that builds
+	 * the JSON composite structure with the settings of this compiler as the chunks are fed.
+	 * The parser does not depend on the engine of this compiler.
+	 * @return the parser, whose {@link JsonFeedParser#getRoot()} is the compiled document once it is complete
+	 */
+	public JsonFeedParser newFeedParser() {
+		return new JsonFeedParser(builder(), limits);
+	}
+	
+	/**
+	 * Reads a file into a buffer, memory-mapping it when it is large, after checking its size against the limits
+	 */
+	private ByteBuffer read(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			limits.checkInputLength(size);
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("the file is too large to be compiled at once, use a JsonReader: " + path);
+			if(size >= MAPPING_THRESHOLD)
+				return channel.map(MapMode.READ_ONLY, 0, size);
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+			return buffer;
+		}
+	}
+	
+	
+	/**
+	 * The parsing state of the grammar engine, used by one compilation at a time
+	 */
+	private static final class GrammarState {
+		// the grammar parsers share a cache of keys that is not thread-safe
+		static final Object LOCK = new Object();
+		
+		final JsonInterpreter interpreter = new JsonInterpreter();
+		final StandardParser parser = JsonGrammar.get().newParser();
+		final TimedLexer lexer = new TimedLexer(parser.getLexer());
+		final SemanticAnalyzer analyzer;
+		
+		GrammarState() {
+			parser.setLexer(lexer);
+			analyzer = new SemanticAnalyzer(interpreter, parser);
+		}
+		
+		/**
+		 * Compiles a source, measuring the time spent by the lexer, the parser and the semantic actions
+		 * when a listener is set. The other measures are taken walking the built structure.
+		 */
+		JsonElement compile(String source, JsonMetricsListener listener) throws UnexpectedSymbolException, SemanticException {
+			if(listener == null) {
+				lexer.setInput(source);
+				return (JsonElement) analyzer.analyze(parser.parse());
+			}
+			
+			lexer.nanos = 0;
+			lexer.timed = true;
+			interpreter.stringHits = 0;
+			interpreter.stringMisses = 0;
+			interpreter.measured = true;
+			long start = System.nanoTime();
+			long parsed = 0;
+			JsonElement root = null;
+			try {
+				lexer.setInput(source);
+				SyntaxTree tree = parser.parse();
+				parsed = System.nanoTime();
+				root = (JsonElement) analyzer.analyze(tree);
+				return root;
+			} finally {
+				long end = System.nanoTime();
+				lexer.timed = false;
+				interpreter.measured = false;
+				if(parsed == 0)
+					parsed = end;
+				MeasuringHandler measure = root == null ? new MeasuringHandler(null, null) : MeasuringHandler.walk(root);
+				listener.compiled(new CompileMetrics(JsonEngine.GRAMMAR, source.length(), false, measure.tokens, measure.nodes,
+						measure.maxDepth, interpreter.stringHits, interpreter.stringMisses, lexer.nanos,
+						parsed - start - lexer.nanos, end - parsed, end - start, root == null));
+			}
 		}
-		return null;
 	}
 	
 	
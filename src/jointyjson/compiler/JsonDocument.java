@@ -0,0 +1,480 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonLimitException;
+import jointyjson.stream.JsonLimits;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Defines a JSON document whose text is edited, keeping its JSON composite structure up to date.
+ * An edit replaces a range of the text, then only the smallest value enclosing the range is re-parsed and
+ * its new element replaces the old one in its container: the other elements keep their identity,
+ * and the parsing cost of an edit depends on the size of the edited value rather than on the size of the document.
+ * The edits changing only the blanks between two values re-parse nothing.<br>
+ * The document records the range of the text of every value. When the edited value cannot be parsed alone,
+ * e.g. because the edit added a comma or removed a bracket, its container is re-parsed, up to the whole document.
+ * An edit can leave the text not valid: the structure is kept as it was before that edit, and the following edits
+ * re-parse the whole text until it is valid again.<br>
+ * The document uses the direct scanner with the settings of its compiler, whatever the engine of the compiler,
+ * and it enforces the {@link JsonCompiler#getLimits() limits} of the compiler on the whole text after each edit.
+ * The structure must not be modified or frozen by the caller while the document is edited, and a document is not thread-safe.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonDocument {
+	private static final Span[] NO_CHILDREN = new Span[0];
+
+	private final JsonCompiler compiler;
+	private String text;
+	private JsonElement root;
+	// the ranges of the values, null while the text is not valid
+	private Span span;
+	// the element built by the last edit applied inside the root
+	private JsonElement rebuilt;
+	// the change of the number of values made by the last edit applied inside the root
+	private int grown;
+
+	/**
+	 * Creates a document parsed by the {@link JsonCompiler#shared() shared compiler}
+	 * @param source the initial text
+	 * @throws UnexpectedSymbolException if the text contains some syntactic error.
+	 */
+	public JsonDocument(String source) throws UnexpectedSymbolException {
+		this(source, JsonCompiler.shared());
+	}
+
+	/**
+	 * Creates a document parsed with the settings of the specified compiler
+	 * @param source the initial text
+	 * @param compiler the compiler whose settings are used to build the structure
+	 * @throws UnexpectedSymbolException if the text contains some syntactic error.
+	 * @throws JsonLimitException if the text exceeds the limits of the compiler.
+	 */
+	public JsonDocument(String source, JsonCompiler compiler) throws UnexpectedSymbolException {
+		if(source == null)
+			throw new NullPointerException("source cannot be null");
+		if(compiler == null)
+			throw new NullPointerException("compiler cannot be null");
+		this.compiler = compiler;
+		this.text = source;
+		parseAll();
+	}
+
+	/**
+	 * Gets the current text of this document
+	 * @return the text, including the edits that made it not valid
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Gets the root of the JSON composite structure
+	 * @return the root built from the last valid text
+	 */
+	public JsonElement getRoot() {
+		return root;
+	}
+
+	/**
+	 * Tells whether the current text is valid, so that the structure reflects it
+	 * @return false if the last edit left the text with some syntactic error
+	 */
+	public boolean isValid() {
+		return span != null;
+	}
+
+	/**
+	 * Replaces a range of the text and updates the structure
+	 * @param offset the start of the replaced range
+	 * @param length the length of the replaced range, 0 to insert
+	 * @param replacement the text replacing the range, empty to delete
+	 * @return the element built for the smallest value enclosing the edit, that is the new root if the whole text
+	 * has been re-parsed, or null if the edit changed only the blanks between two values
+	 * @throws IndexOutOfBoundsException if the range exceeds the text
+	 * @throws UnexpectedSymbolException if the edited text contains some syntactic error. The text is edited anyway.
+	 * @throws JsonLimitException if the edited text exceeds the limits of the compiler. The text is edited anyway,
+	 * and it is not valid until it fits the limits again.
+	 */
+	public JsonElement edit(int offset, int length, String replacement) throws UnexpectedSymbolException {
+		if(replacement == null)
+			throw new NullPointerException("replacement cannot be null");
+		if(offset < 0 || length < 0 || offset > text.length() - length)
+			throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") out of a text of length " + text.length());
+		String old = text;
+		text = new StringBuilder(old.length() - length + replacement.length())
+				.append(old, 0, offset).append(replacement).append(old, offset + length, old.length()).toString();
+		Span root = span;
+		if(root == null || text.length() > compiler.getLimits().getMaxInputLength())
+			return parseAll();
+		int end = offset + length;
+		if(end <= root.start || offset >= root.end()) {
+			// the edit is before or after the root value
+			boolean before = end <= root.start;
+			if(isBlank(old, offset, end) && isBlank(replacement, 0, replacement.length())
+					&& !hasComment(old, before ? 0 : root.end(), before ? root.start : old.length())) {
+				if(before)
+					root.start = root.key += replacement.length() - length;
+				return null;
+			}
+		} else if(offset >= root.start && end <= root.end() && edit(old, root, root.start, this.root, 1, offset, length, replacement))
+			return rebuilt;
+		return parseAll();
+	}
+
+	/**
+	 * Re-parses the whole text
+	 */
+	private JsonElement parseAll() throws UnexpectedSymbolException {
+		span = null;
+		JsonLimits limits = compiler.getLimits();
+		limits.checkInputLength(text.length());
+		Recorder recorder = new Recorder(new JsonParser(text, compiler.views()));
+		recorder.parser.parse(limits.wrap(recorder));
+		root = recorder.builder.getRoot();
+		span = recorder.root;
+		return root;
+	}
+
+	/**
+	 * Applies an edit falling inside a container, re-parsing the smallest value enclosing it
+	 * @param old the text before the edit
+	 * @param container the ranges of the container
+	 * @param base the position of the container, that precedes the edit
+	 * @param element the container
+	 * @param depth the nesting depth of the container, the root being at depth 1
+	 * @return false if the edit cannot be applied inside the container, that must be re-parsed
+	 */
+	private boolean edit(String old, Span container, int base, JsonElement element, int depth, int offset, int length, String replacement) {
+		int from = offset - base;
+		int to = from + length;
+		int delta = replacement.length() - length;
+		Span[] children = container.children;
+		int size = container.size;
+		// the blanks between the values ending before the edit and the following value
+		int gap = container.ending(from);
+		int gapStart = gap > 0 ? children[gap - 1].end() : 1;
+		int gapEnd = gap < size ? children[gap].key : container.length - 1;
+		int index = -1;
+		if(from >= gapStart && to <= gapEnd) {
+			if(isBlank(old, offset, offset + length) && isBlank(replacement, 0, replacement.length())
+					&& !hasComment(old, base + gapStart, base + gapEnd)) {
+				container.shift(gap, delta);
+				rebuilt = null;
+				grown = 0;
+				return true;
+			}
+			// an insertion can extend the value at its boundaries, leaving the separators in place
+			if(length == 0 && from == gapStart && gap > 0)
+				index = gap - 1;
+			else if(length == 0 && to == gapEnd && gap < size && children[gap].key == children[gap].start)
+				index = gap;
+		} else if(gap < size && from >= children[gap].start && to <= children[gap].end())
+			index = gap;
+		if(index < 0 || container.duplicates)
+			return false;
+
+		Span child = children[index];
+		JsonElement value = container.object ? ((JsonObject) element).get(child.name.toString()) : ((JsonArray) element).get(index);
+		if(child.children != null && from >= child.start && to <= child.end()
+				&& edit(old, child, base + child.start, value, depth + 1, offset, length, replacement)) {
+			container.shift(index + 1, delta);
+			container.nodes += grown;
+			return true;
+		}
+
+		// re-parse the value as the only element of an array, limiting it by what the rest of the document leaves,
+		// so that a value exceeding the limits makes the whole text re-parsed and rejected
+		int start = base + Math.min(from, child.start);
+		int end = base + Math.max(to, child.end()) + delta;
+		JsonLimits limits = compiler.getLimits();
+		if(limits.isValueLimited())
+			limits = limits.withMaxDepth(limits.getMaxDepth() - depth + 1)
+					.withMaxNodes(limits.getMaxNodes() - (span.nodes - child.nodes) + 1);
+		Recorder recorder = new Recorder(new JsonParser(text, start, end, compiler.views()));
+		try {
+			recorder.parser.parseElements(limits.wrap(recorder));
+		} catch (UnexpectedSymbolException | JsonLimitException e) {
+			return false;
+		}
+		if(recorder.root.size != 1)
+			return false;
+		Span parsed = recorder.root.children[0];
+		// a line comment ending the range would extend past it
+		if(hasComment(text, start + parsed.end(), end))
+			return false;
+		parsed.start += start - base;
+		parsed.key = container.object ? child.key : parsed.start;
+		parsed.name = child.name;
+		value = ((JsonArray) recorder.builder.getRoot()).get(0);
+		if(container.object)
+			((JsonObject) element).put(child.name, value);
+		else
+			((JsonArray) element).set(index, value);
+		children[index] = parsed;
+		container.shift(index + 1, delta);
+		grown = parsed.nodes - child.nodes;
+		container.nodes += grown;
+		rebuilt = value;
+		return true;
+	}
+
+	/**
+	 * Tells whether a range contains only white spaces
+	 */
+	private static boolean isBlank(String text, int start, int end) {
+		for(int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if(c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\f' && c != '\u000B')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether a range between two values can contain a comment, whose meaning a blank could change
+	 */
+	private static boolean hasComment(String text, int start, int end) {
+		for(int i = start; i < end; i++)
+			if(text.charAt(i) == '/')
+				return true;
+		return false;
+	}
+
+	/**
+	 * The range of the text of a value. The positions are relative to the position of the enclosing container,
+	 * so an edit shifts only the following values of the containers enclosing it.
+	 */
+	private static final class Span {
+		// the position of the field name of an object field, that is the position of the value for the other values
+		int key;
+		int start;
+		int length;
+		// the name of an object field
+		JsonString name;
+		// the values of a container in text order, null for a string, a number, a boolean or null
+		Span[] children;
+		int size;
+		boolean object;
+		// whether an object repeats some field name, so its values cannot be replaced by name
+		boolean duplicates;
+		// the number of values of this value, that is 1 plus the number of values of the contents of a container
+		int nodes = 1;
+
+		int end() {
+			return start + length;
+		}
+
+		/**
+		 * Counts the values of this container ending at or before the specified position
+		 */
+		int ending(int position) {
+			int low = 0, high = size;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(children[middle].end() <= position)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		/**
+		 * Shifts the values of this container from the specified index, resizing the container
+		 */
+		void shift(int from, int delta) {
+			if(delta == 0)
+				return;
+			for(int i = from; i < size; i++) {
+				children[i].key += delta;
+				children[i].start += delta;
+			}
+			length += delta;
+		}
+
+		void add(Span child) {
+			if(size == children.length)
+				children = Arrays.copyOf(children, Math.max(4, size * 2));
+			children[size++] = child;
+		}
+
+		boolean hasDuplicates() {
+			if(size <= 8) {
+				for(int i = 1; i < size; i++)
+					for(int j = 0; j < i; j++)
+						if(children[i].name.equals(children[j].name))
+							return true;
+				return false;
+			}
+			Set<JsonString> names = new HashSet<>();
+			for(int i = 0; i < size; i++)
+				if(!names.add(children[i].name))
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * Builds the structure of a parsed range and records the ranges of its values
+	 */
+	private final class Recorder implements JsonHandler {
+		final JsonParser parser;
+		final JsonTreeBuilder builder = compiler.builder();
+		Span root;
+
+		// the open containers and their positions
+		private Span[] open = new Span[32];
+		private int[] bases = new int[32];
+		private int depth;
+
+		// the pending field name and the position of its quote
+		private JsonString name;
+		private int key;
+
+		Recorder(JsonParser parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public void startObject() {
+			open(true);
+			builder.startObject();
+		}
+
+		@Override
+		public void field(CharSequence name) {
+			this.name = builder.getPool().intern(name);
+			key = parser.tokenStart() - 1;
+			builder.field(name);
+		}
+
+		@Override
+		public void endObject() {
+			Span span = close();
+			span.duplicates = span.size > 1 && span.hasDuplicates();
+			builder.endObject();
+		}
+
+		@Override
+		public void startArray() {
+			open(false);
+			builder.startArray();
+		}
+
+		@Override
+		public void endArray() {
+			close();
+			builder.endArray();
+		}
+
+		@Override
+		public void stringValue(CharSequence value) {
+			value(parser.tokenStart() - 1);
+			builder.stringValue(value);
+		}
+
+		@Override
+		public void numberValue(double value) {
+			value(parser.tokenStart());
+			builder.numberValue(value);
+		}
+
+		@Override
+		public void numberValue(CharSequence text) {
+			value(parser.tokenStart());
+			builder.numberValue(text);
+		}
+
+		@Override
+		public void booleanValue(boolean value) {
+			value(parser.position() - (value ? 4 : 5));
+			builder.booleanValue(value);
+		}
+
+		@Override
+		public void nullValue() {
+			value(parser.position() - 4);
+			builder.nullValue();
+		}
+
+		/**
+		 * Records a string, a number, a boolean or null, whose text ends at the current position
+		 */
+		private void value(int start) {
+			add(new Span(), start).length = parser.position() - start;
+			if(depth > 0)
+				open[depth - 1].nodes++;
+		}
+
+		private void open(boolean object) {
+			int start = parser.position();
+			Span span = add(new Span(), start);
+			span.object = object;
+			span.children = NO_CHILDREN;
+			if(depth == open.length) {
+				open = Arrays.copyOf(open, depth * 2);
+				bases = Arrays.copyOf(bases, depth * 2);
+			}
+			open[depth] = span;
+			bases[depth++] = start;
+		}
+
+		/**
+		 * Closes the innermost container, whose text ends at the current position
+		 */
+		private Span close() {
+			Span span = open[--depth];
+			open[depth] = null;
+			span.length = parser.position() - bases[depth];
+			if(depth > 0)
+				open[depth - 1].nodes += span.nodes;
+			return span;
+		}
+
+		private Span add(Span span, int start) {
+			span.key = span.start = start;
+			if(depth == 0) {
+				root = span;
+				return span;
+			}
+			Span parent = open[depth - 1];
+			int base = bases[depth - 1];
+			span.start -= base;
+			if(parent.object) {
+				span.key = key - base;
+				span.name = name;
+			} else
+				span.key = span.start;
+			parent.add(span);
+			return span;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+/**
+ * Defines the parsing engines a {@link JsonCompiler} can use to build the JSON composite structure.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum JsonEngine {
+	/**
+	 * Scans the source characters in a single pass and builds the JSON structure directly.
+	 * It is the default engine.
+	 */
+	DIRECT,
+
+	/**
+	 * Compiles the source through the JointyC lexer, parser and interpreter generated from Json.jdl.
+	 * Use it when the grammar or the interpreter must be customized.
+	 */
+	GRAMMAR
+}
@@ -0,0 +1,258 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import jointyc.analysis.lexer.StandardLexer;
+import jointyc.analysis.parser.EditableParser;
+import jointyc.analysis.parser.Parser;
+import jointyc.analysis.parser.StandardParser;
+import jointyc.analysis.parser.exception.InfiniteRecursionException;
+import jointyc.analysis.parser.exception.InvalidRuleNameException;
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyc.analysis.semantic.exception.SemanticException;
+import jointyc.jdlc.JdlCompiler;
+
+/**
+ * Defines the precompiled form of the Json.jdl grammar used by the {@link JsonEngine#GRAMMAR} engine:
+ * the token types of the lexicon and the rules of the grammar, as the JDL compiler declares them.
+ * Building a grammar compiler from this form skips the parsing of Json.jdl,
+ * that is the most expensive part of the creation of a grammar compiler.<br>
+ * The precompiled form is serialized at build time by {@link #main(String[])} into the {@value #RESOURCE} resource,
+ * next to Json.jdl, and it is loaded once per process. If the resource is missing, or it has been built
+ * from another version of Json.jdl, the grammar is compiled from Json.jdl at run time.
+ * @author Salvatore Giampa'
+ *
+ */
+final class JsonGrammar implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final String SOURCE = "Json.jdl";
+	static final String RESOURCE = "Json.grammar";
+
+	// the grammar of the process, loaded on the first use
+	private static volatile JsonGrammar instance;
+
+	// the token types in priority order, with their regular expressions, descriptions and whether they are skipped
+	private final String[] types;
+	private final String[] regexes;
+	private final String[] descriptions;
+	private final boolean[] skippable;
+
+	// the productions of each rule head, in declaration order
+	private final String axiom;
+	private final LinkedHashMap<String, List<List<String>>> rules;
+
+	// the hash of the Json.jdl source this grammar has been compiled from
+	private final int sourceHash;
+
+	private JsonGrammar(String[] types, String[] regexes, String[] descriptions, boolean[] skippable,
+			String axiom, LinkedHashMap<String, List<List<String>>> rules, int sourceHash) {
+		this.types = types;
+		this.regexes = regexes;
+		this.descriptions = descriptions;
+		this.skippable = skippable;
+		this.axiom = axiom;
+		this.rules = rules;
+		this.sourceHash = sourceHash;
+	}
+
+	/**
+	 * Gets the grammar of the process, loading it on the first call
+	 * @return the grammar
+	 * @throws IllegalStateException if the grammar can be neither loaded nor compiled
+	 */
+	static JsonGrammar get() {
+		JsonGrammar grammar = instance;
+		if(grammar == null) {
+			synchronized(JsonGrammar.class) {
+				grammar = instance;
+				if(grammar == null)
+					instance = grammar = loadOrCompile();
+			}
+		}
+		return grammar;
+	}
+
+	/**
+	 * Creates a new parser of the grammar, whose state is not shared with the other parsers
+	 * @return the parser, with its lexer
+	 */
+	StandardParser newParser() {
+		StandardLexer lexer = new StandardLexer();
+		for(int i = 0; i < types.length; i++)
+			lexer.addType(types[i], regexes[i], descriptions[i], skippable[i]);
+		StandardParser parser = new StandardParser();
+		try {
+			for(Entry<String, List<List<String>>> rule : rules.entrySet())
+				for(List<String> production : rule.getValue())
+					parser.addRule(rule.getKey(), production);
+		} catch (InfiniteRecursionException | InvalidRuleNameException e) {
+			// the rules have already been accepted by the JDL compiler
+			throw new IllegalStateException("invalid precompiled grammar", e);
+		}
+		parser.setAxiom(axiom);
+		parser.setLexer(lexer);
+		return parser;
+	}
+
+	/**
+	 * Compiles the grammar from Json.jdl
+	 * @return the compiled grammar
+	 * @throws IOException if Json.jdl cannot be read
+	 * @throws UnexpectedSymbolException if Json.jdl contains some syntactic error
+	 * @throws SemanticException if Json.jdl contains some semantic error
+	 */
+	static JsonGrammar compile() throws IOException, UnexpectedSymbolException, SemanticException {
+		String source = readSource();
+		Parser parser = new JdlCompiler().compileSource(source, new JsonInterpreter()).getParser();
+
+		// the lexicon is not exposed by the lexer, except for the single types
+		StandardLexer lexer = (StandardLexer) parser.getLexer();
+		List<String> typeList = new ArrayList<>();
+		Collection<?> skippableSet;
+		try {
+			Field regexTable = StandardLexer.class.getDeclaredField("regexTable");
+			regexTable.setAccessible(true);
+			for(Object entry : (List<?>) regexTable.get(lexer)) {
+				Field type = entry.getClass().getField("type");
+				type.setAccessible(true);
+				typeList.add((String) type.get(entry));
+			}
+			Field skippableField = StandardLexer.class.getDeclaredField("skippableSet");
+			skippableField.setAccessible(true);
+			skippableSet = (Collection<?>) skippableField.get(lexer);
+		} catch (ReflectiveOperationException e) {
+			throw new IOException("cannot read the lexicon compiled from " + SOURCE, e);
+		}
+		int count = typeList.size();
+		String[] types = typeList.toArray(new String[count]);
+		String[] regexes = new String[count];
+		String[] descriptions = new String[count];
+		boolean[] skippable = new boolean[count];
+		for(int i = 0; i < count; i++) {
+			regexes[i] = lexer.regex(types[i]);
+			descriptions[i] = lexer.description(types[i]);
+			skippable[i] = skippableSet.contains(types[i]);
+		}
+
+		// the rules reachable from the axiom
+		LinkedHashMap<String, List<List<String>>> rules = new LinkedHashMap<>();
+		Deque<String> heads = new ArrayDeque<>();
+		heads.add(parser.getAxiom());
+		while(!heads.isEmpty()) {
+			String head = heads.poll();
+			if(rules.containsKey(head))
+				continue;
+			List<List<String>> productions = new ArrayList<>();
+			for(List<String> production : parser.getRule(head)) {
+				productions.add(new ArrayList<>(production));
+				for(String product : production)
+					if(!product.startsWith(EditableParser.TERMINAL_PREFIX))
+						heads.add(product);
+			}
+			rules.put(head, productions);
+		}
+		return new JsonGrammar(types, regexes, descriptions, skippable, parser.getAxiom(), rules, source.hashCode());
+	}
+
+	/**
+	 * Loads the precompiled grammar
+	 * @return the grammar, or null if the resource is missing or it has been built from another version of Json.jdl
+	 */
+	private static JsonGrammar load() throws IOException {
+		InputStream input = JsonGrammar.class.getResourceAsStream(RESOURCE);
+		if(input == null)
+			return null;
+		JsonGrammar grammar;
+		try(ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(input))) {
+			grammar = (JsonGrammar) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			return null;
+		}
+		return grammar.sourceHash == readSource().hashCode() ? grammar : null;
+	}
+
+	/**
+	 * Serializes this grammar
+	 * @param out the output stream
+	 * @throws IOException if an I/O error occurs
+	 */
+	void save(OutputStream out) throws IOException {
+		ObjectOutputStream stream = new ObjectOutputStream(out);
+		stream.writeObject(this);
+		stream.flush();
+	}
+
+	private static String readSource() throws IOException {
+		try(InputStream input = JsonGrammar.class.getResourceAsStream(SOURCE)) {
+			if(input == null)
+				throw new IOException(SOURCE + " not found");
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int n;
+			while((n = input.read(buffer)) >= 0)
+				bytes.write(buffer, 0, n);
+			return new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+		}
+	}
+
+	/**
+	 * Compiles Json.jdl and writes the precompiled grammar into a classes directory, run at build time
+	 * @param args the classes directory
+	 * @throws Exception if the grammar cannot be compiled or written
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length != 1)
+			throw new IllegalArgumentException("usage: JsonGrammar <classes directory>");
+		File file = new File(args[0], JsonGrammar.class.getPackage().getName().replace('.', File.separatorChar) + File.separator + RESOURCE);
+		file.getParentFile().mkdirs();
+		try(OutputStream out = new FileOutputStream(file)) {
+			compile().save(out);
+		}
+	}
+
+	private static JsonGrammar loadOrCompile() {
+		try {
+			JsonGrammar grammar = load();
+			return grammar != null ? grammar : compile();
+		} catch (IOException | UnexpectedSymbolException | SemanticException e) {
+			throw new IllegalStateException("cannot load the JSON grammar", e);
+		}
+	}
+}
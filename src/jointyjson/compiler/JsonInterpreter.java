@@ -33,6 +33,9 @@ import jointyjson.model.JsonNull;
 import jointyjson.model.JsonNumber;
 import jointyjson.model.JsonObject;
 import jointyjson.model.JsonString;
+import jointyjson.model.JsonStringPool;
+import jointyjson.model.NumberMode;
+import jointyjson.model.ObjectStorage;
 
 /**
  * Defines the JSON interpreter that builds the model
@@ -40,10 +43,24 @@ import jointyjson.model.JsonString;
  *
  */
 public class JsonInterpreter implements Interpreter {
+	
+	// the pool used to intern names and string values
+	JsonStringPool pool = JsonStringPool.global();
+	
+	// the data structure of the fields of the built objects
+	ObjectStorage storage = ObjectStorage.SORTED;
+	
+	// the representation of the built numbers
+	NumberMode numberMode = NumberMode.DOUBLE;
+	
+	// whether the names and strings found in the pool are counted, while a metrics listener is set
+	boolean measured;
+	long stringHits;
+	long stringMisses;
 
 	@TerminalToken(type="json.number")
 	public JsonNumber number(SyntaxTree tree) {
-		return new JsonNumber(Double.valueOf(tree.token()));
+		return JsonNumber.valueOf(tree.token(), numberMode);
 	}
 	
 	@TerminalToken(type="json.unicode")
@@ -111,7 +128,7 @@ public class JsonInterpreter implements Interpreter {
 	
 	@NonTerminalToken(ruleHead="json.object")
 	public JsonObject jsonObject(JsonElement... keyValues) {
-		JsonObject obj = new JsonObject();
+		JsonObject obj = new JsonObject(storage);
 		for(int i=0; i<keyValues.length; i+=2) {
 			//<name 
 			JsonString name = (JsonString) keyValues[i];
@@ -120,7 +137,7 @@ public class JsonInterpreter implements Interpreter {
 			JsonElement value = (JsonElement) keyValues[i+1];
 			
 			//add the <name, value> to the new json object
-			obj.put(name.toString(), value);
+			obj.put(name, value);
 		}
 		return obj;
 	}
@@ -129,8 +146,13 @@ public class JsonInterpreter implements Interpreter {
 	public JsonArray jsonArray(JsonElement... elements) {
 		JsonArray array = new JsonArray();
 		for(JsonElement e : elements) {
-			//add the value to the array
-			array.add(e);
+			//add the value to the array, packing the primitive numbers
+			if(e instanceof JsonNumber && numberMode == NumberMode.DOUBLE)
+				array.add(((JsonNumber) e).get());
+			else if(e instanceof JsonNumber && ((JsonNumber) e).isLong())
+				array.add(((JsonNumber) e).getLong());
+			else
+				array.add(e);
 		}
 		return array;
 	}
@@ -142,6 +164,12 @@ public class JsonInterpreter implements Interpreter {
 		
 		for(String c : chars)
 			sb.append(c);
-		return JsonString.get(sb.toString());
+		if(measured) {
+			if(pool.contains(sb))
+				stringHits++;
+			else
+				stringMisses++;
+		}
+		return pool.intern(sb);
 	}
 }
@@ -0,0 +1,551 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyc.analysis.parser.exception.UnexpectedSymbolException.ExpectedTerminal;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonLimitException;
+import jointyjson.stream.JsonLimits;
+import jointyjson.stream.JsonLimits.Limit;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Defines the direct-scanning JSON parser used by the {@link JsonEngine#DIRECT} engine.
+ * It accepts the same language described by Json.jdl (comments included), scanning the source only once,
+ * and notifies the parsed values to a {@link JsonHandler}. The JSON composite structure of
+ * {@link JsonInterpreter} is obtained through a {@link JsonTreeBuilder}.
+ * A parser instance is meant to parse a single source.
+ * @author Salvatore Giampa'
+ *
+ */
+final class JsonParser {
+	private final String source;
+	private final int length;
+	private int position;
+	private JsonHandler handler;
+
+	// reused to unescape the strings containing control sequences
+	private final StringBuilder buffer = new StringBuilder();
+	// reused to notify the strings without control sequences
+	private final Slice slice;
+
+	// the range of the text of the last string or number, and whether the string contains control sequences
+	private int tokenStart;
+	private int tokenEnd;
+	private boolean tokenEscaped;
+
+	// the number of open objects and arrays, and the maximum allowed
+	private int depth;
+	private int maxDepth = Integer.MAX_VALUE;
+
+	// whether the string values are notified as views over the source
+	private final boolean views;
+
+	JsonParser(String source) {
+		this(source, 0, source.length());
+	}
+
+	/**
+	 * Creates a parser for the whole source
+	 * @param source the source
+	 * @param views true to notify the string values as views over the source, see {@link StringScope#VIEW}
+	 */
+	JsonParser(String source, boolean views) {
+		this(source, 0, source.length(), views);
+	}
+
+	/**
+	 * Creates a parser for a range of the source, such as a chunk of the elements of a top-level array
+	 * @param source the source
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 */
+	JsonParser(String source, int start, int end) {
+		this(source, start, end, false);
+	}
+
+	/**
+	 * Creates a parser for a range of the source
+	 * @param source the source
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @param views true to notify the string values as views over the source, see {@link StringScope#VIEW}
+	 */
+	JsonParser(String source, int start, int end, boolean views) {
+		this.source = source;
+		this.length = end;
+		this.position = start;
+		this.slice = new Slice(source);
+		this.views = views;
+	}
+
+	/**
+	 * Limits the nesting depth of the parsed source, that is checked by the parser itself since it recurses
+	 * on the nested objects and arrays
+	 * @param maxDepth the maximum number of nested objects and arrays, see {@link JsonLimits#getMaxDepth()}
+	 * @return this parser
+	 */
+	JsonParser limitDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Parses the whole source and builds the JSON composite structure
+	 * @param builder the builder of the structure
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
+	 */
+	JsonElement build(JsonTreeBuilder builder) throws UnexpectedSymbolException {
+		parse(builder);
+		return builder.getRoot();
+	}
+
+	/**
+	 * Parses the comma separated values of the range of this parser and builds an array holding them
+	 * @param builder the builder of the structure
+	 * @return the array of the parsed values
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	JsonElement buildElements(JsonTreeBuilder builder) throws UnexpectedSymbolException {
+		parseElements(builder);
+		return builder.getRoot();
+	}
+
+	/**
+	 * Gets the current position in the source, that is the position of the opening character
+	 * while a container start is notified
+	 */
+	int position() {
+		return position;
+	}
+
+	/**
+	 * Gets the start of the text of the string or the number being notified, excluding the quotes of a string
+	 */
+	int tokenStart() {
+		return tokenStart;
+	}
+
+	/**
+	 * Gets the end of the text of the string or the number being notified, excluding the quotes of a string
+	 */
+	int tokenEnd() {
+		return tokenEnd;
+	}
+
+	/**
+	 * Tells whether the string being notified contains control sequences
+	 */
+	boolean isTokenEscaped() {
+		return tokenEscaped;
+	}
+
+	/**
+	 * Parses the whole source notifying the parsed values to the specified handler
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source string contains some syntactic error.
+	 */
+	void parse(JsonHandler handler) throws UnexpectedSymbolException {
+		this.handler = handler;
+		skipBlanks();
+		char c = position < length ? source.charAt(position) : 0;
+		if(c == '{')
+			parseObject();
+		else if(c == '[')
+			parseArray();
+		else
+			throw unexpected("braceOpen", "brackOpen");
+
+		skipBlanks();
+		if(position < length)
+			throw unexpected("EOF");
+	}
+
+	/**
+	 * Parses the comma separated values of the range of this parser, notifying them as the elements of an array
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	void parseElements(JsonHandler handler) throws UnexpectedSymbolException {
+		this.handler = handler;
+		enter();
+		handler.startArray();
+		while(true) {
+			parseValue();
+
+			skipBlanks();
+			if(position >= length)
+				break;
+			if(source.charAt(position) != ',')
+				throw unexpected("comma", "brackClosed");
+			position++;
+		}
+		depth--;
+		handler.endArray();
+	}
+
+	private void parseObject() throws UnexpectedSymbolException {
+		enter();
+		handler.startObject();
+		position++;
+		skipBlanks();
+		if(position < length && source.charAt(position) == '}') {
+			position++;
+			depth--;
+			handler.endObject();
+			return;
+		}
+		while(true) {
+			if(position >= length || source.charAt(position) != '"')
+				throw unexpected("quote");
+			position++;
+			handler.field(parseString());
+
+			skipBlanks();
+			if(position >= length || source.charAt(position) != ':')
+				throw unexpected("colon");
+			position++;
+			parseValue();
+
+			skipBlanks();
+			char c = position < length ? source.charAt(position) : 0;
+			position++;
+			if(c == '}') {
+				depth--;
+				handler.endObject();
+				return;
+			}
+			if(c != ',') {
+				position--;
+				throw unexpected("comma", "braceClosed");
+			}
+			skipBlanks();
+		}
+	}
+
+	private void parseArray() throws UnexpectedSymbolException {
+		enter();
+		handler.startArray();
+		position++;
+		skipBlanks();
+		if(position < length && source.charAt(position) == ']') {
+			position++;
+			depth--;
+			handler.endArray();
+			return;
+		}
+		while(true) {
+			parseValue();
+
+			skipBlanks();
+			char c = position < length ? source.charAt(position) : 0;
+			position++;
+			if(c == ']') {
+				depth--;
+				handler.endArray();
+				return;
+			}
+			if(c != ',') {
+				position--;
+				throw unexpected("comma", "brackClosed");
+			}
+		}
+	}
+
+	private void enter() {
+		if(++depth > maxDepth)
+			throw new JsonLimitException(Limit.DEPTH, maxDepth);
+	}
+
+	private void parseValue() throws UnexpectedSymbolException {
+		skipBlanks();
+		char c = position < length ? source.charAt(position) : 0;
+		switch(c) {
+		case '{':
+			parseObject();
+			return;
+		case '[':
+			parseArray();
+			return;
+		case '"':
+			position++;
+			handler.stringValue(views ? parseView() : parseString());
+			return;
+		case 't':
+			parseLiteral("true", "boolean");
+			handler.booleanValue(true);
+			return;
+		case 'f':
+			parseLiteral("false", "boolean");
+			handler.booleanValue(false);
+			return;
+		case 'n':
+			parseLiteral("null", "null");
+			handler.nullValue();
+			return;
+		default:
+			if(c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+				parseNumber();
+				return;
+			}
+			throw unexpected("null", "quote", "number", "boolean", "braceOpen", "brackOpen");
+		}
+	}
+
+	/**
+	 * Parses a string whose opening quote has already been consumed
+	 * @return the decoded string, valid until the next string is parsed
+	 */
+	private CharSequence parseString() throws UnexpectedSymbolException {
+		int start = position;
+		boolean escaped = false;
+		tokenStart = start;
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c == '"') {
+				tokenEnd = position;
+				tokenEscaped = escaped;
+				CharSequence value;
+				if(escaped) {
+					buffer.append(source, start, position);
+					value = buffer;
+				} else
+					value = slice.set(start, position);
+				position++;
+				return value;
+			}
+			if(c == '\\') {
+				if(!escaped) {
+					escaped = true;
+					buffer.setLength(0);
+				}
+				buffer.append(source, start, position);
+				buffer.append(parseControl());
+				start = position;
+			} else
+				position++;
+		}
+		throw unexpected("quote");
+	}
+
+	/**
+	 * Parses a string whose opening quote has already been consumed, validating its control sequences without decoding them
+	 * @return the view over the text of the string
+	 */
+	private JsonString parseView() throws UnexpectedSymbolException {
+		int start = position;
+		boolean escaped = false;
+		tokenStart = start;
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c == '"') {
+				tokenEnd = position;
+				tokenEscaped = escaped;
+				position++;
+				return JsonString.view(source, start, tokenEnd, escaped);
+			}
+			if(c == '\\') {
+				escaped = true;
+				parseControl();
+			} else
+				position++;
+		}
+		throw unexpected("quote");
+	}
+
+	/**
+	 * Decodes the control sequence at the current position
+	 */
+	private char parseControl() throws UnexpectedSymbolException {
+		char c = position + 1 < length ? source.charAt(position + 1) : 0;
+		switch(c) {
+		case '"': position += 2; return '"';
+		case '\\': position += 2; return '\\';
+		case '/': position += 2; return '/';
+		case 'b': position += 2; return '\b';
+		case 'f': position += 2; return '\f';
+		case 'n': position += 2; return '\n';
+		case 'r': position += 2; return '\r';
+		case 't': position += 2; return '\t';
+		case 'u':
+			if(position + 6 <= length) {
+				int code = 0;
+				for(int i = position + 2; i < position + 6; i++) {
+					int digit = Character.digit(source.charAt(i), 16);
+					if(digit < 0)
+						throw unexpected("ctrlHex");
+					code = (code << 4) | digit;
+				}
+				position += 6;
+				return (char) code;
+			}
+			throw unexpected("ctrlHex");
+		default:
+			throw unexpected("ctrlQuote", "ctrlBackSlash", "ctrlSlash", "ctrlBackSpace", "ctrlFormFeed",
+					"ctrlNewLine", "ctrlCarriageRetun", "ctrlHorizontalTab", "ctrlHex");
+		}
+	}
+
+	private void parseNumber() throws UnexpectedSymbolException {
+		int start = position;
+		if(source.charAt(position) == '-')
+			position++;
+		int digits = skipDigits();
+		if(position < length && source.charAt(position) == '.') {
+			position++;
+			digits += skipDigits();
+		}
+		if(digits == 0) {
+			position = start;
+			throw unexpected("number");
+		}
+		if(position < length && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+			position++;
+			if(position < length && (source.charAt(position) == '+' || source.charAt(position) == '-'))
+				position++;
+			if(skipDigits() == 0)
+				throw unexpected("number");
+		}
+		tokenStart = start;
+		tokenEnd = position;
+		handler.numberValue(slice.set(start, position));
+	}
+
+	private int skipDigits() {
+		int start = position;
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c < '0' || c > '9')
+				break;
+			position++;
+		}
+		return position - start;
+	}
+
+	private void parseLiteral(String literal, String type) throws UnexpectedSymbolException {
+		if(!source.startsWith(literal, position))
+			throw unexpected(type);
+		position += literal.length();
+	}
+
+	/**
+	 * Skips white spaces and comments, as the skippable tokens of Json.jdl do
+	 */
+	private void skipBlanks() throws UnexpectedSymbolException {
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\u000B')
+				position++;
+			else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '*') {
+				int end = source.indexOf("*/", position + 2);
+				if(end < 0 || end + 2 > length)
+					throw unexpected("comment");
+				position = end + 2;
+			} else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '/') {
+				int end = source.indexOf('\n', position + 2);
+				position = end < 0 || end > length ? length : end;
+			} else
+				return;
+		}
+	}
+
+	private UnexpectedSymbolException unexpected(String... types) {
+		Set<ExpectedTerminal> expected = new HashSet<>();
+		for(String type : types)
+			expected.add(new ExpectedTerminal(position, "json." + type, description(type)));
+		String token = position < length ? String.valueOf(source.charAt(position)) : null;
+		return new UnexpectedSymbolException(expected, token, Math.min(position, length), source);
+	}
+
+	/**
+	 * Gets the same token descriptions declared in Json.jdl, quoted as the grammar lexer reports them
+	 */
+	static String description(String type) {
+		switch(type) {
+		case "braceOpen": return "'json object'";
+		case "braceClosed": return "'}'";
+		case "brackOpen": return "'json array'";
+		case "brackClosed": return "']'";
+		case "comma": return "','";
+		case "colon": return "':'";
+		case "quote": return "'quote'";
+		case "boolean": return "'boolean'";
+		case "null": return "'null'";
+		case "number": return "'number'";
+		case "ctrlQuote": return "'quotation mark (\\ followed by a quote)'";
+		case "ctrlBackSlash": return "'backslash mark (\\\\)'";
+		case "ctrlSlash": return "'slash mark (\\/)'";
+		case "ctrlBackSpace": return "'backspace mark (\\b)'";
+		case "ctrlFormFeed": return "'formfeed mark (\\f)'";
+		case "ctrlNewLine": return "'new line mark (\\n)'";
+		case "ctrlCarriageRetun": return "'carraige return mark (\\r)'";
+		case "ctrlHorizontalTab": return "'horizontal tab mark (\\t)'";
+		case "ctrlHex": return "'\\u followed by 4 hexadecimal characters'";
+		case "comment": return "'end of comment'";
+		case "EOF": return "'end of input'";
+		default: return "'" + type + "'";
+		}
+	}
+
+	/**
+	 * A reusable view over a range of the source
+	 */
+	private static final class Slice implements CharSequence {
+		private final String source;
+		private int start;
+		private int end;
+
+		Slice(String source) {
+			this.source = source;
+		}
+
+		Slice set(int start, int end) {
+			this.start = start;
+			this.end = end;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return source.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return source.substring(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return source.substring(start, end);
+		}
+	}
+}
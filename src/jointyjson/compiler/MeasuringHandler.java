@@ -0,0 +1,245 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import jointyjson.metrics.CompileMetrics;
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonBoolean;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.model.JsonStringPool;
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Defines the handler that counts the tokens, the nodes and the depth of a document while passing its events
+ * to another handler, as reported by {@link CompileMetrics}. It is interposed only while a metrics listener is set.
+ * @author Salvatore Giampa'
+ *
+ */
+final class MeasuringHandler implements JsonHandler {
+	// the handler of the structures walked after being built
+	private static final JsonHandler NONE = new JsonHandler() {
+		@Override public void startObject() {}
+		@Override public void field(CharSequence name) {}
+		@Override public void endObject() {}
+		@Override public void startArray() {}
+		@Override public void endArray() {}
+		@Override public void stringValue(CharSequence value) {}
+		@Override public void numberValue(double value) {}
+		@Override public void numberValue(CharSequence text) {}
+		@Override public void booleanValue(boolean value) {}
+		@Override public void nullValue() {}
+	};
+
+	private final JsonHandler target;
+	private final JsonStringPool pool;
+
+	// the kinds of the open containers, and whether they already have a member, to count the commas
+	private boolean[] objects = new boolean[32];
+	private boolean[] members = new boolean[32];
+	private int depth;
+
+	long tokens;
+	long nodes;
+	int maxDepth;
+	long stringHits;
+	long stringMisses;
+
+	/**
+	 * Creates a handler that measures the events passed to the specified handler
+	 * @param target the handler receiving the events
+	 * @param pool the pool where the target interns the names and the strings, or null if it does not intern them
+	 */
+	MeasuringHandler(JsonHandler target, JsonStringPool pool) {
+		this.target = target;
+		this.pool = pool;
+	}
+
+	/**
+	 * Measures a built structure, walking it
+	 * @param root the root of the structure
+	 * @return the measures of the structure
+	 */
+	static MeasuringHandler walk(JsonElement root) {
+		MeasuringHandler measure = new MeasuringHandler(NONE, null);
+		measure.walkElement(root);
+		return measure;
+	}
+
+	/**
+	 * Joins the measures of the chunks of a top-level array, whose brackets have been counted by each chunk
+	 * @param chunks the measures of the chunks
+	 * @return the measures of the whole array
+	 */
+	static MeasuringHandler join(Collection<MeasuringHandler> chunks) {
+		MeasuringHandler joined = new MeasuringHandler(NONE, null);
+		for(MeasuringHandler chunk : chunks) {
+			joined.tokens += chunk.tokens;
+			joined.nodes += chunk.nodes;
+			joined.maxDepth = Math.max(joined.maxDepth, chunk.maxDepth);
+			joined.stringHits += chunk.stringHits;
+			joined.stringMisses += chunk.stringMisses;
+		}
+		// the chunks share one array, and two brackets become the comma between two chunks
+		int extra = Math.max(chunks.size() - 1, 0);
+		joined.tokens -= extra;
+		joined.nodes -= extra;
+		return joined;
+	}
+
+	@Override
+	public void startObject() {
+		start(true);
+		target.startObject();
+	}
+
+	@Override
+	public void field(CharSequence name) {
+		member();
+		tokens += 2;
+		lookup(name);
+		target.field(name);
+	}
+
+	@Override
+	public void endObject() {
+		end();
+		target.endObject();
+	}
+
+	@Override
+	public void startArray() {
+		start(false);
+		target.startArray();
+	}
+
+	@Override
+	public void endArray() {
+		end();
+		target.endArray();
+	}
+
+	@Override
+	public void stringValue(CharSequence value) {
+		value();
+		// the views are not interned
+		if(!(value instanceof JsonString && ((JsonString) value).isView()))
+			lookup(value);
+		target.stringValue(value);
+	}
+
+	@Override
+	public void numberValue(double value) {
+		value();
+		target.numberValue(value);
+	}
+
+	@Override
+	public void numberValue(CharSequence text) {
+		value();
+		target.numberValue(text);
+	}
+
+	@Override
+	public void booleanValue(boolean value) {
+		value();
+		target.booleanValue(value);
+	}
+
+	@Override
+	public void nullValue() {
+		value();
+		target.nullValue();
+	}
+
+	/**
+	 * Counts a value, preceded by a comma if it is not the first element of an array
+	 */
+	private void value() {
+		if(depth > 0 && !objects[depth])
+			member();
+		tokens++;
+		nodes++;
+	}
+
+	private void member() {
+		if(members[depth])
+			tokens++;
+		else
+			members[depth] = true;
+	}
+
+	private void start(boolean object) {
+		value();
+		if(++depth == objects.length) {
+			boolean[] grownObjects = new boolean[depth * 2];
+			boolean[] grownMembers = new boolean[depth * 2];
+			System.arraycopy(objects, 0, grownObjects, 0, depth);
+			System.arraycopy(members, 0, grownMembers, 0, depth);
+			objects = grownObjects;
+			members = grownMembers;
+		}
+		objects[depth] = object;
+		members[depth] = false;
+		if(depth > maxDepth)
+			maxDepth = depth;
+	}
+
+	private void end() {
+		tokens++;
+		depth--;
+	}
+
+	private void lookup(CharSequence string) {
+		if(pool == null)
+			return;
+		if(pool.contains(string))
+			stringHits++;
+		else
+			stringMisses++;
+	}
+
+	private void walkElement(JsonElement element) {
+		if(element instanceof JsonObject) {
+			startObject();
+			for(Entry<JsonString, JsonElement> entry : ((JsonObject) element).getEntries()) {
+				field(entry.getKey().toString());
+				walkElement(entry.getValue());
+			}
+			endObject();
+		} else if(element instanceof JsonArray) {
+			startArray();
+			for(JsonElement child : (JsonArray) element)
+				walkElement(child);
+			endArray();
+		} else if(element instanceof JsonString)
+			stringValue(element.toString());
+		else if(element instanceof JsonNumber)
+			numberValue(((JsonNumber) element).get());
+		else if(element instanceof JsonBoolean)
+			booleanValue(((JsonBoolean) element).getValue());
+		else
+			nullValue();
+	}
+}
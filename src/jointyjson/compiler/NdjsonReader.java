@@ -0,0 +1,407 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyc.analysis.parser.exception.UnexpectedSymbolException.ExpectedTerminal;
+import jointyjson.model.JsonElement;
+import jointyjson.stream.MalformedJsonException;
+
+/**
+ * Defines a reader of newline-delimited JSON (JSON Lines), that compiles each line of an UTF-8 encoded stream
+ * as a separate document, with the settings of a {@link JsonCompiler} (string scope, object storage, number mode).
+ * Each line contains a value of any type, the lines containing only blanks or comments are skipped.<br>
+ * The stream is read in batches of lines, that are compiled in parallel by the direct scanner
+ * whatever the engine of the compiler. At most the number of batches set by {@link #setQueueCapacity(int)}
+ * is read ahead of the consumer, so the memory used does not depend on the stream size.
+ * The compiled documents are delivered in the order of the lines, or in the order the batches are compiled
+ * if the order is not required, by iterating over this reader, by {@link #forEach(java.util.function.Consumer)}
+ * or by {@link #stream()}.<br>
+ * A reader can be iterated only once. The settings of the reader and of the compiler must not be changed
+ * while the reader is iterated. Since iterators cannot throw checked exceptions, I/O errors are thrown as
+ * {@link UncheckedIOException}, whose cause is a {@link MalformedJsonException} for the malformed lines.
+ * @author Salvatore Giampa'
+ *
+ */
+public class NdjsonReader implements Iterable<JsonElement>, Closeable {
+	/**
+	 * The default number of bytes read for each batch of lines
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1 << 16;
+
+	private static final AtomicInteger readers = new AtomicInteger();
+
+	private final InputStream input;
+	private final JsonCompiler compiler;
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int queueCapacity = -1;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private boolean ordered = true;
+	private boolean started;
+
+	// the bytes of the last read line not terminated yet
+	private byte[] carry = new byte[0];
+	private int carryLength;
+	private boolean eof;
+	// the stream position and the number of the first line of the next batch
+	private long offset;
+	private long line = 1;
+
+	private ExecutorService executor;
+	private final ArrayDeque<Future<List<JsonElement>>> pending = new ArrayDeque<>();
+	private CompletionService<List<JsonElement>> completion;
+	private int running;
+
+	/**
+	 * Creates a reader of the JSON lines of an UTF-8 encoded byte stream
+	 * @param input the byte stream to read
+	 * @param compiler the compiler whose settings are used to compile the lines
+	 */
+	public NdjsonReader(InputStream input, JsonCompiler compiler) {
+		if(input == null)
+			throw new NullPointerException("input cannot be null");
+		if(compiler == null)
+			throw new NullPointerException("compiler cannot be null");
+		this.input = input;
+		this.compiler = compiler;
+	}
+
+	/**
+	 * Creates a reader of the JSON lines of an UTF-8 encoded file
+	 * @param path the path of the file to read
+	 * @param compiler the compiler whose settings are used to compile the lines
+	 * @throws IOException if an I/O error occurs opening the file
+	 */
+	public NdjsonReader(Path path, JsonCompiler compiler) throws IOException {
+		this(Files.newInputStream(path), compiler);
+	}
+
+	/**
+	 * Sets the number of threads compiling the batches of lines.
+	 * With one thread the lines are compiled by the thread iterating over this reader.
+	 * @param threads the number of threads, the number of available processors by default
+	 */
+	public void setParallelism(int threads) {
+		checkNotStarted();
+		if(threads < 1)
+			throw new IllegalArgumentException("the number of threads must be positive");
+		parallelism = threads;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the maximum number of batches read ahead of the consumer, compiled or waiting to be compiled
+	 * @param capacity the number of batches, twice the number of threads by default
+	 */
+	public void setQueueCapacity(int capacity) {
+		checkNotStarted();
+		if(capacity < 1)
+			throw new IllegalArgumentException("the queue capacity must be positive");
+		queueCapacity = capacity;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity > 0 ? queueCapacity : 2 * parallelism;
+	}
+
+	/**
+	 * Sets the number of bytes read for each batch of lines. The lines longer than a batch are read whole.
+	 * @param size the size of a batch, {@link #DEFAULT_BATCH_SIZE} by default
+	 */
+	public void setBatchSize(int size) {
+		checkNotStarted();
+		if(size < 1)
+			throw new IllegalArgumentException("the batch size must be positive");
+		batchSize = size;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets whether the documents are delivered in the order of the lines (the default).
+	 * Otherwise the batches are delivered as soon as they are compiled, keeping the order of the lines of a batch.
+	 * @param ordered true to deliver the documents in the order of the lines
+	 */
+	public void setOrdered(boolean ordered) {
+		checkNotStarted();
+		this.ordered = ordered;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	/**
+	 * Gets the iterator over the compiled documents
+	 * @return the iterator over the compiled documents
+	 * @throws IllegalStateException if this reader has already been iterated
+	 */
+	@Override
+	public Iterator<JsonElement> iterator() {
+		checkNotStarted();
+		started = true;
+		if(parallelism > 1) {
+			executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+				Thread thread = new Thread(runnable, "ndjson-reader-" + readers.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			completion = new ExecutorCompletionService<>(executor);
+		}
+		return new Iterator<JsonElement>() {
+			private Iterator<JsonElement> batch = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while(!batch.hasNext()) {
+					List<JsonElement> next;
+					try {
+						next = nextBatch();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					if(next == null)
+						return false;
+					batch = next.iterator();
+				}
+				return true;
+			}
+
+			@Override
+			public JsonElement next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return batch.next();
+			}
+		};
+	}
+
+	/**
+	 * Gets a sequential stream of the compiled documents, that closes this reader when it is closed
+	 * @return the stream of the compiled documents
+	 * @throws IllegalStateException if this reader has already been iterated
+	 */
+	public Stream<JsonElement> stream() {
+		int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), characteristics), false)
+				.onClose(() -> {
+					try {
+						close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+	}
+
+	/**
+	 * Stops the compilation and closes the input stream
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		if(executor != null)
+			executor.shutdownNow();
+		pending.clear();
+		input.close();
+	}
+
+	private void checkNotStarted() {
+		if(started)
+			throw new IllegalStateException("the reader has already been iterated");
+	}
+
+	/**
+	 * Gets the documents of the next batch, keeping the queue of the batches full
+	 * @return the documents of the next batch, or null at the end of the stream
+	 */
+	private List<JsonElement> nextBatch() throws IOException {
+		if(executor == null) {
+			Batch batch = readBatch();
+			return batch == null ? null : batch.call();
+		}
+		int capacity = getQueueCapacity();
+		Batch batch;
+		while(running < capacity && (batch = readBatch()) != null) {
+			if(ordered)
+				pending.add(executor.submit(batch));
+			else
+				completion.submit(batch);
+			running++;
+		}
+		if(running == 0) {
+			executor.shutdown();
+			return null;
+		}
+		try {
+			Future<List<JsonElement>> result = ordered ? pending.poll() : completion.take();
+			running--;
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a batch");
+		} catch (ExecutionException e) {
+			close();
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Reads the complete lines of the next batch
+	 * @return the next batch, or null at the end of the stream
+	 */
+	private Batch readBatch() throws IOException {
+		if(eof && carryLength == 0)
+			return null;
+		byte[] data = new byte[Math.max(batchSize, carryLength * 2)];
+		System.arraycopy(carry, 0, data, 0, carryLength);
+		int length = carryLength;
+		int end;
+		while(true) {
+			while(!eof && length < data.length) {
+				int n = input.read(data, length, data.length - length);
+				if(n < 0)
+					eof = true;
+				else
+					length += n;
+			}
+			end = length;
+			while(end > 0 && data[end - 1] != '\n')
+				end--;
+			if(end > 0 || eof)
+				break;
+			// a line longer than the batch
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		if(eof)
+			end = length;
+		int start = 0;
+		if(offset == 0 && end >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB && data[2] == (byte) 0xBF)
+			// skips the byte order mark
+			start = 3;
+		carryLength = length - end;
+		if(carry.length < carryLength)
+			carry = new byte[Math.max(carryLength, carry.length * 2)];
+		System.arraycopy(data, end, carry, 0, carryLength);
+
+		Batch batch = new Batch(data, start, end, offset, line);
+		offset += end;
+		for(int i = start; i < end; i++)
+			if(data[i] == '\n')
+				line++;
+		return batch;
+	}
+
+	/**
+	 * A batch of complete lines, that compiles them into documents
+	 */
+	private final class Batch implements Callable<List<JsonElement>> {
+		private final byte[] data;
+		private final int start;
+		private final int end;
+		private final long offset;
+		private final long firstLine;
+
+		Batch(byte[] data, int start, int end, long offset, long firstLine) {
+			this.data = data;
+			this.start = start;
+			this.end = end;
+			this.offset = offset;
+			this.firstLine = firstLine;
+		}
+
+		@Override
+		public List<JsonElement> call() throws MalformedJsonException {
+			List<JsonElement> documents = new ArrayList<>();
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			long line = firstLine;
+			int position = start;
+			while(position < end) {
+				int lineEnd = position;
+				while(lineEnd < end && data[lineEnd] != '\n')
+					lineEnd++;
+				int next = lineEnd + 1;
+				if(lineEnd > position && data[lineEnd - 1] == '\r')
+					lineEnd--;
+				try {
+					JsonElement document = compiler.compileLine(buffer, position, lineEnd);
+					if(document != null)
+						documents.add(document);
+				} catch (UnexpectedSymbolException e) {
+					// the position of the stream is counted in bytes, not in decoded characters
+					int error = e instanceof Utf8Parser.Utf8SymbolException ? ((Utf8Parser.Utf8SymbolException) e).bytePosition : e.position;
+					throw malformed(e, line, offset + position + error);
+				}
+				position = next;
+				line++;
+			}
+			return documents;
+		}
+
+		private MalformedJsonException malformed(UnexpectedSymbolException e, long line, long position) {
+			StringBuilder expected = new StringBuilder();
+			for(ExpectedTerminal terminal : e.expected) {
+				if(expected.length() > 0)
+					expected.append(" or ");
+				// the token types are the ones of Json.jdl, such as json.colon
+				expected.append(JsonParser.description(terminal.tokenType.substring(terminal.tokenType.indexOf('.') + 1)));
+			}
+			String found = e.unexpected == null ? "end of line" : "\"" + e.unexpected + "\"";
+			return new MalformedJsonException("expected " + expected + " but found " + found + " in line " + line, position);
+		}
+	}
+}
@@ -0,0 +1,401 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyjson.model.JsonArray;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Defines the parser that compiles a large top-level array on a {@link ForkJoinPool}.
+ * A quick scan, aware of strings, control sequences and comments, finds the commas separating the elements
+ * of the root array every chunk size characters (or bytes). The elements between two such commas
+ * are parsed concurrently by the direct scanners, then the parsed chunks are concatenated in order.<br>
+ * The sources whose root is not an array, or whose root array is shorter than two chunks, are not compiled.
+ * The sources containing syntactic errors are not compiled too, so that the errors are reported by the sequential parsers.
+ * @author Salvatore Giampa'
+ *
+ */
+final class ParallelArrayParser {
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final boolean views;
+	private final int maxDepth;
+
+	/**
+	 * Creates a parallel parser
+	 * @param pool the pool on which the chunks are parsed
+	 * @param chunkSize the minimum number of characters (or bytes) of a chunk
+	 * @param views true to notify the string values as views over the source, see {@link StringScope#VIEW}
+	 * @param maxDepth the maximum nesting depth of the documents, the root array included
+	 */
+	ParallelArrayParser(ForkJoinPool pool, int chunkSize, boolean views, int maxDepth) {
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+		this.views = views;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Compiles a JSON string whose root is a large array
+	 * @param source an encoded JSON string
+	 * @param builders the supplier of the builders of the chunks, that must share the same string pool
+	 * @return the root array, or null if the source cannot be compiled in parallel
+	 */
+	JsonArray build(String source, Supplier<JsonTreeBuilder> builders) {
+		return build(source, builders, null);
+	}
+
+	/**
+	 * Compiles a JSON string whose root is a large array, measuring each chunk
+	 * @param source an encoded JSON string
+	 * @param builders the supplier of the builders of the chunks, that must share the same string pool
+	 * @param measures the queue receiving the measures of the chunks, or null if they are not measured
+	 * @return the root array, or null if the source cannot be compiled in parallel
+	 */
+	JsonArray build(String source, Supplier<JsonTreeBuilder> builders, Queue<MeasuringHandler> measures) {
+		int[] bounds = split(source);
+		if(bounds == null)
+			return null;
+		return build(bounds, (start, end) -> {
+			JsonParser parser = new JsonParser(source, start, end, views).limitDepth(maxDepth);
+			JsonTreeBuilder builder = builders.get();
+			if(measures == null)
+				return (JsonArray) parser.buildElements(builder);
+			parser.parseElements(measure(builder, measures));
+			return (JsonArray) builder.getRoot();
+		});
+	}
+
+	/**
+	 * Compiles the UTF-8 encoded JSON source between the position and the limit of a buffer, whose root is a large array
+	 * @param source the buffer containing the UTF-8 encoded JSON source
+	 * @param builders the supplier of the builders of the chunks, that must share the same string pool
+	 * @return the root array, or null if the source cannot be compiled in parallel
+	 */
+	JsonArray build(ByteBuffer source, Supplier<JsonTreeBuilder> builders) {
+		return build(source, builders, null);
+	}
+
+	/**
+	 * Compiles the UTF-8 encoded JSON source between the position and the limit of a buffer, whose root is a large array,
+	 * measuring each chunk
+	 * @param source the buffer containing the UTF-8 encoded JSON source
+	 * @param builders the supplier of the builders of the chunks, that must share the same string pool
+	 * @param measures the queue receiving the measures of the chunks, or null if they are not measured
+	 * @return the root array, or null if the source cannot be compiled in parallel
+	 */
+	JsonArray build(ByteBuffer source, Supplier<JsonTreeBuilder> builders, Queue<MeasuringHandler> measures) {
+		int[] bounds = split(source);
+		if(bounds == null)
+			return null;
+		return build(bounds, (start, end) -> {
+			Utf8Parser parser = new Utf8Parser(source, start, end, views).limitDepth(maxDepth);
+			JsonTreeBuilder builder = builders.get();
+			if(measures == null)
+				return (JsonArray) parser.buildElements(builder);
+			parser.parseElements(measure(builder, measures));
+			return (JsonArray) builder.getRoot();
+		});
+	}
+
+	/**
+	 * Creates the handler measuring a chunk, adding it to the queue of the measures
+	 */
+	private static MeasuringHandler measure(JsonTreeBuilder builder, Queue<MeasuringHandler> measures) {
+		MeasuringHandler measure = new MeasuringHandler(builder, builder.getPool());
+		measures.add(measure);
+		return measure;
+	}
+
+	private JsonArray build(int[] bounds, Chunk chunk) {
+		JsonArray[] parts = new JsonArray[bounds.length - 1];
+		try {
+			pool.invoke(new ChunkTask(bounds, chunk, parts, 0, parts.length));
+		} catch (ChunkException e) {
+			return null;
+		}
+		JsonArray root = parts[0];
+		for(int i = 1; i < parts.length; i++) {
+			root.addAll(parts[i]);
+			parts[i] = null;
+		}
+		return root;
+	}
+
+	/**
+	 * Finds the bounds of the chunks of the root array of a string.
+	 * @return the positions of the opening bracket, of the commas ending the chunks and of the closing bracket,
+	 * or null if the source is not an array at least two chunks long
+	 */
+	private int[] split(String source) {
+		int length = source.length();
+		int position = skipBlanks(source, 0);
+		if(position >= length || source.charAt(position) != '[')
+			return null;
+		int[] bounds = new int[16];
+		int count = 0;
+		bounds[count++] = position;
+		int next = position + chunkSize;
+		int depth = 0;
+		position++;
+		while(position < length) {
+			char c = source.charAt(position);
+			switch(c) {
+			case '"':
+				position = skipString(source, position + 1);
+				if(position < 0)
+					return null;
+				continue;
+			case '{':
+			case '[':
+				depth++;
+				break;
+			case '}':
+			case ']':
+				if(depth-- > 0)
+					break;
+				if(c != ']' || count < 2 || skipBlanks(source, position + 1) != length)
+					return null;
+				bounds = add(bounds, count++, position);
+				return Arrays.copyOf(bounds, count);
+			case ',':
+				if(depth == 0 && position >= next) {
+					bounds = add(bounds, count++, position);
+					next = position + chunkSize;
+				}
+				break;
+			case '/':
+				if(position + 1 < length && (source.charAt(position + 1) == '*' || source.charAt(position + 1) == '/')) {
+					position = skipBlanks(source, position);
+					if(position < 0)
+						return null;
+					continue;
+				}
+				break;
+			}
+			position++;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the position following the closing quote of a string
+	 * @return the position following the string, or -1 if the string is not terminated
+	 */
+	private static int skipString(String source, int position) {
+		while(true) {
+			int quote = source.indexOf('"', position);
+			if(quote < 0)
+				return -1;
+			int backslashes = 0;
+			while(source.charAt(quote - backslashes - 1) == '\\')
+				backslashes++;
+			if((backslashes & 1) == 0)
+				return quote + 1;
+			position = quote + 1;
+		}
+	}
+
+	/**
+	 * Skips white spaces and comments
+	 * @return the position of the first other character, or -1 if a comment is not terminated
+	 */
+	private static int skipBlanks(String source, int position) {
+		int length = source.length();
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\u000B')
+				position++;
+			else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '*') {
+				int end = source.indexOf("*/", position + 2);
+				if(end < 0)
+					return -1;
+				position = end + 2;
+			} else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '/') {
+				int end = source.indexOf('\n', position + 2);
+				position = end < 0 ? length : end;
+			} else
+				break;
+		}
+		return position;
+	}
+
+	/**
+	 * Finds the bounds of the chunks of the root array of a buffer, as {@link #split(String)} does.
+	 * The structural characters are ASCII, so the bytes are scanned without decoding them.
+	 */
+	private int[] split(ByteBuffer source) {
+		int length = source.limit();
+		int position = source.position();
+		// skips the byte order mark
+		if(length - position >= 3 && source.get(position) == (byte) 0xEF
+				&& source.get(position + 1) == (byte) 0xBB && source.get(position + 2) == (byte) 0xBF)
+			position += 3;
+		position = skipBlanks(source, position);
+		if(position >= length || source.get(position) != '[')
+			return null;
+		int[] bounds = new int[16];
+		int count = 0;
+		bounds[count++] = position;
+		int next = position + chunkSize;
+		int depth = 0;
+		position++;
+		while(position < length) {
+			byte c = source.get(position);
+			switch(c) {
+			case '"':
+				position = skipString(source, position + 1);
+				if(position < 0)
+					return null;
+				continue;
+			case '{':
+			case '[':
+				depth++;
+				break;
+			case '}':
+			case ']':
+				if(depth-- > 0)
+					break;
+				if(c != ']' || count < 2 || skipBlanks(source, position + 1) != length)
+					return null;
+				bounds = add(bounds, count++, position);
+				return Arrays.copyOf(bounds, count);
+			case ',':
+				if(depth == 0 && position >= next) {
+					bounds = add(bounds, count++, position);
+					next = position + chunkSize;
+				}
+				break;
+			case '/':
+				if(position + 1 < length && (source.get(position + 1) == '*' || source.get(position + 1) == '/')) {
+					position = skipBlanks(source, position);
+					if(position < 0)
+						return null;
+					continue;
+				}
+				break;
+			}
+			position++;
+		}
+		return null;
+	}
+
+	private static int skipString(ByteBuffer source, int position) {
+		int length = source.limit();
+		while(position < length) {
+			byte b = source.get(position++);
+			if(b == '"')
+				return position;
+			if(b == '\\')
+				position++;
+		}
+		return -1;
+	}
+
+	private static int skipBlanks(ByteBuffer source, int position) {
+		int length = source.limit();
+		while(position < length) {
+			byte c = source.get(position);
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B)
+				position++;
+			else if(c == '/' && position + 1 < length && source.get(position + 1) == '*') {
+				int end = position + 2;
+				while(end + 1 < length && (source.get(end) != '*' || source.get(end + 1) != '/'))
+					end++;
+				if(end + 1 >= length)
+					return -1;
+				position = end + 2;
+			} else if(c == '/' && position + 1 < length && source.get(position + 1) == '/') {
+				position += 2;
+				while(position < length && source.get(position) != '\n')
+					position++;
+			} else
+				break;
+		}
+		return position;
+	}
+
+	private static int[] add(int[] bounds, int count, int bound) {
+		if(count == bounds.length)
+			bounds = Arrays.copyOf(bounds, count * 2);
+		bounds[count] = bound;
+		return bounds;
+	}
+
+	/**
+	 * The parser of the elements of a range of the source
+	 */
+	private interface Chunk {
+		JsonArray parse(int start, int end) throws UnexpectedSymbolException;
+	}
+
+	/**
+	 * Reports a syntactic error found in a chunk, so that the source is compiled by the sequential parsers
+	 */
+	private static final class ChunkException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ChunkException(UnexpectedSymbolException cause) {
+			super(cause);
+		}
+	}
+
+	/**
+	 * Parses a range of chunks, splitting it in halves until a single chunk is left
+	 */
+	private static final class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] bounds;
+		private final Chunk chunk;
+		private final JsonArray[] parts;
+		private final int from;
+		private final int to;
+
+		ChunkTask(int[] bounds, Chunk chunk, JsonArray[] parts, int from, int to) {
+			this.bounds = bounds;
+			this.chunk = chunk;
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(bounds, chunk, parts, from, middle), new ChunkTask(bounds, chunk, parts, middle, to));
+				return;
+			}
+			try {
+				parts[from] = chunk.parse(bounds[from] + 1, bounds[from + 1]);
+			} catch (UnexpectedSymbolException e) {
+				throw new ChunkException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+/**
+ * Defines the scopes in which a {@link JsonCompiler} interns the names and the string values it compiles.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum StringScope {
+	/**
+	 * The strings are interned in the global pool, shared by all the compilers
+	 * @see jointyjson.model.JsonStringPool#global()
+	 */
+	GLOBAL,
+
+	/**
+	 * The strings are interned in a pool owned by the compiler
+	 */
+	COMPILER,
+
+	/**
+	 * The strings are interned in a new pool for each compiled document, dropped with the document
+	 */
+	DOCUMENT,
+
+	/**
+	 * The names are interned as in the {@link #DOCUMENT} scope, while the string values are not interned:
+	 * each one is a view over its text in the compiled source, decoded only when its value is read
+	 * (see {@link jointyjson.model.JsonString#view(String, int, int, boolean)}).
+	 * The source is retained by the compiled structure, so a byte source must not be changed while the structure is in use.<br>
+	 * The views are made by the {@link JsonEngine#DIRECT} engine, compiling a text or the strings of ASCII text of
+	 * an UTF-8 source, and by the lazy compilation; the other strings are interned as in the {@link #DOCUMENT} scope.
+	 */
+	VIEW
+}
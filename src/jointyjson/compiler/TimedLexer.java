@@ -0,0 +1,107 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.util.Set;
+
+import jointyc.analysis.lexer.Lexer;
+
+/**
+ * Defines the lexer of the grammar engine that measures the time spent scanning the tokens,
+ * while the parser drives it. The time is measured only while it is enabled.
+ * @author Salvatore Giampa'
+ *
+ */
+final class TimedLexer implements Lexer {
+	private final Lexer lexer;
+
+	boolean timed;
+	long nanos;
+
+	TimedLexer(Lexer lexer) {
+		this.lexer = lexer;
+	}
+
+	@Override
+	public boolean next() {
+		if(!timed)
+			return lexer.next();
+		long start = System.nanoTime();
+		try {
+			return lexer.next();
+		} finally {
+			nanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public void setInput(String input) {
+		lexer.setInput(input);
+	}
+
+	@Override
+	public String token(String type) {
+		return lexer.token(type);
+	}
+
+	@Override
+	public String token() {
+		return lexer.token();
+	}
+
+	@Override
+	public String tokenType() {
+		return lexer.tokenType();
+	}
+
+	@Override
+	public Set<String> similarTypes() {
+		return lexer.similarTypes();
+	}
+
+	@Override
+	public int start() {
+		return lexer.start();
+	}
+
+	@Override
+	public int end() {
+		return lexer.end();
+	}
+
+	@Override
+	public void setStart(int position) {
+		lexer.setStart(position);
+	}
+
+	@Override
+	public String input() {
+		return lexer.input();
+	}
+
+	@Override
+	public String description(String type) {
+		return lexer.description(type);
+	}
+
+	@Override
+	public String regex(String type) {
+		return lexer.regex(type);
+	}
+}
@@ -0,0 +1,601 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import jointyc.analysis.parser.exception.UnexpectedSymbolException;
+import jointyc.analysis.parser.exception.UnexpectedSymbolException.ExpectedTerminal;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonString;
+import jointyjson.stream.JsonHandler;
+import jointyjson.stream.JsonLimitException;
+import jointyjson.stream.JsonLimits;
+import jointyjson.stream.JsonLimits.Limit;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Defines the direct-scanning JSON parser for UTF-8 encoded sources.
+ * It is the byte oriented counterpart of {@link JsonParser}: the bytes are scanned in place
+ * (heap, direct or memory-mapped buffers alike) and only the string values are decoded, into a reused buffer.
+ * Malformed UTF-8 sequences, including the overlong forms, the encoded surrogates and the code points beyond U+10FFFF,
+ * are decoded as the replacement character U+FFFD.
+ * A parser instance is meant to parse a single source.
+ * @author Salvatore Giampa'
+ *
+ */
+final class Utf8Parser {
+	// the smallest code point of the sequences of 2, 3 and 4 bytes, the smaller ones having shorter forms
+	private static final int[] MINIMUM_CODE = {0, 0x80, 0x800, 0x10000};
+
+	private final ByteBuffer source;
+	private final int start;
+	private final int length;
+	private int position;
+	private JsonHandler handler;
+
+	// reused to decode the strings and the numbers
+	private char[] chars = new char[64];
+	private int count;
+	private final Chars view = new Chars();
+
+	// the number of open objects and arrays, and the maximum allowed
+	private int depth;
+	private int maxDepth = Integer.MAX_VALUE;
+
+	// whether the string values of ASCII text are notified as views over the source
+	private final boolean views;
+
+	/**
+	 * Creates a parser for the bytes between the position and the limit of the specified buffer
+	 * @param source the UTF-8 encoded source
+	 */
+	Utf8Parser(ByteBuffer source) {
+		this(source, false);
+	}
+
+	/**
+	 * Creates a parser for the bytes between the position and the limit of the specified buffer
+	 * @param source the UTF-8 encoded source
+	 * @param views true to notify the string values of ASCII text as views over the source, see {@link StringScope#VIEW}
+	 */
+	Utf8Parser(ByteBuffer source, boolean views) {
+		this(source, source.position(), source.limit(), views);
+		// skips the byte order mark
+		if(length - position >= 3 && source.get(position) == (byte) 0xEF
+				&& source.get(position + 1) == (byte) 0xBB && source.get(position + 2) == (byte) 0xBF)
+			position += 3;
+	}
+
+	/**
+	 * Creates a parser for a range of the bytes of the specified buffer, such as a chunk of the elements of a top-level array.
+	 * The positions of the errors are relative to the start of the range.
+	 * @param source the UTF-8 encoded source
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 */
+	Utf8Parser(ByteBuffer source, int start, int end) {
+		this(source, start, end, false);
+	}
+
+	/**
+	 * Creates a parser for a range of the bytes of the specified buffer
+	 * @param source the UTF-8 encoded source
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @param views true to notify the string values of ASCII text as views over the source, see {@link StringScope#VIEW}
+	 */
+	Utf8Parser(ByteBuffer source, int start, int end, boolean views) {
+		this.source = source;
+		this.start = start;
+		this.length = end;
+		this.position = start;
+		this.views = views;
+	}
+
+	/**
+	 * Limits the nesting depth of the parsed source, that is checked by the parser itself since it recurses
+	 * on the nested objects and arrays
+	 * @param maxDepth the maximum number of nested objects and arrays, see {@link JsonLimits#getMaxDepth()}
+	 * @return this parser
+	 */
+	Utf8Parser limitDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+		return this;
+	}
+
+	/**
+	 * Parses the whole source and builds the JSON composite structure
+	 * @param builder the builder of the structure
+	 * @return the root JSON element of the structure
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	JsonElement build(JsonTreeBuilder builder) throws UnexpectedSymbolException {
+		parse(builder);
+		return builder.getRoot();
+	}
+
+	/**
+	 * Parses a single value of any type filling the range of this parser, as a line of newline-delimited JSON,
+	 * and builds it
+	 * @param builder the builder of the structure
+	 * @return the parsed value, or null if the range contains only blanks and comments
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	JsonElement buildValue(JsonTreeBuilder builder) throws UnexpectedSymbolException {
+		return parseLine(builder) ? builder.getRoot() : null;
+	}
+
+	/**
+	 * Parses a single value of any type filling the range of this parser, as a line of newline-delimited JSON,
+	 * notifying it to the specified handler
+	 * @param handler the handler to notify
+	 * @return false if the range contains only blanks and comments
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	boolean parseLine(JsonHandler handler) throws UnexpectedSymbolException {
+		this.handler = handler;
+		skipBlanks();
+		if(position >= length)
+			return false;
+		parseValue();
+		skipBlanks();
+		if(position < length)
+			throw unexpected("EOF");
+		return true;
+	}
+
+	/**
+	 * Parses the comma separated values of the range of this parser and builds an array holding them
+	 * @param builder the builder of the structure
+	 * @return the array of the parsed values
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	JsonElement buildElements(JsonTreeBuilder builder) throws UnexpectedSymbolException {
+		parseElements(builder);
+		return builder.getRoot();
+	}
+
+	/**
+	 * Parses the whole source notifying the parsed values to the specified handler
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the source contains some syntactic error.
+	 */
+	void parse(JsonHandler handler) throws UnexpectedSymbolException {
+		this.handler = handler;
+		skipBlanks();
+		int c = position < length ? source.get(position) : 0;
+		if(c == '{')
+			parseObject();
+		else if(c == '[')
+			parseArray();
+		else
+			throw unexpected("braceOpen", "brackOpen");
+
+		skipBlanks();
+		if(position < length)
+			throw unexpected("EOF");
+	}
+
+	/**
+	 * Parses the comma separated values of the range of this parser, notifying them as the elements of an array
+	 * @param handler the handler to notify
+	 * @throws UnexpectedSymbolException if the range contains some syntactic error.
+	 */
+	void parseElements(JsonHandler handler) throws UnexpectedSymbolException {
+		this.handler = handler;
+		enter();
+		handler.startArray();
+		while(true) {
+			parseValue();
+
+			skipBlanks();
+			if(position >= length)
+				break;
+			if(source.get(position) != ',')
+				throw unexpected("comma", "brackClosed");
+			position++;
+		}
+		depth--;
+		handler.endArray();
+	}
+
+	private void parseObject() throws UnexpectedSymbolException {
+		enter();
+		handler.startObject();
+		position++;
+		skipBlanks();
+		if(position < length && source.get(position) == '}') {
+			position++;
+			depth--;
+			handler.endObject();
+			return;
+		}
+		while(true) {
+			if(position >= length || source.get(position) != '"')
+				throw unexpected("quote");
+			position++;
+			handler.field(parseString());
+
+			skipBlanks();
+			if(position >= length || source.get(position) != ':')
+				throw unexpected("colon");
+			position++;
+			parseValue();
+
+			skipBlanks();
+			int c = position < length ? source.get(position) : 0;
+			position++;
+			if(c == '}') {
+				depth--;
+				handler.endObject();
+				return;
+			}
+			if(c != ',') {
+				position--;
+				throw unexpected("comma", "braceClosed");
+			}
+			skipBlanks();
+		}
+	}
+
+	private void parseArray() throws UnexpectedSymbolException {
+		enter();
+		handler.startArray();
+		position++;
+		skipBlanks();
+		if(position < length && source.get(position) == ']') {
+			position++;
+			depth--;
+			handler.endArray();
+			return;
+		}
+		while(true) {
+			parseValue();
+
+			skipBlanks();
+			int c = position < length ? source.get(position) : 0;
+			position++;
+			if(c == ']') {
+				depth--;
+				handler.endArray();
+				return;
+			}
+			if(c != ',') {
+				position--;
+				throw unexpected("comma", "brackClosed");
+			}
+		}
+	}
+
+	private void enter() {
+		if(++depth > maxDepth)
+			throw new JsonLimitException(Limit.DEPTH, maxDepth);
+	}
+
+	private void parseValue() throws UnexpectedSymbolException {
+		skipBlanks();
+		int c = position < length ? source.get(position) : 0;
+		switch(c) {
+		case '{':
+			parseObject();
+			return;
+		case '[':
+			parseArray();
+			return;
+		case '"':
+			position++;
+			handler.stringValue(views ? parseView() : parseString());
+			return;
+		case 't':
+			parseLiteral("true", "boolean");
+			handler.booleanValue(true);
+			return;
+		case 'f':
+			parseLiteral("false", "boolean");
+			handler.booleanValue(false);
+			return;
+		case 'n':
+			parseLiteral("null", "null");
+			handler.nullValue();
+			return;
+		default:
+			if(c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+				parseNumber();
+				return;
+			}
+			throw unexpected("null", "quote", "number", "boolean", "braceOpen", "brackOpen");
+		}
+	}
+
+	/**
+	 * Parses and decodes a string whose opening quote has already been consumed
+	 * @return the decoded string, valid until the next string or number is parsed
+	 */
+	private CharSequence parseString() throws UnexpectedSymbolException {
+		count = 0;
+		while(position < length) {
+			int b = source.get(position);
+			if(b == '"') {
+				position++;
+				return view;
+			}
+			if(count + 2 > chars.length)
+				grow();
+			if(b >= 0) {
+				if(b == '\\')
+					chars[count++] = parseControl();
+				else {
+					chars[count++] = (char) b;
+					position++;
+				}
+			} else
+				decodeMultiByte(b);
+		}
+		throw unexpected("quote");
+	}
+
+	/**
+	 * Parses a string whose opening quote has already been consumed, validating its control sequences without decoding them.
+	 * A string containing multi-byte sequences is decoded instead.
+	 * @return the view over the text of the string, or the decoded string, valid until the next string is parsed
+	 */
+	private CharSequence parseView() throws UnexpectedSymbolException {
+		int begin = position;
+		boolean escaped = false;
+		while(position < length) {
+			int b = source.get(position);
+			if(b == '"') {
+				position++;
+				return JsonString.view(source, begin, position - 1, escaped);
+			}
+			if(b < 0) {
+				position = begin;
+				return parseString();
+			}
+			if(b == '\\') {
+				escaped = true;
+				parseControl();
+			} else
+				position++;
+		}
+		throw unexpected("quote");
+	}
+
+	/**
+	 * Decodes the multi-byte sequence starting at the current position
+	 */
+	private void decodeMultiByte(int b) {
+		int extra, code;
+		if((b & 0xE0) == 0xC0) {
+			extra = 1;
+			code = b & 0x1F;
+		} else if((b & 0xF0) == 0xE0) {
+			extra = 2;
+			code = b & 0x0F;
+		} else if((b & 0xF8) == 0xF0) {
+			extra = 3;
+			code = b & 0x07;
+		} else {
+			position++;
+			chars[count++] = '\uFFFD';
+			return;
+		}
+		int next = position + 1;
+		for(int i = 0; i < extra; i++, next++) {
+			int continuation = next < length ? source.get(next) : 0;
+			if((continuation & 0xC0) != 0x80) {
+				position = next;
+				chars[count++] = '\uFFFD';
+				return;
+			}
+			code = (code << 6) | (continuation & 0x3F);
+		}
+		position = next;
+		if(code < MINIMUM_CODE[extra] || (code >= Character.MIN_SURROGATE && code <= Character.MAX_SURROGATE)
+				|| code > Character.MAX_CODE_POINT)
+			chars[count++] = '\uFFFD';
+		else if(code >= 0x10000) {
+			chars[count++] = Character.highSurrogate(code);
+			chars[count++] = Character.lowSurrogate(code);
+		} else
+			chars[count++] = (char) code;
+	}
+
+	/**
+	 * Decodes the control sequence at the current position
+	 */
+	private char parseControl() throws UnexpectedSymbolException {
+		int c = position + 1 < length ? source.get(position + 1) : 0;
+		switch(c) {
+		case '"': position += 2; return '"';
+		case '\\': position += 2; return '\\';
+		case '/': position += 2; return '/';
+		case 'b': position += 2; return '\b';
+		case 'f': position += 2; return '\f';
+		case 'n': position += 2; return '\n';
+		case 'r': position += 2; return '\r';
+		case 't': position += 2; return '\t';
+		case 'u':
+			if(position + 6 <= length) {
+				int code = 0;
+				for(int i = position + 2; i < position + 6; i++) {
+					int digit = Character.digit(source.get(i), 16);
+					if(digit < 0)
+						throw unexpected("ctrlHex");
+					code = (code << 4) | digit;
+				}
+				position += 6;
+				return (char) code;
+			}
+			throw unexpected("ctrlHex");
+		default:
+			throw unexpected("ctrlQuote", "ctrlBackSlash", "ctrlSlash", "ctrlBackSpace", "ctrlFormFeed",
+					"ctrlNewLine", "ctrlCarriageRetun", "ctrlHorizontalTab", "ctrlHex");
+		}
+	}
+
+	private void parseNumber() throws UnexpectedSymbolException {
+		int begin = position;
+		if(source.get(position) == '-')
+			position++;
+		int digits = skipDigits();
+		if(position < length && source.get(position) == '.') {
+			position++;
+			digits += skipDigits();
+		}
+		if(digits == 0) {
+			position = begin;
+			throw unexpected("number");
+		}
+		if(position < length && (source.get(position) == 'e' || source.get(position) == 'E')) {
+			position++;
+			if(position < length && (source.get(position) == '+' || source.get(position) == '-'))
+				position++;
+			if(skipDigits() == 0)
+				throw unexpected("number");
+		}
+		count = 0;
+		for(int i = begin; i < position; i++) {
+			if(count == chars.length)
+				grow();
+			chars[count++] = (char) source.get(i);
+		}
+		handler.numberValue(view);
+	}
+
+	private int skipDigits() {
+		int begin = position;
+		while(position < length) {
+			int c = source.get(position);
+			if(c < '0' || c > '9')
+				break;
+			position++;
+		}
+		return position - begin;
+	}
+
+	private void parseLiteral(String literal, String type) throws UnexpectedSymbolException {
+		if(position + literal.length() > length)
+			throw unexpected(type);
+		for(int i = 0; i < literal.length(); i++)
+			if(source.get(position + i) != literal.charAt(i))
+				throw unexpected(type);
+		position += literal.length();
+	}
+
+	/**
+	 * Skips white spaces and comments, as the skippable tokens of Json.jdl do
+	 */
+	private void skipBlanks() throws UnexpectedSymbolException {
+		while(position < length) {
+			int c = source.get(position);
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0B)
+				position++;
+			else if(c == '/' && position + 1 < length && source.get(position + 1) == '*') {
+				int end = position + 2;
+				while(end + 1 < length && (source.get(end) != '*' || source.get(end + 1) != '/'))
+					end++;
+				if(end + 1 >= length)
+					throw unexpected("comment");
+				position = end + 2;
+			} else if(c == '/' && position + 1 < length && source.get(position + 1) == '/') {
+				position += 2;
+				while(position < length && source.get(position) != '\n')
+					position++;
+			} else
+				return;
+		}
+	}
+
+	private void grow() {
+		char[] grown = new char[chars.length * 2];
+		System.arraycopy(chars, 0, grown, 0, count);
+		chars = grown;
+	}
+
+	/**
+	 * Builds the exception decoding only the source prefix needed to locate the error
+	 */
+	private UnexpectedSymbolException unexpected(String... types) {
+		int errorPosition = Math.min(position, length);
+		ByteBuffer prefix = source.duplicate();
+		prefix.position(start);
+		prefix.limit(errorPosition);
+		String decoded = StandardCharsets.UTF_8.decode(prefix).toString();
+		int charPosition = decoded.length();
+
+		Set<ExpectedTerminal> expected = new HashSet<>();
+		for(String type : types)
+			expected.add(new ExpectedTerminal(charPosition, "json." + type, JsonParser.description(type)));
+		String token = null;
+		if(position < length) {
+			ByteBuffer symbol = source.duplicate();
+			symbol.position(errorPosition);
+			symbol.limit(Math.min(errorPosition + 4, length));
+			token = StandardCharsets.UTF_8.decode(symbol).toString().substring(0, 1);
+			decoded += token;
+		}
+		return new Utf8SymbolException(expected, token, charPosition, decoded, errorPosition - start);
+	}
+
+	/**
+	 * A reusable view over the decoding buffer
+	 */
+	private final class Chars implements CharSequence {
+		@Override
+		public int length() {
+			return count;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new String(chars, from, to - from);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, count);
+		}
+	}
+
+	/**
+	 * A syntactic error of an UTF-8 source, that reports the position of the unexpected byte
+	 * besides the position of the unexpected character
+	 */
+	static final class Utf8SymbolException extends UnexpectedSymbolException {
+		private static final long serialVersionUID = 1L;
+
+		// the position of the unexpected byte, relative to the start of the range of the parser
+		final int bytePosition;
+
+		Utf8SymbolException(Set<ExpectedTerminal> expected, String unexpected, int position, String source, int bytePosition) {
+			super(expected, unexpected, position, source);
+			this.bytePosition = bytePosition;
+		}
+	}
+}
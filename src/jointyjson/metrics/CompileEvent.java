@@ -0,0 +1,106 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Defines the Flight Recorder event of a compiled document, see {@link CompileMetrics}
+ * @author Salvatore Giampa'
+ *
+ */
+@Name("jointyjson.Compile")
+@Label("JSON Compilation")
+@Category("JointyJSON")
+@Description("A JSON document compiled by a JsonCompiler")
+@StackTrace(false)
+final class CompileEvent extends Event {
+	@Label("Engine")
+	String engine;
+
+	@Label("Source Length")
+	@Description("The length of the source, in bytes if it is UTF-8 encoded, in characters otherwise")
+	long sourceLength;
+
+	@Label("UTF-8")
+	boolean utf8;
+
+	@Label("Tokens")
+	long tokens;
+
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Max Depth")
+	int maxDepth;
+
+	@Label("String Hits")
+	long stringHits;
+
+	@Label("String Misses")
+	long stringMisses;
+
+	@Label("Lexing Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long lexingTime;
+
+	@Label("Parsing Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long parsingTime;
+
+	@Label("Semantic Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long semanticTime;
+
+	@Label("Total Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long totalTime;
+
+	@Label("Failed")
+	boolean failed;
+
+	/**
+	 * Records the event of a compilation, if a recording enables it
+	 */
+	static void record(CompileMetrics metrics) {
+		CompileEvent event = new CompileEvent();
+		if(!event.isEnabled())
+			return;
+		event.engine = metrics.getEngine().name();
+		event.sourceLength = metrics.getSourceLength();
+		event.utf8 = metrics.isUtf8();
+		event.tokens = metrics.getTokens();
+		event.nodes = metrics.getNodes();
+		event.maxDepth = metrics.getMaxDepth();
+		event.stringHits = metrics.getStringHits();
+		event.stringMisses = metrics.getStringMisses();
+		event.lexingTime = metrics.getLexingNanos();
+		event.parsingTime = metrics.getParsingNanos();
+		event.semanticTime = metrics.getSemanticNanos();
+		event.totalTime = metrics.getTotalNanos();
+		event.failed = metrics.isFailed();
+		event.commit();
+	}
+}
@@ -0,0 +1,184 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+import jointyjson.compiler.JsonEngine;
+
+/**
+ * Defines the statistics of a document compiled by a {@link jointyjson.compiler.JsonCompiler}.<br>
+ * The tokens are the lexical tokens of the document: the braces, the brackets, the colons, the commas,
+ * the names and the values. The nodes are the values, including the objects and the arrays.
+ * The depth counts the nested objects and arrays, so that a document whose root is an empty array has depth 1.<br>
+ * The {@link JsonEngine#DIRECT} engine scans, parses and builds in one pass, so its whole time is reported
+ * as parsing time. The {@link JsonEngine#GRAMMAR} engine reports the time spent by the lexer, by the parser
+ * and by the semantic actions of the interpreter separately, and counts the tokens and the nodes on the built structure.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class CompileMetrics {
+	private final JsonEngine engine;
+	private final long sourceLength;
+	private final boolean utf8;
+	private final long tokens;
+	private final long nodes;
+	private final int maxDepth;
+	private final long stringHits;
+	private final long stringMisses;
+	private final long lexingNanos;
+	private final long parsingNanos;
+	private final long semanticNanos;
+	private final long totalNanos;
+	private final boolean failed;
+
+	/**
+	 * Creates the statistics of a compilation
+	 * @param engine the engine that compiled the document
+	 * @param sourceLength the length of the source
+	 * @param utf8 true if the length is in bytes of UTF-8 encoded text, false if it is in characters
+	 * @param tokens the number of tokens
+	 * @param nodes the number of nodes
+	 * @param maxDepth the maximum nesting depth
+	 * @param stringHits the number of names and strings found in the string pool
+	 * @param stringMisses the number of names and strings added to the string pool
+	 * @param lexingNanos the time spent scanning the tokens, in nanoseconds
+	 * @param parsingNanos the time spent parsing, in nanoseconds
+	 * @param semanticNanos the time spent by the semantic actions, in nanoseconds
+	 * @param totalNanos the time of the whole compilation, in nanoseconds
+	 * @param failed true if the document contains some syntactic error
+	 */
+	public CompileMetrics(JsonEngine engine, long sourceLength, boolean utf8, long tokens, long nodes, int maxDepth,
+			long stringHits, long stringMisses, long lexingNanos, long parsingNanos, long semanticNanos,
+			long totalNanos, boolean failed) {
+		if(engine == null)
+			throw new NullPointerException("engine cannot be null");
+		this.engine = engine;
+		this.sourceLength = sourceLength;
+		this.utf8 = utf8;
+		this.tokens = tokens;
+		this.nodes = nodes;
+		this.maxDepth = maxDepth;
+		this.stringHits = stringHits;
+		this.stringMisses = stringMisses;
+		this.lexingNanos = lexingNanos;
+		this.parsingNanos = parsingNanos;
+		this.semanticNanos = semanticNanos;
+		this.totalNanos = totalNanos;
+		this.failed = failed;
+	}
+
+	public JsonEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Gets the length of the source, in bytes for the UTF-8 encoded sources and in characters for the strings
+	 * @return the length of the source
+	 * @see #isUtf8()
+	 */
+	public long getSourceLength() {
+		return sourceLength;
+	}
+
+	/**
+	 * Tells whether the source was UTF-8 encoded text, such as a file or a byte array
+	 * @return true if the source length is in bytes, false if it is in characters
+	 */
+	public boolean isUtf8() {
+		return utf8;
+	}
+
+	public long getTokens() {
+		return tokens;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Gets the number of names and strings found in the string pool. The handlers given by the user do not use any pool.
+	 * @return the number of hits
+	 */
+	public long getStringHits() {
+		return stringHits;
+	}
+
+	/**
+	 * Gets the number of names and strings added to the string pool
+	 * @return the number of misses
+	 */
+	public long getStringMisses() {
+		return stringMisses;
+	}
+
+	/**
+	 * Gets the fraction of the names and strings found in the string pool
+	 * @return the hit rate, between 0 and 1, or 0 if no string was pooled
+	 */
+	public double getStringHitRate() {
+		long lookups = stringHits + stringMisses;
+		return lookups == 0 ? 0 : (double) stringHits / lookups;
+	}
+
+	public long getLexingNanos() {
+		return lexingNanos;
+	}
+
+	public long getParsingNanos() {
+		return parsingNanos;
+	}
+
+	public long getSemanticNanos() {
+		return semanticNanos;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the compiled bytes, or characters, per second
+	 * @return the throughput of the compilation
+	 * @see #isUtf8()
+	 */
+	public double getThroughput() {
+		return totalNanos == 0 ? 0 : sourceLength * 1e9 / totalNanos;
+	}
+
+	/**
+	 * Tells whether the compilation failed because of a syntactic error. The counts of a failed compilation are partial.
+	 * @return true if the compilation failed
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return "CompileMetrics [engine=" + engine + ", sourceLength=" + sourceLength + (utf8 ? " bytes" : " chars")
+				+ ", tokens=" + tokens + ", nodes=" + nodes + ", maxDepth=" + maxDepth
+				+ ", stringHits=" + stringHits + ", stringMisses=" + stringMisses
+				+ ", lexingNanos=" + lexingNanos + ", parsingNanos=" + parsingNanos + ", semanticNanos=" + semanticNanos
+				+ ", totalNanos=" + totalNanos + ", failed=" + failed + "]";
+	}
+}
@@ -0,0 +1,66 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Defines the Flight Recorder event of an encoded structure, see {@link EncodeMetrics}
+ * @author Salvatore Giampa'
+ *
+ */
+@Name("jointyjson.Encode")
+@Label("JSON Encoding")
+@Category("JointyJSON")
+@Description("A JSON structure encoded by an EncodingVisitor")
+@StackTrace(false)
+final class EncodeEvent extends Event {
+	@Label("Nodes")
+	long nodes;
+
+	@Label("Max Depth")
+	int maxDepth;
+
+	@Label("Characters")
+	long characters;
+
+	@Label("Total Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long totalTime;
+
+	/**
+	 * Records the event of an encoding, if a recording enables it
+	 */
+	static void record(EncodeMetrics metrics) {
+		EncodeEvent event = new EncodeEvent();
+		if(!event.isEnabled())
+			return;
+		event.nodes = metrics.getNodes();
+		event.maxDepth = metrics.getMaxDepth();
+		event.characters = metrics.getCharacters();
+		event.totalTime = metrics.getTotalNanos();
+		event.commit();
+	}
+}
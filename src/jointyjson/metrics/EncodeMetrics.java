@@ -0,0 +1,77 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+/**
+ * Defines the statistics of a structure encoded by a {@link jointyjson.model.EncodingVisitor},
+ * from the root element visited to the end of its visit.
+ * The nodes and the depth are counted as in {@link CompileMetrics}.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class EncodeMetrics {
+	private final long nodes;
+	private final int maxDepth;
+	private final long characters;
+	private final long totalNanos;
+
+	/**
+	 * Creates the statistics of an encoding
+	 * @param nodes the number of encoded nodes
+	 * @param maxDepth the maximum nesting depth
+	 * @param characters the number of generated characters
+	 * @param totalNanos the time of the whole encoding, in nanoseconds
+	 */
+	public EncodeMetrics(long nodes, int maxDepth, long characters, long totalNanos) {
+		this.nodes = nodes;
+		this.maxDepth = maxDepth;
+		this.characters = characters;
+		this.totalNanos = totalNanos;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getCharacters() {
+		return characters;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the generated characters per second
+	 * @return the throughput of the encoding
+	 */
+	public double getThroughput() {
+		return totalNanos == 0 ? 0 : characters * 1e9 / totalNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "EncodeMetrics [nodes=" + nodes + ", maxDepth=" + maxDepth + ", characters=" + characters
+				+ ", totalNanos=" + totalNanos + "]";
+	}
+}
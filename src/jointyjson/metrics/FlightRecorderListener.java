@@ -0,0 +1,69 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+/**
+ * Defines a listener that records the notified statistics as JDK Flight Recorder events,
+ * named jointyjson.Compile and jointyjson.Encode, in the JointyJSON category.
+ * The events are recorded only while a recording enables them, and their times are fields of the events:
+ * the events are committed at the end of the work, so their own duration is not meaningful.<br>
+ * The Flight Recorder is not available on every Java 8 runtime: the event classes are loaded only
+ * when the first event is committed, so this class can be referenced on any runtime, see {@link #isAvailable()}.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class FlightRecorderListener implements JsonMetricsListener {
+	private static final boolean AVAILABLE = findFlightRecorder();
+
+	/**
+	 * Tells whether the running JVM supports the Flight Recorder events
+	 * @return true if the Flight Recorder is available
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	private static boolean findFlightRecorder() {
+		try {
+			Class.forName("jdk.jfr.Event", false, FlightRecorderListener.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a listener that records the Flight Recorder events
+	 * @throws UnsupportedOperationException if the Flight Recorder is not available
+	 */
+	public FlightRecorderListener() {
+		if(!AVAILABLE)
+			throw new UnsupportedOperationException("the Flight Recorder is not available on this JVM");
+	}
+
+	@Override
+	public void compiled(CompileMetrics metrics) {
+		CompileEvent.record(metrics);
+	}
+
+	@Override
+	public void encoded(EncodeMetrics metrics) {
+		EncodeEvent.record(metrics);
+	}
+}
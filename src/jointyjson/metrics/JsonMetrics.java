@@ -0,0 +1,214 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Defines a listener that aggregates the statistics of all the notified compilations and encodings in counters.
+ * The counters are striped, so a single instance can be shared by all the compilers and the visitors of a process.
+ * The source lengths of the strings, in characters, and of the UTF-8 sources, in bytes, are summed together.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonMetrics implements JsonMetricsListener {
+	private final LongAdder compilations = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder sourceLength = new LongAdder();
+	private final LongAdder tokens = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder stringHits = new LongAdder();
+	private final LongAdder stringMisses = new LongAdder();
+	private final LongAdder lexingNanos = new LongAdder();
+	private final LongAdder parsingNanos = new LongAdder();
+	private final LongAdder semanticNanos = new LongAdder();
+	private final LongAdder compileNanos = new LongAdder();
+
+	private final LongAdder encodings = new LongAdder();
+	private final LongAdder encodedNodes = new LongAdder();
+	private final LongAccumulator encodedMaxDepth = new LongAccumulator(Math::max, 0);
+	private final LongAdder encodedCharacters = new LongAdder();
+	private final LongAdder encodeNanos = new LongAdder();
+
+	@Override
+	public void compiled(CompileMetrics metrics) {
+		compilations.increment();
+		if(metrics.isFailed())
+			failures.increment();
+		sourceLength.add(metrics.getSourceLength());
+		tokens.add(metrics.getTokens());
+		nodes.add(metrics.getNodes());
+		maxDepth.accumulate(metrics.getMaxDepth());
+		stringHits.add(metrics.getStringHits());
+		stringMisses.add(metrics.getStringMisses());
+		lexingNanos.add(metrics.getLexingNanos());
+		parsingNanos.add(metrics.getParsingNanos());
+		semanticNanos.add(metrics.getSemanticNanos());
+		compileNanos.add(metrics.getTotalNanos());
+	}
+
+	@Override
+	public void encoded(EncodeMetrics metrics) {
+		encodings.increment();
+		encodedNodes.add(metrics.getNodes());
+		encodedMaxDepth.accumulate(metrics.getMaxDepth());
+		encodedCharacters.add(metrics.getCharacters());
+		encodeNanos.add(metrics.getTotalNanos());
+	}
+
+	/**
+	 * Gets the number of the compilations, including the failed ones
+	 * @return the number of compilations
+	 */
+	public long getCompilations() {
+		return compilations.sum();
+	}
+
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	public long getSourceLength() {
+		return sourceLength.sum();
+	}
+
+	public long getTokens() {
+		return tokens.sum();
+	}
+
+	public long getNodes() {
+		return nodes.sum();
+	}
+
+	/**
+	 * Gets the maximum nesting depth of all the compiled documents
+	 * @return the maximum depth
+	 */
+	public int getMaxDepth() {
+		return (int) maxDepth.get();
+	}
+
+	public long getStringHits() {
+		return stringHits.sum();
+	}
+
+	public long getStringMisses() {
+		return stringMisses.sum();
+	}
+
+	/**
+	 * Gets the fraction of the names and strings found in the string pools
+	 * @return the hit rate, between 0 and 1, or 0 if no string was pooled
+	 */
+	public double getStringHitRate() {
+		long hits = stringHits.sum();
+		long lookups = hits + stringMisses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public long getLexingNanos() {
+		return lexingNanos.sum();
+	}
+
+	public long getParsingNanos() {
+		return parsingNanos.sum();
+	}
+
+	public long getSemanticNanos() {
+		return semanticNanos.sum();
+	}
+
+	public long getCompileNanos() {
+		return compileNanos.sum();
+	}
+
+	/**
+	 * Gets the compiled bytes, or characters, per second of compilation time
+	 * @return the throughput of the compilations
+	 */
+	public double getCompileThroughput() {
+		long nanos = compileNanos.sum();
+		return nanos == 0 ? 0 : sourceLength.sum() * 1e9 / nanos;
+	}
+
+	public long getEncodings() {
+		return encodings.sum();
+	}
+
+	public long getEncodedNodes() {
+		return encodedNodes.sum();
+	}
+
+	public int getEncodedMaxDepth() {
+		return (int) encodedMaxDepth.get();
+	}
+
+	public long getEncodedCharacters() {
+		return encodedCharacters.sum();
+	}
+
+	public long getEncodeNanos() {
+		return encodeNanos.sum();
+	}
+
+	/**
+	 * Gets the generated characters per second of encoding time
+	 * @return the throughput of the encodings
+	 */
+	public double getEncodeThroughput() {
+		long nanos = encodeNanos.sum();
+		return nanos == 0 ? 0 : encodedCharacters.sum() * 1e9 / nanos;
+	}
+
+	/**
+	 * Resets all the counters. The statistics notified during the reset may be partially lost.
+	 */
+	public void reset() {
+		compilations.reset();
+		failures.reset();
+		sourceLength.reset();
+		tokens.reset();
+		nodes.reset();
+		maxDepth.reset();
+		stringHits.reset();
+		stringMisses.reset();
+		lexingNanos.reset();
+		parsingNanos.reset();
+		semanticNanos.reset();
+		compileNanos.reset();
+		encodings.reset();
+		encodedNodes.reset();
+		encodedMaxDepth.reset();
+		encodedCharacters.reset();
+		encodeNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "JsonMetrics [compilations=" + getCompilations() + ", failures=" + getFailures()
+				+ ", sourceLength=" + getSourceLength() + ", tokens=" + getTokens() + ", nodes=" + getNodes()
+				+ ", maxDepth=" + getMaxDepth() + ", stringHitRate=" + getStringHitRate()
+				+ ", compileThroughput=" + (long) getCompileThroughput()
+				+ ", encodings=" + getEncodings() + ", encodedNodes=" + getEncodedNodes()
+				+ ", encodedCharacters=" + getEncodedCharacters()
+				+ ", encodeThroughput=" + (long) getEncodeThroughput() + "]";
+	}
+}
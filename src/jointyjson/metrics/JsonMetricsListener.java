@@ -0,0 +1,73 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.metrics;
+
+/**
+ * Defines the listener notified with the statistics of each document compiled by a
+ * {@link jointyjson.compiler.JsonCompiler} and of each structure encoded by a {@link jointyjson.model.EncodingVisitor}.
+ * The statistics are collected only while a listener is set, so the compilations and the encodings
+ * of the compilers and the visitors without a listener do not pay for them.<br>
+ * The listener is called by the compiling or encoding thread, after the work is done:
+ * it must be thread-safe when it is shared, and it should be fast, since it delays the caller.
+ * @author Salvatore Giampa'
+ *
+ * @see JsonMetrics
+ * @see FlightRecorderListener
+ */
+public interface JsonMetricsListener {
+
+	/**
+	 * Notifies the statistics of a compiled document, also when its compilation failed
+	 * @param metrics the statistics of the compilation
+	 */
+	default void compiled(CompileMetrics metrics) {
+	}
+
+	/**
+	 * Notifies the statistics of an encoded structure
+	 * @param metrics the statistics of the encoding
+	 */
+	default void encoded(EncodeMetrics metrics) {
+	}
+
+	/**
+	 * Creates a listener that notifies all the specified listeners, in order
+	 * @param listeners the listeners to notify
+	 * @return the composite listener
+	 */
+	static JsonMetricsListener of(JsonMetricsListener... listeners) {
+		JsonMetricsListener[] copy = listeners.clone();
+		for(JsonMetricsListener listener : copy)
+			if(listener == null)
+				throw new NullPointerException("listeners cannot be null");
+		return new JsonMetricsListener() {
+			@Override
+			public void compiled(CompileMetrics metrics) {
+				for(JsonMetricsListener listener : copy)
+					listener.compiled(metrics);
+			}
+
+			@Override
+			public void encoded(EncodeMetrics metrics) {
+				for(JsonMetricsListener listener : copy)
+					listener.encoded(metrics);
+			}
+		};
+	}
+}
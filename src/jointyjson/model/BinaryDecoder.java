@@ -0,0 +1,376 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jointyjson.stream.MalformedJsonException;
+
+/**
+ * Defines the decoder of the documents written by a {@link BinaryEncodingVisitor}.<br>
+ * The names and the string values are interned in a {@link JsonStringPool}, as the compilers do, and each name
+ * referenced by a document is decoded and interned only once. The numbers keep the representation they had
+ * when they were encoded and the packed arrays are decoded as packed arrays.<br>
+ * A decoder can be used by many threads at the same time.
+ * @author Salvatore Giampa'
+ *
+ */
+public class BinaryDecoder {
+	// the smallest code point of the UTF-8 sequences of 2, 3 and 4 bytes, the smaller ones having shorter forms
+	private static final int[] MINIMUM_CODE = {0, 0x80, 0x800, 0x10000};
+
+	private final JsonStringPool pool;
+	private final ObjectStorage storage;
+	
+	/**
+	 * Creates a decoder that interns the strings in the global pool and stores the object fields in sorted maps
+	 */
+	public BinaryDecoder() {
+		this(JsonStringPool.global(), ObjectStorage.SORTED);
+	}
+	
+	/**
+	 * Creates a decoder that interns the strings in the specified pool and stores the object fields in the specified data structure
+	 * @param pool the pool used to intern names and string values
+	 * @param storage the data structure of the fields of the decoded objects
+	 */
+	public BinaryDecoder(JsonStringPool pool, ObjectStorage storage) {
+		if(pool == null)
+			throw new NullPointerException("pool cannot be null");
+		if(storage == null)
+			throw new NullPointerException("storage cannot be null");
+		this.pool = pool;
+		this.storage = storage;
+	}
+	
+	/**
+	 * Decodes a binary document
+	 * @param data the bytes of the document
+	 * @return the root JSON element of the document
+	 * @throws MalformedJsonException if the bytes are not a valid document, or if they are followed by other bytes
+	 */
+	public JsonElement decode(byte[] data) throws MalformedJsonException {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		JsonElement root = decode(buffer);
+		if(buffer.hasRemaining())
+			throw new MalformedJsonException("unexpected data after the document", buffer.position());
+		return root;
+	}
+	
+	/**
+	 * Decodes the binary document starting at the position of a buffer, moving the position after the document,
+	 * so that the consecutive documents written by a visitor can be decoded one after another
+	 * @param data the buffer containing the document
+	 * @return the root JSON element of the document
+	 * @throws MalformedJsonException if the buffer does not contain a valid document at its position
+	 */
+	public JsonElement decode(ByteBuffer data) throws MalformedJsonException {
+		Input input = new Input(data);
+		JsonElement root = input.document();
+		data.position(input.position);
+		return root;
+	}
+	
+	/**
+	 * The decoding state of a document
+	 */
+	private final class Input {
+		private final ByteBuffer source;
+		private final int start;
+		private final int limit;
+		private int position;
+		
+		// the names that can be referenced, when the document references them
+		private boolean references;
+		private JsonString[] keys;
+		private int keyCount;
+		
+		// reused to decode the strings
+		private char[] chars = new char[64];
+		private int count;
+		private final Chars view = new Chars();
+		
+		Input(ByteBuffer data) {
+			// the numbers are big-endian whatever the order of the given buffer
+			source = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+			start = position = data.position();
+			limit = data.limit();
+		}
+		
+		JsonElement document() throws MalformedJsonException {
+			require(BinaryFormat.MAGIC.length + 2);
+			for(byte b : BinaryFormat.MAGIC)
+				if(source.get(position++) != b)
+					throw malformed("not a binary JSON document");
+			int version = source.get(position++) & 0xFF;
+			if(version != BinaryFormat.VERSION)
+				throw malformed("unsupported version " + version);
+			int flags = source.get(position++) & 0xFF;
+			if((flags & ~BinaryFormat.KEY_REFERENCES) != 0)
+				throw malformed("unknown flags " + Integer.toHexString(flags));
+			references = flags != 0;
+			if(references)
+				keys = new JsonString[16];
+			return value();
+		}
+		
+		private JsonElement value() throws MalformedJsonException {
+			require(1);
+			int token = source.get(position++) & 0xFF;
+			switch(token) {
+			case BinaryFormat.NULL:
+				return JsonNull.getInstance();
+			case BinaryFormat.FALSE:
+				return JsonBoolean.getInstance(false);
+			case BinaryFormat.TRUE:
+				return JsonBoolean.getInstance(true);
+			case BinaryFormat.LONG:
+				return new JsonNumber(unzigzag(varint()));
+			case BinaryFormat.INTEGRAL_DOUBLE:
+				return new JsonNumber((double) unzigzag(varint()));
+			case BinaryFormat.FLOAT:
+				require(4);
+				float single = source.getFloat(position);
+				position += 4;
+				return new JsonNumber((double) single);
+			case BinaryFormat.DOUBLE:
+				require(8);
+				double value = source.getDouble(position);
+				position += 8;
+				return new JsonNumber(value);
+			case BinaryFormat.DECIMAL:
+				return decimal();
+			case BinaryFormat.NUMBER_TEXT:
+				return JsonNumber.valueOf(string(length(1)), NumberMode.LAZY);
+			case BinaryFormat.STRING:
+				return pool.intern(string(length(1)));
+			case BinaryFormat.OBJECT:
+				return object();
+			case BinaryFormat.ARRAY:
+				return array();
+			case BinaryFormat.DOUBLES:
+			case BinaryFormat.INTEGRAL_DOUBLES:
+			case BinaryFormat.LONGS:
+				return packedArray(token);
+			}
+			if(token >= BinaryFormat.SMALL_INT && token <= BinaryFormat.SMALL_INT_LAST)
+				return new JsonNumber((long) (token - BinaryFormat.SMALL_INT_BIAS));
+			if(token >= BinaryFormat.SHORT_STRING && token <= BinaryFormat.SHORT_STRING_LAST) {
+				int length = token - BinaryFormat.SHORT_STRING;
+				require(length);
+				return pool.intern(string(length));
+			}
+			position--;
+			throw malformed("unknown token 0x" + Integer.toHexString(token));
+		}
+		
+		private JsonObject object() throws MalformedJsonException {
+			// each field takes at least two bytes
+			int size = length(2);
+			JsonObject object = new JsonObject(storage);
+			for(int i = 0; i < size; i++) {
+				JsonString name = key();
+				object.put(name, value());
+			}
+			return object;
+		}
+		
+		private JsonArray array() throws MalformedJsonException {
+			int size = length(1);
+			JsonArray array = new JsonArray();
+			for(int i = 0; i < size; i++)
+				array.add(value());
+			return array;
+		}
+		
+		private JsonArray packedArray(int token) throws MalformedJsonException {
+			int size = length(token == BinaryFormat.DOUBLES ? 8 : 1);
+			JsonArray array = new JsonArray();
+			for(int i = 0; i < size; i++) {
+				if(token == BinaryFormat.DOUBLES) {
+					array.add(source.getDouble(position));
+					position += 8;
+				} else if(token == BinaryFormat.INTEGRAL_DOUBLES)
+					array.add((double) unzigzag(varint()));
+				else
+					array.add(unzigzag(varint()));
+			}
+			return array;
+		}
+		
+		private JsonNumber decimal() throws MalformedJsonException {
+			long scale = unzigzag(varint());
+			int length = length(1);
+			if(length == 0 || scale != (int) scale)
+				throw malformed("invalid decimal number");
+			byte[] unscaled = new byte[length];
+			for(int i = 0; i < length; i++)
+				unscaled[i] = source.get(position++);
+			return new JsonNumber(new BigDecimal(new BigInteger(unscaled), (int) scale));
+		}
+		
+		private JsonString key() throws MalformedJsonException {
+			long header = varint();
+			if((header & 1) != 0) {
+				long index = header >>> 1;
+				if(!references || index >= keyCount)
+					throw malformed("undefined name reference " + index);
+				return keys[(int) index];
+			}
+			int length = checkLength(header >>> 1, 1);
+			JsonString name = pool.intern(string(length));
+			if(references && length <= BinaryFormat.MAX_KEY_LENGTH && keyCount < BinaryFormat.MAX_KEYS) {
+				if(keyCount == keys.length) {
+					JsonString[] grown = new JsonString[keyCount * 2];
+					System.arraycopy(keys, 0, grown, 0, keyCount);
+					keys = grown;
+				}
+				keys[keyCount++] = name;
+			}
+			return name;
+		}
+		
+		/**
+		 * Decodes the UTF-8 bytes of a string, whose length has already been checked
+		 * @return the decoded string, valid until the next string is decoded
+		 */
+		private CharSequence string(int length) {
+			if(length > chars.length)
+				chars = new char[Math.max(length, chars.length * 2)];
+			count = 0;
+			int end = position + length;
+			while(position < end) {
+				int b = source.get(position);
+				if(b >= 0) {
+					chars[count++] = (char) b;
+					position++;
+				} else
+					decodeMultiByte(b, end);
+			}
+			return view;
+		}
+		
+		/**
+		 * Decodes the multi-byte sequence starting at the current position, that is not longer than the bytes it encodes
+		 */
+		private void decodeMultiByte(int b, int end) {
+			int extra, code;
+			if((b & 0xE0) == 0xC0) {
+				extra = 1;
+				code = b & 0x1F;
+			} else if((b & 0xF0) == 0xE0) {
+				extra = 2;
+				code = b & 0x0F;
+			} else if((b & 0xF8) == 0xF0) {
+				extra = 3;
+				code = b & 0x07;
+			} else {
+				position++;
+				chars[count++] = '\uFFFD';
+				return;
+			}
+			int next = position + 1;
+			for(int i = 0; i < extra; i++, next++) {
+				int continuation = next < end ? source.get(next) : 0;
+				if((continuation & 0xC0) != 0x80) {
+					position = next;
+					chars[count++] = '\uFFFD';
+					return;
+				}
+				code = (code << 6) | (continuation & 0x3F);
+			}
+			position = next;
+			if(code < MINIMUM_CODE[extra] || (code >= Character.MIN_SURROGATE && code <= Character.MAX_SURROGATE)
+					|| code > Character.MAX_CODE_POINT)
+				chars[count++] = '\uFFFD';
+			else if(code >= 0x10000) {
+				chars[count++] = Character.highSurrogate(code);
+				chars[count++] = Character.lowSurrogate(code);
+			} else
+				chars[count++] = (char) code;
+		}
+		
+		/**
+		 * Reads a length, checking that the following data can be that long
+		 * @param unit the minimum number of bytes of each unit counted by the length
+		 */
+		private int length(int unit) throws MalformedJsonException {
+			return checkLength(varint(), unit);
+		}
+		
+		private int checkLength(long length, int unit) throws MalformedJsonException {
+			if(length < 0 || length > (limit - position) / unit)
+				throw malformed("length " + length + " exceeds the data");
+			return (int) length;
+		}
+		
+		private long varint() throws MalformedJsonException {
+			long value = 0;
+			for(int shift = 0; shift < 64; shift += 7) {
+				require(1);
+				int b = source.get(position++);
+				value |= (long) (b & 0x7F) << shift;
+				if(b >= 0)
+					return value;
+			}
+			throw malformed("invalid varint");
+		}
+		
+		private long unzigzag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+		
+		private void require(int bytes) throws MalformedJsonException {
+			if(limit - position < bytes)
+				throw malformed("unexpected end of data");
+		}
+		
+		private MalformedJsonException malformed(String message) {
+			return new MalformedJsonException(message, position - start);
+		}
+		
+		/**
+		 * A reusable view over the decoding buffer
+		 */
+		private final class Chars implements CharSequence {
+			@Override
+			public int length() {
+				return count;
+			}
+			
+			@Override
+			public char charAt(int index) {
+				return chars[index];
+			}
+			
+			@Override
+			public CharSequence subSequence(int from, int to) {
+				return new String(chars, from, to - from);
+			}
+			
+			@Override
+			public String toString() {
+				return new String(chars, 0, count);
+			}
+		}
+	}
+}
@@ -0,0 +1,422 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Defines a visitor implementation to encode the JSON structure in a compact binary format, that is decoded
+ * by a {@link BinaryDecoder} much faster than the JSON text is compiled.<br>
+ * The strings are prefixed by their length, the numbers keep their representation (see {@link NumberMode})
+ * and the packed arrays are written as sequences of primitives. Optionally, the repeated names of each document
+ * are written as references to their first occurrence, that the decoder resolves to the same interned
+ * {@link JsonString} without decoding them again.<br>
+ * Each visited root element is written as a document on its own. A visitor built on an output stream
+ * writes the documents directly to the stream, without building them in memory.
+ * @author Salvatore Giampa'
+ *
+ */
+public class BinaryEncodingVisitor implements JsonVisitor {
+	// the size of the buffer written to the output stream
+	private static final int BUFFER_SIZE = 8192;
+	// the integers written in the token byte
+	private static final long MIN_SMALL_INT = BinaryFormat.SMALL_INT - BinaryFormat.SMALL_INT_BIAS;
+	private static final long MAX_SMALL_INT = BinaryFormat.SMALL_INT_LAST - BinaryFormat.SMALL_INT_BIAS;
+	// the doubles written as integers must be exact
+	private static final double MAX_INTEGRAL_DOUBLE = 1L << 53;
+	
+	private final OutputStream out;
+	private final boolean keyReferences;
+	private byte[] buffer;
+	private int count;
+	
+	// the names of the document being encoded, with their indices
+	private final HashMap<JsonString, Integer> keys = new HashMap<>();
+	private int depth;
+	
+	/**
+	 * Creates a visitor that encodes the visited elements in memory, writing the repeated names as references
+	 * @see #toByteArray()
+	 */
+	public BinaryEncodingVisitor() {
+		this(true);
+	}
+	
+	/**
+	 * Creates a visitor that encodes the visited elements in memory
+	 * @param keyReferences true to write the repeated names of each document as references
+	 * @see #toByteArray()
+	 */
+	public BinaryEncodingVisitor(boolean keyReferences) {
+		this.out = null;
+		this.keyReferences = keyReferences;
+		buffer = new byte[256];
+	}
+	
+	/**
+	 * Creates a visitor that writes the visited elements to the specified stream, writing the repeated names as references
+	 * @param out the output stream
+	 */
+	public BinaryEncodingVisitor(OutputStream out) {
+		this(out, true);
+	}
+	
+	/**
+	 * Creates a visitor that writes the visited elements to the specified stream
+	 * @param out the output stream
+	 * @param keyReferences true to write the repeated names of each document as references
+	 */
+	public BinaryEncodingVisitor(OutputStream out, boolean keyReferences) {
+		if(out == null)
+			throw new NullPointerException("output stream cannot be null");
+		this.out = out;
+		this.keyReferences = keyReferences;
+		buffer = new byte[BUFFER_SIZE];
+	}
+	
+	/**
+	 * Tells whether the repeated names of each document are written as references
+	 * @return true if the names are referenced
+	 */
+	public boolean isKeyReferences() {
+		return keyReferences;
+	}
+	
+	/**
+	 * Gets the bytes encoded since the last call
+	 * @return the encoded documents
+	 * @throws IllegalStateException if this visitor writes to an output stream
+	 */
+	public byte[] toByteArray() {
+		if(out != null)
+			throw new IllegalStateException("the visitor writes to an output stream");
+		byte[] bytes = Arrays.copyOf(buffer, count);
+		count = 0;
+		return bytes;
+	}
+	
+	/**
+	 * Flushes the encoded bytes to the output stream, if this visitor writes to a stream
+	 * @throws UncheckedIOException if an I/O error occurs
+	 */
+	public void flush() {
+		if(out == null)
+			return;
+		drain();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public void visit(JsonObject element) {
+		open();
+		Set<Entry<JsonString, JsonElement>> entries = element.entries();
+		write(BinaryFormat.OBJECT);
+		writeVarint(entries.size());
+		for(Entry<JsonString, JsonElement> entry : entries) {
+			writeKey(entry.getKey());
+			entry.getValue().accept(this);
+		}
+		close();
+	}
+	
+	@Override
+	public void visit(JsonArray element) {
+		open();
+		double[] doubles = element.packedDoubles();
+		long[] longs = element.packedLongs();
+		int size = element.size();
+		if(doubles != null) {
+			if(areIntegral(doubles, size)) {
+				write(BinaryFormat.INTEGRAL_DOUBLES);
+				writeVarint(size);
+				for(int i = 0; i < size; i++)
+					writeVarint(zigzag((long) doubles[i]));
+			} else {
+				write(BinaryFormat.DOUBLES);
+				writeVarint(size);
+				for(int i = 0; i < size; i++)
+					writeLongBits(Double.doubleToRawLongBits(doubles[i]));
+			}
+		} else if(longs != null) {
+			write(BinaryFormat.LONGS);
+			writeVarint(size);
+			for(int i = 0; i < size; i++)
+				writeVarint(zigzag(longs[i]));
+		} else {
+			write(BinaryFormat.ARRAY);
+			writeVarint(size);
+			for(JsonElement elem : element)
+				elem.accept(this);
+		}
+		close();
+	}
+	
+	@Override
+	public void visit(JsonString element) {
+		open();
+		String value = element.toString();
+		int length = utf8Length(value);
+		if(length <= BinaryFormat.SHORT_STRING_LAST - BinaryFormat.SHORT_STRING)
+			write(BinaryFormat.SHORT_STRING + length);
+		else {
+			write(BinaryFormat.STRING);
+			writeVarint(length);
+		}
+		writeUtf8(value, length);
+		close();
+	}
+	
+	@Override
+	public void visit(JsonNumber element) {
+		open();
+		switch(element.kind()) {
+		case JsonNumber.LONG:
+			long value = element.getLong();
+			if(value >= MIN_SMALL_INT && value <= MAX_SMALL_INT)
+				write((int) (BinaryFormat.SMALL_INT_BIAS + value));
+			else {
+				write(BinaryFormat.LONG);
+				writeVarint(zigzag(value));
+			}
+			break;
+		case JsonNumber.DECIMAL:
+			BigDecimal decimal = element.getBigDecimal();
+			byte[] unscaled = decimal.unscaledValue().toByteArray();
+			write(BinaryFormat.DECIMAL);
+			writeVarint(zigzag(decimal.scale()));
+			writeVarint(unscaled.length);
+			ensure(unscaled.length);
+			System.arraycopy(unscaled, 0, buffer, count, unscaled.length);
+			count += unscaled.length;
+			break;
+		case JsonNumber.RAW:
+			String text = element.toString();
+			write(BinaryFormat.NUMBER_TEXT);
+			writeVarint(text.length());
+			writeUtf8(text, text.length());
+			break;
+		default:
+			writeDouble(element.get());
+		}
+		close();
+	}
+	
+	@Override
+	public void visit(JsonNull element) {
+		open();
+		write(BinaryFormat.NULL);
+		close();
+	}
+	
+	@Override
+	public void visit(JsonBoolean element) {
+		open();
+		write(element.getValue() ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+		close();
+	}
+	
+	/**
+	 * Starts a value, writing the header of the document if it is a root element
+	 */
+	private void open() {
+		if(depth++ > 0)
+			return;
+		keys.clear();
+		ensure(BinaryFormat.MAGIC.length + 2);
+		for(byte b : BinaryFormat.MAGIC)
+			buffer[count++] = b;
+		buffer[count++] = BinaryFormat.VERSION;
+		buffer[count++] = (byte) (keyReferences ? BinaryFormat.KEY_REFERENCES : 0);
+	}
+	
+	/**
+	 * Ends a value, writing the completed document to the output stream
+	 */
+	private void close() {
+		if(--depth == 0 && out != null)
+			drain();
+	}
+	
+	private void writeKey(JsonString key) {
+		if(keyReferences) {
+			Integer index = keys.get(key);
+			if(index != null) {
+				writeVarint(((long) index << 1) | 1);
+				return;
+			}
+		}
+		String name = key.toString();
+		int length = utf8Length(name);
+		writeVarint((long) length << 1);
+		writeUtf8(name, length);
+		if(keyReferences && length <= BinaryFormat.MAX_KEY_LENGTH && keys.size() < BinaryFormat.MAX_KEYS)
+			keys.put(key, keys.size());
+	}
+	
+	private void writeDouble(double value) {
+		if(isIntegral(value)) {
+			write(BinaryFormat.INTEGRAL_DOUBLE);
+			writeVarint(zigzag((long) value));
+		} else if((float) value == value) {
+			write(BinaryFormat.FLOAT);
+			int bits = Float.floatToRawIntBits((float) value);
+			ensure(4);
+			buffer[count++] = (byte) (bits >>> 24);
+			buffer[count++] = (byte) (bits >>> 16);
+			buffer[count++] = (byte) (bits >>> 8);
+			buffer[count++] = (byte) bits;
+		} else {
+			write(BinaryFormat.DOUBLE);
+			writeLongBits(Double.doubleToRawLongBits(value));
+		}
+	}
+	
+	/**
+	 * Tells whether a double is an integer that is written exactly as a varint, excluding the negative zero
+	 */
+	private static boolean isIntegral(double value) {
+		return value == (long) value && Math.abs(value) <= MAX_INTEGRAL_DOUBLE
+				&& (value != 0 || Double.doubleToRawLongBits(value) == 0);
+	}
+	
+	private static boolean areIntegral(double[] values, int size) {
+		for(int i = 0; i < size; i++)
+			if(!isIntegral(values[i]))
+				return false;
+		return true;
+	}
+	
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	/**
+	 * Counts the UTF-8 bytes of a string, replacing the unpaired surrogates by a question mark as {@link String#getBytes} does
+	 */
+	private static int utf8Length(String value) {
+		int length = value.length();
+		int bytes = length;
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(c < 0x80)
+				continue;
+			if(c < 0x800)
+				bytes++;
+			else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				bytes += 2;
+				i++;
+			} else if(!Character.isSurrogate(c))
+				bytes += 2;
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Writes the UTF-8 bytes of a string, whose number has been counted by {@link #utf8Length(String)}
+	 */
+	private void writeUtf8(String value, int bytes) {
+		ensure(bytes);
+		int length = value.length();
+		if(bytes == length) {
+			for(int i = 0; i < length; i++)
+				buffer[count++] = (byte) value.charAt(i);
+			return;
+		}
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(c < 0x80)
+				buffer[count++] = (byte) c;
+			else if(c < 0x800) {
+				buffer[count++] = (byte) (0xC0 | (c >> 6));
+				buffer[count++] = (byte) (0x80 | (c & 0x3F));
+			} else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int code = Character.toCodePoint(c, value.charAt(++i));
+				buffer[count++] = (byte) (0xF0 | (code >> 18));
+				buffer[count++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+				buffer[count++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+				buffer[count++] = (byte) (0x80 | (code & 0x3F));
+			} else if(Character.isSurrogate(c))
+				buffer[count++] = '?';
+			else {
+				buffer[count++] = (byte) (0xE0 | (c >> 12));
+				buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[count++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+	
+	private void write(int token) {
+		ensure(1);
+		buffer[count++] = (byte) token;
+	}
+	
+	/**
+	 * Writes an unsigned varint, seven bits per byte from the lowest ones
+	 */
+	private void writeVarint(long value) {
+		ensure(10);
+		while((value & ~0x7FL) != 0) {
+			buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[count++] = (byte) value;
+	}
+	
+	private void writeLongBits(long bits) {
+		ensure(8);
+		for(int shift = 56; shift >= 0; shift -= 8)
+			buffer[count++] = (byte) (bits >>> shift);
+	}
+	
+	/**
+	 * Makes room for the specified number of bytes, writing the buffer to the output stream or growing it
+	 */
+	private void ensure(int bytes) {
+		if(count + bytes <= buffer.length)
+			return;
+		if(out != null) {
+			drain();
+			if(bytes <= buffer.length)
+				return;
+		}
+		buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + bytes));
+	}
+	
+	private void drain() {
+		if(count == 0)
+			return;
+		try {
+			out.write(buffer, 0, count);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		count = 0;
+	}
+}
@@ -0,0 +1,81 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines the tokens of the binary format written by {@link BinaryEncodingVisitor} and read by {@link BinaryDecoder}.<br>
+ * A document starts with the {@link #MAGIC} bytes, the {@link #VERSION} and a byte of flags, followed by its root value.
+ * Each value starts with a token byte:
+ * <ul>
+ * <li>{@link #NULL}, {@link #FALSE} and {@link #TRUE} are complete values;</li>
+ * <li>{@link #SMALL_INT} to {@link #SMALL_INT_LAST} hold the integers from -16 to 15, biased by {@link #SMALL_INT_BIAS};</li>
+ * <li>{@link #LONG} is followed by a zigzag varint, {@link #INTEGRAL_DOUBLE} by the zigzag varint of a double
+ * without fractional part, {@link #FLOAT} and {@link #DOUBLE} by a big-endian IEEE 754 value,
+ * {@link #DECIMAL} by the zigzag varint scale and the length-prefixed two's complement unscaled value,
+ * {@link #NUMBER_TEXT} by the length-prefixed ASCII text of a lazy number;</li>
+ * <li>{@link #SHORT_STRING} to {@link #SHORT_STRING_LAST} are followed by up to 63 bytes of UTF-8, whose length
+ * is held by the token, {@link #STRING} by a length-prefixed UTF-8 string;</li>
+ * <li>{@link #OBJECT} is followed by the varint number of its fields and by the name and the value of each field;</li>
+ * <li>{@link #ARRAY} is followed by the varint number of its elements and by the elements,
+ * {@link #DOUBLES}, {@link #INTEGRAL_DOUBLES} and {@link #LONGS} by the number of the elements of a packed array
+ * and by the numbers, as big-endian doubles or as zigzag varints.</li>
+ * </ul>
+ * A name is a varint whose lowest bit tells whether it is a reference: a reference holds the index of a name
+ * in the table of the document, otherwise the varint holds the length of the UTF-8 bytes of the name that follow.
+ * When the {@link #KEY_REFERENCES} flag is set, the first {@link #MAX_KEYS} names that are at most
+ * {@link #MAX_KEY_LENGTH} bytes long are added to the table in order of appearance, and their next occurrences
+ * are written as references.
+ * @author Salvatore Giampa'
+ *
+ */
+final class BinaryFormat {
+	static final byte[] MAGIC = {'J', 'B'};
+	static final int VERSION = 1;
+	
+	// the flags of the document header
+	static final int KEY_REFERENCES = 1;
+	
+	static final int MAX_KEYS = 1024;
+	static final int MAX_KEY_LENGTH = 64;
+	
+	static final int NULL = 0x00;
+	static final int FALSE = 0x01;
+	static final int TRUE = 0x02;
+	static final int LONG = 0x03;
+	static final int FLOAT = 0x04;
+	static final int DOUBLE = 0x05;
+	static final int DECIMAL = 0x06;
+	static final int NUMBER_TEXT = 0x07;
+	static final int STRING = 0x08;
+	static final int OBJECT = 0x09;
+	static final int ARRAY = 0x0A;
+	static final int DOUBLES = 0x0B;
+	static final int LONGS = 0x0C;
+	static final int INTEGRAL_DOUBLE = 0x0D;
+	static final int INTEGRAL_DOUBLES = 0x0E;
+	
+	static final int SMALL_INT = 0x20;
+	static final int SMALL_INT_LAST = 0x3F;
+	static final int SMALL_INT_BIAS = 0x30;
+	
+	static final int SHORT_STRING = 0x40;
+	static final int SHORT_STRING_LAST = 0x7F;
+	
+	private BinaryFormat() {}
+}
@@ -0,0 +1,179 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Defines the map of the fields of a {@link ObjectStorage#COMPACT} object: names, values and name hashes
+ * are stored in parallel arrays, in insertion order, and looked up by a linear scan of the hashes.
+ * @author Salvatore Giampa'
+ *
+ */
+final class CompactMap extends AbstractMap<JsonString, JsonElement> {
+	/**
+	 * The maximum number of fields before the object switches to a hash table
+	 */
+	static final int MAX_SIZE = 16;
+
+	private JsonString[] names = new JsonString[4];
+	private JsonElement[] values = new JsonElement[4];
+	private int[] hashes = new int[4];
+	private int size;
+
+	/**
+	 * Tells whether a new field would exceed the maximum size
+	 * @return true if this map contains {@link #MAX_SIZE} fields
+	 */
+	boolean isFull() {
+		return size >= MAX_SIZE;
+	}
+
+	/**
+	 * Gets the value of a field, looking it up by its plain name
+	 * @param name the field name
+	 * @return the field value, or null if the field is absent
+	 */
+	JsonElement get(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : values[index];
+	}
+
+	private int indexOf(String name) {
+		int hash = name.hashCode();
+		for(int i = 0; i < size; i++)
+			if(hashes[i] == hash && names[i].toString().equals(name))
+				return i;
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof JsonString && indexOf(key.toString()) >= 0;
+	}
+
+	@Override
+	public JsonElement get(Object key) {
+		return key instanceof JsonString ? get(key.toString()) : null;
+	}
+
+	@Override
+	public JsonElement put(JsonString name, JsonElement value) {
+		String plain = name.toString();
+		int index = indexOf(plain);
+		if(index >= 0) {
+			JsonElement old = values[index];
+			values[index] = value;
+			return old;
+		}
+		if(size == names.length) {
+			int capacity = Math.min(size * 2, MAX_SIZE);
+			JsonString[] grownNames = new JsonString[capacity];
+			JsonElement[] grownValues = new JsonElement[capacity];
+			int[] grownHashes = new int[capacity];
+			System.arraycopy(names, 0, grownNames, 0, size);
+			System.arraycopy(values, 0, grownValues, 0, size);
+			System.arraycopy(hashes, 0, grownHashes, 0, size);
+			names = grownNames;
+			values = grownValues;
+			hashes = grownHashes;
+		}
+		names[size] = name;
+		values[size] = value;
+		hashes[size++] = plain.hashCode();
+		return null;
+	}
+
+	@Override
+	public JsonElement remove(Object key) {
+		int index = key instanceof JsonString ? indexOf(key.toString()) : -1;
+		if(index < 0)
+			return null;
+		JsonElement old = values[index];
+		removeAt(index);
+		return old;
+	}
+
+	private void removeAt(int index) {
+		int moved = size - index - 1;
+		System.arraycopy(names, index + 1, names, index, moved);
+		System.arraycopy(values, index + 1, values, index, moved);
+		System.arraycopy(hashes, index + 1, hashes, index, moved);
+		names[--size] = null;
+		values[size] = null;
+	}
+
+	@Override
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			names[i] = null;
+			values[i] = null;
+		}
+		size = 0;
+	}
+
+	@Override
+	public Set<Entry<JsonString, JsonElement>> entrySet() {
+		return new AbstractSet<Entry<JsonString, JsonElement>>() {
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Iterator<Entry<JsonString, JsonElement>> iterator() {
+				return new Iterator<Entry<JsonString, JsonElement>>() {
+					private int next;
+					private int last = -1;
+
+					@Override
+					public boolean hasNext() {
+						return next < size;
+					}
+
+					@Override
+					public Entry<JsonString, JsonElement> next() {
+						if(next >= size)
+							throw new NoSuchElementException();
+						last = next++;
+						return new SimpleImmutableEntry<>(names[last], values[last]);
+					}
+
+					@Override
+					public void remove() {
+						if(last < 0)
+							throw new IllegalStateException();
+						removeAt(last);
+						next = last;
+						last = -1;
+					}
+				};
+			}
+		};
+	}
+}
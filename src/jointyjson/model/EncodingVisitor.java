@@ -18,77 +18,240 @@
 
 package jointyjson.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import jointyjson.metrics.EncodeMetrics;
+import jointyjson.metrics.JsonMetricsListener;
+import jointyjson.stream.JsonFormat;
+import jointyjson.stream.JsonGenerator;
+
 /**
  * Defines a visitor implementation to encode the JSON structure in the corresponding JSON string.
+ * The encoding is streamed through a {@link JsonGenerator}, so a visitor built on a generator
+ * writes the structure directly to its output, without building the whole string in memory.<br>
+ * Objects and arrays are traversed by a {@link JsonCursor}, so structures of any depth are encoded in constant call stack depth.<br>
+ * While a metrics listener is set, the listener is notified with the statistics of each visited root element.
  * @author Salvatore Giampa'
  *
  */
 public class EncodingVisitor implements JsonVisitor {
 	
-	private StringBuilder sb = new StringBuilder();
-	private int level = 0;
+	private final JsonGenerator generator;
+	private StringBuilder sb;
+	
+	private JsonMetricsListener metricsListener;
+	// the statistics of the root element being measured
+	private boolean measuring;
+	private int depth;
+	private int maxDepth;
+	private long nodes;
+	
+	// the cursor of the last encoded container, reused when the encoding is ended
+	private JsonCursor cursor;
+	
+	/**
+	 * Creates a visitor that encodes the visited elements in a string, in {@link JsonFormat#PRETTY} format
+	 * @see #getJsonString()
+	 */
+	public EncodingVisitor() {
+		sb = new StringBuilder();
+		generator = new JsonGenerator(sb, JsonFormat.PRETTY);
+	}
+	
+	/**
+	 * Creates a visitor that writes the visited elements to the specified generator
+	 * @param generator the generator
+	 */
+	public EncodingVisitor(JsonGenerator generator) {
+		if(generator == null)
+			throw new NullPointerException("generator cannot be null");
+		this.generator = generator;
+	}
+	
+	/**
+	 * Sets the listener notified with the statistics of each visited root element
+	 * @param listener the listener, or null to stop collecting the statistics
+	 */
+	public void setMetricsListener(JsonMetricsListener listener) {
+		metricsListener = listener;
+	}
+	
+	public JsonMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
 	
 	@Override
 	public void visit(JsonObject element) {
-		sb.append("{\n");
-		level++;
-		boolean first = true;
-		for(JsonString field : element.getFields()) {
-			if(!first) sb.append(",\n");
-			first = false;
-			level("\"" + field.toEncodedString() + "\" : ");
-			
-			element.get(field.toString()).accept(this);
-		}
-		sb.append("\n");
-		level--;
-		level("}");
+		if(measure(element))
+			return;
+		encode(element);
 	}
 
 	@Override
 	public void visit(JsonArray element) {
-		sb.append("[");
-		level++;
-		boolean first = true;
-		for(JsonElement elem : element) {
-			if(!first) sb.append(", ");
-			first = false;
-			elem.accept(this);
+		if(measure(element))
+			return;
+		encode(element);
+	}
+	
+	/**
+	 * Encodes an object or an array traversing it by a cursor, so the call stack does not grow with the nesting depth.
+	 * The other values are encoded by visiting them.
+	 */
+	private void encode(JsonElement container) {
+		JsonCursor cursor = this.cursor;
+		if(cursor == null || cursor.getEvent() != null)
+			cursor = new JsonCursor(container);
+		else
+			cursor.reset(container);
+		while(cursor.next()) {
+			JsonElement element = cursor.getElement();
+			switch(cursor.getEvent()) {
+			case ENTER:
+				field(cursor);
+				enter();
+				if(element instanceof JsonObject) {
+					generator.startObject();
+					break;
+				}
+				generator.startArray();
+				if(writePacked((JsonArray) element)) {
+					// the packed array is left at once
+					cursor.skipChildren();
+					leave(element);
+				}
+				break;
+			case LEAVE:
+				leave(element);
+				break;
+			default:
+				field(cursor);
+				element.accept(this);
+			}
 		}
-		level--;
-		sb.append("]");
+		this.cursor = cursor;
+	}
+	
+	/**
+	 * Closes an object or an array
+	 */
+	private void leave(JsonElement container) {
+		depth--;
+		if(container instanceof JsonObject)
+			generator.endObject();
+		else
+			generator.endArray();
+	}
+	
+	/**
+	 * Writes the name of the current element of a cursor, if it is a value of an object
+	 */
+	private void field(JsonCursor cursor) {
+		JsonString name = cursor.getName();
+		if(name != null)
+			generator.field(name);
+	}
+	
+	/**
+	 * Writes the numbers of a packed array
+	 * @return true if the array is packed
+	 */
+	private boolean writePacked(JsonArray element) {
+		double[] doubles = element.packedDoubles();
+		long[] longs = element.packedLongs();
+		if(doubles != null) {
+			for(int i = 0, size = element.size(); i < size; i++)
+				generator.numberValue(doubles[i]);
+		} else if(longs != null) {
+			for(int i = 0, size = element.size(); i < size; i++)
+				generator.numberValue(longs[i]);
+		} else
+			return false;
+		nodes += element.size();
+		return true;
 	}
 
 	@Override
 	public void visit(JsonString element) {
-		sb.append("\"" + element.toEncodedString() + "\"");
+		if(measure(element))
+			return;
+		generator.stringValue(element);
+		nodes++;
 	}
 
 	@Override
 	public void visit(JsonNumber element) {
-		sb.append(element.get());
+		if(measure(element))
+			return;
+		generator.numberValue(element);
+		nodes++;
+	}
+	
+	/**
+	 * Encodes a root element measuring it, if a metrics listener is set and no element is being measured yet
+	 * @return true if the element has been encoded
+	 */
+	private boolean measure(JsonElement root) {
+		JsonMetricsListener listener = metricsListener;
+		if(listener == null || measuring)
+			return false;
+		measuring = true;
+		depth = maxDepth = 0;
+		nodes = 0;
+		long characters = generator.getCharCount();
+		long start = System.nanoTime();
+		try {
+			root.accept(this);
+		} finally {
+			measuring = false;
+		}
+		long nanos = System.nanoTime() - start;
+		listener.encoded(new EncodeMetrics(nodes, maxDepth, generator.getCharCount() - characters, nanos));
+		return true;
 	}
 	
-	private void level(String string) {
-		for(int i = 0; i<level; i++) sb.append("    ");
-		sb.append(string);
+	/**
+	 * Counts an object or an array and its depth
+	 */
+	private void enter() {
+		nodes++;
+		if(++depth > maxDepth)
+			maxDepth = depth;
 	}
 	
+	/**
+	 * Gets the string encoded since the last call
+	 * @return the encoded string
+	 * @throws IllegalStateException if this visitor writes to a generator given by the user
+	 */
 	public String getJsonString() {
+		if(sb == null)
+			throw new IllegalStateException("the visitor writes to a user generator");
+		try {
+			generator.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 		String json = sb.toString();
-		sb = new StringBuilder();
+		sb.setLength(0);
 		return json;
 	}
 
 	@Override
 	public void visit(JsonNull element) {
-		sb.append("null");
+		if(measure(element))
+			return;
+		generator.nullValue();
+		nodes++;
 	}
 
 	@Override
 	public void visit(JsonBoolean element) {
-		sb.append(element.getValue());
-		
+		if(measure(element))
+			return;
+		generator.booleanValue(element.getValue());
+		nodes++;
 	}
 
 }
@@ -0,0 +1,41 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines the policies used by a {@link JsonStringPool} to evict strings when it is full.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum EvictionPolicy {
+	/**
+	 * Evicts the least recently interned string
+	 */
+	FIFO,
+
+	/**
+	 * Evicts the least recently used string
+	 */
+	LRU,
+
+	/**
+	 * Never evicts, the pool capacity is ignored
+	 */
+	NONE
+}
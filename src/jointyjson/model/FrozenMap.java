@@ -0,0 +1,217 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Defines the immutable map of the fields of a frozen {@link JsonObject}: names, values and name hashes are stored
+ * in parallel arrays, in iteration order, and the larger objects are indexed by an open addressing table.
+ * All the fields are final, so a map is safely published with the object holding it.<br>
+ * The updated copies share the names, the hashes and the table when the names do not change.
+ * @author Salvatore Giampa'
+ *
+ */
+final class FrozenMap extends AbstractMap<JsonString, JsonElement> {
+	// the maps up to this size are looked up by a linear scan of the hashes
+	private static final int SCAN_SIZE = 8;
+
+	static final FrozenMap EMPTY = new FrozenMap(new JsonString[0], new JsonElement[0]);
+
+	private final JsonString[] names;
+	private final JsonElement[] values;
+	private final int[] hashes;
+	// the positions of the fields by hash, plus one, or null for the small maps
+	private final int[] table;
+
+	/**
+	 * Creates a map of the specified fields, adopting the arrays
+	 * @param names the names of the fields, without duplicates
+	 * @param values the values of the fields
+	 */
+	FrozenMap(JsonString[] names, JsonElement[] values) {
+		this.names = names;
+		this.values = values;
+		hashes = new int[names.length];
+		for(int i = 0; i < names.length; i++)
+			hashes[i] = names[i].toString().hashCode();
+		table = index(hashes);
+	}
+
+	/**
+	 * Creates a map with the names of another map and the specified values
+	 */
+	private FrozenMap(FrozenMap map, JsonElement[] values) {
+		this.names = map.names;
+		this.hashes = map.hashes;
+		this.table = map.table;
+		this.values = values;
+	}
+
+	private static int[] index(int[] hashes) {
+		if(hashes.length <= SCAN_SIZE)
+			return null;
+		int[] table = new int[Integer.highestOneBit(hashes.length * 2 - 1) * 2];
+		int mask = table.length - 1;
+		for(int i = 0; i < hashes.length; i++) {
+			int slot = spread(hashes[i]) & mask;
+			while(table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = i + 1;
+		}
+		return table;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Finds the position of a field by its plain name
+	 * @param name the field name
+	 * @return the position of the field, or -1 if the field is absent
+	 */
+	int indexOf(String name) {
+		int hash = name.hashCode();
+		if(table == null) {
+			for(int i = 0; i < hashes.length; i++)
+				if(hashes[i] == hash && names[i].toString().equals(name))
+					return i;
+			return -1;
+		}
+		int mask = table.length - 1;
+		for(int slot = spread(hash) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int i = table[slot] - 1;
+			if(hashes[i] == hash && names[i].toString().equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the value of a field, looking it up by its plain name
+	 * @param name the field name
+	 * @return the field value, or null if the field is absent
+	 */
+	JsonElement get(String name) {
+		int index = indexOf(name);
+		return index < 0 ? null : values[index];
+	}
+
+	/**
+	 * Creates a copy of this map with a field set to the specified value.
+	 * A new field is inserted in name order if the map is sorted, at the end otherwise.
+	 * @param name the field name
+	 * @param value the field value
+	 * @param sorted true if the fields are sorted by name
+	 * @return the updated copy
+	 */
+	FrozenMap with(JsonString name, JsonElement value, boolean sorted) {
+		int index = indexOf(name.toString());
+		if(index >= 0) {
+			JsonElement[] updated = values.clone();
+			updated[index] = value;
+			return new FrozenMap(this, updated);
+		}
+		int size = names.length;
+		int position = size;
+		if(sorted) {
+			position = Arrays.binarySearch(names, name);
+			position = position < 0 ? -position - 1 : position;
+		}
+		JsonString[] newNames = new JsonString[size + 1];
+		JsonElement[] newValues = new JsonElement[size + 1];
+		System.arraycopy(names, 0, newNames, 0, position);
+		System.arraycopy(values, 0, newValues, 0, position);
+		newNames[position] = name;
+		newValues[position] = value;
+		System.arraycopy(names, position, newNames, position + 1, size - position);
+		System.arraycopy(values, position, newValues, position + 1, size - position);
+		return new FrozenMap(newNames, newValues);
+	}
+
+	/**
+	 * Creates a copy of this map without a field
+	 * @param name the field name
+	 * @return the updated copy, or this map if the field is absent
+	 */
+	FrozenMap without(String name) {
+		int index = indexOf(name);
+		if(index < 0)
+			return this;
+		int size = names.length;
+		JsonString[] newNames = new JsonString[size - 1];
+		JsonElement[] newValues = new JsonElement[size - 1];
+		System.arraycopy(names, 0, newNames, 0, index);
+		System.arraycopy(values, 0, newValues, 0, index);
+		System.arraycopy(names, index + 1, newNames, index, size - index - 1);
+		System.arraycopy(values, index + 1, newValues, index, size - index - 1);
+		return new FrozenMap(newNames, newValues);
+	}
+
+	@Override
+	public int size() {
+		return names.length;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof JsonString && indexOf(key.toString()) >= 0;
+	}
+
+	@Override
+	public JsonElement get(Object key) {
+		return key instanceof JsonString ? get(key.toString()) : null;
+	}
+
+	@Override
+	public Set<Entry<JsonString, JsonElement>> entrySet() {
+		return new AbstractSet<Entry<JsonString, JsonElement>>() {
+			@Override
+			public int size() {
+				return names.length;
+			}
+
+			@Override
+			public Iterator<Entry<JsonString, JsonElement>> iterator() {
+				return new Iterator<Entry<JsonString, JsonElement>>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return next < names.length;
+					}
+
+					@Override
+					public Entry<JsonString, JsonElement> next() {
+						if(next >= names.length)
+							throw new NoSuchElementException();
+						int i = next++;
+						return new SimpleImmutableEntry<>(names[i], values[i]);
+					}
+				};
+			}
+		};
+	}
+}
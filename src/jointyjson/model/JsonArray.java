@@ -19,18 +19,80 @@
 package jointyjson.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
- * Defines an iterable heterogeneous json array
+ * Defines an iterable heterogeneous json array.<br>
+ * An array whose elements are all added by {@link #add(double)} or all by {@link #add(long)}, as the parsers do,
+ * is packed in a primitive array instead of holding a {@link JsonNumber} for each element.
+ * Any other change turns it into a generic array, as does the first access to its elements by {@link #get(int)}
+ * or by iteration, so that the accessed numbers are the elements of the array and can be changed in place.
+ * The packed numbers are read without unpacking the array by {@link #getDouble(int)} and {@link #getLong(int)}.<br>
+ * The arrays of a lazily compiled document decode their contents when they are accessed for the first time,
+ * see {@link StructuralIndex}.<br>
+ * A frozen array, obtained by {@link #freeze()}, cannot be modified and can be read by many threads without
+ * synchronization. Its updated copies are obtained by the <i>with</i> operations, that share the unchanged elements.
  * @author Salvatore Giamp
  *
  */
 public class JsonArray implements JsonElement, Iterable<JsonElement>{
-	private ArrayList<JsonElement> array = new ArrayList<>();
+	// the generic storage, null while the array is packed
+	private ArrayList<JsonElement> array;
+	
+	// the packed storage, one of them is not null while the array is packed
+	private double[] doubles;
+	private long[] longs;
+	private int size;
+	
+	// the number of structural changes, to detect the concurrent modifications of the packed array
+	private int modifications;
+	
+	// the index from which the contents are decoded on the first access, null once they are decoded
+	private volatile StructuralIndex index;
+	private int indexEntry;
+	
+	// the contents of a frozen array, as long as the array: a JsonElement[], or a double[] or a long[] if it is packed;
+	// null while the array can be modified
+	private final Object frozen;
+	
+	public JsonArray() {
+		array = new ArrayList<>();
+		frozen = null;
+	}
+	
+	/**
+	 * Creates a lazy array, whose contents are decoded from the index on the first access
+	 */
+	JsonArray(StructuralIndex index, int entry) {
+		this.index = index;
+		this.indexEntry = entry;
+		this.frozen = null;
+	}
+	
+	/**
+	 * Creates a frozen array holding the specified contents
+	 */
+	private JsonArray(Object frozen) {
+		this.frozen = frozen;
+	}
 	
 	public int size() {
-		return array.size();
+		if(frozen != null)
+			return frozenSize();
+		expand();
+		return array != null ? array.size() : size;
+	}
+	
+	private int frozenSize() {
+		if(frozen instanceof double[])
+			return ((double[]) frozen).length;
+		if(frozen instanceof long[])
+			return ((long[]) frozen).length;
+		return ((JsonElement[]) frozen).length;
 	}
 
 	
@@ -39,26 +101,187 @@ public class JsonArray implements JsonElement, Iterable<JsonElement>{
 	 * @param element the element to add
 	 */
 	public void add(JsonElement element) {
+		checkMutable();
+		expand();
+		unpack();
 		array.add(element);
 	}
 	
+	/**
+	 * Adds a number to this JsonArray, that is packed if this array is empty or packed with doubles
+	 * @param number the number to add
+	 */
+	public void add(double number) {
+		checkMutable();
+		expand();
+		if(array != null && array.isEmpty()) {
+			array = null;
+			doubles = new double[8];
+		}
+		if(doubles == null) {
+			add(new JsonNumber(number));
+			return;
+		}
+		if(size == doubles.length)
+			doubles = Arrays.copyOf(doubles, size * 2);
+		doubles[size++] = number;
+		modifications++;
+	}
+	
+	/**
+	 * Adds an integer number to this JsonArray, that is packed if this array is empty or packed with longs
+	 * @param number the number to add
+	 */
+	public void add(long number) {
+		checkMutable();
+		expand();
+		if(array != null && array.isEmpty()) {
+			array = null;
+			longs = new long[8];
+		}
+		if(longs == null) {
+			add(new JsonNumber(number));
+			return;
+		}
+		if(size == longs.length)
+			longs = Arrays.copyOf(longs, size * 2);
+		longs[size++] = number;
+		modifications++;
+	}
+	
+	/**
+	 * Adds all the elements of another JsonArray to this JsonArray.
+	 * The numbers of a packed array are added as primitives, so that this array stays packed
+	 * if it is empty or packed with the same primitive type.
+	 * @param other the array whose elements are added
+	 */
+	public void addAll(JsonArray other) {
+		checkMutable();
+		expand();
+		int count = other.size();
+		if(count == 0)
+			return;
+		double[] otherDoubles = other.packedDoubles();
+		long[] otherLongs = other.packedLongs();
+		if(otherDoubles == null && otherLongs == null) {
+			unpack();
+			if(other.frozen != null)
+				array.addAll(Arrays.asList((JsonElement[]) other.frozen));
+			else
+				array.addAll(other.array);
+			return;
+		}
+		if(array != null && array.isEmpty()) {
+			array = null;
+			if(otherDoubles != null)
+				doubles = new double[Math.max(count, 8)];
+			else
+				longs = new long[Math.max(count, 8)];
+		}
+		if(doubles != null && otherDoubles != null) {
+			if(size + count > doubles.length)
+				doubles = Arrays.copyOf(doubles, Math.max(size * 2, size + count));
+			System.arraycopy(otherDoubles, 0, doubles, size, count);
+		} else if(longs != null && otherLongs != null) {
+			if(size + count > longs.length)
+				longs = Arrays.copyOf(longs, Math.max(size * 2, size + count));
+			System.arraycopy(otherLongs, 0, longs, size, count);
+		} else {
+			unpack();
+			array.ensureCapacity(array.size() + count);
+			for(int i = 0; i < count; i++)
+				array.add(otherDoubles != null ? new JsonNumber(otherDoubles[i]) : new JsonNumber(otherLongs[i]));
+			return;
+		}
+		size += count;
+		modifications++;
+	}
+
 	/**
 	 * Inserts a JsonElement in this JsonArray to the specified position
 	 * @param index the position where the sepcified element must be added
 	 * @param element the element to add
 	 */
 	public void insert(int index, JsonElement element) {
+		checkMutable();
+		expand();
+		unpack();
 		array.add(index, element);
 	}
 	
 	/**
-	 * Gets the JSON element at the specified index
+	 * Replaces the JSON element at the specified index
+	 * @param index the index of the JsonElement object to replace
+	 * @param element the new element
+	 * @return the replaced element
+	 */
+	public JsonElement set(int index, JsonElement element) {
+		checkMutable();
+		expand();
+		unpack();
+		return array.set(index, element);
+	}
+	
+	/**
+	 * Gets the JSON element at the specified index.
+	 * A packed array is turned into a generic array, while the numbers of a frozen packed array are frozen as the array.
 	 * @param index the index of the JsonElement object to get
 	 * @return the JsonElement at the specified index
 	 */
 	public JsonElement get(int index) {
+		if(frozen instanceof JsonElement[])
+			return ((JsonElement[]) frozen)[index];
+		if(frozen instanceof double[])
+			return JsonNumber.frozen(((double[]) frozen)[index]);
+		if(frozen instanceof long[])
+			return JsonNumber.frozen(((long[]) frozen)[index]);
+		expand();
+		if(array == null) {
+			checkIndex(index);
+			unpack();
+		}
 		return array.get(index);
 	}
+	
+	/**
+	 * Gets the number at the specified index as a double, without creating any element if this array is packed
+	 * @param index the index of the number
+	 * @return the number at the specified index
+	 * @throws ClassCastException if the element at the specified index is not a number
+	 */
+	public double getDouble(int index) {
+		if(frozen instanceof double[])
+			return ((double[]) frozen)[index];
+		if(frozen instanceof long[])
+			return ((long[]) frozen)[index];
+		if(frozen != null)
+			return ((JsonNumber) ((JsonElement[]) frozen)[index]).get();
+		expand();
+		if(array != null)
+			return ((JsonNumber) array.get(index)).get();
+		checkIndex(index);
+		return doubles != null ? doubles[index] : longs[index];
+	}
+	
+	/**
+	 * Gets the number at the specified index as a long, without creating any element if this array is packed
+	 * @param index the index of the number
+	 * @return the integral part of the number at the specified index
+	 * @throws ClassCastException if the element at the specified index is not a number
+	 */
+	public long getLong(int index) {
+		if(frozen instanceof double[])
+			return (long) ((double[]) frozen)[index];
+		if(frozen instanceof long[])
+			return ((long[]) frozen)[index];
+		if(frozen != null)
+			return ((JsonNumber) ((JsonElement[]) frozen)[index]).getLong();
+		expand();
+		if(array != null)
+			return ((JsonNumber) array.get(index)).getLong();
+		checkIndex(index);
+		return doubles != null ? (long) doubles[index] : longs[index];
+	}
 
 	/**
 	 * Removes the JSON element at the specified index
@@ -66,7 +289,284 @@ public class JsonArray implements JsonElement, Iterable<JsonElement>{
 	 * @return the JsonElement at the specified index
 	 */
 	public JsonElement remove(int index) {
-		return array.remove(index);
+		checkMutable();
+		expand();
+		if(array != null)
+			return array.remove(index);
+		checkIndex(index);
+		JsonElement removed = number(index);
+		if(doubles != null)
+			System.arraycopy(doubles, index + 1, doubles, index, size - index - 1);
+		else
+			System.arraycopy(longs, index + 1, longs, index, size - index - 1);
+		size--;
+		modifications++;
+		return removed;
+	}
+	
+	/**
+	 * Tells whether this array is packed in a primitive array
+	 * @return true if this array is packed
+	 */
+	public boolean isPacked() {
+		if(frozen != null)
+			return !(frozen instanceof JsonElement[]);
+		expand();
+		return array == null;
+	}
+	
+	/**
+	 * Copies all the numbers of this array in a new array of doubles
+	 * @return the numbers of this array
+	 * @throws ClassCastException if this array contains an element that is not a number
+	 */
+	public double[] toDoubleArray() {
+		double[] packed = packedDoubles();
+		if(packed != null)
+			return Arrays.copyOf(packed, size());
+		double[] result = new double[size()];
+		for(int i = 0; i < result.length; i++)
+			result[i] = getDouble(i);
+		return result;
+	}
+	
+	/**
+	 * Copies all the numbers of this array in a new array of longs, discarding their fractional parts
+	 * @return the numbers of this array
+	 * @throws ClassCastException if this array contains an element that is not a number
+	 */
+	public long[] toLongArray() {
+		long[] packed = packedLongs();
+		if(packed != null)
+			return Arrays.copyOf(packed, size());
+		long[] result = new long[size()];
+		for(int i = 0; i < result.length; i++)
+			result[i] = getLong(i);
+		return result;
+	}
+	
+	/**
+	 * Gets the packed doubles, valid up to {@link #size()}
+	 * @return the packed doubles, or null if this array is not packed with doubles
+	 */
+	double[] packedDoubles() {
+		if(frozen != null)
+			return frozen instanceof double[] ? (double[]) frozen : null;
+		expand();
+		return doubles;
+	}
+	
+	/**
+	 * Gets the packed longs, valid up to {@link #size()}
+	 * @return the packed longs, or null if this array is not packed with longs
+	 */
+	long[] packedLongs() {
+		if(frozen != null)
+			return frozen instanceof long[] ? (long[]) frozen : null;
+		expand();
+		return longs;
+	}
+	
+	/**
+	 * Creates a number holding a packed number, without unpacking this array
+	 * @param index the index of the number, that must be less than the size of this array
+	 * @return a number that is not an element of this array
+	 */
+	JsonNumber number(int index) {
+		double[] packed = packedDoubles();
+		return packed != null ? new JsonNumber(packed[index]) : new JsonNumber(packedLongs()[index]);
+	}
+	
+	/**
+	 * Decodes the contents of a lazy array, adopting the storage of the decoded array
+	 */
+	private void expand() {
+		if(index == null)
+			return;
+		synchronized(this) {
+			if(index == null)
+				return;
+			JsonArray decoded = index.decodeArray(indexEntry);
+			array = decoded.array;
+			doubles = decoded.doubles;
+			longs = decoded.longs;
+			size = decoded.size;
+			index = null;
+		}
+	}
+	
+	private void checkMutable() {
+		if(frozen != null)
+			throw new UnsupportedOperationException("A frozen JsonArray cannot be modified, use a with operation");
+	}
+	
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+	}
+	
+	/**
+	 * Turns this array into a generic array
+	 */
+	private void unpack() {
+		if(array != null)
+			return;
+		ArrayList<JsonElement> generic = new ArrayList<>(Math.max(size * 3 / 2, 10));
+		for(int i = 0; i < size; i++)
+			generic.add(number(i));
+		array = generic;
+		doubles = null;
+		longs = null;
+		size = 0;
+		modifications++;
+	}
+
+	/**
+	 * Gets an immutable copy of this array, whose elements are frozen too.
+	 * A packed array stays packed, and the frozen elements are shared with this array,
+	 * so freezing a frozen array returns the array itself.
+	 * @return the frozen array
+	 */
+	@Override
+	public JsonArray freeze() {
+		if(frozen != null)
+			return this;
+		expand();
+		if(doubles != null)
+			return new JsonArray(Arrays.copyOf(doubles, size));
+		if(longs != null)
+			return new JsonArray(Arrays.copyOf(longs, size));
+		JsonElement[] elements = new JsonElement[array.size()];
+		for(int i = 0; i < elements.length; i++)
+			elements[i] = array.get(i).freeze();
+		return new JsonArray(elements);
+	}
+	
+	@Override
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+	
+	/**
+	 * Gets a frozen copy of this array with the element at the specified index replaced, sharing all the other elements.
+	 * A packed array stays packed if the new element is a number of the same primitive type.
+	 * This array is frozen first if it is not frozen yet.
+	 * @param index the index of the replaced element
+	 * @param element the new element, that is frozen too
+	 * @return the updated copy
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public JsonArray with(int index, JsonElement element) {
+		JsonArray base = freeze();
+		Object contents = base.frozen;
+		int length = base.frozenSize();
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+		if(element instanceof JsonNumber) {
+			byte kind = ((JsonNumber) element).kind();
+			if(contents instanceof double[] && kind == JsonNumber.DOUBLE) {
+				double[] updated = ((double[]) contents).clone();
+				updated[index] = ((JsonNumber) element).get();
+				return new JsonArray(updated);
+			}
+			if(contents instanceof long[] && kind == JsonNumber.LONG) {
+				long[] updated = ((long[]) contents).clone();
+				updated[index] = ((JsonNumber) element).getLong();
+				return new JsonArray(updated);
+			}
+		}
+		JsonElement[] updated = base.frozenElements();
+		updated[index] = element.freeze();
+		return new JsonArray(updated);
+	}
+	
+	/**
+	 * Gets a frozen copy of this array with an element added at the end, sharing all the other elements.
+	 * This array is frozen first if it is not frozen yet.
+	 * @param element the added element, that is frozen too
+	 * @return the updated copy
+	 */
+	public JsonArray withAdded(JsonElement element) {
+		return withInserted(size(), element);
+	}
+	
+	/**
+	 * Gets a frozen copy of this array with an element inserted at the specified position, sharing all the other elements.
+	 * This array is frozen first if it is not frozen yet.
+	 * @param index the position of the inserted element
+	 * @param element the inserted element, that is frozen too
+	 * @return the updated copy
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public JsonArray withInserted(int index, JsonElement element) {
+		JsonArray base = freeze();
+		int length = base.frozenSize();
+		if(index < 0 || index > length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+		if(element instanceof JsonNumber) {
+			byte kind = ((JsonNumber) element).kind();
+			if(base.frozen instanceof double[] && kind == JsonNumber.DOUBLE) {
+				double[] contents = (double[]) base.frozen;
+				double[] updated = new double[length + 1];
+				System.arraycopy(contents, 0, updated, 0, index);
+				updated[index] = ((JsonNumber) element).get();
+				System.arraycopy(contents, index, updated, index + 1, length - index);
+				return new JsonArray(updated);
+			}
+			if(base.frozen instanceof long[] && kind == JsonNumber.LONG) {
+				long[] contents = (long[]) base.frozen;
+				long[] updated = new long[length + 1];
+				System.arraycopy(contents, 0, updated, 0, index);
+				updated[index] = ((JsonNumber) element).getLong();
+				System.arraycopy(contents, index, updated, index + 1, length - index);
+				return new JsonArray(updated);
+			}
+		}
+		JsonElement[] contents = base.frozenElements();
+		JsonElement[] updated = new JsonElement[length + 1];
+		System.arraycopy(contents, 0, updated, 0, index);
+		updated[index] = element.freeze();
+		System.arraycopy(contents, index, updated, index + 1, length - index);
+		return new JsonArray(updated);
+	}
+	
+	/**
+	 * Gets a frozen copy of this array without the element at the specified index, sharing all the other elements.
+	 * This array is frozen first if it is not frozen yet.
+	 * @param index the index of the removed element
+	 * @return the updated copy
+	 * @throws IndexOutOfBoundsException if the index is out of range
+	 */
+	public JsonArray without(int index) {
+		JsonArray base = freeze();
+		int length = base.frozenSize();
+		if(index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+		Object contents = base.frozen;
+		Object updated;
+		if(contents instanceof double[])
+			updated = new double[length - 1];
+		else if(contents instanceof long[])
+			updated = new long[length - 1];
+		else
+			updated = new JsonElement[length - 1];
+		System.arraycopy(contents, 0, updated, 0, index);
+		System.arraycopy(contents, index + 1, updated, index, length - index - 1);
+		return new JsonArray(updated);
+	}
+	
+	/**
+	 * Copies the elements of a frozen array, creating the numbers of a packed array
+	 */
+	private JsonElement[] frozenElements() {
+		int length = frozenSize();
+		JsonElement[] elements = new JsonElement[length];
+		if(frozen instanceof JsonElement[])
+			System.arraycopy(frozen, 0, elements, 0, length);
+		else
+			for(int i = 0; i < length; i++)
+				elements[i] = get(i).freeze();
+		return elements;
 	}
 
 	@Override
@@ -76,35 +576,54 @@ public class JsonArray implements JsonElement, Iterable<JsonElement>{
 
 	@Override
 	public Iterator<JsonElement> iterator() {
-		return array.iterator();
+		if(frozen instanceof JsonElement[])
+			return Collections.unmodifiableList(Arrays.asList((JsonElement[]) frozen)).iterator();
+		if(frozen == null) {
+			expand();
+			unpack();
+			return array.iterator();
+		}
+		// the frozen numbers of a frozen packed array
+		return new Iterator<JsonElement>() {
+			private int next;
+			private int expected = modifications;
+			private boolean removable;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public JsonElement next() {
+				if(expected != modifications)
+					throw new ConcurrentModificationException();
+				if(next >= size())
+					throw new NoSuchElementException();
+				removable = true;
+				return get(next++);
+			}
+
+			@Override
+			public void remove() {
+				if(!removable)
+					throw new IllegalStateException();
+				if(expected != modifications)
+					throw new ConcurrentModificationException();
+				JsonArray.this.remove(--next);
+				expected = modifications;
+				removable = false;
+			}
+		};
 	}
 	
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("[");
-		boolean first = true;
-		for(JsonElement elem : array) {
-			if(!first) sb.append(", ");
-			sb.append(elem);
-			first = false;
-		}
-		sb.append("]");
-		return sb.toString();
+		return JsonCursor.text(this, false);
 	}
 
-
 	@Override
 	public String toEncodedString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("[");
-		boolean first = true;
-		for(JsonElement elem : array) {
-			if(!first) sb.append(", ");
-			sb.append(elem.toEncodedString());
-			first = false;
-		}
-		sb.append("]");
-		return sb.toString();
+		return JsonCursor.text(this, true);
 	}
 }
@@ -66,5 +66,15 @@ public class JsonBoolean implements JsonElement {
 	public String toEncodedString() {
 		return "" + value;
 	}
+	
+	@Override
+	public JsonBoolean freeze() {
+		return this;
+	}
+	
+	@Override
+	public boolean isFrozen() {
+		return true;
+	}
 
 }
@@ -0,0 +1,332 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * Defines a cursor that walks a JSON structure depth-first by an explicit stack, instead of recursing
+ * on each nesting level, so structures of any depth are traversed in constant call stack depth.<br>
+ * The cursor notifies an {@link Event#ENTER} event when it reaches an object or an array,
+ * an {@link Event#LEAVE} event when all the values of the container have been traversed
+ * and a {@link Event#VALUE} event for each string, number, boolean or null.
+ * The enter events give the pre-order of the containers, the leave events their post-order.<br>
+ * The stack grows by doubling when a nesting level deeper than any one already traversed is entered,
+ * so no allocation is made per level: the cursor can be {@link #reset(JsonElement) reset} to reuse the stack.<br>
+ * The structure must not be modified while the cursor traverses it.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonCursor {
+	
+	/**
+	 * The events notified by a cursor
+	 */
+	public enum Event {
+		/** An object or an array is reached, before its values */
+		ENTER,
+		/** All the values of an object or an array have been traversed */
+		LEAVE,
+		/** A string, a number, a boolean or a null is reached */
+		VALUE
+	}
+	
+	private JsonElement root;
+	
+	// the open containers, with the name and the index of each container in its parent
+	private JsonElement[] containers = new JsonElement[16];
+	private JsonString[] names = new JsonString[16];
+	private int[] indexes = new int[16];
+	// the entries of the open objects, or the next index of the open arrays
+	private Iterator<?>[] entries = new Iterator<?>[16];
+	private int[] nexts = new int[16];
+	private int open;
+	
+	private Event event;
+	private JsonElement element;
+	private JsonString name;
+	private int index;
+	
+	/**
+	 * Creates a cursor positioned before the specified root element
+	 * @param root the root element
+	 */
+	public JsonCursor(JsonElement root) {
+		reset(root);
+	}
+	
+	/**
+	 * Positions this cursor before the specified root element, reusing its stack
+	 * @param root the root element
+	 */
+	public void reset(JsonElement root) {
+		if(root == null)
+			throw new NullPointerException("root cannot be null");
+		Arrays.fill(containers, 0, open, null);
+		Arrays.fill(names, 0, open, null);
+		Arrays.fill(entries, 0, open, null);
+		this.root = root;
+		open = 0;
+		event = null;
+		element = null;
+		name = null;
+		index = -1;
+	}
+	
+	/**
+	 * Advances this cursor to the next event
+	 * @return true if an event has been reached, false if the traversal is ended
+	 */
+	public boolean next() {
+		if(root != null) {
+			JsonElement first = root;
+			root = null;
+			reach(first, null, -1);
+			return true;
+		}
+		if(open == 0) {
+			event = null;
+			element = null;
+			name = null;
+			index = -1;
+			return false;
+		}
+		int top = open - 1;
+		JsonElement container = containers[top];
+		int position = nexts[top];
+		if(container instanceof JsonObject) {
+			Iterator<?> iterator = entries[top];
+			if(iterator.hasNext()) {
+				Entry<?, ?> entry = (Entry<?, ?>) iterator.next();
+				nexts[top] = position + 1;
+				reach((JsonElement) entry.getValue(), (JsonString) entry.getKey(), position);
+				return true;
+			}
+		} else {
+			JsonArray array = (JsonArray) container;
+			if(position < array.size()) {
+				nexts[top] = position + 1;
+				reach(array.get(position), null, position);
+				return true;
+			}
+		}
+		leave();
+		return true;
+	}
+	
+	/**
+	 * Skips the values of the object or the array just entered, moving this cursor to its leave event.
+	 * Nothing is done on the other events.
+	 */
+	public void skipChildren() {
+		if(event == Event.ENTER)
+			leave();
+	}
+	
+	/**
+	 * Gets the current event
+	 * @return the event, or null if the cursor is before the root element or the traversal is ended
+	 */
+	public Event getEvent() {
+		return event;
+	}
+	
+	/**
+	 * Gets the element of the current event
+	 * @return the element entered, left or reached, or null if there is no current event
+	 */
+	public JsonElement getElement() {
+		return element;
+	}
+	
+	/**
+	 * Gets the name of the current element in its parent object
+	 * @return the name, or null if the element is the root or a value of an array
+	 */
+	public JsonString getName() {
+		return name;
+	}
+	
+	/**
+	 * Gets the position of the current element in its parent object or array
+	 * @return the position, or -1 if the element is the root
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Gets the depth of the current element, that is the number of the containers enclosing it
+	 * @return the depth, 0 for the root element
+	 */
+	public int getDepth() {
+		return event == Event.ENTER ? open - 1 : open;
+	}
+	
+	/**
+	 * Gets the container of the current element
+	 * @return the parent object or array, or null if the element is the root
+	 */
+	public JsonElement getParent() {
+		int depth = getDepth();
+		return depth == 0 ? null : containers[depth - 1];
+	}
+	
+	/**
+	 * Sets the current event on the specified element, entering it if it is a container
+	 */
+	private void reach(JsonElement element, JsonString name, int index) {
+		this.element = element;
+		this.name = name;
+		this.index = index;
+		if(element instanceof JsonObject || element instanceof JsonArray) {
+			if(open == containers.length)
+				grow();
+			containers[open] = element;
+			names[open] = name;
+			indexes[open] = index;
+			entries[open] = element instanceof JsonObject ? ((JsonObject) element).entries().iterator() : null;
+			nexts[open] = 0;
+			open++;
+			event = Event.ENTER;
+		} else
+			event = Event.VALUE;
+	}
+	
+	/**
+	 * Closes the innermost open container, setting the leave event on it
+	 */
+	private void leave() {
+		int top = --open;
+		element = containers[top];
+		name = names[top];
+		index = indexes[top];
+		containers[top] = null;
+		names[top] = null;
+		entries[top] = null;
+		event = Event.LEAVE;
+	}
+	
+	private void grow() {
+		int capacity = containers.length * 2;
+		containers = Arrays.copyOf(containers, capacity);
+		names = Arrays.copyOf(names, capacity);
+		indexes = Arrays.copyOf(indexes, capacity);
+		entries = Arrays.copyOf(entries, capacity);
+		nexts = Arrays.copyOf(nexts, capacity);
+	}
+	
+	/**
+	 * Gets the elements of a structure in pre-order: each object or array precedes its values
+	 * @param root the root element
+	 * @return an iterable whose iterators traverse the structure by a cursor
+	 */
+	public static Iterable<JsonElement> preOrder(JsonElement root) {
+		if(root == null)
+			throw new NullPointerException("root cannot be null");
+		return () -> new OrderIterator(root, Event.LEAVE);
+	}
+	
+	/**
+	 * Gets the elements of a structure in post-order: each object or array follows its values
+	 * @param root the root element
+	 * @return an iterable whose iterators traverse the structure by a cursor
+	 */
+	public static Iterable<JsonElement> postOrder(JsonElement root) {
+		if(root == null)
+			throw new NullPointerException("root cannot be null");
+		return () -> new OrderIterator(root, Event.ENTER);
+	}
+	
+	/**
+	 * Iterates the elements of the events of a cursor, but the ignored ones
+	 */
+	private static final class OrderIterator implements Iterator<JsonElement> {
+		private final JsonCursor cursor;
+		private final Event ignored;
+		private boolean ready;
+		
+		OrderIterator(JsonElement root, Event ignored) {
+			cursor = new JsonCursor(root);
+			this.ignored = ignored;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if(!ready) {
+				while(cursor.next() && cursor.getEvent() == ignored);
+				ready = true;
+			}
+			return cursor.getEvent() != null;
+		}
+		
+		@Override
+		public JsonElement next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			ready = false;
+			return cursor.getElement();
+		}
+	}
+	
+	/**
+	 * Builds the text of {@link Object#toString()} or {@link JsonElement#toEncodedString()} of an object or an array,
+	 * traversing it by a cursor
+	 * @param root the object or the array
+	 * @param encoded true to escape the strings as {@link JsonElement#toEncodedString()} does
+	 * @return the text
+	 */
+	static String text(JsonElement root, boolean encoded) {
+		StringBuilder sb = new StringBuilder();
+		JsonCursor cursor = new JsonCursor(root);
+		while(cursor.next()) {
+			JsonElement element = cursor.getElement();
+			JsonString name = cursor.getName();
+			Event event = cursor.getEvent();
+			if(event != Event.LEAVE) {
+				if(name != null)
+					sb.append('"').append(encoded ? name.toEncodedString() : name.toString()).append("\" : ");
+				else if(cursor.getIndex() > 0)
+					sb.append(", ");
+			}
+			if(event == Event.ENTER) {
+				sb.append(element instanceof JsonObject ? "{\n" : "[");
+				if(!(element instanceof JsonArray) || !((JsonArray) element).isPacked())
+					continue;
+				// the numbers of a packed array are written without unpacking it
+				JsonArray array = (JsonArray) element;
+				for(int i = 0, size = array.size(); i < size; i++) {
+					JsonNumber number = array.number(i);
+					sb.append(i > 0 ? ", " : "").append(encoded ? number.toEncodedString() : String.valueOf(number));
+				}
+				cursor.skipChildren();
+				sb.append(']');
+			} else if(event == Event.LEAVE)
+				sb.append(element instanceof JsonObject ? '}' : ']');
+			else
+				sb.append(encoded ? element.toEncodedString() : String.valueOf(element));
+			if(name != null)
+				sb.append(",\n");
+		}
+		return sb.toString();
+	}
+}
@@ -21,4 +21,17 @@ package jointyjson.model;
 public interface JsonElement {
 	void accept(JsonVisitor visitor);
 	String toEncodedString();
+	
+	/**
+	 * Gets an immutable version of this element, that can be read by many threads without synchronization.
+	 * The elements that are immutable already, and the frozen ones, return themselves.
+	 * @return the frozen element
+	 */
+	JsonElement freeze();
+	
+	/**
+	 * Tells whether this element is immutable, so that it can be shared by frozen structures
+	 * @return true if this element is frozen
+	 */
+	boolean isFrozen();
 }
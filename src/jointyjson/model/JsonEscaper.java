@@ -0,0 +1,109 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines the escaping rules of the JSON strings, based on lookup tables.
+ * The characters {@code " \ /}, the control characters and DEL are always escaped, while the non-ASCII characters
+ * are escaped as {@code \}{@code uXXXX} only when requested, otherwise they are left to the UTF-8 encoding of the output.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonEscaper {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	// for each ASCII character, the letter following the backslash of its escape, or 0 if it is not escaped
+	private static final char[] ESCAPES = new char[128];
+
+	static {
+		for(int c = 0; c < 32; c++)
+			ESCAPES[c] = 'u';
+		ESCAPES[127] = 'u';
+		ESCAPES['"'] = '"';
+		ESCAPES['\\'] = '\\';
+		ESCAPES['/'] = '/';
+		ESCAPES['\n'] = 'n';
+		ESCAPES['\r'] = 'r';
+		ESCAPES['\b'] = 'b';
+		ESCAPES['\f'] = 'f';
+		ESCAPES['\t'] = 't';
+	}
+
+	private JsonEscaper() {}
+
+	/**
+	 * Tells whether a character must be escaped
+	 * @param c the character
+	 * @param escapeNonAscii true if the non-ASCII characters are escaped
+	 * @return true if the character must be escaped
+	 */
+	public static boolean isEscaped(char c, boolean escapeNonAscii) {
+		return c < 128 ? ESCAPES[c] != 0 : escapeNonAscii;
+	}
+
+	/**
+	 * Writes the escape sequence of a character, that is 2 or 6 characters long
+	 * @param c the character to escape
+	 * @param destination the array to write into
+	 * @param offset the position of the escape sequence in the array
+	 * @return the position following the escape sequence
+	 */
+	public static int escape(char c, char[] destination, int offset) {
+		char letter = c < 128 ? ESCAPES[c] : 'u';
+		destination[offset++] = '\\';
+		destination[offset++] = letter;
+		if(letter == 'u') {
+			destination[offset++] = HEX[(c >> 12) & 0xF];
+			destination[offset++] = HEX[(c >> 8) & 0xF];
+			destination[offset++] = HEX[(c >> 4) & 0xF];
+			destination[offset++] = HEX[c & 0xF];
+		}
+		return offset;
+	}
+
+	/**
+	 * Escapes a string, copying in bulk the ranges that need no escaping
+	 * @param value the string to escape
+	 * @param escapeNonAscii true if the non-ASCII characters are escaped
+	 * @return the escaped string, that is the same instance when nothing is escaped
+	 */
+	public static String escape(String value, boolean escapeNonAscii) {
+		int length = value.length();
+		int i = 0;
+		while(i < length && !isEscaped(value.charAt(i), escapeNonAscii))
+			i++;
+		if(i == length)
+			return value;
+
+		StringBuilder sb = new StringBuilder(length + 16);
+		int start = 0;
+		for(; i < length; i++) {
+			char c = value.charAt(i);
+			if(!isEscaped(c, escapeNonAscii))
+				continue;
+			sb.append(value, start, i);
+			char letter = c < 128 ? ESCAPES[c] : 'u';
+			sb.append('\\').append(letter);
+			if(letter == 'u')
+				sb.append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF]).append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+			start = i + 1;
+		}
+		return sb.append(value, start, length).toString();
+	}
+}
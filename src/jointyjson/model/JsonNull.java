@@ -40,4 +40,14 @@ public class JsonNull implements JsonElement{
 	public String toEncodedString() {
 		return "null";
 	}
+	
+	@Override
+	public JsonNull freeze() {
+		return this;
+	}
+	
+	@Override
+	public boolean isFrozen() {
+		return true;
+	}
 }
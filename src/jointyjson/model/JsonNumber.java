@@ -18,19 +18,315 @@
 
 package jointyjson.model;
 
+import java.math.BigDecimal;
+
+/**
+ * Defines the number type for JSON.
+ * A number is held as a double, as a long, as a BigDecimal or as its raw text, that is converted
+ * only when the value is requested: see {@link NumberMode}. All the representations can be read
+ * by {@link #get()}, {@link #getLong()} and {@link #getBigDecimal()}.<br>
+ * A frozen number, obtained by {@link #freeze()}, cannot be changed.
+ * @author Salvatore Giampa'
+ *
+ */
 public class JsonNumber implements JsonElement {
+	// the representations of the number
+	static final byte DOUBLE = 0;
+	static final byte LONG = 1;
+	static final byte DECIMAL = 2;
+	static final byte RAW = 3;
+
+	// powers of ten exactly representable as double
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	// the longest integers that always fit in a long
+	private static final int MAX_LONG_DIGITS = 18;
+
+	/**
+	 * Creates the number whose text is in the specified sequence, held as requested by the specified mode.
+	 * The sequence must contain a syntactically valid JSON number.
+	 * @param text the text of the number
+	 * @param mode the representation of the number
+	 * @return the new JsonNumber
+	 */
+	public static JsonNumber valueOf(CharSequence text, NumberMode mode) {
+		switch(mode) {
+		case LAZY:
+			return new JsonNumber(text.toString());
+		case PRECISE:
+			int length = text.length();
+			int digits = length;
+			if(text.charAt(0) == '-')
+				digits--;
+			if(digits <= MAX_LONG_DIGITS + 1 && isInteger(text, length)) {
+				if(digits <= MAX_LONG_DIGITS)
+					return new JsonNumber(parseLong(text, length));
+				try {
+					return new JsonNumber(Long.parseLong(text.toString()));
+				} catch (NumberFormatException e) {
+					// out of the long range
+				}
+			}
+			return new JsonNumber(new BigDecimal(text.toString()));
+		default:
+			return new JsonNumber(parse(text, 0, text.length()));
+		}
+	}
+
+	private static boolean isInteger(CharSequence text, int length) {
+		for(int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if(c == '.' || c == 'e' || c == 'E')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses an integer of at most {@value #MAX_LONG_DIGITS} digits
+	 */
+	private static long parseLong(CharSequence text, int length) {
+		boolean negative = text.charAt(0) == '-';
+		long value = 0;
+		for(int i = negative ? 1 : 0; i < length; i++)
+			value = value * 10 + (text.charAt(i) - '0');
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses the JSON number in the specified range of a character sequence, without allocating
+	 * any intermediate string when the number is exactly representable by its digits and a small power of ten.
+	 * The range must contain a syntactically valid number.
+	 * @param text the sequence containing the number
+	 * @param start the index of the first character of the number
+	 * @param end the index following the last character of the number
+	 * @return the nearest double to the number
+	 */
+	public static double parse(CharSequence text, int start, int end) {
+		int i = start;
+		boolean negative = text.charAt(i) == '-';
+		if(negative)
+			i++;
+		long mantissa = 0;
+		int exponent = 0;
+		int digits = 0;
+		char c = 0;
+		for(; i < end; i++) {
+			c = text.charAt(i);
+			if(c >= '0' && c <= '9') {
+				if(mantissa != 0 || c != '0')
+					digits++;
+				mantissa = mantissa * 10 + (c - '0');
+			} else if(c == '.') {
+				for(i++; i < end; i++) {
+					c = text.charAt(i);
+					if(c < '0' || c > '9')
+						break;
+					if(mantissa != 0 || c != '0')
+						digits++;
+					mantissa = mantissa * 10 + (c - '0');
+					exponent--;
+				}
+				break;
+			} else
+				break;
+		}
+		if(i < end && (c == 'e' || c == 'E')) {
+			i++;
+			boolean negativeExponent = text.charAt(i) == '-';
+			if(negativeExponent || text.charAt(i) == '+')
+				i++;
+			int exp = 0;
+			for(; i < end && exp < 10000; i++)
+				exp = exp * 10 + (text.charAt(i) - '0');
+			exponent += negativeExponent ? -exp : exp;
+		}
+		if(i != end || digits > 15 || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22)
+			return Double.parseDouble(text.subSequence(start, end).toString());
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+	}
+
+	private byte kind;
 	private double value;
-	
+	private long longValue;
+	// the BigDecimal or the raw text
+	private Object exact;
+	private final boolean frozen;
+
 	public JsonNumber(double value) {
+		frozen = false;
+		set(value);
+	}
+	
+	public JsonNumber(long value) {
+		frozen = false;
+		set(value);
+	}
+	
+	public JsonNumber(BigDecimal value) {
+		frozen = false;
+		set(value);
+	}
+	
+	/**
+	 * Creates a lazy number, converted at each request
+	 */
+	private JsonNumber(String raw) {
+		frozen = false;
+		kind = RAW;
+		exact = raw;
+	}
+	
+	/**
+	 * Creates a frozen number, such as an element of a frozen packed array
+	 */
+	private JsonNumber(byte kind, double value, long longValue) {
+		frozen = true;
+		this.kind = kind;
 		this.value = value;
+		this.longValue = longValue;
+	}
+	
+	/**
+	 * Creates a frozen number holding a double
+	 */
+	static JsonNumber frozen(double value) {
+		return new JsonNumber(DOUBLE, value, 0);
+	}
+	
+	/**
+	 * Creates a frozen number holding a long
+	 */
+	static JsonNumber frozen(long value) {
+		return new JsonNumber(LONG, 0, value);
+	}
+	
+	/**
+	 * Creates a frozen copy of a number
+	 */
+	private JsonNumber(JsonNumber number) {
+		frozen = true;
+		kind = number.kind;
+		value = number.value;
+		longValue = number.longValue;
+		exact = number.exact;
 	}
 	
 	public void set(double value) {
+		checkMutable();
+		kind = DOUBLE;
 		this.value = value;
+		exact = null;
+	}
+	
+	public void set(long value) {
+		checkMutable();
+		kind = LONG;
+		longValue = value;
+		exact = null;
 	}
 	
+	public void set(BigDecimal value) {
+		checkMutable();
+		if(value == null)
+			throw new NullPointerException("value cannot be null");
+		kind = DECIMAL;
+		exact = value;
+	}
+	
+	private void checkMutable() {
+		if(frozen)
+			throw new UnsupportedOperationException("A frozen JsonNumber cannot be changed");
+	}
+	
+	/**
+	 * Gets the value of this number as a double, possibly losing precision
+	 * @return the nearest double to this number
+	 */
 	public double get() {
-		return this.value;
+		switch(kind) {
+		case LONG:
+			return longValue;
+		case DECIMAL:
+			return ((BigDecimal) exact).doubleValue();
+		case RAW:
+			String raw = (String) exact;
+			return parse(raw, 0, raw.length());
+		default:
+			return value;
+		}
+	}
+	
+	/**
+	 * Gets the value of this number as a long, discarding the fractional part as {@link Number#longValue()} does
+	 * @return the integral part of this number
+	 */
+	public long getLong() {
+		switch(kind) {
+		case LONG:
+			return longValue;
+		case DECIMAL:
+			return ((BigDecimal) exact).longValue();
+		case RAW:
+			String raw = (String) exact;
+			int digits = raw.charAt(0) == '-' ? raw.length() - 1 : raw.length();
+			if(digits <= MAX_LONG_DIGITS && isInteger(raw, raw.length()))
+				return parseLong(raw, raw.length());
+			return new BigDecimal(raw).longValue();
+		default:
+			return (long) value;
+		}
+	}
+	
+	/**
+	 * Gets the exact value of this number. A double is converted by its canonical string representation.
+	 * @return the value of this number as a BigDecimal
+	 * @throws NumberFormatException if the number is a double that is infinite or NaN
+	 */
+	public BigDecimal getBigDecimal() {
+		switch(kind) {
+		case LONG:
+			return BigDecimal.valueOf(longValue);
+		case DECIMAL:
+			return (BigDecimal) exact;
+		case RAW:
+			return new BigDecimal((String) exact);
+		default:
+			return BigDecimal.valueOf(value);
+		}
+	}
+	
+	/**
+	 * Tells whether this number is held as an integer, that is as a long
+	 * @return true if this number is a long
+	 */
+	public boolean isLong() {
+		return kind == LONG;
+	}
+	
+	/**
+	 * Gets the representation of this number: {@link #DOUBLE}, {@link #LONG}, {@link #DECIMAL} or {@link #RAW}
+	 */
+	byte kind() {
+		return kind;
+	}
+	
+	/**
+	 * Gets an immutable copy of this number, or this number if it is frozen already
+	 * @return the frozen number
+	 */
+	@Override
+	public JsonNumber freeze() {
+		return frozen ? this : new JsonNumber(this);
+	}
+	
+	@Override
+	public boolean isFrozen() {
+		return frozen;
 	}
 	
 	@Override
@@ -38,14 +334,25 @@ public class JsonNumber implements JsonElement {
 		visitor.visit(this);
 	}
 	
+	/**
+	 * Gets the text of this number: the raw text of a lazy number is returned as it is
+	 */
 	@Override
 	public String toString() {
-		return ""+value;
+		switch(kind) {
+		case LONG:
+			return Long.toString(longValue);
+		case DECIMAL:
+		case RAW:
+			return exact.toString();
+		default:
+			return Double.toString(value);
+		}
 	}
 
 	@Override
 	public String toEncodedString() {
-		return "" + value;
+		return toString();
 	}
 
 }
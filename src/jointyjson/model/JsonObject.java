@@ -19,6 +19,7 @@
 package jointyjson.model;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -26,13 +27,79 @@ import java.util.TreeMap;
 
 /**
  * Defines a JSON object, a structure containing name-value pairs.
+ * The pairs are stored in the data structure chosen at construction, see {@link ObjectStorage}.
+ * The objects of a lazily compiled document decode their fields when they are accessed for the first time,
+ * see {@link StructuralIndex}.<br>
+ * A frozen object, obtained by {@link #freeze()}, cannot be modified and can be read by many threads without
+ * synchronization. Its updated copies are obtained by the <i>with</i> operations, that share the unchanged values.
  * @author Salvatore Giampa'
  *
  */
 public class JsonObject implements JsonElement {
 	
 	//name-value map
-	private Map<JsonString, JsonElement> elements = new TreeMap<>();
+	private Map<JsonString, JsonElement> elements;
+	private final ObjectStorage storage;
+	// the fields of a frozen object, null while the object can be modified
+	private final FrozenMap frozen;
+	
+	// the index from which the fields are decoded on the first access, null once they are decoded
+	private volatile StructuralIndex index;
+	private int indexEntry;
+	
+	/**
+	 * Creates an empty JSON object that keeps its fields sorted by name
+	 */
+	public JsonObject() {
+		this(ObjectStorage.SORTED);
+	}
+	
+	/**
+	 * Creates an empty JSON object that stores its fields in the specified data structure
+	 * @param storage the data structure of the fields
+	 */
+	public JsonObject(ObjectStorage storage) {
+		if(storage == null)
+			throw new NullPointerException("storage cannot be null");
+		this.storage = storage;
+		this.frozen = null;
+		switch(storage) {
+		case HASH:
+			elements = new LinkedHashMap<>();
+			break;
+		case COMPACT:
+			elements = new CompactMap();
+			break;
+		default:
+			elements = new TreeMap<>();
+		}
+	}
+	
+	/**
+	 * Creates a lazy object, whose fields are decoded from the index on the first access
+	 */
+	JsonObject(StructuralIndex index, int entry) {
+		this.storage = index.storage();
+		this.frozen = null;
+		this.index = index;
+		this.indexEntry = entry;
+	}
+	
+	/**
+	 * Creates a frozen object holding the specified fields
+	 */
+	private JsonObject(ObjectStorage storage, FrozenMap frozen) {
+		this.storage = storage;
+		this.frozen = frozen;
+	}
+	
+	/**
+	 * Gets the data structure chosen to store the fields of this object
+	 * @return the storage of this object
+	 */
+	public ObjectStorage getStorage() {
+		return storage;
+	}
 	
 	/**
 	 * Put a generic JsonElement into this JsonObject
@@ -43,100 +110,142 @@ public class JsonObject implements JsonElement {
 	public JsonElement put(String name, JsonElement element) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), element);
+		return store(JsonString.get(name), element);
+	}
+
+	/**
+	 * Put a generic JsonElement into this JsonObject, using an already built JsonString as name
+	 * @param name
+	 * @param element
+	 * @return
+	 */
+	public JsonElement put(JsonString name, JsonElement element) {
+		String nm = name.toString();
+		if(nm.indexOf('\'') >= 0 && nm.indexOf('"') >= 0)
+			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
+		return store(name, element);
+	}
+	
+	private JsonElement store(JsonString name, JsonElement element) {
+		if(frozen != null)
+			throw new UnsupportedOperationException("A frozen JsonObject cannot be modified, use a with operation");
+		expand();
+		if(elements instanceof CompactMap && ((CompactMap) elements).isFull() && !elements.containsKey(name))
+			// the object is no more small, promote it to a hash table
+			elements = new LinkedHashMap<>(elements);
+		return elements.put(name, element);
 	}
 	
+	/**
+	 * Decodes the fields of a lazy object, adopting the storage of the decoded object
+	 */
+	private void expand() {
+		if(index == null)
+			return;
+		synchronized(this) {
+			if(index == null)
+				return;
+			elements = index.decodeObject(indexEntry).elements;
+			index = null;
+		}
+	}
+	
+	/**
+	 * Looks up a field by its plain name, without interning the name
+	 */
+	private JsonElement lookup(String name) {
+		if(frozen != null)
+			return frozen.get(name);
+		expand();
+		if(elements instanceof CompactMap)
+			return ((CompactMap) elements).get(name);
+		return elements.get(JsonString.key(name));
+	}
+
 	public JsonElement putJsonObject(String name, JsonObject object) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), object);
+		return store(JsonString.get(name), object);
 	}
 	
 	public JsonElement putJsonArray(String name, JsonArray array) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), array);
+		return store(JsonString.get(name), array);
 	}
 	
 	public JsonElement putJsonString(String name, String string) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), JsonString.get(string));
+		return store(JsonString.get(name), JsonString.get(string));
 	}
 	
 	public JsonElement putJsonNumber(String name, Double number) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), new JsonNumber(number));
+		return store(JsonString.get(name), new JsonNumber(number));
 	}
 	
 	public JsonElement putJsonNull(String name) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), JsonNull.getInstance());
+		return store(JsonString.get(name), JsonNull.getInstance());
 	}
 	
 	public JsonElement putJsonBoolean(String name, boolean value) {
 		if(name.contains("'") && name.contains("\""))
 			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
-		return elements.put(JsonString.get(name), JsonBoolean.getInstance(value));
+		return store(JsonString.get(name), JsonBoolean.getInstance(value));
 	}
 	
 	public JsonElement get(String name) {
-		return elements.get(JsonString.get(name));
+		return lookup(name);
 	}
 
 	public JsonObject getJsonObject(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
+		JsonElement elem = lookup(name);
 		if(!(elem instanceof JsonObject))
 			return null;
-		return (JsonObject) elements.get(nm);
+		return (JsonObject) elem;
 	}
 	
 	public JsonArray getJsonArray(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
+		JsonElement elem = lookup(name);
 		if(!(elem instanceof JsonArray))
 			return null;
-		return (JsonArray) elements.get(nm);
+		return (JsonArray) elem;
 	}
 	
 	public JsonString getJsonString(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
+		JsonElement elem = lookup(name);
 		if(!(elem instanceof JsonString))
 			return null;
-		return (JsonString) elements.get(nm);
+		return (JsonString) elem;
 	}
 	
 	public JsonNumber getJsonNumber(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
+		JsonElement elem = lookup(name);
 		if(!(elem instanceof JsonNumber))
 			return null;
-		return (JsonNumber) elements.get(nm);
+		return (JsonNumber) elem;
 	}
 	
 	public JsonNull getJsonNull(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
-		if(!(elem instanceof JsonNumber))
+		JsonElement elem = lookup(name);
+		if(!(elem instanceof JsonNull))
 			return null;
-		return (JsonNull) elements.get(nm);
+		return (JsonNull) elem;
 	}
 	
 	public JsonBoolean getJsonBoolean(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
-		if(!(elem instanceof JsonNumber))
+		JsonElement elem = lookup(name);
+		if(!(elem instanceof JsonBoolean))
 			return null;
-		return (JsonBoolean) elements.get(nm);
+		return (JsonBoolean) elem;
 	}
 	
 	public JsonType getType(String name) {
-		JsonString nm = JsonString.get(name);
-		JsonElement elem = elements.get(nm);
+		JsonElement elem = lookup(name);
 		if(elem == null)
 			return null;
 		if(elem instanceof JsonObject)
@@ -155,7 +264,106 @@ public class JsonObject implements JsonElement {
 	}
 	
 	public Set<JsonString> getFields(){
-		return Collections.unmodifiableSet(elements.keySet());
+		return Collections.unmodifiableSet(fields().keySet());
+	}
+	
+	/**
+	 * Gets the name-value pairs of this object, to iterate its values without looking up each name
+	 * @return an unmodifiable view of the name-value pairs
+	 */
+	public Set<Entry<JsonString, JsonElement>> getEntries(){
+		return Collections.unmodifiableMap(fields()).entrySet();
+	}
+
+	/**
+	 * Gets the name-value pairs, in iteration order, to visit them without looking up each name
+	 * @return the name-value pairs
+	 */
+	Set<Entry<JsonString, JsonElement>> entries(){
+		return fields().entrySet();
+	}
+	
+	/**
+	 * Gets the map of the fields, decoding them if this object is lazy
+	 */
+	private Map<JsonString, JsonElement> fields() {
+		if(frozen != null)
+			return frozen;
+		expand();
+		return elements;
+	}
+	
+	/**
+	 * Gets an immutable copy of this object, whose values are frozen too.
+	 * The frozen values are shared with this object, so freezing a frozen object returns the object itself.
+	 * @return the frozen object
+	 */
+	@Override
+	public JsonObject freeze() {
+		if(frozen != null)
+			return this;
+		Map<JsonString, JsonElement> fields = fields();
+		if(fields.isEmpty())
+			return new JsonObject(storage, FrozenMap.EMPTY);
+		JsonString[] names = new JsonString[fields.size()];
+		JsonElement[] values = new JsonElement[names.length];
+		int i = 0;
+		for(Entry<JsonString, JsonElement> entry : fields.entrySet()) {
+			names[i] = entry.getKey().freeze();
+			values[i++] = entry.getValue().freeze();
+		}
+		return new JsonObject(storage, new FrozenMap(names, values));
+	}
+	
+	@Override
+	public boolean isFrozen() {
+		return frozen != null;
+	}
+	
+	/**
+	 * Gets a frozen copy of this object with a field set to the specified element, sharing all the other values.
+	 * A new field is added in name order to a {@link ObjectStorage#SORTED} object, at the end to the others.
+	 * This object is frozen first if it is not frozen yet.
+	 * @param name the field name
+	 * @param element the field value, that is frozen too
+	 * @return the updated copy
+	 */
+	public JsonObject with(String name, JsonElement element) {
+		if(name.contains("'") && name.contains("\""))
+			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
+		return update(JsonString.get(name), element);
+	}
+	
+	/**
+	 * Gets a frozen copy of this object with a field set to the specified element, using an already built JsonString as name
+	 * @param name the field name
+	 * @param element the field value, that is frozen too
+	 * @return the updated copy
+	 * @see #with(String, JsonElement)
+	 */
+	public JsonObject with(JsonString name, JsonElement element) {
+		String nm = name.toString();
+		if(nm.indexOf('\'') >= 0 && nm.indexOf('"') >= 0)
+			throw new IllegalArgumentException("A json name string can contain characters \" or characters ' alternatively");
+		return update(name, element);
+	}
+	
+	private JsonObject update(JsonString name, JsonElement element) {
+		if(element == null)
+			throw new NullPointerException("element cannot be null");
+		return new JsonObject(storage, freeze().frozen.with(name.freeze(), element.freeze(), storage == ObjectStorage.SORTED));
+	}
+	
+	/**
+	 * Gets a frozen copy of this object without the specified field, sharing all the other values.
+	 * This object is frozen first if it is not frozen yet.
+	 * @param name the field name
+	 * @return the updated copy, or the frozen object itself if the field is absent
+	 */
+	public JsonObject without(String name) {
+		JsonObject base = freeze();
+		FrozenMap updated = base.frozen.without(name);
+		return updated == base.frozen ? base : new JsonObject(storage, updated);
 	}
 
 	@Override
@@ -165,24 +373,12 @@ public class JsonObject implements JsonElement {
 	
 	@Override
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("{\n");
-		for(Entry<JsonString,JsonElement> entry : elements.entrySet()) {
-			sb.append("\"" + entry.getKey() + "\" : " + entry.getValue() + ",\n");
-		}
-		sb.append("}");
-		return sb.toString();
+		return JsonCursor.text(this, false);
 	}
 
 	@Override
 	public String toEncodedString() {
-		StringBuilder sb = new StringBuilder();
-		sb.append("{\n");
-		for(Entry<JsonString,JsonElement> entry : elements.entrySet()) {
-			sb.append("\"" + entry.getKey().toEncodedString() + "\" : " + entry.getValue().toEncodedString() + ",\n");
-		}
-		sb.append("}");
-		return sb.toString();
+		return JsonCursor.text(this, true);
 	}
 	
 	
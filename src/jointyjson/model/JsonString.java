@@ -18,41 +18,172 @@
 
 package jointyjson.model;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.TreeMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
-public class JsonString implements JsonElement, Comparable<JsonString> {
-	private static final int FLYWEIGHT_MAX_SIZE = 5000;
-	private static LinkedHashMap<String, JsonString> flyweight = new LinkedHashMap<String, JsonString>() {
-		protected boolean removeEldestEntry(Map.Entry<String,JsonString> eldest) {
-			return size() > FLYWEIGHT_MAX_SIZE;
-		};
-	};
+/**
+ * Defines the string type for JSON.
+ * The instances obtained by {@link #get(String)} or by a {@link JsonStringPool} are flyweights shared by all the
+ * structures containing the same string, so they are immutable: to change a shared string, a private copy
+ * must be obtained by {@link #copy()} and put in place of the shared one (copy-on-write).<br>
+ * A view, obtained by {@link #view(String, int, int, boolean)}, is a shared string holding only the range of its text
+ * in the source document: its control sequences are decoded when its value is read for the first time,
+ * while the views without control sequences are compared, hashed and read as character sequences on the source itself.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonString implements JsonElement, Comparable<JsonString>, CharSequence {
 	
+	/**
+	 * Gets the shared JsonString corresponding to the specified string from the global pool
+	 * @param str the string value
+	 * @return the shared JsonString
+	 * @see JsonStringPool#global()
+	 */
 	public static JsonString get(String str) {
-		JsonString jstr = flyweight.get(str);
-		
-		if(jstr == null) {
-			jstr = new JsonString(str);
-			flyweight.put(str, jstr);
-		}
-		return jstr;
+		return JsonStringPool.global().intern(str);
+	}
+	
+	/**
+	 * Creates a private JsonString, that is not pooled and can be modified
+	 * @param str the string value
+	 * @return the new JsonString
+	 */
+	public static JsonString create(String str) {
+		if(str == null)
+			throw new NullPointerException("value cannot be null");
+		return new JsonString(str, false);
 	}
 	
+	/**
+	 * Creates a transient JsonString used only as a lookup key, so that looking up a name does not intern it
+	 */
+	static JsonString key(String str) {
+		return new JsonString(str, false);
+	}
 	
+	/**
+	 * Creates a view over the text of a string in a JSON document, without copying nor decoding it.
+	 * The document is retained by the view.
+	 * @param source the document
+	 * @param start the start of the text, following the opening quote
+	 * @param end the end of the text, that is the position of the closing quote
+	 * @param escaped true if the text contains control sequences, that must be valid
+	 * @return the shared view
+	 */
+	public static JsonString view(String source, int start, int end, boolean escaped) {
+		if(start < 0 || start > end || end > source.length())
+			throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of the source");
+		return new JsonString(source, start, end, escaped);
+	}
+	
+	/**
+	 * Creates a view over the text of a string in a JSON document encoded in UTF-8, without copying nor decoding it.
+	 * The text must consist of ASCII bytes only, while its control sequences can encode any character.
+	 * The buffer is retained by the view and its contents must not be changed while the view is in use.
+	 * @param source the buffer containing the document
+	 * @param start the start of the text in the buffer, following the opening quote
+	 * @param end the end of the text in the buffer, that is the position of the closing quote
+	 * @param escaped true if the text contains control sequences, that must be valid
+	 * @return the shared view
+	 */
+	public static JsonString view(ByteBuffer source, int start, int end, boolean escaped) {
+		if(start < 0 || start > end || end > source.limit())
+			throw new IndexOutOfBoundsException("range [" + start + ", " + end + ") out of the source");
+		return new JsonString(source, start, end, escaped);
+	}
+	
+	
+	// the value, decoded on the first read if this is a view
 	private String value;
+	private final boolean shared;
+	
+	// the source of a view (a String, or a ByteBuffer of ASCII text) and the range of its text, null if this is not a view
+	private final Object source;
+	private final int start;
+	private final int end;
+	// whether the text of a view contains control sequences, so that it differs from the value
+	private final boolean escaped;
+	private int hash;
 	
-	private JsonString(String value) {
+	// cached escaped forms, immutable strings that can be safely published without synchronization
+	private String asciiEncoded;
+	private String unicodeEncoded;
+	
+	JsonString(String value, boolean shared) {
 		this.value = value;
+		this.shared = shared;
+		source = null;
+		start = end = 0;
+		escaped = false;
 	}
 	
+	private JsonString(Object source, int start, int end, boolean escaped) {
+		this.shared = true;
+		this.source = source;
+		this.start = start;
+		this.end = end;
+		this.escaped = escaped;
+	}
+	
+	/**
+	 * Changes the value of this private JsonString
+	 * @param value the new value
+	 * @throws UnsupportedOperationException if this instance is shared
+	 */
 	public void set(String value) {
+		if(shared)
+			throw new UnsupportedOperationException("A shared JsonString cannot be modified, use a copy of it");
 		if(value==null)
 			throw new NullPointerException("value cannot be null");
 		if(value.contains("'") && value.contains("\""))
 			throw new IllegalArgumentException("A json string can contain characters \" or characters ' alternatively");
 		this.value = value;
+		asciiEncoded = unicodeEncoded = null;
+	}
+	
+	/**
+	 * Tells whether this instance is a shared flyweight
+	 * @return true if this instance is shared, hence immutable
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+	
+	/**
+	 * Tells whether this instance is a view over the text of the source document
+	 * @return true if this instance is a view, hence shared
+	 * @see #view(String, int, int, boolean)
+	 */
+	public boolean isView() {
+		return source != null;
+	}
+	
+	/**
+	 * Creates a private copy of this JsonString, that can be modified without affecting the other structures
+	 * @return the private copy
+	 */
+	public JsonString copy() {
+		return new JsonString(value(), false);
+	}
+	
+	/**
+	 * Gets an immutable JsonString equal to this one: a shared instance returns itself,
+	 * while a private one is copied into an instance that is shared but not pooled
+	 * @return the immutable JsonString
+	 */
+	@Override
+	public JsonString freeze() {
+		return shared ? this : new JsonString(value, true);
+	}
+	
+	/**
+	 * Tells whether this instance is immutable, that is whether it is shared
+	 * @return true if this instance is shared
+	 */
+	@Override
+	public boolean isFrozen() {
+		return shared;
 	}
 	
 	@Override
@@ -60,62 +191,136 @@ public class JsonString implements JsonElement, Comparable<JsonString> {
 		visitor.visit(this);
 	}
 	
+	/**
+	 * Gets the escaped form of this string, with the non-ASCII characters escaped.
+	 * The escaped form is computed once and cached, so the shared names are not escaped again at each encoding.
+	 */
 	public String toEncodedString() {
-		StringBuilder sb = new StringBuilder();
-		
-		for(int i=0; i<value.length(); i++) {
-			char current = value.charAt(i);
-			
-			switch(current) {
-			case '"':
-				sb.append("\\\"");
-				break;
-			case '\n':
-				sb.append("\\n");
-				break;
-			case '\r':
-				sb.append("\\r");
-				break;
-			case '\\':
-				sb.append("\\\\");
-				break;
-			case '/':
-				sb.append("\\/");
-				break;
-			case '\b':
-				sb.append("\\b");
-				break;
-			case '\f':
-				sb.append("\\f");
-				break;
-			case '\t':
-				sb.append("\\t");
-				break;
-			default:
-				if(current < 32 || current >= 127) {
-					String code = Integer.toHexString(current);
-					int padding = 4 - code.length();
-					sb.append("\\u");
-					for(int p=0; p<padding; p++)
-						sb.append("0");
-					sb.append(code);
-				} 
-				else sb.append(current);
-			}
-			
+		return toEncodedString(true);
+	}
+	
+	/**
+	 * Gets the escaped form of this string, computed once and cached
+	 * @param escapeNonAscii true if the non-ASCII characters are escaped, false if they are left as they are
+	 * @return the escaped string
+	 */
+	public String toEncodedString(boolean escapeNonAscii) {
+		String encoded = escapeNonAscii ? asciiEncoded : unicodeEncoded;
+		if(encoded == null) {
+			encoded = JsonEscaper.escape(value(), escapeNonAscii);
+			if(escapeNonAscii)
+				asciiEncoded = encoded;
+			else
+				unicodeEncoded = encoded;
 		}
-		return sb.toString();
+		return encoded;
 	}
 	
 	@Override
 	public String toString() {
+		return value();
+	}
+	
+	@Override
+	public int length() {
+		return isRaw() ? end - start : value().length();
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if(!isRaw())
+			return value().charAt(index);
+		if(index < 0 || index >= end - start)
+			throw new IndexOutOfBoundsException("index " + index + " out of the string");
+		return at(start + index);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return value().substring(start, end);
+	}
+	
+	/**
+	 * Gets the value, decoding the text of a view on the first call
+	 */
+	private String value() {
+		String value = this.value;
+		if(value == null)
+			this.value = value = decode();
 		return value;
 	}
+	
+	/**
+	 * Tells whether this is a view whose text is its value, so it can be read on the source
+	 */
+	private boolean isRaw() {
+		return source != null && !escaped;
+	}
+	
+	/**
+	 * Gets a character of the text of a view
+	 * @param index the position of the character in the source
+	 */
+	private char at(int index) {
+		if(source instanceof String)
+			return ((String) source).charAt(index);
+		return (char) ((ByteBuffer) source).get(index);
+	}
+	
+	/**
+	 * Decodes the text of a view
+	 */
+	private String decode() {
+		if(!escaped) {
+			if(source instanceof String)
+				return ((String) source).substring(start, end);
+			ByteBuffer buffer = (ByteBuffer) source;
+			if(buffer.hasArray())
+				return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+		}
+		StringBuilder sb = new StringBuilder(end - start);
+		int i = start;
+		while(i < end) {
+			char c = at(i++);
+			if(c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			c = at(i++);
+			switch(c) {
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'u':
+				int code = 0;
+				for(int last = i + 4; i < last; i++)
+					code = (code << 4) | Character.digit(at(i), 16);
+				sb.append((char) code);
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		if(isRaw()) {
+			// the hash of the value, computed on the text
+			int h = hash;
+			if(h == 0) {
+				for(int i = start; i < end; i++)
+					h = prime * h + at(i);
+				hash = h;
+			}
+			return prime * result + h;
+		}
+		String value = value();
 		result = prime * result + ((value == null) ? 0 : value.hashCode());
 		return result;
 	}
@@ -129,17 +334,43 @@ public class JsonString implements JsonElement, Comparable<JsonString> {
 		if (getClass() != obj.getClass())
 			return false;
 		JsonString other = (JsonString) obj;
+		if(isRaw() || other.isRaw())
+			return contentEquals(other);
+		String value = value();
 		if (value == null) {
-			if (other.value != null)
+			if (other.value() != null)
 				return false;
-		} else if (!value.equals(other.value))
+		} else if (!value.equals(other.value()))
 			return false;
 		return true;
 	}
+	
+	/**
+	 * Compares the characters of two strings, one of which at least is read on its source
+	 */
+	private boolean contentEquals(JsonString other) {
+		int length = length();
+		if(length != other.length())
+			return false;
+		if(source instanceof String && other.source instanceof String && !escaped && !other.escaped)
+			return ((String) source).regionMatches(start, (String) other.source, other.start, length);
+		for(int i = 0; i < length; i++)
+			if(charAt(i) != other.charAt(i))
+				return false;
+		return true;
+	}
 
 	@Override
 	public int compareTo(JsonString other) {
-		return value.compareTo(other.value);
+		if(!isRaw() && !other.isRaw())
+			return value().compareTo(other.value());
+		int length = length(), otherLength = other.length();
+		for(int i = 0, common = Math.min(length, otherLength); i < common; i++) {
+			char c = charAt(i), o = other.charAt(i);
+			if(c != o)
+				return c - o;
+		}
+		return length - otherLength;
 	}
 	
 	
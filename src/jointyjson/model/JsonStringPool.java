@@ -0,0 +1,351 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Defines a thread-safe interning pool of {@link JsonString} flyweights.
+ * The pool is split in independently locked segments, so concurrent compilations contend only
+ * when they intern strings of the same segment. Strings can be looked up by any character sequence,
+ * so that the parsers do not allocate a String for the values already pooled.<br>
+ * The interned instances are shared, hence immutable: see {@link JsonString#set(String)}.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonStringPool {
+	/**
+	 * The capacity of the default global pool
+	 */
+	public static final int DEFAULT_CAPACITY = 5000;
+
+	private static volatile JsonStringPool global = new JsonStringPool(DEFAULT_CAPACITY, EvictionPolicy.FIFO);
+
+	/**
+	 * Gets the global pool used by {@link JsonString#get(String)}
+	 * @return the global pool
+	 */
+	public static JsonStringPool global() {
+		return global;
+	}
+
+	/**
+	 * Replaces the global pool used by {@link JsonString#get(String)}
+	 * @param pool the new global pool
+	 */
+	public static void setGlobal(JsonStringPool pool) {
+		if(pool == null)
+			throw new NullPointerException("pool cannot be null");
+		global = pool;
+	}
+
+	private final Segment[] segments;
+	private final int capacity;
+	private final EvictionPolicy policy;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates a pool that never evicts, suitable for short-lived and single-threaded (e.g. per-document) scopes
+	 */
+	public JsonStringPool() {
+		this(Integer.MAX_VALUE, EvictionPolicy.NONE, 1);
+	}
+
+	/**
+	 * Creates a pool with the specified capacity and eviction policy
+	 * @param capacity the maximum number of pooled strings
+	 * @param policy the policy used to evict strings when the pool is full
+	 */
+	public JsonStringPool(int capacity, EvictionPolicy policy) {
+		this(capacity, policy, Math.min(capacity / 16 + 1, Runtime.getRuntime().availableProcessors() * 4));
+	}
+
+	private JsonStringPool(int capacity, EvictionPolicy policy, int wanted) {
+		if(capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		if(policy == null)
+			throw new NullPointerException("policy cannot be null");
+		this.capacity = capacity;
+		this.policy = policy;
+
+		int count = 1;
+		while(count < wanted)
+			count <<= 1;
+		segments = new Segment[count];
+		for(int i = 0; i < count; i++)
+			segments[i] = new Segment(policy == EvictionPolicy.NONE ? Integer.MAX_VALUE : Math.max(1, capacity / count));
+	}
+
+	/**
+	 * Gets the shared JsonString whose value is equal to the specified string, pooling it if absent
+	 * @param value the string value
+	 * @return the shared JsonString
+	 */
+	public JsonString intern(String value) {
+		return intern(value, value.hashCode());
+	}
+
+	/**
+	 * Gets the shared JsonString whose value is equal to the specified character sequence, pooling it if absent.
+	 * No String is allocated when the value is already pooled.
+	 * @param value the character sequence
+	 * @return the shared JsonString
+	 */
+	public JsonString intern(CharSequence value) {
+		if(value instanceof String)
+			return intern((String) value);
+		int hash = 0;
+		for(int i = 0, length = value.length(); i < length; i++)
+			hash = 31 * hash + value.charAt(i);
+		return intern(value, hash);
+	}
+
+	/**
+	 * Tells whether a string equal to the specified character sequence is pooled, without pooling it
+	 * and without changing the eviction order or the statistics of this pool
+	 * @param value the character sequence
+	 * @return true if the value is pooled
+	 */
+	public boolean contains(CharSequence value) {
+		int hash;
+		if(value instanceof String)
+			hash = value.hashCode();
+		else {
+			hash = 0;
+			for(int i = 0, length = value.length(); i < length; i++)
+				hash = 31 * hash + value.charAt(i);
+		}
+		Segment segment = segment(hash);
+		synchronized(segment) {
+			return segment.get(value, hash, false) != null;
+		}
+	}
+
+	private Segment segment(int hash) {
+		// the segment is chosen by bits that are independent from the ones choosing the bucket
+		return segments[((hash * 0x9E3779B9) >>> 16) & (segments.length - 1)];
+	}
+
+	private JsonString intern(CharSequence value, int hash) {
+		Segment segment = segment(hash);
+		JsonString found;
+		boolean hit = true;
+		synchronized(segment) {
+			found = segment.get(value, hash, policy == EvictionPolicy.LRU);
+			if(found == null) {
+				hit = false;
+				found = new JsonString(value.toString(), true);
+				if(segment.put(found, hash))
+					evictions.increment();
+			}
+		}
+		if(hit)
+			hits.increment();
+		else
+			misses.increment();
+		return found;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Gets the number of the pooled strings
+	 * @return the number of the pooled strings
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment segment : segments)
+			synchronized(segment) {
+				size += segment.size;
+			}
+		return size;
+	}
+
+	/**
+	 * Removes all the pooled strings. The statistics are not reset.
+	 */
+	public void clear() {
+		for(Segment segment : segments)
+			synchronized(segment) {
+				segment.clear();
+			}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public EvictionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Gets the number of the lookups that found the string already pooled
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of the lookups that pooled a new string
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of the strings evicted to keep the pool within its capacity
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		evictions.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "JsonStringPool [size=" + size() + ", capacity=" + capacity + ", policy=" + policy
+				+ ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * A hash table whose entries are also linked in eviction order, from the eldest to the newest
+	 */
+	private static final class Segment {
+		private final int capacity;
+		private Entry[] table = new Entry[16];
+		private int size;
+		private Entry eldest;
+		private Entry newest;
+
+		Segment(int capacity) {
+			this.capacity = capacity;
+		}
+
+		JsonString get(CharSequence value, int hash, boolean access) {
+			for(Entry e = table[spread(hash) & (table.length - 1)]; e != null; e = e.next) {
+				if(e.hash == hash && e.value.toString().contentEquals(value)) {
+					if(access && e != newest) {
+						unlink(e);
+						link(e);
+					}
+					return e.value;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Adds a new string
+		 * @return true if the eldest string has been evicted
+		 */
+		boolean put(JsonString value, int hash) {
+			if(size >= table.length - (table.length >>> 2))
+				resize();
+			Entry entry = new Entry(hash, value);
+			int index = spread(hash) & (table.length - 1);
+			entry.next = table[index];
+			table[index] = entry;
+			link(entry);
+			if(++size <= capacity)
+				return false;
+			remove(eldest);
+			return true;
+		}
+
+		void clear() {
+			table = new Entry[16];
+			size = 0;
+			eldest = newest = null;
+		}
+
+		private void remove(Entry entry) {
+			int index = spread(entry.hash) & (table.length - 1);
+			if(table[index] == entry)
+				table[index] = entry.next;
+			else {
+				Entry e = table[index];
+				while(e.next != entry)
+					e = e.next;
+				e.next = entry.next;
+			}
+			unlink(entry);
+			size--;
+		}
+
+		private void link(Entry entry) {
+			entry.before = newest;
+			entry.after = null;
+			if(newest == null)
+				eldest = entry;
+			else
+				newest.after = entry;
+			newest = entry;
+		}
+
+		private void unlink(Entry entry) {
+			if(entry.before == null)
+				eldest = entry.after;
+			else
+				entry.before.after = entry.after;
+			if(entry.after == null)
+				newest = entry.before;
+			else
+				entry.after.before = entry.before;
+		}
+
+		private void resize() {
+			Entry[] grown = new Entry[table.length * 2];
+			for(Entry e = eldest; e != null; e = e.after) {
+				int index = spread(e.hash) & (grown.length - 1);
+				e.next = grown[index];
+				grown[index] = e;
+			}
+			table = grown;
+		}
+	}
+
+	private static final class Entry {
+		final int hash;
+		final JsonString value;
+		Entry next;
+		Entry before;
+		Entry after;
+
+		Entry(int hash, JsonString value) {
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+}
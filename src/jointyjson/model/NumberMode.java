@@ -0,0 +1,42 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines how the numbers of a compiled document are held by the {@link JsonNumber} elements.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum NumberMode {
+	/**
+	 * Every number is converted to the nearest double
+	 */
+	DOUBLE,
+
+	/**
+	 * The integers are held as longs, the other numbers as BigDecimals, so that no precision is lost
+	 */
+	PRECISE,
+
+	/**
+	 * The raw text of each number is kept and converted only when the value is requested,
+	 * so the numbers that are only passed through are never converted
+	 */
+	LAZY
+}
@@ -0,0 +1,43 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines the data structures in which a {@link JsonObject} can store its fields.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum ObjectStorage {
+	/**
+	 * The fields are kept sorted by name in a tree, with logarithmic access time
+	 */
+	SORTED,
+
+	/**
+	 * The fields are kept in insertion order in a hash table, with constant access time
+	 */
+	HASH,
+
+	/**
+	 * The fields are kept in insertion order in flat arrays scanned linearly,
+	 * that are faster and much smaller than a hash table for small objects.
+	 * When the object grows beyond {@value CompactMap#MAX_SIZE} fields, it switches to a {@link #HASH} storage.
+	 */
+	COMPACT
+}
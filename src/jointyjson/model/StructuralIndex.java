@@ -0,0 +1,243 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+/**
+ * Defines the structural index of a validated JSON document, from which the elements are decoded on demand.
+ * The index is a sequence of entries, one for each value and field name of the document in textual order.
+ * The entry of a string or a number holds the range of its text in the source, while the entry of a container
+ * holds the position of its opening character and the index of the first entry following its contents,
+ * so that a whole subtree can be skipped in one step.<br>
+ * The indexes are built by a {@link StructuralIndexer}, as {@link jointyjson.compiler.JsonCompiler#compileLazy(String)} does:
+ * the objects and the arrays decoded from an index decode their contents only when they are accessed for the first time.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class StructuralIndex {
+	// the kinds of the entries
+	static final byte OBJECT = 0;
+	static final byte ARRAY = 1;
+	static final byte STRING = 2;
+	static final byte ESCAPED_STRING = 3;
+	static final byte NUMBER = 4;
+	static final byte TRUE = 5;
+	static final byte FALSE = 6;
+	static final byte NULL = 7;
+
+	private final String source;
+	private final byte[] kinds;
+	private final int[] starts;
+	private final int[] ends;
+	private final int size;
+
+	private final JsonStringPool pool;
+	private final ObjectStorage storage;
+	private final NumberMode numberMode;
+	// whether the string values are decoded as views over the source
+	private final boolean views;
+
+	/**
+	 * Creates the index of a validated document
+	 * @param source the document
+	 * @param kinds the kinds of the entries
+	 * @param starts the start of the text of each entry, or the position of the opening character of a container
+	 * @param ends the end of the text of each entry, or the index of the entry following the contents of a container
+	 * @param size the number of entries
+	 * @param pool the pool used to intern the names, and the string values if they are not views
+	 * @param storage the data structure of the fields of the decoded objects
+	 * @param numberMode the representation of the decoded numbers
+	 * @param views true to decode the string values as views over the source, see {@link JsonString#view(String, int, int, boolean)}
+	 */
+	StructuralIndex(String source, byte[] kinds, int[] starts, int[] ends, int size,
+			JsonStringPool pool, ObjectStorage storage, NumberMode numberMode, boolean views) {
+		if(size <= 0 || kinds[0] > ARRAY)
+			throw new IllegalArgumentException("the root of the document must be an object or an array");
+		this.source = source;
+		this.kinds = kinds;
+		this.starts = starts;
+		this.ends = ends;
+		this.size = size;
+		this.pool = pool;
+		this.storage = storage;
+		this.numberMode = numberMode;
+		this.views = views;
+	}
+
+	/**
+	 * Gets the root of the document, whose contents are not decoded yet
+	 * @return the root JSON element
+	 */
+	public JsonElement getRoot() {
+		return value(0);
+	}
+
+	/**
+	 * Gets the number of entries of this index
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the document indexed by this index
+	 * @return the source of the document
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	ObjectStorage storage() {
+		return storage;
+	}
+
+	/**
+	 * Decodes the direct contents of an object, leaving its containers to be decoded on demand
+	 * @param entry the entry of the object
+	 * @return an object holding the decoded fields
+	 */
+	JsonObject decodeObject(int entry) {
+		JsonObject object = new JsonObject(storage);
+		for(int i = entry + 1, end = ends[entry]; i < end; i = next(i + 1))
+			object.put(string(i), value(i + 1));
+		return object;
+	}
+
+	/**
+	 * Decodes the direct contents of an array, leaving its containers to be decoded on demand.
+	 * The numeric arrays are packed as by the parsers.
+	 * @param entry the entry of the array
+	 * @return an array holding the decoded elements
+	 */
+	JsonArray decodeArray(int entry) {
+		JsonArray array = new JsonArray();
+		for(int i = entry + 1, end = ends[entry]; i < end; i = next(i)) {
+			if(kinds[i] == NUMBER && numberMode == NumberMode.DOUBLE)
+				array.add(JsonNumber.parse(source, starts[i], ends[i]));
+			else if(kinds[i] == NUMBER && numberMode == NumberMode.PRECISE) {
+				JsonNumber number = (JsonNumber) value(i);
+				if(number.isLong())
+					array.add(number.getLong());
+				else
+					array.add(number);
+			} else
+				array.add(value(i));
+		}
+		return array;
+	}
+
+	/**
+	 * Gets the index of the entry following the specified one, skipping the contents of the containers
+	 */
+	private int next(int entry) {
+		return kinds[entry] <= ARRAY ? ends[entry] : entry + 1;
+	}
+
+	private JsonElement value(int entry) {
+		switch(kinds[entry]) {
+		case OBJECT:
+			return new JsonObject(this, entry);
+		case ARRAY:
+			return new JsonArray(this, entry);
+		case NUMBER:
+			return JsonNumber.valueOf(new Range(source, starts[entry], ends[entry]), numberMode);
+		case TRUE:
+			return JsonBoolean.getInstance(true);
+		case FALSE:
+			return JsonBoolean.getInstance(false);
+		case NULL:
+			return JsonNull.getInstance();
+		default:
+			if(views)
+				return JsonString.view(source, starts[entry], ends[entry], kinds[entry] == ESCAPED_STRING);
+			return string(entry);
+		}
+	}
+
+	private JsonString string(int entry) {
+		if(kinds[entry] == STRING)
+			return pool.intern(new Range(source, starts[entry], ends[entry]));
+		return pool.intern(unescape(starts[entry], ends[entry]));
+	}
+
+	/**
+	 * Decodes the control sequences of a validated string
+	 */
+	private CharSequence unescape(int start, int end) {
+		StringBuilder sb = new StringBuilder(end - start);
+		int i = start;
+		while(i < end) {
+			char c = source.charAt(i++);
+			if(c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			c = source.charAt(i++);
+			switch(c) {
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'u':
+				sb.append((char) Integer.parseInt(source.substring(i, i + 4), 16));
+				i += 4;
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb;
+	}
+
+	/**
+	 * A view over a range of the source, so that the pooled strings are found without copying them
+	 */
+	private static final class Range implements CharSequence {
+		private final String source;
+		private final int start;
+		private final int end;
+
+		Range(String source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return source.charAt(start + index);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return source.substring(start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			return source.substring(start, end);
+		}
+	}
+}
@@ -0,0 +1,295 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import java.util.Arrays;
+
+import jointyjson.stream.JsonHandler;
+
+/**
+ * Defines the handler that indexes a JSON document into a {@link StructuralIndex} while a parser notifies it,
+ * so that a document is validated and indexed in one pass, without decoding any value.
+ * The indexer must be notified by a parser of its own source: the range of each value is taken from the source itself,
+ * checking that it is the notified value, so the index always describes the text of the source.<br>
+ * The indexes are built by {@link jointyjson.compiler.JsonCompiler#compileLazy(String)}.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class StructuralIndexer implements JsonHandler {
+	private final String source;
+	private final int length;
+	private final JsonStringPool pool;
+	private final ObjectStorage storage;
+	private final NumberMode numberMode;
+	private final boolean views;
+
+	// the position following the last indexed value
+	private int position;
+
+	private byte[] kinds = new byte[64];
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private int size;
+
+	// the entries of the open containers, and whether each open object expects a field name
+	private int[] open = new int[32];
+	private boolean[] names = new boolean[32];
+	private int depth;
+
+	private StructuralIndex index;
+
+	/**
+	 * Creates an indexer of the specified source
+	 * @param source the source notified to this indexer
+	 * @param pool the pool used to intern the names, and the string values if they are not views
+	 * @param storage the data structure of the fields of the decoded objects
+	 * @param numberMode the representation of the decoded numbers
+	 * @param views true to decode the string values as views over the source, see {@link JsonString#view(String, int, int, boolean)}
+	 */
+	public StructuralIndexer(String source, JsonStringPool pool, ObjectStorage storage, NumberMode numberMode, boolean views) {
+		if(source == null)
+			throw new NullPointerException("source cannot be null");
+		if(pool == null)
+			throw new NullPointerException("pool cannot be null");
+		if(storage == null)
+			throw new NullPointerException("storage cannot be null");
+		if(numberMode == null)
+			throw new NullPointerException("number mode cannot be null");
+		this.source = source;
+		this.length = source.length();
+		this.pool = pool;
+		this.storage = storage;
+		this.numberMode = numberMode;
+		this.views = views;
+	}
+
+	/**
+	 * Gets the root of the indexed document, whose contents are not decoded yet
+	 * @return the root JSON element
+	 * @throws IllegalStateException if the document has not been completely notified
+	 */
+	public JsonElement getRoot() {
+		if(index == null) {
+			if(size == 0 || depth > 0)
+				throw new IllegalStateException("the document is not complete");
+			index = new StructuralIndex(source, kinds, starts, ends, size, pool, storage, numberMode, views);
+		}
+		return index.getRoot();
+	}
+
+	@Override
+	public void startObject() {
+		open(StructuralIndex.OBJECT, '{');
+	}
+
+	@Override
+	public void field(CharSequence name) {
+		if(depth == 0 || !names[depth - 1])
+			throw mismatch("field name");
+		names[depth - 1] = false;
+		string();
+	}
+
+	@Override
+	public void endObject() {
+		close(StructuralIndex.OBJECT, '}');
+	}
+
+	@Override
+	public void startArray() {
+		open(StructuralIndex.ARRAY, '[');
+	}
+
+	@Override
+	public void endArray() {
+		close(StructuralIndex.ARRAY, ']');
+	}
+
+	@Override
+	public void stringValue(CharSequence value) {
+		value();
+		string();
+	}
+
+	@Override
+	public void numberValue(double value) {
+		number();
+	}
+
+	@Override
+	public void numberValue(CharSequence text) {
+		number();
+	}
+
+	@Override
+	public void booleanValue(boolean value) {
+		value();
+		literal(value ? "true" : "false", value ? StructuralIndex.TRUE : StructuralIndex.FALSE);
+	}
+
+	@Override
+	public void nullValue() {
+		value();
+		literal("null", StructuralIndex.NULL);
+	}
+
+	/**
+	 * Checks that a value is expected, that is the root container, an array element or the value of an object field
+	 */
+	private void value() {
+		if(depth == 0 || kinds[open[depth - 1]] == StructuralIndex.OBJECT && names[depth - 1])
+			throw mismatch("value");
+		if(kinds[open[depth - 1]] == StructuralIndex.OBJECT)
+			names[depth - 1] = true;
+	}
+
+	private void open(byte kind, char c) {
+		if(depth > 0)
+			value();
+		else if(size > 0)
+			throw mismatch("end of input");
+		if(skip() >= length || source.charAt(position) != c)
+			throw mismatch(String.valueOf(c));
+		int entry = add(kind, position++, 0);
+		if(depth == open.length) {
+			open = Arrays.copyOf(open, depth * 2);
+			names = Arrays.copyOf(names, depth * 2);
+		}
+		names[depth] = kind == StructuralIndex.OBJECT;
+		open[depth++] = entry;
+	}
+
+	private void close(byte kind, char c) {
+		if(depth == 0 || kinds[open[depth - 1]] != kind || (kind == StructuralIndex.OBJECT && !names[depth - 1]))
+			throw mismatch(String.valueOf(c));
+		if(skip() >= length || source.charAt(position) != c)
+			throw mismatch(String.valueOf(c));
+		position++;
+		ends[open[--depth]] = size;
+	}
+
+	/**
+	 * Indexes the string at the current position, checking its control sequences
+	 */
+	private void string() {
+		if(skip() >= length || source.charAt(position) != '"')
+			throw mismatch("string");
+		int start = ++position;
+		boolean escaped = false;
+		while(true) {
+			if(position >= length)
+				throw mismatch("string");
+			char c = source.charAt(position);
+			if(c == '"')
+				break;
+			if(c != '\\') {
+				position++;
+				continue;
+			}
+			escaped = true;
+			c = position + 1 < length ? source.charAt(position + 1) : 0;
+			if(c == 'u') {
+				for(int i = position + 2; i < position + 6; i++)
+					if(i >= length || Character.digit(source.charAt(i), 16) < 0)
+						throw mismatch("string");
+				position += 6;
+			} else if("\"\\/bfnrt".indexOf(c) >= 0 && c != 0)
+				position += 2;
+			else
+				throw mismatch("string");
+		}
+		add(escaped ? StructuralIndex.ESCAPED_STRING : StructuralIndex.STRING, start, position++);
+	}
+
+	/**
+	 * Indexes the number at the current position, checking its syntax
+	 */
+	private void number() {
+		value();
+		int start = skip();
+		if(position < length && source.charAt(position) == '-')
+			position++;
+		int digits = digits();
+		if(position < length && source.charAt(position) == '.') {
+			position++;
+			digits += digits();
+		}
+		if(digits == 0)
+			throw mismatch("number");
+		if(position < length && (source.charAt(position) == 'e' || source.charAt(position) == 'E')) {
+			position++;
+			if(position < length && (source.charAt(position) == '+' || source.charAt(position) == '-'))
+				position++;
+			if(digits() == 0)
+				throw mismatch("number");
+		}
+		add(StructuralIndex.NUMBER, start, position);
+	}
+
+	private int digits() {
+		int start = position;
+		while(position < length && source.charAt(position) >= '0' && source.charAt(position) <= '9')
+			position++;
+		return position - start;
+	}
+
+	private void literal(String literal, byte kind) {
+		if(!source.startsWith(literal, skip()))
+			throw mismatch(literal);
+		position += literal.length();
+		add(kind, 0, 0);
+	}
+
+	/**
+	 * Skips the blanks, the comments and the separators following the last indexed value
+	 * @return the position of the next value
+	 */
+	private int skip() {
+		while(position < length) {
+			char c = source.charAt(position);
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == '\u000B' || c == ',' || c == ':')
+				position++;
+			else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '*') {
+				int end = source.indexOf("*/", position + 2);
+				position = end < 0 ? length : end + 2;
+			} else if(c == '/' && position + 1 < length && source.charAt(position + 1) == '/') {
+				int end = source.indexOf('\n', position + 2);
+				position = end < 0 ? length : end;
+			} else
+				break;
+		}
+		return position;
+	}
+
+	private int add(byte kind, int start, int end) {
+		if(size == kinds.length) {
+			kinds = Arrays.copyOf(kinds, size * 2);
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		kinds[size] = kind;
+		starts[size] = start;
+		ends[size] = end;
+		return size++;
+	}
+
+	private IllegalStateException mismatch(String expected) {
+		return new IllegalStateException("the notified " + expected + " does not match the source at position " + position);
+	}
+}
@@ -0,0 +1,380 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.function.Consumer;
+
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+
+/**
+ * Defines a compiled path query over the JSON composite structure, in a JSONPath-like syntax:
+ * <ul>
+ * <li>{@code $} the root element, that starts every path</li>
+ * <li>{@code .name} or {@code ['name']} the field of an object with the given name</li>
+ * <li>{@code .*} or {@code [*]} all the values of an object or all the elements of an array</li>
+ * <li>{@code [2]} the element of an array at the given index, counted from the end when negative</li>
+ * <li>{@code [1:5:2]} the elements of an array in a slice, with optional start, end and step as in Python</li>
+ * <li>{@code [0,2]} or {@code ['a','b']} the union of some indexes or some names</li>
+ * <li>{@code ..name}, {@code ..*} or {@code ..[...]} the recursive descent: the step is applied to the current element
+ * and to all its descendants</li>
+ * </ul>
+ * A path is compiled once and is immutable, so it can be evaluated by many threads at the same time.
+ * The evaluation walks the structure depth-first passing each match directly to the next step,
+ * so no intermediate collection is built between the steps. The steps not applicable to an element,
+ * such as a name applied to an array, match nothing.<br>
+ * A definite path can also update a frozen structure by {@link #with(JsonElement, JsonElement)},
+ * that copies only the containers along the path.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonPath {
+
+	/**
+	 * Compiles a path expression
+	 * @param expression the path expression
+	 * @return the compiled path
+	 * @throws IllegalArgumentException if the expression is not valid
+	 */
+	public static JsonPath compile(String expression) {
+		return new JsonPath(expression, new PathParser(expression).parse());
+	}
+
+	private final String expression;
+	private final Step[] steps;
+
+	private JsonPath(String expression, Step[] steps) {
+		this.expression = expression;
+		this.steps = steps;
+	}
+
+	/**
+	 * Selects all the elements matched by this path
+	 * @param root the root element
+	 * @return the matched elements, in document order
+	 */
+	public List<JsonElement> select(JsonElement root) {
+		List<JsonElement> result = new ArrayList<>();
+		match(0, root, element -> {
+			result.add(element);
+			return true;
+		});
+		return result;
+	}
+
+	/**
+	 * Selects the first element matched by this path, stopping the evaluation at the first match
+	 * @param root the root element
+	 * @return the first matched element, or null if no element is matched
+	 */
+	public JsonElement first(JsonElement root) {
+		JsonElement[] first = new JsonElement[1];
+		match(0, root, element -> {
+			first[0] = element;
+			return false;
+		});
+		return first[0];
+	}
+
+	/**
+	 * Passes all the elements matched by this path to an action, without collecting them
+	 * @param root the root element
+	 * @param action the action performed on each matched element
+	 */
+	public void forEach(JsonElement root, Consumer<? super JsonElement> action) {
+		match(0, root, element -> {
+			action.accept(element);
+			return true;
+		});
+	}
+
+	/**
+	 * Counts the elements matched by this path
+	 * @param root the root element
+	 * @return the number of matched elements
+	 */
+	public int count(JsonElement root) {
+		int[] count = new int[1];
+		match(0, root, element -> {
+			count[0]++;
+			return true;
+		});
+		return count[0];
+	}
+
+	/**
+	 * Tells whether this path matches only one element at most, that is it contains only names and indexes
+	 * @return true if this path is definite
+	 */
+	public boolean isDefinite() {
+		for(Step step : steps)
+			if(!step.isDefinite())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Gets a frozen copy of the specified structure where the element matched by this definite path is replaced
+	 * by the specified value, or added if the last step names a missing field. Only the containers along the path
+	 * are copied, while all the other subtrees are shared with the frozen original.
+	 * @param root the root element
+	 * @param value the new value, that is frozen too
+	 * @return the root of the updated copy
+	 * @throws UnsupportedOperationException if this path is not definite
+	 * @throws IllegalArgumentException if an intermediate element of the path is missing or has a different type
+	 * @throws IndexOutOfBoundsException if an index of the path is out of range
+	 */
+	public JsonElement with(JsonElement root, JsonElement value) {
+		if(!isDefinite())
+			throw new UnsupportedOperationException("Only a definite path can update a structure: " + expression);
+		if(value == null)
+			throw new NullPointerException("value cannot be null");
+		return replace(0, root, value);
+	}
+
+	@Override
+	public String toString() {
+		return expression;
+	}
+
+	/**
+	 * Applies the steps from the specified one to an element
+	 * @return false if the evaluation must stop
+	 */
+	private boolean match(int step, JsonElement element, Sink sink) {
+		if(element == null)
+			return true;
+		if(step == steps.length)
+			return sink.accept(element);
+		return steps[step].apply(this, step + 1, element, sink);
+	}
+
+	/**
+	 * Replaces the element selected by the steps from the specified one
+	 * @return the updated copy of the element
+	 */
+	private JsonElement replace(int step, JsonElement element, JsonElement value) {
+		if(step == steps.length)
+			return value.freeze();
+		if(element == null)
+			throw new IllegalArgumentException("The path " + expression + " does not match the structure at step " + step);
+		return steps[step].replace(this, step + 1, element, value);
+	}
+
+	/**
+	 * The receiver of the matched elements
+	 */
+	private interface Sink {
+		/**
+		 * Receives a matched element
+		 * @return false if the evaluation must stop
+		 */
+		boolean accept(JsonElement element);
+	}
+
+	/**
+	 * A step of a compiled path
+	 */
+	abstract static class Step {
+		/**
+		 * Applies this step to an element, passing the selected children to the next step
+		 * @return false if the evaluation must stop
+		 */
+		abstract boolean apply(JsonPath path, int next, JsonElement element, Sink sink);
+
+		boolean isDefinite() {
+			return false;
+		}
+
+		/**
+		 * Replaces the child selected by this definite step, passing it to the next step
+		 * @return the updated copy of the element
+		 */
+		JsonElement replace(JsonPath path, int next, JsonElement element, JsonElement value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	static final class NameStep extends Step {
+		private final String[] names;
+
+		NameStep(String... names) {
+			this.names = names;
+		}
+
+		@Override
+		boolean apply(JsonPath path, int next, JsonElement element, Sink sink) {
+			if(!(element instanceof JsonObject))
+				return true;
+			JsonObject object = (JsonObject) element;
+			for(String name : names)
+				if(!path.match(next, object.get(name), sink))
+					return false;
+			return true;
+		}
+
+		@Override
+		boolean isDefinite() {
+			return names.length == 1;
+		}
+
+		@Override
+		JsonElement replace(JsonPath path, int next, JsonElement element, JsonElement value) {
+			if(!(element instanceof JsonObject))
+				throw new IllegalArgumentException("The path " + path + " does not match the structure at step " + (next - 1));
+			JsonObject object = (JsonObject) element;
+			return object.with(names[0], path.replace(next, object.get(names[0]), value));
+		}
+	}
+
+	static final class IndexStep extends Step {
+		private final int[] indexes;
+
+		IndexStep(int... indexes) {
+			this.indexes = indexes;
+		}
+
+		@Override
+		boolean apply(JsonPath path, int next, JsonElement element, Sink sink) {
+			if(!(element instanceof JsonArray))
+				return true;
+			JsonArray array = (JsonArray) element;
+			int size = array.size();
+			for(int index : indexes) {
+				if(index < 0)
+					index += size;
+				if(index >= 0 && index < size && !path.match(next, array.get(index), sink))
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		boolean isDefinite() {
+			return indexes.length == 1;
+		}
+
+		@Override
+		JsonElement replace(JsonPath path, int next, JsonElement element, JsonElement value) {
+			if(!(element instanceof JsonArray))
+				throw new IllegalArgumentException("The path " + path + " does not match the structure at step " + (next - 1));
+			JsonArray array = (JsonArray) element;
+			int index = indexes[0] < 0 ? indexes[0] + array.size() : indexes[0];
+			if(index < 0 || index >= array.size())
+				throw new IndexOutOfBoundsException("Index: " + indexes[0] + ", Size: " + array.size());
+			return array.with(index, path.replace(next, array.get(index), value));
+		}
+	}
+
+	static final class SliceStep extends Step {
+		// null bounds are the ends of the array in the direction of the step
+		private final Integer start;
+		private final Integer end;
+		private final int step;
+
+		SliceStep(Integer start, Integer end, int step) {
+			this.start = start;
+			this.end = end;
+			this.step = step;
+		}
+
+		@Override
+		boolean apply(JsonPath path, int next, JsonElement element, Sink sink) {
+			if(!(element instanceof JsonArray))
+				return true;
+			JsonArray array = (JsonArray) element;
+			int size = array.size();
+			if(step > 0) {
+				int from = bound(start, size, 0, 0, size);
+				int to = bound(end, size, size, 0, size);
+				for(int i = from; i < to; i += step)
+					if(!path.match(next, array.get(i), sink))
+						return false;
+			} else {
+				int from = bound(start, size, size - 1, -1, size - 1);
+				int to = bound(end, size, -1, -1, size - 1);
+				for(int i = from; i > to; i += step)
+					if(!path.match(next, array.get(i), sink))
+						return false;
+			}
+			return true;
+		}
+
+		private static int bound(Integer value, int size, int absent, int min, int max) {
+			if(value == null)
+				return absent;
+			int bound = value < 0 ? value + size : value;
+			return Math.max(min, Math.min(max, bound));
+		}
+	}
+
+	static final class WildcardStep extends Step {
+		@Override
+		boolean apply(JsonPath path, int next, JsonElement element, Sink sink) {
+			if(element instanceof JsonObject) {
+				for(Entry<JsonString, JsonElement> entry : ((JsonObject) element).getEntries())
+					if(!path.match(next, entry.getValue(), sink))
+						return false;
+			} else if(element instanceof JsonArray) {
+				for(JsonElement child : (JsonArray) element)
+					if(!path.match(next, child, sink))
+						return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Applies a step to an element and to all its descendants, in document order
+	 */
+	static final class DescendantStep extends Step {
+		private final Step step;
+
+		DescendantStep(Step step) {
+			this.step = step;
+		}
+
+		@Override
+		boolean apply(JsonPath path, int next, JsonElement element, Sink sink) {
+			if(!step.apply(path, next, element, sink))
+				return false;
+			if(element instanceof JsonObject) {
+				for(Entry<JsonString, JsonElement> entry : ((JsonObject) element).getEntries())
+					if(!descend(path, next, entry.getValue(), sink))
+						return false;
+			} else if(element instanceof JsonArray && !((JsonArray) element).isPacked()) {
+				for(JsonElement child : (JsonArray) element)
+					if(!descend(path, next, child, sink))
+						return false;
+			}
+			return true;
+		}
+
+		private boolean descend(JsonPath path, int next, JsonElement child, Sink sink) {
+			if(child instanceof JsonObject || child instanceof JsonArray)
+				return apply(path, next, child, sink);
+			return true;
+		}
+	}
+}
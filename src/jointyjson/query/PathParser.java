@@ -0,0 +1,213 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jointyjson.query.JsonPath.DescendantStep;
+import jointyjson.query.JsonPath.IndexStep;
+import jointyjson.query.JsonPath.NameStep;
+import jointyjson.query.JsonPath.SliceStep;
+import jointyjson.query.JsonPath.Step;
+import jointyjson.query.JsonPath.WildcardStep;
+
+/**
+ * Defines the parser of the path expressions, that compiles them into the steps of a {@link JsonPath}.
+ * @author Salvatore Giampa'
+ *
+ */
+final class PathParser {
+	private final String expression;
+	private final int length;
+	private int position;
+
+	PathParser(String expression) {
+		if(expression == null)
+			throw new NullPointerException("expression cannot be null");
+		this.expression = expression;
+		this.length = expression.length();
+	}
+
+	Step[] parse() {
+		skipBlanks();
+		if(position >= length || expression.charAt(position) != '$')
+			throw error("the path must start with $");
+		position++;
+		List<Step> steps = new ArrayList<>();
+		skipBlanks();
+		while(position < length) {
+			char c = expression.charAt(position);
+			if(c == '.' && position + 1 < length && expression.charAt(position + 1) == '.') {
+				position += 2;
+				if(position < length && expression.charAt(position) == '[')
+					steps.add(new DescendantStep(parseBracket()));
+				else
+					steps.add(new DescendantStep(parseDotted()));
+			} else if(c == '.') {
+				position++;
+				steps.add(parseDotted());
+			} else if(c == '[')
+				steps.add(parseBracket());
+			else
+				throw error("expected . or [");
+			skipBlanks();
+		}
+		return steps.toArray(new Step[steps.size()]);
+	}
+
+	/**
+	 * Parses a name or a wildcard following a dot
+	 */
+	private Step parseDotted() {
+		if(position < length && expression.charAt(position) == '*') {
+			position++;
+			return new WildcardStep();
+		}
+		int start = position;
+		while(position < length) {
+			char c = expression.charAt(position);
+			if(c == '.' || c == '[' || Character.isWhitespace(c))
+				break;
+			position++;
+		}
+		if(position == start)
+			throw error("expected a name or *");
+		return new NameStep(expression.substring(start, position));
+	}
+
+	/**
+	 * Parses a bracketed selector: a wildcard, a union of names or of indexes, or a slice
+	 */
+	private Step parseBracket() {
+		position++;
+		skipBlanks();
+		if(position >= length)
+			throw error("expected a selector");
+		char c = expression.charAt(position);
+		Step step;
+		if(c == '*') {
+			position++;
+			step = new WildcardStep();
+		} else if(c == '\'' || c == '"') {
+			List<String> names = new ArrayList<>();
+			names.add(parseQuoted());
+			while(skipComma())
+				names.add(parseQuoted());
+			step = new NameStep(names.toArray(new String[names.size()]));
+		} else
+			step = parseIndexes();
+		skipBlanks();
+		if(position >= length || expression.charAt(position) != ']')
+			throw error("expected ]");
+		position++;
+		return step;
+	}
+
+	private Step parseIndexes() {
+		Integer first = parseInteger();
+		skipBlanks();
+		if(position < length && expression.charAt(position) == ':') {
+			position++;
+			Integer end = parseInteger();
+			int step = 1;
+			skipBlanks();
+			if(position < length && expression.charAt(position) == ':') {
+				position++;
+				Integer parsed = parseInteger();
+				if(parsed != null)
+					step = parsed;
+				if(step == 0)
+					throw error("the step of a slice cannot be 0");
+			}
+			return new SliceStep(first, end, step);
+		}
+		if(first == null)
+			throw error("expected an index, a slice, a quoted name or *");
+		List<Integer> indexes = new ArrayList<>();
+		indexes.add(first);
+		while(skipComma()) {
+			Integer index = parseInteger();
+			if(index == null)
+				throw error("expected an index");
+			indexes.add(index);
+		}
+		int[] result = new int[indexes.size()];
+		for(int i = 0; i < result.length; i++)
+			result[i] = indexes.get(i);
+		return new IndexStep(result);
+	}
+
+	/**
+	 * Parses an optional integer
+	 * @return the integer, or null if absent
+	 */
+	private Integer parseInteger() {
+		skipBlanks();
+		int start = position;
+		if(position < length && expression.charAt(position) == '-')
+			position++;
+		while(position < length && expression.charAt(position) >= '0' && expression.charAt(position) <= '9')
+			position++;
+		if(position == start)
+			return null;
+		try {
+			return Integer.valueOf(expression.substring(start, position));
+		} catch (NumberFormatException e) {
+			position = start;
+			throw error("invalid index");
+		}
+	}
+
+	private String parseQuoted() {
+		skipBlanks();
+		char quote = position < length ? expression.charAt(position) : 0;
+		if(quote != '\'' && quote != '"')
+			throw error("expected a quoted name");
+		position++;
+		StringBuilder sb = new StringBuilder();
+		while(position < length) {
+			char c = expression.charAt(position++);
+			if(c == quote)
+				return sb.toString();
+			if(c == '\\' && position < length)
+				c = expression.charAt(position++);
+			sb.append(c);
+		}
+		throw error("unterminated name");
+	}
+
+	private boolean skipComma() {
+		skipBlanks();
+		if(position < length && expression.charAt(position) == ',') {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipBlanks() {
+		while(position < length && Character.isWhitespace(expression.charAt(position)))
+			position++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException("Invalid path \"" + expression + "\" at position " + position + ": " + message);
+	}
+}
@@ -0,0 +1,590 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.nio.ByteBuffer;
+
+import jointyjson.model.JsonElement;
+
+/**
+ * Defines a non-blocking push parser for UTF-8 encoded JSON documents received in chunks, such as the buffers
+ * read from a non-blocking channel. Each chunk is parsed as soon as it is fed, and the parsed values are
+ * notified to a {@link JsonHandler}; the values split between two chunks are kept until they are complete,
+ * so the chunks need not be contiguous nor retained, and the parser never waits for more input.
+ * When the events are notified to a {@link JsonTreeBuilder}, the JSON composite structure is available
+ * by {@link #getRoot()} as soon as the document is complete.<br>
+ * The parser accepts the same language of the {@link jointyjson.compiler.JsonCompiler}, and decodes the malformed UTF-8
+ * sequences, including the overlong forms, the encoded surrogates and the code points beyond U+10FFFF,
+ * as the replacement character U+FFFD. A parser reads one document, and it can be reused after {@link #reset()}.
+ * It is not thread-safe, but the chunks can be fed by different threads one at a time.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonFeedParser {
+	// the size of the blocks copied from the buffers without an accessible array
+	private static final int BLOCK_SIZE = 8192;
+
+	// parsing contexts
+	private static final int ROOT = 0;
+	private static final int ROOT_END = 1;
+	private static final int OBJECT_FIRST = 2;
+	private static final int OBJECT_NAME = 3;
+	private static final int OBJECT_COLON = 4;
+	private static final int OBJECT_VALUE = 5;
+	private static final int OBJECT_NEXT = 6;
+	private static final int ARRAY_FIRST = 7;
+	private static final int ARRAY_VALUE = 8;
+	private static final int ARRAY_NEXT = 9;
+
+	// the tokens that can be split between two chunks
+	private static final int NONE = 0;
+	private static final int STRING = 1;
+	private static final int ESCAPE = 2;
+	private static final int UNICODE = 3;
+	private static final int NUMBER = 4;
+	private static final int LITERAL = 5;
+	private static final int SLASH = 6;
+	private static final int BLOCK_COMMENT = 7;
+	private static final int BLOCK_COMMENT_STAR = 8;
+	private static final int LINE_COMMENT = 9;
+
+	// the handler passed by the caller, and the one checking the limits before notifying it
+	private final JsonHandler target;
+	private JsonHandler handler;
+	private final JsonLimits limits;
+
+	// stack of the parsing contexts, the element at depth is the current one
+	private int[] stack = new int[32];
+	private int depth;
+
+	// the token being read, and the text read so far of a string, a field name or a number
+	private int token;
+	private final StringBuilder text = new StringBuilder();
+	private boolean name;
+	// the literal being read and the number of its characters already read
+	private String literal;
+	private int matched;
+	// the code point being decoded and the number of its bytes or hexadecimal digits still missing
+	private int code;
+	private int missing;
+	// the smallest code point of the UTF-8 sequence being decoded, the smaller ones having shorter forms
+	private int minimum;
+
+	// the bytes consumed, that is the position of the next byte
+	private long position;
+	private boolean ended;
+	private byte[] block;
+
+	/**
+	 * Creates a parser building the JSON composite structure of the document, with the default settings of a {@link JsonTreeBuilder}
+	 * @see jointyjson.compiler.JsonCompiler#newFeedParser()
+	 */
+	public JsonFeedParser() {
+		this(new JsonTreeBuilder());
+	}
+
+	/**
+	 * Creates a parser notifying the parsed values to the specified handler
+	 * @param handler the handler to notify
+	 */
+	public JsonFeedParser(JsonHandler handler) {
+		this(handler, JsonLimits.UNLIMITED);
+	}
+
+	/**
+	 * Creates a parser notifying the parsed values to the specified handler, that stops with a {@link JsonLimitException}
+	 * as soon as the document exceeds the specified limits. A chunk exceeding the input length is rejected before it is parsed,
+	 * and the strings and numbers split between the chunks are checked as they grow.
+	 * @param handler the handler to notify
+	 * @param limits the limits of the document
+	 */
+	public JsonFeedParser(JsonHandler handler, JsonLimits limits) {
+		if(handler == null)
+			throw new NullPointerException("handler cannot be null");
+		if(limits == null)
+			throw new NullPointerException("limits cannot be null");
+		this.target = handler;
+		this.handler = limits.wrap(handler);
+		this.limits = limits;
+	}
+
+	/**
+	 * Parses the remaining bytes of a chunk. On return, the position of the chunk is its limit.
+	 * @param chunk the next bytes of the document
+	 * @throws MalformedJsonException if the document contains some syntactic error
+	 * @throws IllegalStateException if the end of the document has already been signaled
+	 */
+	public void feed(ByteBuffer chunk) throws MalformedJsonException {
+		if(chunk.hasArray()) {
+			int start = chunk.arrayOffset() + chunk.position();
+			parse(chunk.array(), start, start + chunk.remaining());
+			chunk.position(chunk.limit());
+			return;
+		}
+		if(block == null)
+			block = new byte[BLOCK_SIZE];
+		while(chunk.hasRemaining()) {
+			int length = Math.min(block.length, chunk.remaining());
+			chunk.get(block, 0, length);
+			parse(block, 0, length);
+		}
+	}
+
+	/**
+	 * Parses a chunk of bytes
+	 * @param chunk the next bytes of the document
+	 * @throws MalformedJsonException if the document contains some syntactic error
+	 * @throws IllegalStateException if the end of the document has already been signaled
+	 */
+	public void feed(byte[] chunk) throws MalformedJsonException {
+		parse(chunk, 0, chunk.length);
+	}
+
+	/**
+	 * Parses a range of an array of bytes
+	 * @param chunk the array containing the next bytes of the document
+	 * @param offset the start of the range
+	 * @param length the length of the range
+	 * @throws MalformedJsonException if the document contains some syntactic error
+	 * @throws IllegalStateException if the end of the document has already been signaled
+	 */
+	public void feed(byte[] chunk, int offset, int length) throws MalformedJsonException {
+		if(offset < 0 || length < 0 || offset > chunk.length - length)
+			throw new IndexOutOfBoundsException("Range [" + offset + ", " + (offset + length) + ") out of an array of length " + chunk.length);
+		parse(chunk, offset, offset + length);
+	}
+
+	/**
+	 * Signals that the whole document has been fed, checking that it is complete
+	 * @throws MalformedJsonException if the document is truncated
+	 */
+	public void end() throws MalformedJsonException {
+		if(ended)
+			return;
+		ended = true;
+		if(token == NUMBER)
+			number();
+		if((token != NONE && token != LINE_COMMENT) || stack[depth] != ROOT_END)
+			throw syntaxError(-1);
+	}
+
+	/**
+	 * Tells whether the root object or array has been parsed entirely
+	 * @return true if the whole document has been notified to the handler, even if the end has not been signaled yet
+	 */
+	public boolean isComplete() {
+		return depth == 0 && stack[0] == ROOT_END;
+	}
+
+	/**
+	 * Gets the JSON composite structure of the document
+	 * @return the root of the structure, or null if the document is not complete yet
+	 * @throws IllegalStateException if the events are not notified to a {@link JsonTreeBuilder}
+	 */
+	public JsonElement getRoot() {
+		if(!(target instanceof JsonTreeBuilder))
+			throw new IllegalStateException("the parser does not build the JSON structure");
+		return isComplete() ? ((JsonTreeBuilder) target).getRoot() : null;
+	}
+
+	public JsonHandler getHandler() {
+		return target;
+	}
+
+	public JsonLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Gets the number of bytes fed so far
+	 * @return the position of the next byte in the document
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Discards the state of the current document, so that the parser can read another one.
+	 * The handler is reset as well if it is a {@link JsonTreeBuilder}.
+	 */
+	public void reset() {
+		depth = 0;
+		stack[0] = ROOT;
+		token = NONE;
+		text.setLength(0);
+		literal = null;
+		missing = 0;
+		position = 0;
+		ended = false;
+		if(target instanceof JsonTreeBuilder)
+			((JsonTreeBuilder) target).reset();
+		handler = limits.wrap(target);
+	}
+
+	private void parse(byte[] bytes, int i, int end) throws MalformedJsonException {
+		if(ended)
+			throw new IllegalStateException("the end of the document has already been signaled");
+		limits.checkInputLength(position + end - i);
+		while(i < end) {
+			if(token == STRING && missing == 0) {
+				// the plain ASCII characters of a string are copied at once
+				int start = i;
+				byte b;
+				while(i < end && (b = bytes[i]) >= 0 && b != '"' && b != '\\') {
+					text.append((char) b);
+					i++;
+				}
+				position += i - start;
+				if(text.length() > limits.getMaxStringLength())
+					throw new JsonLimitException(JsonLimits.Limit.STRING_LENGTH, limits.getMaxStringLength());
+				if(i == end)
+					return;
+			}
+			consume(bytes[i++]);
+			position++;
+		}
+	}
+
+	/**
+	 * Consumes the byte at the current position
+	 */
+	private void consume(int b) throws MalformedJsonException {
+		switch(token) {
+		case STRING:
+			string(b);
+			return;
+		case ESCAPE:
+			escape(b);
+			return;
+		case UNICODE:
+			int digit = b < 0 ? -1 : Character.digit((char) b, 16);
+			if(digit < 0)
+				throw syntaxError(b);
+			code = (code << 4) | digit;
+			if(--missing == 0) {
+				text.append((char) code);
+				token = STRING;
+			}
+			return;
+		case NUMBER:
+			if((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+				if(text.length() == limits.getMaxNumberLength())
+					throw new JsonLimitException(JsonLimits.Limit.NUMBER_LENGTH, limits.getMaxNumberLength());
+				text.append((char) b);
+				return;
+			}
+			number();
+			break;
+		case LITERAL:
+			if(b != literal.charAt(matched))
+				throw syntaxError(b);
+			if(++matched == literal.length()) {
+				token = NONE;
+				if(literal.equals("null"))
+					handler.nullValue();
+				else
+					handler.booleanValue(literal.equals("true"));
+			}
+			return;
+		case SLASH:
+			if(b == '*')
+				token = BLOCK_COMMENT;
+			else if(b == '/')
+				token = LINE_COMMENT;
+			else
+				throw syntaxError(b);
+			return;
+		case BLOCK_COMMENT:
+			if(b == '*')
+				token = BLOCK_COMMENT_STAR;
+			return;
+		case BLOCK_COMMENT_STAR:
+			token = b == '/' ? NONE : b == '*' ? BLOCK_COMMENT_STAR : BLOCK_COMMENT;
+			return;
+		case LINE_COMMENT:
+			if(b == '\n')
+				token = NONE;
+			return;
+		}
+		structural(b);
+	}
+
+	/**
+	 * Consumes a byte outside of any token
+	 */
+	private void structural(int b) throws MalformedJsonException {
+		switch(b) {
+		case ' ': case '\n': case '\r': case '\t': case '\f': case '\u000B':
+			return;
+		case '/':
+			token = SLASH;
+			return;
+		}
+		switch(stack[depth]) {
+		case ROOT:
+			if(b != '{' && b != '[')
+				throw syntaxError(b);
+			value(b, ROOT_END);
+			return;
+		case OBJECT_FIRST:
+			if(b == '}') {
+				endObject();
+				return;
+			}
+			name(b);
+			return;
+		case OBJECT_NAME:
+			name(b);
+			return;
+		case OBJECT_COLON:
+			if(b != ':')
+				throw syntaxError(b);
+			stack[depth] = OBJECT_VALUE;
+			return;
+		case OBJECT_VALUE:
+			value(b, OBJECT_NEXT);
+			return;
+		case OBJECT_NEXT:
+			if(b == '}')
+				endObject();
+			else if(b == ',')
+				stack[depth] = OBJECT_NAME;
+			else
+				throw syntaxError(b);
+			return;
+		case ARRAY_FIRST:
+			if(b == ']') {
+				endArray();
+				return;
+			}
+			value(b, ARRAY_NEXT);
+			return;
+		case ARRAY_VALUE:
+			value(b, ARRAY_NEXT);
+			return;
+		case ARRAY_NEXT:
+			if(b == ']')
+				endArray();
+			else if(b == ',')
+				stack[depth] = ARRAY_VALUE;
+			else
+				throw syntaxError(b);
+			return;
+		default:
+			throw syntaxError(b);
+		}
+	}
+
+	private void name(int b) throws MalformedJsonException {
+		if(b != '"')
+			throw syntaxError(b);
+		startString(true);
+	}
+
+	/**
+	 * Starts the value whose first byte is the specified one
+	 * @param next the context following the value
+	 */
+	private void value(int b, int next) throws MalformedJsonException {
+		if(b != '{' && b != '[' && b != '"' && b != 't' && b != 'f' && b != 'n' && b != '-' && b != '.' && (b < '0' || b > '9'))
+			throw syntaxError(b);
+		stack[depth] = next;
+		switch(b) {
+		case '{':
+			push(OBJECT_FIRST);
+			handler.startObject();
+			return;
+		case '[':
+			push(ARRAY_FIRST);
+			handler.startArray();
+			return;
+		case '"':
+			startString(false);
+			return;
+		case 't':
+			startLiteral("true");
+			return;
+		case 'f':
+			startLiteral("false");
+			return;
+		case 'n':
+			startLiteral("null");
+			return;
+		default:
+			text.setLength(0);
+			text.append((char) b);
+			token = NUMBER;
+		}
+	}
+
+	private void startString(boolean name) {
+		this.name = name;
+		text.setLength(0);
+		token = STRING;
+	}
+
+	private void startLiteral(String literal) {
+		this.literal = literal;
+		matched = 1;
+		token = LITERAL;
+	}
+
+	private void push(int context) {
+		if(++depth == stack.length) {
+			int[] grown = new int[stack.length * 2];
+			System.arraycopy(stack, 0, grown, 0, stack.length);
+			stack = grown;
+		}
+		stack[depth] = context;
+	}
+
+	private void endObject() {
+		depth--;
+		handler.endObject();
+	}
+
+	private void endArray() {
+		depth--;
+		handler.endArray();
+	}
+
+	/**
+	 * Consumes a byte of a string, decoding the UTF-8 sequences split between two chunks
+	 */
+	private void string(int b) {
+		if(missing > 0) {
+			if((b & 0xC0) == 0x80) {
+				code = (code << 6) | (b & 0x3F);
+				if(--missing == 0) {
+					if(code < minimum || (code >= Character.MIN_SURROGATE && code <= Character.MAX_SURROGATE)
+							|| code > Character.MAX_CODE_POINT)
+						text.append('\uFFFD');
+					else if(code >= 0x10000) {
+						text.append(Character.highSurrogate(code));
+						text.append(Character.lowSurrogate(code));
+					} else
+						text.append((char) code);
+				}
+				return;
+			}
+			// the sequence is truncated, the byte is read again as the start of a character
+			missing = 0;
+			text.append('\uFFFD');
+		}
+		if(b == '"') {
+			token = NONE;
+			if(name) {
+				stack[depth] = OBJECT_COLON;
+				handler.field(text);
+			} else
+				handler.stringValue(text);
+		} else if(b == '\\')
+			token = ESCAPE;
+		else if(b >= 0)
+			text.append((char) b);
+		else if((b & 0xE0) == 0xC0) {
+			missing = 1;
+			minimum = 0x80;
+			code = b & 0x1F;
+		} else if((b & 0xF0) == 0xE0) {
+			missing = 2;
+			minimum = 0x800;
+			code = b & 0x0F;
+		} else if((b & 0xF8) == 0xF0) {
+			missing = 3;
+			minimum = 0x10000;
+			code = b & 0x07;
+		} else
+			text.append('\uFFFD');
+	}
+
+	/**
+	 * Consumes the byte following a backslash
+	 */
+	private void escape(int b) throws MalformedJsonException {
+		token = STRING;
+		switch(b) {
+		case '"': text.append('"'); return;
+		case '\\': text.append('\\'); return;
+		case '/': text.append('/'); return;
+		case 'b': text.append('\b'); return;
+		case 'f': text.append('\f'); return;
+		case 'n': text.append('\n'); return;
+		case 'r': text.append('\r'); return;
+		case 't': text.append('\t'); return;
+		case 'u':
+			token = UNICODE;
+			code = 0;
+			missing = 4;
+			return;
+		default:
+			token = ESCAPE;
+			throw syntaxError(b);
+		}
+	}
+
+	/**
+	 * Notifies the number read so far, that is ended by the current byte
+	 */
+	private void number() throws MalformedJsonException {
+		token = NONE;
+		if(!JsonReader.isNumber(text))
+			throw new MalformedJsonException("malformed number \"" + text + "\"", position - text.length());
+		handler.numberValue(text);
+	}
+
+	/**
+	 * Builds the error for an unexpected byte, or for the end of the input if the byte is negative and the input is ended
+	 */
+	private MalformedJsonException syntaxError(int found) {
+		String description;
+		if(ended)
+			description = "end of input";
+		else if(found >= 0x20 && found < 0x7F)
+			description = "\"" + (char) found + "\"";
+		else
+			description = "byte 0x" + Integer.toHexString(found & 0xFF);
+		return new MalformedJsonException("expected " + expected() + " but found " + description, position);
+	}
+
+	/**
+	 * Describes what the parser expects in its current state
+	 */
+	private String expected() {
+		switch(token) {
+		case STRING: return "quote";
+		case ESCAPE: return "control character";
+		case UNICODE: return "hexadecimal character";
+		case LITERAL: return "\"" + literal.charAt(matched) + "\"";
+		case SLASH: return "comment";
+		case BLOCK_COMMENT: case BLOCK_COMMENT_STAR: return "end of comment";
+		}
+		switch(stack[depth]) {
+		case ROOT: return "json object or json array";
+		case ROOT_END: return "end of input";
+		case OBJECT_FIRST: return "quote or }";
+		case OBJECT_NAME: return "quote";
+		case OBJECT_COLON: return ":";
+		case OBJECT_NEXT: return ", or }";
+		case ARRAY_FIRST: return "value or ]";
+		case ARRAY_NEXT: return ", or ]";
+		default: return "value";
+		}
+	}
+}
@@ -0,0 +1,37 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+/**
+ * Defines the layouts of the JSON text written by a {@link JsonGenerator}.
+ * @author Salvatore Giampa'
+ *
+ */
+public enum JsonFormat {
+	/**
+	 * No white space is written
+	 */
+	COMPACT,
+
+	/**
+	 * Object fields are written one per line and indented by nesting level,
+	 * as the {@link jointyjson.model.EncodingVisitor} always did
+	 */
+	PRETTY
+}
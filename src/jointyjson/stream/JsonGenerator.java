@@ -0,0 +1,539 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+
+import jointyjson.model.EncodingVisitor;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonEscaper;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonString;
+
+/**
+ * Defines a streaming generator that writes JSON text directly to an output, through a fixed size buffer.
+ * Documents can be written event by event, without building the JSON composite structure,
+ * or element by element by {@link #write(JsonElement)}.<br>
+ * The generator is itself a {@link JsonHandler}, so a push parser can be piped into it to reformat a document.
+ * Since the handler methods cannot throw checked exceptions, I/O errors are thrown as {@link UncheckedIOException}.
+ * By default the non-ASCII characters are escaped, see {@link #setEscapeNonAscii(boolean)}.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonGenerator implements JsonHandler, Flushable, Closeable {
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Sink sink;
+	private final JsonFormat format;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int count;
+	// the number of characters passed to the sink
+	private long drained;
+
+	// for each open container, whether it is an object and whether it has no entries yet
+	private boolean[] objects = new boolean[32];
+	private boolean[] empty = new boolean[32];
+	private int depth;
+	private boolean afterName;
+	private boolean escapeNonAscii = true;
+
+	/**
+	 * Creates a generator that writes compact JSON text to a character output
+	 * @param out the output, e.g. a Writer or a StringBuilder
+	 */
+	public JsonGenerator(Appendable out) {
+		this(out, JsonFormat.COMPACT);
+	}
+
+	/**
+	 * Creates a generator that writes JSON text to a character output
+	 * @param out the output, e.g. a Writer or a StringBuilder
+	 * @param format the layout of the written text
+	 */
+	public JsonGenerator(Appendable out, JsonFormat format) {
+		this(new CharSink(out), format);
+	}
+
+	/**
+	 * Creates a generator that writes UTF-8 encoded JSON text to a byte stream
+	 * @param out the byte stream
+	 * @param format the layout of the written text
+	 */
+	public JsonGenerator(OutputStream out, JsonFormat format) {
+		this(new Utf8Sink(out, null), format);
+	}
+
+	/**
+	 * Creates a generator that writes UTF-8 encoded JSON text to a byte channel.
+	 * The channel must be in blocking mode, since each write waits until the whole buffer is written.
+	 * @param out the channel
+	 * @param format the layout of the written text
+	 * @throws IllegalArgumentException if the channel is a {@link SelectableChannel} in non-blocking mode
+	 */
+	public JsonGenerator(WritableByteChannel out, JsonFormat format) {
+		this(new Utf8Sink(null, out), format);
+	}
+
+	private JsonGenerator(Sink sink, JsonFormat format) {
+		if(format == null)
+			throw new NullPointerException("format cannot be null");
+		this.sink = sink;
+		this.format = format;
+	}
+
+	public JsonFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Sets whether the non-ASCII characters are escaped as {@code \}{@code uXXXX} sequences (the default),
+	 * or written as they are, that is in UTF-8 when writing to bytes. Writing them unescaped makes the
+	 * documents with many non-Latin characters much smaller.
+	 * @param escapeNonAscii true to escape the non-ASCII characters
+	 */
+	public void setEscapeNonAscii(boolean escapeNonAscii) {
+		this.escapeNonAscii = escapeNonAscii;
+	}
+
+	public boolean isEscapeNonAscii() {
+		return escapeNonAscii;
+	}
+
+	@Override
+	public void startObject() {
+		beforeValue();
+		write('{');
+		if(format == JsonFormat.PRETTY)
+			write('\n');
+		push(true);
+	}
+
+	@Override
+	public void field(CharSequence name) {
+		beforeName();
+		writeEscaped(name);
+		afterName();
+	}
+
+	/**
+	 * Writes a field name, using its cached escaped form
+	 * @param name the field name
+	 */
+	public void field(JsonString name) {
+		beforeName();
+		writeRun(name.toEncodedString(escapeNonAscii), 0);
+		afterName();
+	}
+
+	@Override
+	public void endObject() {
+		if(depth == 0 || !objects[depth] || afterName)
+			throw new IllegalStateException("an object end is not expected here");
+		if(format == JsonFormat.PRETTY) {
+			write('\n');
+			indent(depth - 1);
+		}
+		write('}');
+		depth--;
+	}
+
+	@Override
+	public void startArray() {
+		beforeValue();
+		write('[');
+		push(false);
+	}
+
+	@Override
+	public void endArray() {
+		if(depth == 0 || objects[depth])
+			throw new IllegalStateException("an array end is not expected here");
+		write(']');
+		depth--;
+	}
+
+	@Override
+	public void stringValue(CharSequence value) {
+		beforeValue();
+		write('"');
+		writeEscaped(value);
+		write('"');
+	}
+
+	/**
+	 * Writes a string value, using its cached escaped form.
+	 * A view is escaped while it is written, so that its value is not decoded.
+	 * @param value the string value
+	 */
+	public void stringValue(JsonString value) {
+		if(value.isView()) {
+			stringValue((CharSequence) value);
+			return;
+		}
+		beforeValue();
+		write('"');
+		writeRun(value.toEncodedString(escapeNonAscii), 0);
+		write('"');
+	}
+
+	@Override
+	public void numberValue(double value) {
+		beforeValue();
+		write(Double.toString(value));
+	}
+
+	public void numberValue(long value) {
+		beforeValue();
+		write(Long.toString(value));
+	}
+
+	/**
+	 * Writes a number by its text, as it is
+	 * @param text the text of a valid JSON number
+	 */
+	@Override
+	public void numberValue(CharSequence text) {
+		beforeValue();
+		writeRun(text, 0, text.length());
+	}
+
+	public void numberValue(JsonNumber value) {
+		beforeValue();
+		write(value.toString());
+	}
+
+	@Override
+	public void booleanValue(boolean value) {
+		beforeValue();
+		write(value ? "true" : "false");
+	}
+
+	@Override
+	public void nullValue() {
+		beforeValue();
+		write("null");
+	}
+
+	/**
+	 * Writes a JSON element as the next value
+	 * @param element the element to write
+	 */
+	public void write(JsonElement element) {
+		element.accept(new EncodingVisitor(this));
+	}
+
+	/**
+	 * Ends the line after a complete root value, so that the documents are written one per line
+	 */
+	void endLine() {
+		if(depth > 0 || afterName)
+			throw new IllegalStateException("the root value is not complete");
+		write('\n');
+	}
+
+	/**
+	 * Writes a root value already encoded by another generator, followed by the end of the line
+	 * @param text the encoded value
+	 */
+	void writeLine(CharSequence text) {
+		if(depth > 0 || afterName)
+			throw new IllegalStateException("the root value is not complete");
+		writeRun(text, 0, text.length());
+		write('\n');
+	}
+
+	/**
+	 * Gets the number of characters generated so far, including the ones still buffered
+	 * @return the number of generated characters
+	 */
+	public long getCharCount() {
+		return drained + count;
+	}
+
+	/**
+	 * Writes the buffered text to the output and flushes it
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		drain();
+		sink.flush();
+	}
+
+	/**
+	 * Writes the buffered text to the output and closes it
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		drain();
+		if(count > 0) {
+			// a high surrogate without its low surrogate
+			count = 0;
+			buffer[count++] = '?';
+			drain();
+		}
+		sink.close();
+	}
+
+	private void beforeName() {
+		if(depth == 0 || !objects[depth] || afterName)
+			throw new IllegalStateException("a field name is not expected here");
+		if(!empty[depth])
+			write(format == JsonFormat.PRETTY ? ",\n" : ",");
+		empty[depth] = false;
+		if(format == JsonFormat.PRETTY)
+			indent(depth);
+		write('"');
+	}
+
+	private void afterName() {
+		write(format == JsonFormat.PRETTY ? "\" : " : "\":");
+		afterName = true;
+	}
+
+	private void beforeValue() {
+		if(afterName) {
+			afterName = false;
+			return;
+		}
+		if(depth == 0)
+			return;
+		if(objects[depth])
+			throw new IllegalStateException("a field name is expected before the value");
+		if(!empty[depth])
+			write(format == JsonFormat.PRETTY ? ", " : ",");
+		empty[depth] = false;
+	}
+
+	private void push(boolean object) {
+		if(++depth == objects.length) {
+			boolean[] grownObjects = new boolean[depth * 2];
+			boolean[] grownEmpty = new boolean[depth * 2];
+			System.arraycopy(objects, 0, grownObjects, 0, depth);
+			System.arraycopy(empty, 0, grownEmpty, 0, depth);
+			objects = grownObjects;
+			empty = grownEmpty;
+		}
+		objects[depth] = object;
+		empty[depth] = true;
+	}
+
+	private void indent(int level) {
+		for(int i = 0; i < level; i++)
+			write("    ");
+	}
+
+	/**
+	 * Writes a string escaping its characters, copying in bulk the ranges that need no escaping
+	 */
+	private void writeEscaped(CharSequence value) {
+		int length = value.length();
+		int start = 0;
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if(JsonEscaper.isEscaped(c, escapeNonAscii)) {
+				writeRun(value, start, i);
+				if(count + 6 > buffer.length)
+					drainUnchecked();
+				count = JsonEscaper.escape(c, buffer, count);
+				start = i + 1;
+			}
+		}
+		writeRun(value, start, length);
+	}
+
+	private void write(char c) {
+		if(count == buffer.length)
+			drainUnchecked();
+		buffer[count++] = c;
+	}
+
+	private void write(String text) {
+		writeRun(text, 0, text.length());
+	}
+
+	private void writeRun(String text, int start) {
+		writeRun(text, start, text.length());
+	}
+
+	/**
+	 * Copies a range of characters as they are, draining the buffer when it is full
+	 */
+	private void writeRun(CharSequence text, int start, int end) {
+		while(start < end) {
+			if(count == buffer.length)
+				drainUnchecked();
+			int n = Math.min(end - start, buffer.length - count);
+			if(text instanceof String)
+				((String) text).getChars(start, start + n, buffer, count);
+			else
+				for(int i = 0; i < n; i++)
+					buffer[count + i] = text.charAt(start + i);
+			count += n;
+			start += n;
+		}
+	}
+
+	private void drainUnchecked() {
+		try {
+			drain();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Passes the buffered characters to the sink, keeping the ones it could not consume yet
+	 */
+	private void drain() throws IOException {
+		int written = sink.write(buffer, count);
+		drained += written;
+		System.arraycopy(buffer, written, buffer, 0, count - written);
+		count -= written;
+	}
+
+	/**
+	 * The destination of the generated text
+	 */
+	private interface Sink {
+		/**
+		 * Writes the specified characters
+		 * @return the number of characters written from the beginning of the array
+		 */
+		int write(char[] chars, int length) throws IOException;
+		void flush() throws IOException;
+		void close() throws IOException;
+	}
+
+	private static final class CharSink implements Sink {
+		private final Appendable out;
+
+		CharSink(Appendable out) {
+			if(out == null)
+				throw new NullPointerException("out cannot be null");
+			this.out = out;
+		}
+
+		@Override
+		public int write(char[] chars, int length) throws IOException {
+			if(out instanceof Writer)
+				((Writer) out).write(chars, 0, length);
+			else if(out instanceof StringBuilder)
+				((StringBuilder) out).append(chars, 0, length);
+			else
+				out.append(CharBuffer.wrap(chars, 0, length));
+			return length;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(out instanceof Flushable)
+				((Flushable) out).flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(out instanceof Closeable)
+				((Closeable) out).close();
+		}
+	}
+
+	/**
+	 * Encodes the characters in UTF-8 into a reused byte buffer
+	 */
+	private static final class Utf8Sink implements Sink {
+		private final OutputStream stream;
+		private final WritableByteChannel channel;
+		private final byte[] bytes = new byte[BUFFER_SIZE * 3];
+
+		Utf8Sink(OutputStream stream, WritableByteChannel channel) {
+			if(stream == null && channel == null)
+				throw new NullPointerException("out cannot be null");
+			if(channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking())
+				throw new IllegalArgumentException("the channel must be in blocking mode");
+			this.stream = stream;
+			this.channel = channel;
+		}
+
+		@Override
+		public int write(char[] chars, int length) throws IOException {
+			int n = 0, i = 0;
+			for(; i < length; i++) {
+				char c = chars[i];
+				if(c < 0x80)
+					bytes[n++] = (byte) c;
+				else if(c < 0x800) {
+					bytes[n++] = (byte) (0xC0 | (c >> 6));
+					bytes[n++] = (byte) (0x80 | (c & 0x3F));
+				} else if(Character.isSurrogate(c)) {
+					if(Character.isHighSurrogate(c) && i + 1 == length)
+						// the low surrogate is still to come
+						break;
+					if(Character.isHighSurrogate(c) && Character.isLowSurrogate(chars[i + 1])) {
+						int code = Character.toCodePoint(c, chars[++i]);
+						bytes[n++] = (byte) (0xF0 | (code >> 18));
+						bytes[n++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+						bytes[n++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+						bytes[n++] = (byte) (0x80 | (code & 0x3F));
+					} else
+						// unpaired surrogate
+						bytes[n++] = '?';
+				} else {
+					bytes[n++] = (byte) (0xE0 | (c >> 12));
+					bytes[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					bytes[n++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			if(stream != null)
+				stream.write(bytes, 0, n);
+			else {
+				ByteBuffer out = ByteBuffer.wrap(bytes, 0, n);
+				while(out.hasRemaining())
+					// a channel switched to non-blocking mode would make this loop spin
+					if(channel.write(out) == 0 && channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking())
+						throw new IOException("the channel is not in blocking mode");
+			}
+			return i;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(stream != null)
+				stream.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(stream != null)
+				stream.close();
+			else
+				channel.close();
+		}
+	}
+}
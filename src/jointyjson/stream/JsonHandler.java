@@ -0,0 +1,53 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import jointyjson.model.JsonNumber;
+
+/**
+ * Defines the handler interface notified by the push parsers while a JSON document is parsed,
+ * as a {@link jointyjson.model.JsonVisitor} is notified while a JSON structure is visited.
+ * No JSON element is built for the notified values.<br>
+ * The character sequences passed to the handler are reused by the parser:
+ * they are valid only during the call and must be copied (e.g. by toString()) to be retained.
+ * @author Salvatore Giampa'
+ *
+ */
+public interface JsonHandler {
+	void startObject();
+	void field(CharSequence name);
+	void endObject();
+	void startArray();
+	void endArray();
+	void stringValue(CharSequence value);
+	void numberValue(double value);
+	
+	/**
+	 * Notifies a number by its text, as it appears in the document.
+	 * The parsers call this method, that by default converts the text and calls {@link #numberValue(double)}:
+	 * handlers that need the exact value, or no value at all, override it to skip the conversion.
+	 * @param text the text of the number
+	 */
+	default void numberValue(CharSequence text) {
+		numberValue(JsonNumber.parse(text, 0, text.length()));
+	}
+	
+	void booleanValue(boolean value);
+	void nullValue();
+}
@@ -0,0 +1,56 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import jointyjson.stream.JsonLimits.Limit;
+
+/**
+ * Signals that a document exceeds one of the {@link JsonLimits} set for its parsing.
+ * The parsing is stopped as soon as the limit is exceeded, so the rest of the document is not read.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonLimitException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	private final Limit limit;
+	private final long maximum;
+
+	public JsonLimitException(Limit limit, long maximum) {
+		super("the " + limit.description + " exceeds the limit of " + maximum);
+		this.limit = limit;
+		this.maximum = maximum;
+	}
+
+	/**
+	 * Gets the exceeded limit
+	 * @return the kind of the exceeded limit
+	 */
+	public Limit getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Gets the value of the exceeded limit
+	 * @return the maximum allowed by the limits
+	 */
+	public long getMaximum() {
+		return maximum;
+	}
+}
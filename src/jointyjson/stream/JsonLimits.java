@@ -0,0 +1,342 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.util.Arrays;
+
+/**
+ * Defines the limits enforced while a document is parsed, that bound the time and the memory spent on a hostile
+ * or accidentally huge document: the length of the input, the nesting depth, the length of the strings and
+ * of the numbers, the number of values of each object or array and the total number of values.
+ * The parsing stops with a {@link JsonLimitException} as soon as a limit is exceeded.<br>
+ * The limits are immutable: each with method returns a copy with a different limit, e.g.
+ * {@code JsonLimits.UNLIMITED.withMaxInputLength(1 << 20).withMaxDepth(64)}.
+ * They are set on a {@link jointyjson.compiler.JsonCompiler} or on a {@link JsonFeedParser},
+ * and any handler can be checked by {@link #wrap(JsonHandler)}.
+ * @author Salvatore Giampa'
+ *
+ */
+public final class JsonLimits {
+	/**
+	 * The limits that can be exceeded by a document
+	 */
+	public enum Limit {
+		/**
+		 * The number of characters of the source, or of bytes for the UTF-8 encoded sources
+		 */
+		INPUT_LENGTH("input length"),
+
+		/**
+		 * The number of nested objects and arrays, the root being at depth 1
+		 */
+		DEPTH("nesting depth"),
+
+		/**
+		 * The number of characters of a decoded string value or field name
+		 */
+		STRING_LENGTH("string length"),
+
+		/**
+		 * The number of characters of the text of a number
+		 */
+		NUMBER_LENGTH("number length"),
+
+		/**
+		 * The number of fields of an object or of elements of an array
+		 */
+		CONTAINER_SIZE("container size"),
+
+		/**
+		 * The number of values of the whole document, containers included
+		 */
+		NODES("number of values");
+
+		final String description;
+
+		private Limit(String description) {
+			this.description = description;
+		}
+	}
+
+	/**
+	 * The limits that accept any document
+	 */
+	public static final JsonLimits UNLIMITED = new JsonLimits(Long.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+			Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	/**
+	 * The nesting depth of the {@link #DEFAULT} limits
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 512;
+
+	/**
+	 * The limits enforced by default by a {@link jointyjson.compiler.JsonCompiler}, that accept any document nested
+	 * up to {@value #DEFAULT_MAX_DEPTH} levels, so that a deeper document is rejected before it overflows
+	 * the stack of the recursive parsers
+	 */
+	public static final JsonLimits DEFAULT = UNLIMITED.withMaxDepth(DEFAULT_MAX_DEPTH);
+
+	private final long maxInputLength;
+	private final int maxDepth;
+	private final int maxStringLength;
+	private final int maxNumberLength;
+	private final int maxContainerSize;
+	private final long maxNodes;
+
+	private JsonLimits(long maxInputLength, int maxDepth, int maxStringLength, int maxNumberLength, int maxContainerSize, long maxNodes) {
+		this.maxInputLength = maxInputLength;
+		this.maxDepth = maxDepth;
+		this.maxStringLength = maxStringLength;
+		this.maxNumberLength = maxNumberLength;
+		this.maxContainerSize = maxContainerSize;
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * Limits the length of the input
+	 * @param length the maximum number of characters of the source, or of bytes for the UTF-8 encoded sources
+	 * @return the limits with the specified input length
+	 */
+	public JsonLimits withMaxInputLength(long length) {
+		check(length);
+		return new JsonLimits(length, maxDepth, maxStringLength, maxNumberLength, maxContainerSize, maxNodes);
+	}
+
+	/**
+	 * Limits the nesting depth
+	 * @param depth the maximum number of nested objects and arrays, the root being at depth 1
+	 * @return the limits with the specified depth
+	 */
+	public JsonLimits withMaxDepth(int depth) {
+		check(depth);
+		return new JsonLimits(maxInputLength, depth, maxStringLength, maxNumberLength, maxContainerSize, maxNodes);
+	}
+
+	/**
+	 * Limits the length of the strings
+	 * @param length the maximum number of characters of a decoded string value or field name
+	 * @return the limits with the specified string length
+	 */
+	public JsonLimits withMaxStringLength(int length) {
+		check(length);
+		return new JsonLimits(maxInputLength, maxDepth, length, maxNumberLength, maxContainerSize, maxNodes);
+	}
+
+	/**
+	 * Limits the length of the numbers
+	 * @param length the maximum number of characters of the text of a number
+	 * @return the limits with the specified number length
+	 */
+	public JsonLimits withMaxNumberLength(int length) {
+		check(length);
+		return new JsonLimits(maxInputLength, maxDepth, maxStringLength, length, maxContainerSize, maxNodes);
+	}
+
+	/**
+	 * Limits the size of the objects and of the arrays
+	 * @param size the maximum number of fields of an object or of elements of an array
+	 * @return the limits with the specified container size
+	 */
+	public JsonLimits withMaxContainerSize(int size) {
+		check(size);
+		return new JsonLimits(maxInputLength, maxDepth, maxStringLength, maxNumberLength, size, maxNodes);
+	}
+
+	/**
+	 * Limits the total number of values
+	 * @param nodes the maximum number of values of a document, containers included
+	 * @return the limits with the specified number of values
+	 */
+	public JsonLimits withMaxNodes(long nodes) {
+		check(nodes);
+		return new JsonLimits(maxInputLength, maxDepth, maxStringLength, maxNumberLength, maxContainerSize, nodes);
+	}
+
+	public long getMaxInputLength() {
+		return maxInputLength;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxStringLength() {
+		return maxStringLength;
+	}
+
+	public int getMaxNumberLength() {
+		return maxNumberLength;
+	}
+
+	public int getMaxContainerSize() {
+		return maxContainerSize;
+	}
+
+	public long getMaxNodes() {
+		return maxNodes;
+	}
+
+	/**
+	 * Tells whether these limits bound the values of the documents, besides the input length
+	 * @return false if only the input length is limited, so the handlers are not wrapped
+	 */
+	public boolean isValueLimited() {
+		return maxDepth != Integer.MAX_VALUE || maxStringLength != Integer.MAX_VALUE || maxNumberLength != Integer.MAX_VALUE
+				|| maxContainerSize != Integer.MAX_VALUE || maxNodes != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks the length of an input before it is parsed
+	 * @param length the number of characters of the source, or of bytes for the UTF-8 encoded sources
+	 * @throws JsonLimitException if the input is too long
+	 */
+	public void checkInputLength(long length) {
+		if(length > maxInputLength)
+			throw new JsonLimitException(Limit.INPUT_LENGTH, maxInputLength);
+	}
+
+	/**
+	 * Wraps a handler so that the values notified to it are checked against these limits,
+	 * stopping the parser that notifies them as soon as a limit is exceeded.
+	 * A wrapping handler checks one document, then it must not be reused.
+	 * @param handler the handler to check
+	 * @return the wrapping handler, or the handler itself if the values are not limited
+	 */
+	public JsonHandler wrap(JsonHandler handler) {
+		if(handler == null)
+			throw new NullPointerException("handler cannot be null");
+		return isValueLimited() ? new LimitedHandler(handler, this) : handler;
+	}
+
+	private static void check(long limit) {
+		if(limit < 1)
+			throw new IllegalArgumentException("a limit must be positive");
+	}
+
+	@Override
+	public String toString() {
+		return "JsonLimits [maxInputLength=" + maxInputLength + ", maxDepth=" + maxDepth + ", maxStringLength=" + maxStringLength
+				+ ", maxNumberLength=" + maxNumberLength + ", maxContainerSize=" + maxContainerSize + ", maxNodes=" + maxNodes + "]";
+	}
+
+	/**
+	 * The handler checking the notified values before passing them to the wrapped one
+	 */
+	private static final class LimitedHandler implements JsonHandler {
+		private final JsonHandler handler;
+		private final JsonLimits limits;
+
+		// the number of values of each open container, the element at depth is the innermost one
+		private int[] sizes = new int[32];
+		private int depth;
+		private long nodes;
+
+		LimitedHandler(JsonHandler handler, JsonLimits limits) {
+			this.handler = handler;
+			this.limits = limits;
+		}
+
+		@Override
+		public void startObject() {
+			open();
+			handler.startObject();
+		}
+
+		@Override
+		public void field(CharSequence name) {
+			string(name);
+			handler.field(name);
+		}
+
+		@Override
+		public void endObject() {
+			depth--;
+			handler.endObject();
+		}
+
+		@Override
+		public void startArray() {
+			open();
+			handler.startArray();
+		}
+
+		@Override
+		public void endArray() {
+			depth--;
+			handler.endArray();
+		}
+
+		@Override
+		public void stringValue(CharSequence value) {
+			string(value);
+			value();
+			handler.stringValue(value);
+		}
+
+		@Override
+		public void numberValue(double value) {
+			value();
+			handler.numberValue(value);
+		}
+
+		@Override
+		public void numberValue(CharSequence text) {
+			if(text.length() > limits.maxNumberLength)
+				throw new JsonLimitException(Limit.NUMBER_LENGTH, limits.maxNumberLength);
+			value();
+			handler.numberValue(text);
+		}
+
+		@Override
+		public void booleanValue(boolean value) {
+			value();
+			handler.booleanValue(value);
+		}
+
+		@Override
+		public void nullValue() {
+			value();
+			handler.nullValue();
+		}
+
+		private void string(CharSequence value) {
+			if(value.length() > limits.maxStringLength)
+				throw new JsonLimitException(Limit.STRING_LENGTH, limits.maxStringLength);
+		}
+
+		/**
+		 * Counts a value in the document and in its container
+		 */
+		private void value() {
+			if(++nodes > limits.maxNodes)
+				throw new JsonLimitException(Limit.NODES, limits.maxNodes);
+			if(depth > 0 && ++sizes[depth] > limits.maxContainerSize)
+				throw new JsonLimitException(Limit.CONTAINER_SIZE, limits.maxContainerSize);
+		}
+
+		private void open() {
+			value();
+			if(depth == limits.maxDepth)
+				throw new JsonLimitException(Limit.DEPTH, limits.maxDepth);
+			if(++depth == sizes.length)
+				sizes = Arrays.copyOf(sizes, depth * 2);
+			sizes[depth] = 0;
+		}
+	}
+}
@@ -0,0 +1,612 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonBoolean;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNull;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+
+/**
+ * Defines a pull parser that reads a JSON document incrementally, one token at a time.
+ * Only a fixed size buffer of the source is kept in memory, so documents of any size can be read.
+ * Subtrees can be skipped without being decoded, or materialized into the JSON composite structure
+ * only when needed.<br>
+ * The reader accepts the same language of the {@link jointyjson.compiler.JsonCompiler}, and it can enforce
+ * some {@link JsonLimits} while the document is read.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonReader implements Closeable {
+	private static final int BUFFER_SIZE = 8192;
+
+	// parsing contexts
+	private static final int ROOT = 0;
+	private static final int ROOT_END = 1;
+	private static final int DONE = 2;
+	private static final int OBJECT_FIRST = 3;
+	private static final int OBJECT_COLON = 4;
+	private static final int OBJECT_NEXT = 5;
+	private static final int ARRAY_FIRST = 6;
+	private static final int ARRAY_NEXT = 7;
+
+	private final Reader reader;
+	private final JsonLimits limits;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	// characters read before the current buffer content
+	private long offset;
+
+	// stack of the parsing contexts, the element at depth is the current one
+	private int[] stack = new int[32];
+	private int depth;
+	// the number of values of each open container, at the depth of its context, and of the whole document
+	private int[] sizes = new int[32];
+	private long nodes;
+
+	private JsonToken token;
+	private final StringBuilder text = new StringBuilder();
+	private boolean booleanValue;
+	private boolean skipping;
+
+	/**
+	 * Creates a JSON reader over a character stream
+	 * @param reader the character stream to read
+	 */
+	public JsonReader(Reader reader) {
+		this(reader, JsonLimits.UNLIMITED);
+	}
+
+	/**
+	 * Creates a JSON reader over a character stream, that stops with a {@link JsonLimitException}
+	 * as soon as the document exceeds the specified limits. The input length is the number of characters read,
+	 * and the limits are checked also on the subtrees that are skipped.
+	 * @param reader the character stream to read
+	 * @param limits the limits of the document
+	 */
+	public JsonReader(Reader reader, JsonLimits limits) {
+		if(reader == null)
+			throw new NullPointerException("reader cannot be null");
+		if(limits == null)
+			throw new NullPointerException("limits cannot be null");
+		this.reader = reader;
+		this.limits = limits;
+	}
+
+	/**
+	 * Creates a JSON reader over an UTF-8 encoded byte stream
+	 * @param input the byte stream to read
+	 */
+	public JsonReader(InputStream input) {
+		this(input, JsonLimits.UNLIMITED);
+	}
+
+	/**
+	 * Creates a JSON reader over an UTF-8 encoded byte stream, that enforces the specified limits
+	 * @param input the byte stream to read
+	 * @param limits the limits of the document, whose input length is the number of decoded characters
+	 * @see #JsonReader(Reader, JsonLimits)
+	 */
+	public JsonReader(InputStream input, JsonLimits limits) {
+		this(new InputStreamReader(input, StandardCharsets.UTF_8), limits);
+	}
+
+	/**
+	 * Creates a JSON reader over an UTF-8 encoded byte channel
+	 * @param channel the channel to read
+	 */
+	public JsonReader(ReadableByteChannel channel) {
+		this(channel, JsonLimits.UNLIMITED);
+	}
+
+	/**
+	 * Creates a JSON reader over an UTF-8 encoded byte channel, that enforces the specified limits
+	 * @param channel the channel to read
+	 * @param limits the limits of the document, whose input length is the number of decoded characters
+	 * @see #JsonReader(Reader, JsonLimits)
+	 */
+	public JsonReader(ReadableByteChannel channel, JsonLimits limits) {
+		this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), limits);
+	}
+
+	/**
+	 * Reads the next token of the document
+	 * @return the next token, {@link JsonToken#END_DOCUMENT} when the whole document has been read
+	 * @throws MalformedJsonException if the document contains some syntactic error
+	 * @throws IOException if an I/O error occurs reading from the source
+	 */
+	public JsonToken next() throws IOException {
+		int c;
+		switch(stack[depth]) {
+		case ROOT:
+			c = nextNonBlank();
+			if(c != '{' && c != '[')
+				throw syntaxError("json object or json array", c);
+			stack[depth] = ROOT_END;
+			return token = value(c);
+		case ROOT_END:
+			c = nextNonBlank();
+			if(c != -1)
+				throw syntaxError("end of input", c);
+			stack[depth] = DONE;
+			return token = JsonToken.END_DOCUMENT;
+		case OBJECT_FIRST:
+			c = nextNonBlank();
+			if(c == '}') {
+				depth--;
+				return token = JsonToken.END_OBJECT;
+			}
+			return token = name(c);
+		case OBJECT_COLON:
+			c = nextNonBlank();
+			if(c != ':')
+				throw syntaxError(":", c);
+			stack[depth] = OBJECT_NEXT;
+			return token = value(nextNonBlank());
+		case OBJECT_NEXT:
+			c = nextNonBlank();
+			if(c == '}') {
+				depth--;
+				return token = JsonToken.END_OBJECT;
+			}
+			if(c != ',')
+				throw syntaxError(", or }", c);
+			return token = name(nextNonBlank());
+		case ARRAY_FIRST:
+			c = nextNonBlank();
+			if(c == ']') {
+				depth--;
+				return token = JsonToken.END_ARRAY;
+			}
+			stack[depth] = ARRAY_NEXT;
+			return token = value(c);
+		case ARRAY_NEXT:
+			c = nextNonBlank();
+			if(c == ']') {
+				depth--;
+				return token = JsonToken.END_ARRAY;
+			}
+			if(c != ',')
+				throw syntaxError(", or ]", c);
+			return token = value(nextNonBlank());
+		default:
+			return token = JsonToken.END_DOCUMENT;
+		}
+	}
+
+	public JsonLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Gets the current token, that is the last one returned by {@link #next()}
+	 * @return the current token, or null if the reading is not started
+	 */
+	public JsonToken getToken() {
+		return token;
+	}
+
+	/**
+	 * Gets the current nesting level, that is the number of the objects and arrays that contain the current position
+	 * @return the current nesting level
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Gets the name of the current field
+	 * @return the name of the field, if the current token is {@link JsonToken#FIELD_NAME}
+	 */
+	public String getFieldName() {
+		check(JsonToken.FIELD_NAME);
+		return text.toString();
+	}
+
+	/**
+	 * Gets the current string value
+	 * @return the decoded string, if the current token is {@link JsonToken#STRING}
+	 */
+	public String getString() {
+		check(JsonToken.STRING);
+		return text.toString();
+	}
+
+	/**
+	 * Gets the current number value
+	 * @return the number, if the current token is {@link JsonToken#NUMBER}
+	 */
+	public double getNumber() {
+		check(JsonToken.NUMBER);
+		return JsonNumber.parse(text, 0, text.length());
+	}
+
+	/**
+	 * Gets the current boolean value
+	 * @return the boolean, if the current token is {@link JsonToken#BOOLEAN}
+	 */
+	public boolean getBoolean() {
+		check(JsonToken.BOOLEAN);
+		return booleanValue;
+	}
+
+	/**
+	 * Gets the text of the current field name, string or number token, without copying it.
+	 * The returned sequence is valid until the next call to {@link #next()}.
+	 * @return the text of the current token
+	 */
+	public CharSequence getText() {
+		if(token != JsonToken.FIELD_NAME && token != JsonToken.STRING && token != JsonToken.NUMBER)
+			throw new IllegalStateException("the current token has no text: " + token);
+		return text;
+	}
+
+	/**
+	 * Skips the whole object or array started by the current token, without decoding its content.
+	 * After the call, the current token is the corresponding {@link JsonToken#END_OBJECT} or {@link JsonToken#END_ARRAY}.
+	 * If the current token does not start an object or an array, this method does nothing.
+	 * @throws IOException if an I/O error occurs or the skipped content is malformed
+	 */
+	public void skipChildren() throws IOException {
+		if(token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY)
+			return;
+		int target = depth - 1;
+		skipping = true;
+		try {
+			while(depth > target)
+				next();
+		} finally {
+			skipping = false;
+		}
+	}
+
+	/**
+	 * Materializes the value started by the current token into the JSON composite structure.
+	 * If the current token starts an object or an array, the whole subtree is read and
+	 * the current token becomes the corresponding {@link JsonToken#END_OBJECT} or {@link JsonToken#END_ARRAY}.
+	 * @return the JSON element corresponding to the current value
+	 * @throws IOException if an I/O error occurs or the subtree is malformed
+	 */
+	public JsonElement readElement() throws IOException {
+		if(token == null)
+			throw new IllegalStateException("the reading is not started");
+		switch(token) {
+		case START_OBJECT:
+			JsonObject object = new JsonObject();
+			while(next() != JsonToken.END_OBJECT) {
+				JsonString name = JsonString.get(text.toString());
+				next();
+				object.put(name, readElement());
+			}
+			return object;
+		case START_ARRAY:
+			JsonArray array = new JsonArray();
+			while(next() != JsonToken.END_ARRAY)
+				array.add(readElement());
+			return array;
+		case STRING:
+			return JsonString.get(text.toString());
+		case NUMBER:
+			return new JsonNumber(getNumber());
+		case BOOLEAN:
+			return JsonBoolean.getInstance(booleanValue);
+		case NULL:
+			return JsonNull.getInstance();
+		default:
+			throw new IllegalStateException("the current token is not a value: " + token);
+		}
+	}
+
+	/**
+	 * Pushes the value started by the current token to the specified handler, without building any JSON element.
+	 * If the current token starts an object or an array, the whole subtree is read and
+	 * the current token becomes the corresponding {@link JsonToken#END_OBJECT} or {@link JsonToken#END_ARRAY}.
+	 * @param handler the handler to notify
+	 * @throws IOException if an I/O error occurs or the subtree is malformed
+	 */
+	public void push(JsonHandler handler) throws IOException {
+		if(token == null)
+			throw new IllegalStateException("the reading is not started");
+		int base = depth;
+		if(token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+			base--;
+		while(true) {
+			switch(token) {
+			case START_OBJECT: handler.startObject(); break;
+			case END_OBJECT: handler.endObject(); break;
+			case START_ARRAY: handler.startArray(); break;
+			case END_ARRAY: handler.endArray(); break;
+			case FIELD_NAME: handler.field(text); break;
+			case STRING: handler.stringValue(text); break;
+			case NUMBER: handler.numberValue(text); break;
+			case BOOLEAN: handler.booleanValue(booleanValue); break;
+			case NULL: handler.nullValue(); break;
+			default:
+				throw new IllegalStateException("the current token is not a value: " + token);
+			}
+			if(depth <= base)
+				return;
+			next();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void check(JsonToken expected) {
+		if(token != expected)
+			throw new IllegalStateException("the current token is " + token + ", not " + expected);
+	}
+
+	private JsonToken name(int c) throws IOException {
+		if(c != '"')
+			throw syntaxError("quote", c);
+		readString();
+		stack[depth] = OBJECT_COLON;
+		return JsonToken.FIELD_NAME;
+	}
+
+	/**
+	 * Starts reading the value whose first character has already been consumed
+	 */
+	private JsonToken value(int c) throws IOException {
+		count();
+		switch(c) {
+		case '{':
+			push(OBJECT_FIRST);
+			return JsonToken.START_OBJECT;
+		case '[':
+			push(ARRAY_FIRST);
+			return JsonToken.START_ARRAY;
+		case '"':
+			readString();
+			return JsonToken.STRING;
+		case 't':
+			readLiteral("rue");
+			booleanValue = true;
+			return JsonToken.BOOLEAN;
+		case 'f':
+			readLiteral("alse");
+			booleanValue = false;
+			return JsonToken.BOOLEAN;
+		case 'n':
+			readLiteral("ull");
+			return JsonToken.NULL;
+		default:
+			if(c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+				readNumber((char) c);
+				return JsonToken.NUMBER;
+			}
+			throw syntaxError("value", c);
+		}
+	}
+
+	private void push(int context) {
+		if(depth == limits.getMaxDepth())
+			throw new JsonLimitException(JsonLimits.Limit.DEPTH, limits.getMaxDepth());
+		if(++depth == stack.length) {
+			int[] grown = new int[stack.length * 2];
+			System.arraycopy(stack, 0, grown, 0, stack.length);
+			stack = grown;
+			grown = new int[sizes.length * 2];
+			System.arraycopy(sizes, 0, grown, 0, sizes.length);
+			sizes = grown;
+		}
+		stack[depth] = context;
+		sizes[depth] = 0;
+	}
+
+	/**
+	 * Counts a value in the document and in its container
+	 */
+	private void count() {
+		if(++nodes > limits.getMaxNodes())
+			throw new JsonLimitException(JsonLimits.Limit.NODES, limits.getMaxNodes());
+		if(depth > 0 && ++sizes[depth] > limits.getMaxContainerSize())
+			throw new JsonLimitException(JsonLimits.Limit.CONTAINER_SIZE, limits.getMaxContainerSize());
+	}
+
+	/**
+	 * Reads a string whose opening quote has already been consumed
+	 */
+	private void readString() throws IOException {
+		text.setLength(0);
+		// the length of the decoded string, that is not kept while skipping
+		long length = 0;
+		while(true) {
+			int start = position;
+			while(position < limit) {
+				char c = buffer[position];
+				if(c == '"' || c == '\\')
+					break;
+				position++;
+			}
+			if(!skipping)
+				text.append(buffer, start, position - start);
+			length += position - start;
+			if(length > limits.getMaxStringLength())
+				throw new JsonLimitException(JsonLimits.Limit.STRING_LENGTH, limits.getMaxStringLength());
+			if(position == limit) {
+				if(!fill())
+					throw syntaxError("quote", -1);
+				continue;
+			}
+			if(buffer[position++] == '"')
+				return;
+			char decoded = readControl();
+			if(!skipping)
+				text.append(decoded);
+			length++;
+		}
+	}
+
+	private char readControl() throws IOException {
+		int c = read();
+		switch(c) {
+		case '"': return '"';
+		case '\\': return '\\';
+		case '/': return '/';
+		case 'b': return '\b';
+		case 'f': return '\f';
+		case 'n': return '\n';
+		case 'r': return '\r';
+		case 't': return '\t';
+		case 'u':
+			int code = 0;
+			for(int i = 0; i < 4; i++) {
+				int h = read();
+				int digit = h < 0 ? -1 : Character.digit((char) h, 16);
+				if(digit < 0)
+					throw syntaxError("hexadecimal character", h);
+				code = (code << 4) | digit;
+			}
+			return (char) code;
+		default:
+			throw syntaxError("control character", c);
+		}
+	}
+
+	private void readNumber(char first) throws IOException {
+		text.setLength(0);
+		text.append(first);
+		while(true) {
+			int c = peek();
+			if((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+				if(text.length() == limits.getMaxNumberLength())
+					throw new JsonLimitException(JsonLimits.Limit.NUMBER_LENGTH, limits.getMaxNumberLength());
+				text.append((char) c);
+				position++;
+			} else
+				break;
+		}
+		if(!isNumber(text))
+			throw new MalformedJsonException("malformed number \"" + text + "\"", offset + position - text.length());
+	}
+
+	/**
+	 * Checks the number syntax accepted by the JSON compiler
+	 */
+	static boolean isNumber(CharSequence number) {
+		int i = 0, length = number.length();
+		if(i < length && number.charAt(i) == '-')
+			i++;
+		int digits = 0;
+		while(i < length && Character.isDigit(number.charAt(i))) { i++; digits++; }
+		if(i < length && number.charAt(i) == '.') {
+			i++;
+			while(i < length && Character.isDigit(number.charAt(i))) { i++; digits++; }
+		}
+		if(digits == 0)
+			return false;
+		if(i < length && (number.charAt(i) == 'e' || number.charAt(i) == 'E')) {
+			i++;
+			if(i < length && (number.charAt(i) == '+' || number.charAt(i) == '-'))
+				i++;
+			int exponent = i;
+			while(i < length && Character.isDigit(number.charAt(i))) i++;
+			if(i == exponent)
+				return false;
+		}
+		return i == length;
+	}
+
+	private void readLiteral(String rest) throws IOException {
+		for(int i = 0; i < rest.length(); i++) {
+			int c = read();
+			if(c != rest.charAt(i))
+				throw syntaxError("\"" + rest.charAt(i) + "\"", c);
+		}
+	}
+
+	/**
+	 * Reads the next character that is not a white space or part of a comment
+	 */
+	private int nextNonBlank() throws IOException {
+		while(true) {
+			int c = read();
+			switch(c) {
+			case ' ': case '\n': case '\r': case '\t': case '\f': case '\u000B':
+				continue;
+			case '/':
+				int next = read();
+				if(next == '*') {
+					int previous = 0;
+					while((c = read()) != '/' || previous != '*') {
+						if(c < 0)
+							throw syntaxError("end of comment", c);
+						previous = c;
+					}
+				} else if(next == '/') {
+					while((c = read()) != '\n' && c >= 0);
+				} else
+					throw syntaxError("comment", next);
+				continue;
+			default:
+				return c;
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		if(position == limit && !fill())
+			return -1;
+		return buffer[position++];
+	}
+
+	private int peek() throws IOException {
+		if(position == limit && !fill())
+			return -1;
+		return buffer[position];
+	}
+
+	private boolean fill() throws IOException {
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int read;
+		do {
+			read = reader.read(buffer, 0, buffer.length);
+		} while(read == 0);
+		if(read < 0)
+			return false;
+		limits.checkInputLength(offset + read);
+		limit = read;
+		return true;
+	}
+
+	private MalformedJsonException syntaxError(String expected, int found) {
+		String description = found < 0 ? "end of input" : "\"" + (char) found + "\"";
+		return new MalformedJsonException("expected " + expected + " but found " + description, offset + position - (found < 0 ? 0 : 1));
+	}
+}
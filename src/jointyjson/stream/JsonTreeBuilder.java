@@ -0,0 +1,225 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import jointyjson.model.JsonArray;
+import jointyjson.model.JsonBoolean;
+import jointyjson.model.JsonElement;
+import jointyjson.model.JsonNull;
+import jointyjson.model.JsonNumber;
+import jointyjson.model.JsonObject;
+import jointyjson.model.JsonString;
+import jointyjson.model.JsonStringPool;
+import jointyjson.model.NumberMode;
+import jointyjson.model.ObjectStorage;
+
+/**
+ * Defines a handler that builds the JSON composite structure from the notified events.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonTreeBuilder implements JsonHandler {
+	// open containers and the pending field names of the open objects
+	private JsonElement[] containers = new JsonElement[32];
+	private JsonString[] names = new JsonString[32];
+	private int depth;
+
+	private JsonElement root;
+	private final JsonStringPool pool;
+	private final ObjectStorage storage;
+	private final NumberMode numberMode;
+
+	/**
+	 * Creates a builder that interns the strings in the global pool
+	 */
+	public JsonTreeBuilder() {
+		this(JsonStringPool.global());
+	}
+
+	/**
+	 * Creates a builder that interns the strings in the specified pool
+	 * @param pool the pool used to intern names and string values
+	 */
+	public JsonTreeBuilder(JsonStringPool pool) {
+		this(pool, ObjectStorage.SORTED);
+	}
+
+	/**
+	 * Creates a builder that interns the strings in the specified pool and stores the object fields in the specified data structure
+	 * @param pool the pool used to intern names and string values
+	 * @param storage the data structure of the fields of the built objects
+	 */
+	public JsonTreeBuilder(JsonStringPool pool, ObjectStorage storage) {
+		this(pool, storage, NumberMode.DOUBLE);
+	}
+
+	/**
+	 * Creates a builder that interns the strings in the specified pool, stores the object fields
+	 * in the specified data structure and holds the numbers as specified by the number mode
+	 * @param pool the pool used to intern names and string values
+	 * @param storage the data structure of the fields of the built objects
+	 * @param numberMode the representation of the built numbers
+	 */
+	public JsonTreeBuilder(JsonStringPool pool, ObjectStorage storage, NumberMode numberMode) {
+		if(pool == null)
+			throw new NullPointerException("pool cannot be null");
+		if(storage == null)
+			throw new NullPointerException("storage cannot be null");
+		if(numberMode == null)
+			throw new NullPointerException("number mode cannot be null");
+		this.pool = pool;
+		this.storage = storage;
+		this.numberMode = numberMode;
+	}
+
+	/**
+	 * Gets the root of the built structure
+	 * @return the root JSON element, or null if no complete value has been notified yet
+	 */
+	public JsonElement getRoot() {
+		return root;
+	}
+
+	/**
+	 * Gets the pool where this builder interns the names and the string values
+	 * @return the string pool
+	 */
+	public JsonStringPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Clears the built structure, so that this builder can be reused for another document
+	 */
+	public void reset() {
+		while(depth > 0) {
+			containers[depth] = null;
+			names[depth--] = null;
+		}
+		root = null;
+	}
+
+	@Override
+	public void startObject() {
+		push(new JsonObject(storage));
+	}
+
+	@Override
+	public void field(CharSequence name) {
+		names[depth] = pool.intern(name);
+	}
+
+	@Override
+	public void endObject() {
+		value(pop());
+	}
+
+	@Override
+	public void startArray() {
+		push(new JsonArray());
+	}
+
+	@Override
+	public void endArray() {
+		value(pop());
+	}
+
+	/**
+	 * Adds a string value, interning it in the pool of this builder.
+	 * The views, notified by the parsers compiling in the {@code VIEW} string scope, are added as they are.
+	 * @see JsonString#isView()
+	 */
+	@Override
+	public void stringValue(CharSequence value) {
+		if(value instanceof JsonString && ((JsonString) value).isView())
+			value((JsonString) value);
+		else
+			value(pool.intern(value));
+	}
+
+	@Override
+	public void numberValue(double value) {
+		if(depth > 0 && containers[depth] instanceof JsonArray)
+			((JsonArray) containers[depth]).add(value);
+		else
+			value(new JsonNumber(value));
+	}
+
+	/**
+	 * Builds a number as specified by the number mode of this builder.
+	 * The doubles and the longs are added to the arrays as primitives, so that the numeric arrays are packed.
+	 */
+	@Override
+	public void numberValue(CharSequence text) {
+		if(numberMode == NumberMode.DOUBLE) {
+			numberValue(JsonNumber.parse(text, 0, text.length()));
+			return;
+		}
+		JsonNumber number = JsonNumber.valueOf(text, numberMode);
+		if(number.isLong() && depth > 0 && containers[depth] instanceof JsonArray)
+			((JsonArray) containers[depth]).add(number.getLong());
+		else
+			value(number);
+	}
+
+	@Override
+	public void booleanValue(boolean value) {
+		value(JsonBoolean.getInstance(value));
+	}
+
+	@Override
+	public void nullValue() {
+		value(JsonNull.getInstance());
+	}
+
+	/**
+	 * Adds a complete value to the currently open container
+	 * @param value the value to add
+	 */
+	protected void value(JsonElement value) {
+		if(depth == 0) {
+			root = value;
+			return;
+		}
+		JsonElement container = containers[depth];
+		if(container instanceof JsonObject)
+			((JsonObject) container).put(names[depth], value);
+		else
+			((JsonArray) container).add(value);
+	}
+
+	private void push(JsonElement container) {
+		if(++depth == containers.length) {
+			JsonElement[] grownContainers = new JsonElement[depth * 2];
+			JsonString[] grownNames = new JsonString[depth * 2];
+			System.arraycopy(containers, 0, grownContainers, 0, depth);
+			System.arraycopy(names, 0, grownNames, 0, depth);
+			containers = grownContainers;
+			names = grownNames;
+		}
+		containers[depth] = container;
+	}
+
+	private JsonElement pop() {
+		JsonElement container = containers[depth];
+		containers[depth] = null;
+		names[depth--] = null;
+		return container;
+	}
+}
@@ -0,0 +1,40 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.io.IOException;
+
+/**
+ * Signals a syntactic error found while reading a JSON stream.
+ * @author Salvatore Giampa'
+ *
+ */
+public class MalformedJsonException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The position of the unexpected character, counted from the beginning of the stream
+	 */
+	public final long position;
+
+	public MalformedJsonException(String message, long position) {
+		super(message + " at position " + position);
+		this.position = position;
+	}
+}
@@ -0,0 +1,130 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.stream.Stream;
+
+import jointyjson.model.JsonElement;
+
+/**
+ * Defines a writer of newline-delimited JSON (JSON Lines), that writes each element as a compact document
+ * followed by a line feed. The elements are encoded by a {@link JsonGenerator}, so the output is buffered
+ * and I/O errors are thrown as {@link UncheckedIOException}.
+ * @author Salvatore Giampa'
+ *
+ */
+public class NdjsonWriter implements Flushable, Closeable {
+	private final JsonGenerator generator;
+
+	/**
+	 * Creates a writer of JSON lines to a character output
+	 * @param out the output, e.g. a Writer or a StringBuilder
+	 */
+	public NdjsonWriter(Appendable out) {
+		this.generator = new JsonGenerator(out, JsonFormat.COMPACT);
+	}
+
+	/**
+	 * Creates a writer of UTF-8 encoded JSON lines to a byte stream
+	 * @param out the byte stream
+	 */
+	public NdjsonWriter(OutputStream out) {
+		this.generator = new JsonGenerator(out, JsonFormat.COMPACT);
+	}
+
+	/**
+	 * Creates a writer of UTF-8 encoded JSON lines to a byte channel
+	 * @param out the channel
+	 */
+	public NdjsonWriter(WritableByteChannel out) {
+		this.generator = new JsonGenerator(out, JsonFormat.COMPACT);
+	}
+
+	/**
+	 * Sets whether the non-ASCII characters are escaped, see {@link JsonGenerator#setEscapeNonAscii(boolean)}
+	 * @param escapeNonAscii true to escape the non-ASCII characters
+	 */
+	public void setEscapeNonAscii(boolean escapeNonAscii) {
+		generator.setEscapeNonAscii(escapeNonAscii);
+	}
+
+	public boolean isEscapeNonAscii() {
+		return generator.isEscapeNonAscii();
+	}
+
+	/**
+	 * Writes an element in a line
+	 * @param element the element to write
+	 */
+	public void write(JsonElement element) {
+		generator.write(element);
+		generator.endLine();
+	}
+
+	/**
+	 * Writes all the elements of a stream, one per line, in the encounter order of the stream.
+	 * The elements of a parallel stream are encoded concurrently, then written in order.
+	 * @param elements the elements to write
+	 */
+	public void writeAll(Stream<? extends JsonElement> elements) {
+		if(!elements.isParallel()) {
+			elements.forEachOrdered(this::write);
+			return;
+		}
+		boolean escapeNonAscii = generator.isEscapeNonAscii();
+		elements.map(element -> encode(element, escapeNonAscii)).forEachOrdered(generator::writeLine);
+	}
+
+	private static CharSequence encode(JsonElement element, boolean escapeNonAscii) {
+		StringBuilder sb = new StringBuilder();
+		JsonGenerator encoder = new JsonGenerator(sb, JsonFormat.COMPACT);
+		encoder.setEscapeNonAscii(escapeNonAscii);
+		encoder.write(element);
+		try {
+			encoder.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb;
+	}
+
+	/**
+	 * Writes the buffered lines to the output and flushes it
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void flush() throws IOException {
+		generator.flush();
+	}
+
+	/**
+	 * Writes the buffered lines to the output and closes it
+	 * @throws IOException if an I/O error occurs
+	 */
+	@Override
+	public void close() throws IOException {
+		generator.close();
+	}
+}
@@ -0,0 +1,122 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import jointyjson.stream.JsonLimitException;
+import jointyjson.stream.JsonLimits;
+import jointyjson.stream.JsonLimits.Limit;
+import jointyjson.stream.JsonTreeBuilder;
+
+/**
+ * Tests that the deeply nested documents are rejected by the default limits of the compiler,
+ * whatever the engine and the source, instead of overflowing the stack of the recursive parsers.
+ * @author Salvatore Giampa'
+ *
+ */
+public class DepthLimitTest {
+	private static final int DEEP = 100000;
+
+	@Test
+	public void rejectsDeepInputByDefault() throws Exception {
+		JsonCompiler compiler = new JsonCompiler();
+		assertEquals(JsonLimits.DEFAULT, compiler.getLimits());
+		String source = nested(DEEP);
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		assertRejected("compile(String)", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compile(source));
+		assertRejected("compile(byte[])", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compile(bytes));
+		assertRejected("compileLazy", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compileLazy(source));
+		assertRejected("compile(String, JsonHandler)", JsonLimits.DEFAULT_MAX_DEPTH, () -> {
+			compiler.compile(source, new JsonTreeBuilder());
+			return null;
+		});
+		assertRejected("grammar engine", JsonLimits.DEFAULT_MAX_DEPTH, () -> new JsonCompiler(JsonEngine.GRAMMAR).compile(source));
+		assertRejected("JsonDocument", JsonLimits.DEFAULT_MAX_DEPTH, () -> new JsonDocument(source, compiler));
+	}
+
+	@Test
+	public void rejectsDeepInputInParallel() throws Exception {
+		JsonCompiler compiler = new JsonCompiler();
+		compiler.setParallelism(4);
+		compiler.setChunkSize(16);
+		StringBuilder source = new StringBuilder("[");
+		for(int i = 0; i < 8; i++)
+			source.append(i == 0 ? "" : ",").append(i == 5 ? nested(DEEP) : "[1, 2, 3]");
+		String deep = source.append(']').toString();
+		assertRejected("compile(String)", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compile(deep));
+		assertRejected("compile(byte[])", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compile(deep.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void acceptsTheMaximumDepth() throws Exception {
+		String source = nested(JsonLimits.DEFAULT_MAX_DEPTH);
+		for(JsonEngine engine : JsonEngine.values())
+			assertNotNull(engine.toString(), new JsonCompiler(engine).compile(source));
+		JsonCompiler compiler = new JsonCompiler();
+		assertNotNull(compiler.compile(source.getBytes(StandardCharsets.UTF_8)));
+		assertNotNull(compiler.compileLazy(source));
+		assertRejected("one level deeper", JsonLimits.DEFAULT_MAX_DEPTH, () -> compiler.compile(nested(JsonLimits.DEFAULT_MAX_DEPTH + 1)));
+	}
+
+	@Test
+	public void checksTheConfiguredDepth() throws Exception {
+		JsonCompiler compiler = new JsonCompiler();
+		compiler.setLimits(JsonLimits.UNLIMITED.withMaxDepth(3).withMaxStringLength(5));
+		assertNotNull(compiler.compile("[{\"a\": [1]}]"));
+		assertRejected("depth", 3, () -> compiler.compile("[{\"a\": [[1]]}]"));
+		assertRejected("bytes", 3, () -> compiler.compile("[{\"a\": [[1]]}]".getBytes(StandardCharsets.UTF_8)));
+		try {
+			compiler.compile("[\"abcdef\"]");
+			fail("the long string is compiled");
+		} catch(JsonLimitException e) {
+			assertEquals(Limit.STRING_LENGTH, e.getLimit());
+		}
+	}
+
+	/**
+	 * Builds a document nesting the specified number of arrays and objects
+	 */
+	private static String nested(int depth) {
+		StringBuilder source = new StringBuilder(depth * 7);
+		for(int i = 0; i < depth; i++)
+			source.append(i % 2 == 0 ? "[" : "{\"a\": ");
+		source.append('1');
+		for(int i = depth - 1; i >= 0; i--)
+			source.append(i % 2 == 0 ? ']' : '}');
+		return source.toString();
+	}
+
+	private static void assertRejected(String message, int maximum, Callable<?> compilation) throws Exception {
+		try {
+			compilation.call();
+			fail(message + ": the document is compiled");
+		} catch(JsonLimitException e) {
+			assertEquals(message, Limit.DEPTH, e.getLimit());
+			assertEquals(message, maximum, e.getMaximum());
+		}
+	}
+}
@@ -0,0 +1,265 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.stream.MalformedJsonException;
+
+/**
+ * Tests the round trip of the documents through the binary format: text, tree, binary, tree and text again,
+ * and the rejection of the truncated and corrupted binary documents.
+ * @author Salvatore Giampa'
+ *
+ */
+public class BinaryRoundTripTest {
+	private static final String DOCUMENT = "{"
+			+ "\"name\": \"JointyJSON\", \"escaped\": \"tab\\t quote\\\" slash\\/ \\u00e8\","
+			+ "\"emoji\": \"\\uD83D\\uDE00 and \uD83D\uDE80\", \"\\uD83C\\uDF0D\": \"surrogate pair name\","
+			+ "\"numbers\": [0, -16, 15, 16, -17, 1234567890123, -9223372036854775808, 9223372036854775807],"
+			+ "\"decimals\": [0.5, -1.25, 3.141592653589793, 1e300, 2.5E-10, 1.50e+2, 100.0],"
+			+ "\"zeros\": [0, -0.0, 0.0, -0],"
+			+ "\"mixed\": [1, \"one\", true, false, null, {}, [], 1.5, {\"name\": \"nested\"}],"
+			+ "\"items\": [{\"id\": 1, \"tags\": [\"a\", \"b\"]}, {\"id\": 2, \"tags\": []}, {\"id\": 3, \"tags\": [\"c\"]}],"
+			+ "\"long string\": \"" + repeat("0123456789", 20) + "\""
+			+ "}";
+
+	@Test
+	public void roundTripsEveryNumberMode() throws Exception {
+		for(NumberMode mode : NumberMode.values())
+			for(boolean keyReferences : new boolean[] {true, false}) {
+				JsonCompiler compiler = compiler(mode);
+				JsonElement tree = compiler.compile(DOCUMENT);
+				JsonElement decoded = roundTrip(tree, keyReferences);
+				String message = mode + (keyReferences ? " with" : " without") + " key references";
+				assertEquals(message, text(tree), text(decoded));
+				assertEquals(message, text(tree), text(compiler.compile(text(decoded))));
+			}
+	}
+
+	@Test
+	public void keepsTheNumberRepresentation() throws Exception {
+		JsonObject precise = (JsonObject) roundTrip(compiler(NumberMode.PRECISE).compile("{\"l\": 12, \"d\": 1.50}"), true);
+		assertEquals(12, ((JsonNumber) precise.get("l")).getLong());
+		assertTrue(((JsonNumber) precise.get("l")).isLong());
+		assertEquals("1.50", ((JsonNumber) precise.get("d")).getBigDecimal().toString());
+		JsonObject lazy = (JsonObject) roundTrip(compiler(NumberMode.LAZY).compile("{\"n\": 1.50e+2}"), true);
+		assertEquals("1.50e+2", lazy.get("n").toString());
+	}
+
+	@Test
+	public void namesAreInternedWithAndWithoutReferences() throws Exception {
+		StringBuilder document = new StringBuilder("[");
+		// more names than the table of the references holds, and a name longer than the referenced ones
+		for(int i = 0; i < 2 * BinaryFormat.MAX_KEYS + 10; i++)
+			document.append(i > 0 ? "," : "").append("{\"k").append(i % (BinaryFormat.MAX_KEYS + 5))
+					.append("\": ").append(i).append(", \"").append(repeat("n", BinaryFormat.MAX_KEY_LENGTH + 1)).append("\": null}");
+		document.append("]");
+		for(boolean keyReferences : new boolean[] {true, false}) {
+			JsonElement tree = compiler(NumberMode.DOUBLE).compile(document.toString());
+			JsonArray decoded = (JsonArray) roundTrip(tree, keyReferences);
+			assertEquals(text(tree), text(decoded));
+			JsonObject first = (JsonObject) decoded.get(0);
+			JsonObject repeated = (JsonObject) decoded.get(BinaryFormat.MAX_KEYS + 5);
+			assertSame(first.entries().iterator().next().getKey(), repeated.entries().iterator().next().getKey());
+		}
+	}
+
+	@Test
+	public void keepsThePackedArrays() throws Exception {
+		JsonArray longs = new JsonArray();
+		JsonArray doubles = new JsonArray();
+		JsonArray integralDoubles = new JsonArray();
+		for(int i = -300; i < 300; i++) {
+			longs.add((long) i * 1000003);
+			doubles.add(i / 7.0);
+			integralDoubles.add((double) i);
+		}
+		JsonObject root = new JsonObject();
+		root.put("longs", longs);
+		root.put("doubles", doubles);
+		root.put("integral doubles", integralDoubles);
+		root.put("empty", new JsonArray());
+		for(boolean keyReferences : new boolean[] {true, false}) {
+			JsonObject decoded = (JsonObject) roundTrip(root, keyReferences);
+			for(String name : new String[] {"longs", "doubles", "integral doubles"}) {
+				JsonArray original = (JsonArray) root.get(name);
+				JsonArray array = (JsonArray) decoded.get(name);
+				assertTrue(name, array.isPacked());
+				assertArrayEquals(name, original.toDoubleArray(), array.toDoubleArray(), 0);
+			}
+			assertArrayEquals(longs.toLongArray(), ((JsonArray) decoded.get("longs")).toLongArray());
+			assertEquals(0, ((JsonArray) decoded.get("empty")).size());
+		}
+		// the compilers pack the numeric arrays as well
+		JsonArray compiled = (JsonArray) compiler(NumberMode.DOUBLE).compile("[1, 2.5, -3]");
+		JsonArray decoded = (JsonArray) roundTrip(compiled, true);
+		assertEquals(compiled.isPacked(), decoded.isPacked());
+		assertArrayEquals(compiled.toDoubleArray(), decoded.toDoubleArray(), 0);
+	}
+
+	@Test
+	public void keepsTheNegativeZero() throws Exception {
+		JsonArray packed = new JsonArray();
+		packed.add(-0.0);
+		packed.add(1.0);
+		JsonObject root = new JsonObject();
+		root.put("zero", new JsonNumber(-0.0));
+		root.put("packed", packed);
+		JsonObject decoded = (JsonObject) roundTrip(root, true);
+		assertNegativeZero(((JsonNumber) decoded.get("zero")).get());
+		assertNegativeZero(((JsonArray) decoded.get("packed")).getDouble(0));
+
+		JsonArray compiled = (JsonArray) roundTrip(compiler(NumberMode.DOUBLE).compile("[-0.0, {\"z\": -0.0}]"), true);
+		assertNegativeZero(compiled.getDouble(0));
+		assertNegativeZero(((JsonNumber) ((JsonObject) compiled.get(1)).get("z")).get());
+	}
+
+	@Test
+	public void keepsTheSurrogatePairs() throws Exception {
+		String pair = "\uD83D\uDE00";
+		JsonObject root = new JsonObject();
+		root.put(pair, JsonString.create(pair + "x" + pair));
+		root.put("short", JsonString.create(pair));
+		root.put("long", JsonString.create(repeat(pair, 100)));
+		JsonArray array = new JsonArray();
+		array.add(root);
+		array.add(root);
+		for(boolean keyReferences : new boolean[] {true, false}) {
+			JsonArray decoded = (JsonArray) roundTrip(array, keyReferences);
+			for(JsonElement element : decoded) {
+				JsonObject object = (JsonObject) element;
+				assertEquals(pair + "x" + pair, object.get(pair).toString());
+				assertEquals(pair, object.get("short").toString());
+				assertEquals(repeat(pair, 100), object.get("long").toString());
+			}
+		}
+	}
+
+	@Test
+	public void rejectsTheTruncatedDocuments() throws Exception {
+		for(NumberMode mode : NumberMode.values())
+			for(boolean keyReferences : new boolean[] {true, false}) {
+				byte[] data = encode(compiler(mode).compile(DOCUMENT), keyReferences);
+				for(int length = 0; length < data.length; length++)
+					assertMalformed(mode + " truncated at " + length, Arrays.copyOf(data, length));
+			}
+	}
+
+	@Test
+	public void rejectsTheCorruptedDocuments() throws Exception {
+		byte[] data = encode(compiler(NumberMode.PRECISE).compile("{\"a\": [1, 2], \"b\": {\"a\": \"text\"}}"), true);
+		assertMalformed("magic", with(data, 0, 'X'));
+		assertMalformed("version", with(data, 2, BinaryFormat.VERSION + 1));
+		assertMalformed("flags", with(data, 3, 0x80));
+		assertMalformed("token", with(data, 4, 0xFF));
+		assertMalformed("trailing data", Arrays.copyOf(data, data.length + 1));
+
+		// a reference to a name that is not in the table
+		byte[] reference = encode(compiler(NumberMode.PRECISE).compile("{\"a\": 1}"), true);
+		assertMalformed("reference", with(reference, 6, (5 << 1) | 1));
+		// a length exceeding the document
+		byte[] string = encode(compiler(NumberMode.PRECISE).compile("[\"" + repeat("s", 100) + "\"]"), false);
+		assertMalformed("length", with(string, 7, 0x7F));
+		// a size exceeding the document
+		assertMalformed("size", with(data, 5, 0x7F));
+
+		// every single byte corruption is decoded or rejected, never failing otherwise
+		byte[] document = encode(compiler(NumberMode.PRECISE).compile(DOCUMENT), true);
+		for(int i = 0; i < document.length; i++)
+			for(int value : new int[] {0x00, 0x7F, 0x80, 0xFF, document[i] + 1})
+				try {
+					new BinaryDecoder().decode(with(document, i, value));
+				} catch(MalformedJsonException e) {
+					// rejected
+				}
+	}
+
+	@Test
+	public void decodesConsecutiveDocuments() throws Exception {
+		BinaryEncodingVisitor visitor = new BinaryEncodingVisitor();
+		JsonElement first = compiler(NumberMode.DOUBLE).compile(DOCUMENT);
+		JsonElement second = compiler(NumberMode.DOUBLE).compile("[1, \"two\", {\"name\": 3}]");
+		first.accept(visitor);
+		second.accept(visitor);
+		ByteBuffer buffer = ByteBuffer.wrap(visitor.toByteArray());
+		BinaryDecoder decoder = new BinaryDecoder();
+		assertEquals(text(first), text(decoder.decode(buffer)));
+		assertEquals(text(second), text(decoder.decode(buffer)));
+		assertEquals(0, buffer.remaining());
+	}
+
+	private static JsonCompiler compiler(NumberMode mode) {
+		JsonCompiler compiler = new JsonCompiler();
+		compiler.setNumberMode(mode);
+		return compiler;
+	}
+
+	private static String text(JsonElement element) {
+		EncodingVisitor visitor = new EncodingVisitor();
+		element.accept(visitor);
+		return visitor.getJsonString();
+	}
+
+	private static byte[] encode(JsonElement element, boolean keyReferences) {
+		BinaryEncodingVisitor visitor = new BinaryEncodingVisitor(keyReferences);
+		element.accept(visitor);
+		return visitor.toByteArray();
+	}
+
+	private static JsonElement roundTrip(JsonElement element, boolean keyReferences) throws MalformedJsonException {
+		return new BinaryDecoder().decode(encode(element, keyReferences));
+	}
+
+	private static void assertMalformed(String message, byte[] data) {
+		try {
+			new BinaryDecoder().decode(data);
+			fail(message + ": the document is decoded");
+		} catch(MalformedJsonException e) {
+			// expected
+		}
+	}
+
+	private static void assertNegativeZero(double value) {
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(value));
+	}
+
+	private static byte[] with(byte[] data, int index, int value) {
+		byte[] copy = data.clone();
+		copy[index] = (byte) value;
+		return copy;
+	}
+
+	private static String repeat(String text, int times) {
+		StringBuilder sb = new StringBuilder(text.length() * times);
+		for(int i = 0; i < times; i++)
+			sb.append(text);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,146 @@
+
+/**
+ *  Copyright 2017 Salvatore Giamp
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *  
+ **/
+
+package jointyjson.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import jointyjson.compiler.JsonCompiler;
+import jointyjson.model.EncodingVisitor;
+import jointyjson.model.JsonElement;
+
+/**
+ * Tests the feed parser on documents received in chunks split at random bytes, from arrays, buffers
+ * and a non-blocking {@link Pipe}, comparing the results with the documents compiled at once.
+ * @author Salvatore Giampa'
+ *
+ */
+public class JsonFeedParserTest {
+	private static final byte[] DOCUMENT = document().getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void parsesRandomChunks() throws Exception {
+		String expected = text(new JsonCompiler().compile(DOCUMENT));
+		Random random = new Random(22);
+		for(int round = 0; round < 50; round++) {
+			JsonFeedParser parser = new JsonCompiler().newFeedParser();
+			boolean direct = round % 2 == 0;
+			for(int position = 0; position < DOCUMENT.length; ) {
+				int length = Math.min(DOCUMENT.length - position, 1 + random.nextInt(round < 25 ? 8 : 4096));
+				ByteBuffer chunk = direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+				chunk.put(DOCUMENT, position, length).flip();
+				parser.feed(chunk);
+				position += length;
+			}
+			parser.end();
+			assertEquals("round " + round, expected, text(parser.getRoot()));
+		}
+	}
+
+	@Test
+	public void parsesANonBlockingPipe() throws Exception {
+		String expected = text(new JsonCompiler().compile(DOCUMENT));
+		for(long seed = 0; seed < 10; seed++) {
+			Random random = new Random(seed);
+			Pipe pipe = Pipe.open();
+			Thread writer = new Thread(() -> write(pipe.sink(), new Random(random.nextLong())));
+			writer.start();
+
+			JsonFeedParser parser = new JsonCompiler().newFeedParser();
+			try(Pipe.SourceChannel source = pipe.source(); Selector selector = Selector.open()) {
+				source.configureBlocking(false);
+				source.register(selector, SelectionKey.OP_READ);
+				ByteBuffer buffer = ByteBuffer.allocate(4096);
+				int reads = 0;
+				while(true) {
+					buffer.clear().limit(1 + random.nextInt(buffer.capacity()));
+					int read = source.read(buffer);
+					if(read < 0)
+						break;
+					if(read == 0) {
+						selector.select();
+						selector.selectedKeys().clear();
+						continue;
+					}
+					buffer.flip();
+					parser.feed(buffer);
+					reads++;
+				}
+				assertTrue("the document is read in more chunks", reads > 1);
+			}
+			writer.join();
+			parser.end();
+			assertNotNull(parser.getRoot());
+			assertEquals("seed " + seed, expected, text(parser.getRoot()));
+		}
+	}
+
+	/**
+	 * Writes the document into the sink of a pipe in chunks of random length, then closes it
+	 */
+	private static void write(Pipe.SinkChannel sink, Random random) {
+		try(Pipe.SinkChannel channel = sink) {
+			for(int position = 0; position < DOCUMENT.length; ) {
+				int length = Math.min(DOCUMENT.length - position, 1 + random.nextInt(64));
+				ByteBuffer chunk = ByteBuffer.wrap(DOCUMENT, position, length);
+				while(chunk.hasRemaining())
+					channel.write(chunk);
+				position += length;
+				if(random.nextInt(8) == 0)
+					Thread.yield();
+			}
+		} catch(Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Builds a document whose strings, escapes, numbers, literals, comments and multi-byte characters
+	 * are split between the chunks
+	 */
+	private static String document() {
+		StringBuilder sb = new StringBuilder("{\"items\": [\n");
+		for(int i = 0; i < 300; i++) {
+			if(i > 0)
+				sb.append(", // line comment\n");
+			sb.append("\t{\"id\": ").append(i).append(", \"price\": ").append(i * 1.25).append("e-1")
+					.append(", \"name\": \"item \u00e8\u20ac\uD83D\uDE80 ").append(i).append("\"")
+					.append(", \"escaped\": \"tab\\t quote\\\" \\u00e8\\uD83D\\uDE00\"")
+					.append(", \"flags\": [true, false, null] /* comment ").append(i).append(" */")
+					.append(", \"nested\": {\"values\": [-0.5, 1e10, ").append(Long.MAX_VALUE - i).append("]}}");
+		}
+		return sb.append("\n]}").toString();
+	}
+
+	private static String text(JsonElement element) {
+		EncodingVisitor visitor = new EncodingVisitor();
+		element.accept(visitor);
+		return visitor.getJsonString();
+	}
+}